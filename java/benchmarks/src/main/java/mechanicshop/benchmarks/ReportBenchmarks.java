@@ -0,0 +1,97 @@
+/*
+ * Benchmarks of the lookups and reports
+ * =====================================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop.benchmarks;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mechanicshop.Row;
+import mechanicshop.RowHandler;
+
+/**
+ * This class measures the read paths of the menu: the customer lookup of
+ * InsertServiceRequest and the first page of the reports 6 to 10, with
+ * the arguments and the default page size of the menu.  Every row of a
+ * page is read and handed to the Blackhole, as the menu does when it
+ * prints it.
+ *
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmarks extends ShopState{
+	//rows per page, the default of the menu
+	static final int PAGE = 20;
+
+	private String lname;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, SQLException {
+		open();
+		lname = ShopData.firstRow("customer.csv")[2];
+	}
+
+	//reads every column of a row, like the menu printing it
+	private static RowHandler consumer(final Blackhole bh){
+		return new RowHandler(){
+			public void handle(Row row) throws SQLException {
+				for(int column = 1; column <= row.getColumnCount(); ++column){
+					bh.consume(row.getString(column));
+				}
+			}
+		};
+	}
+
+	@Benchmark
+	public List<List<String>> findCustomersByLastName() throws SQLException {
+		return store.findCustomersByLastName(lname);
+	}
+
+	@Benchmark
+	public int listClosedRequestsWithBillUnder100(Blackhole bh) throws SQLException {//6
+		return store.listClosedRequestsWithBillUnder(100, null, null, PAGE, consumer(bh));
+	}
+
+	@Benchmark
+	public int listCustomersWithMoreThan20Cars(Blackhole bh) throws SQLException {//7
+		return store.listCustomersWithMoreCarsThan(20, null, PAGE, consumer(bh));
+	}
+
+	@Benchmark
+	public int listCarsBefore1995With50000Miles(Blackhole bh) throws SQLException {//8
+		return store.listCarsBeforeYearUnderMileage(1995, 50000, null, null, PAGE, consumer(bh));
+	}
+
+	@Benchmark
+	public int listTop10CarsWithMostServices(Blackhole bh) throws SQLException {//9
+		return store.listCarsWithMostServices(null, null, 10, consumer(bh));
+	}
+
+	@Benchmark
+	public int listCustomersByTotalBill(Blackhole bh) throws SQLException {//10
+		return store.listCustomersByTotalBill(null, null, PAGE, consumer(bh));
+	}
+
+}//end ReportBenchmarks
@@ -0,0 +1,181 @@
+/*
+ * Data sets of the benchmarks
+ * ===========================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * This class builds the data sets the benchmarks run on: the data/*.csv
+ * files of the project copied scale times.  Every copy gets its own keys,
+ * shifted past the keys of the copies before it, and its own VINs, so a
+ * data set of scale n holds n times the rows of data/ with the same shape:
+ * every customer name appears n times, every car has the same number of
+ * service requests.
+ *
+ */
+
+public class ShopData{
+	//first columns of a file that are keys, the other columns are copied unchanged
+	private static final String VIN = "vin";
+	private static final String[] FILES = {"customer.csv", "mechanic.csv", "car.csv", "owns.csv", "service_request.csv", "closed_request.csv"};
+	private static final String[][] KEYS = {
+		{"customer.csv"},
+		{"mechanic.csv"},
+		{VIN},
+		{"owns.csv", "customer.csv", VIN},
+		{"service_request.csv", "customer.csv", VIN},
+		{"closed_request.csv", "service_request.csv", "mechanic.csv"}
+	};
+
+	private ShopData(){
+	}
+
+	/**
+	 * Method to find the data/ directory of the project, from the
+	 * shop.data system property or by looking up from the working directory.
+	 *
+	 * @return the directory holding customer.csv and the other files
+	 * @throws java.io.IOException when there is no such directory
+	 */
+	public static File dataDir() throws IOException {
+		String property = System.getProperty("shop.data");
+		if(property != null){
+			return new File(property);
+		}
+		for(File dir = new File("").getAbsoluteFile(); dir != null; dir = dir.getParentFile()){
+			File data = new File(dir, "data");
+			if(new File(data, "customer.csv").isFile()){
+				return data;
+			}
+		}
+		throw new IOException("Cannot find the data directory, set -Dshop.data=<dir>");
+	}
+
+	/**
+	 * Method to write the data set of the given scale into a temporary
+	 * directory.
+	 *
+	 * @param scale the number of copies of data/
+	 * @return the directory holding the six files of the data set
+	 * @throws java.io.IOException when a file cannot be read or written
+	 */
+	public static File scaled(int scale) throws IOException {
+		File source = dataDir();
+		File target = new File(System.getProperty("java.io.tmpdir"), "mechanicshop-data-x" + scale);
+		if(!target.isDirectory() && !target.mkdirs()){
+			throw new IOException("Cannot create " + target);
+		}
+
+		Map<String, List<String>> lines = new HashMap<String, List<String>>();
+		//distance between the keys of two copies, per file
+		Map<String, Integer> strides = new HashMap<String, Integer>();
+		for(String file : FILES){
+			List<String> rows = read(new File(source, file));
+			lines.put(file, rows);
+			if(!KEYS[index(file)][0].equals(VIN)){
+				int max = -1;
+				for(String row : rows){
+					max = Math.max(max, Integer.parseInt(row.substring(0, row.indexOf(','))));
+				}
+				strides.put(file, max + 1);
+			}
+		}
+
+		for(String file : FILES){
+			String[] keys = KEYS[index(file)];
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(target, file)), StandardCharsets.UTF_8));
+			try{
+				for(int copy = 0; copy < scale; ++copy){
+					for(String row : lines.get(file)){
+						String[] fields = row.split(",", keys.length + 1);
+						for(int i = 0; i < keys.length; ++i){
+							if(i > 0){
+								writer.write(',');
+							}
+							if(keys[i].equals(VIN)){
+								writer.write(vin(fields[i], copy));
+							}
+							else{
+								writer.write(Integer.toString(Integer.parseInt(fields[i]) + copy * strides.get(keys[i])));
+							}
+						}
+						if(fields.length > keys.length){
+							writer.write(',');
+							writer.write(fields[keys.length]);
+						}
+						writer.write('\n');
+					}
+				}
+			}finally{
+				writer.close();
+			}
+		}
+		return target;
+	}//end scaled
+
+	/**
+	 * Method to give the VIN of a car in a copy.  The VINs of data/ start
+	 * with six letters, the copies after the first replace the first two with
+	 * the copy number, so they never meet a VIN of another copy.
+	 */
+	static String vin(String vin, int copy){
+		if(copy == 0){
+			return vin;
+		}
+		if(copy >= 100){
+			throw new IllegalArgumentException("scale must be at most 100");
+		}
+		return (copy < 10 ? "0" : "") + copy + vin.substring(2);
+	}
+
+	/**
+	 * @return the first row of a file of data/, split on ','
+	 */
+	public static String[] firstRow(String file) throws IOException {
+		return read(new File(dataDir(), file)).get(0).split(",");
+	}
+
+	private static int index(String file){
+		for(int i = 0; i < FILES.length; ++i){
+			if(FILES[i].equals(file)){
+				return i;
+			}
+		}
+		throw new IllegalArgumentException(file);
+	}
+
+	private static List<String> read(File file) throws IOException {
+		List<String> rows = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.length() > 0){
+					rows.add(line);
+				}
+			}
+		}finally{
+			reader.close();
+		}
+		return rows;
+	}
+
+}//end ShopData
@@ -0,0 +1,93 @@
+/*
+ * Shop under benchmark
+ * ====================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Level;
+
+import mechanicshop.BulkLoader;
+import mechanicshop.MechanicShop;
+import mechanicshop.MemoryShopStore;
+import mechanicshop.Migrations;
+import mechanicshop.ShopStore;
+
+/**
+ * This class holds the store the benchmarks run against, filled with the
+ * data set of the scale parameter.
+ *
+ * The memory backend is a MemoryShopStore and needs nothing else.  The
+ * postgres backend connects to the database given by the shop.db,
+ * shop.port, shop.user and shop.password system properties, brings its
+ * schema up to date and REPLACES the content of its tables with the data
+ * set, through BulkLoader.
+ *
+ */
+
+@State(Scope.Benchmark)
+public class ShopState{
+	@Param({"1", "4", "16"})
+	public int scale;
+
+	@Param({"memory"})
+	public String backend;
+
+	ShopStore store;
+	private MechanicShop esql;
+	private File data;
+
+	/**
+	 * Method to open the backend and fill it with the data set.
+	 */
+	void open() throws IOException, SQLException {
+		data = ShopData.scaled(scale);
+		if(backend.equals("postgres")){
+			esql = new MechanicShop(
+				System.getProperty("shop.db", "shop"),
+				System.getProperty("shop.port", "5432"),
+				System.getProperty("shop.user", System.getProperty("user.name")),
+				System.getProperty("shop.password", ""));
+			new Migrations(esql).migrate();
+		}
+		else if(!backend.equals("memory")){
+			throw new IllegalArgumentException("backend must be memory or postgres, got " + backend);
+		}
+		reload();
+	}
+
+	/**
+	 * Method to put the backend back to the data set, dropping the rows
+	 * added by the benchmarks.
+	 */
+	void reload() throws IOException, SQLException {
+		if(esql != null){
+			new BulkLoader(esql, data, false).load();
+			store = esql.getStore();
+		}
+		else{
+			store = MemoryShopStore.load(data);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void close(){
+		if(esql != null){
+			esql.cleanup();
+			esql = null;
+		}
+		store = null;
+	}
+
+}//end ShopState
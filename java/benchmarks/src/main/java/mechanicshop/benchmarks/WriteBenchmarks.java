@@ -0,0 +1,86 @@
+/*
+ * Benchmarks of the inserts
+ * =========================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop.benchmarks;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures the single-row insert paths of the menu:
+ * AddCustomer, AddCar with the ownership of the car, and
+ * InsertServiceRequest with its customer and car lookups.
+ *
+ * The inserts grow the data set, so every iteration starts again from the
+ * data set of the scale and runs a fixed batch of OPS operations; the score
+ * is the time of the whole batch.
+ *
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = WriteBenchmarks.OPS)
+@Measurement(iterations = 10, batchSize = WriteBenchmarks.OPS)
+@Fork(1)
+public class WriteBenchmarks extends ShopState{
+	//operations per iteration
+	static final int OPS = 10000;
+
+	private int customerId;
+	private String lname;
+	private int cars;
+	private Date today = new Date(System.currentTimeMillis());
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, SQLException {
+		open();
+		String[] customer = ShopData.firstRow("customer.csv");
+		customerId = Integer.parseInt(customer[0]);
+		lname = customer[2];
+	}
+
+	@Setup(Level.Iteration)
+	public void reset() throws IOException, SQLException {
+		reload();
+		cars = 0;
+	}
+
+	@Benchmark
+	public int addCustomer() throws SQLException {//1
+		return store.addCustomer("Ada", "Lovelace", "(555)123-4567", "12 Analytical Engine Road");
+	}
+
+	@Benchmark
+	public int addCar() throws SQLException {//3
+		String vin = String.format("BENCH%011d", cars++);
+		store.addCar(vin, "Toyota", "Corolla", 2015);
+		return store.addOwnership(customerId, vin);
+	}
+
+	@Benchmark
+	public int insertServiceRequest() throws SQLException {//4
+		List<List<String>> customers = store.findCustomersByLastName(lname);
+		int id = Integer.parseInt(customers.get(0).get(3));
+		List<List<String>> owned = store.getCarsOfCustomers(id);
+		return store.addServiceRequest(id, owned.get(0).get(1), today, 48000, "Change oil");
+	}
+
+}//end WriteBenchmarks
@@ -0,0 +1,325 @@
+/*
+ * Batch mode for MechanicShop
+ * ===========================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * This class runs a stream of operations without the interactive menu.
+ * Every line holds one operation, its fields separated by '|':
+ *
+ *   add-customer|fname|lname|(xxx)xxx-xxxx|address
+ *   add-mechanic|fname|lname|experience
+ *   add-car|vin|make|model|year[|customer_id]
+ *   insert-service-request|customer_id|vin|odometer|complaint[|yyyy-mm-dd]
+ *   close-service-request|rid|mid|bill|comment[|yyyy-mm-dd]
+ *
+ * A customer_id of the form $N refers to the customer added on line N of
+ * the same input.  Blank lines and lines starting with '#' are skipped.
+ *
+ * Operations are checked with the same rules as the prompts, then sent
+ * with addBatch/executeBatch and committed every commitSize operations.
+ * When a chunk fails, it is replayed one line at a time so every failing
+ * line is reported and the others are still stored.
+ *
+ */
+
+public class BatchRunner{
+	//tables in foreign key order, a chunk is written in this order
+	private static final String[] INSERTS = {
+		JdbcShopStore.INSERT_CUSTOMER,
+		JdbcShopStore.INSERT_MECHANIC,
+		JdbcShopStore.INSERT_CAR,
+		JdbcShopStore.INSERT_OWNS,
+		JdbcShopStore.INSERT_SERVICE_REQUEST,
+		JdbcShopStore.INSERT_CLOSED_REQUEST
+	};
+	private static final int CUSTOMER = 0;
+	private static final int MECHANIC = 1;
+	private static final int CAR = 2;
+	private static final int OWNS = 3;
+	private static final int SERVICE_REQUEST = 4;
+	private static final int CLOSED_REQUEST = 5;
+
+	//one row to insert, with the input line it came from
+	private static class Op{
+		int line;
+		int table;
+		Object[] params;
+
+		Op(int line, int table, Object... params){
+			this.line = line;
+			this.table = table;
+			this.params = params;
+		}
+	}
+
+	private MechanicShop esql;
+	private int commitSize;
+
+	//rows of the current chunk and the number of operations they came from
+	private List<Op> chunk = new ArrayList<Op>();
+	private int chunkOperations = 0;
+	//ids given to the customers added so far, by input line
+	private Map<Integer, Integer> customerIds = new HashMap<Integer, Integer>();
+
+	//statistics
+	private int operations = 0;
+	private int stored = 0;
+	private List<String> errors = new ArrayList<String>();
+
+	public BatchRunner(MechanicShop esql, int commitSize){
+		this.esql = esql;
+		this.commitSize = commitSize;
+	}
+
+	/**
+	 * Method to run every operation of the input and print a summary with
+	 * the throughput and the errors of each failed line.
+	 *
+	 * @param reader the operations, one per line
+	 * @throws java.io.IOException when the input cannot be read
+	 * @throws java.sql.SQLException when the database connection fails
+	 */
+	public void run(BufferedReader reader) throws IOException, SQLException {
+		long start = System.nanoTime();
+		PooledConnection conn = esql.borrowConnection();
+		try{
+			conn.getConnection().setAutoCommit(false);
+			String line;
+			int lineNumber = 0;
+			while((line = reader.readLine()) != null){
+				++lineNumber;
+				if(line.trim().length() == 0 || line.startsWith("#")){
+					continue;
+				}
+				++operations;
+				try{
+					parse(lineNumber, line);
+					++chunkOperations;
+				}catch(IllegalArgumentException e){
+					errors.add("line " + lineNumber + ": " + e.getMessage());
+				}
+				if(chunkOperations >= commitSize){
+					flush(conn);
+				}
+			}
+			flush(conn);
+			conn.getConnection().setAutoCommit(true);
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			esql.releaseConnection(conn);
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Operations: " + operations + ", stored: " + stored + ", failed: " + errors.size());
+		System.out.println(String.format("Elapsed: %.3f s, %.0f operations/s", seconds, seconds > 0 ? stored / seconds : 0));
+		for(String error : errors){
+			System.err.println(error);
+		}
+	}//end run
+
+	/**
+	 * Method to check one operation and add its rows to the current chunk.
+	 *
+	 * @throws IllegalArgumentException when the operation is not valid
+	 */
+	private void parse(int line, String text) throws SQLException {
+		String[] f = text.split("\\|", -1);
+		String op = f[0].trim();
+		if(op.equals("add-customer")){
+			fields(f, 5, 5);
+			if(!MechanicShop.isValidPhone(f[3])){
+				throw new IllegalArgumentException("phone number must be in the format (xxx)xxx-xxxx");
+			}
+			int id = esql.nextId(IdAllocator.CUSTOMER_ID);
+			customerIds.put(line, id);
+			chunk.add(new Op(line, CUSTOMER, id, f[1], f[2], f[3], f[4]));
+		}
+		else if(op.equals("add-mechanic")){
+			fields(f, 4, 4);
+			int experience = integer(f[3], "experience");
+			if(!MechanicShop.isValidExperience(experience)){
+				throw new IllegalArgumentException("experience must be greater than or equal to 0 and less than 100");
+			}
+			chunk.add(new Op(line, MECHANIC, esql.nextId(IdAllocator.MECHANIC_ID), f[1], f[2], experience));
+		}
+		else if(op.equals("add-car")){
+			fields(f, 5, 6);
+			int year = integer(f[4], "year");
+			if(!MechanicShop.isValidYear(year)){
+				throw new IllegalArgumentException("year must be greater than or equal to 1970");
+			}
+			Integer owner = f.length > 5 ? customer(f[5]) : null;
+			chunk.add(new Op(line, CAR, f[1], f[2], f[3], year));
+			if(owner != null){
+				chunk.add(new Op(line, OWNS, esql.nextId(IdAllocator.OWNERSHIP_ID), owner, f[1]));
+			}
+		}
+		else if(op.equals("insert-service-request")){
+			fields(f, 5, 6);
+			int customer = customer(f[1]);
+			int odometer = integer(f[3], "odometer");
+			if(!MechanicShop.isValidOdometer(odometer)){
+				throw new IllegalArgumentException("odometer must be greater than 0");
+			}
+			chunk.add(new Op(line, SERVICE_REQUEST, esql.nextId(IdAllocator.SERVICE_REQUEST_ID), customer, f[2], date(f, 5), odometer, f[4]));
+		}
+		else if(op.equals("close-service-request")){
+			fields(f, 5, 6);
+			int rid = integer(f[1], "rid");
+			int mid = integer(f[2], "mid");
+			int bill = integer(f[3], "bill");
+			if(!MechanicShop.isValidBill(bill)){
+				throw new IllegalArgumentException("bill must be greater than 0");
+			}
+			chunk.add(new Op(line, CLOSED_REQUEST, esql.nextId(IdAllocator.CLOSED_REQUEST_ID), rid, mid, date(f, 5), f[4], bill));
+		}
+		else{
+			throw new IllegalArgumentException("unknown operation '" + op + "'");
+		}
+	}//end parse
+
+	private static void fields(String[] f, int min, int max){
+		if(f.length < min || f.length > max){
+			throw new IllegalArgumentException(f[0] + " takes " + (min == max ? "" + (min - 1) : (min - 1) + " or " + (max - 1)) + " fields, got " + (f.length - 1));
+		}
+	}
+
+	private static int integer(String value, String name){
+		try{
+			return Integer.parseInt(value.trim());
+		}catch(NumberFormatException e){
+			throw new IllegalArgumentException(name + " must be an integer");
+		}
+	}
+
+	private Integer customer(String value){
+		value = value.trim();
+		if(value.startsWith("$")){
+			Integer id = customerIds.get(integer(value.substring(1), "customer reference"));
+			if(id == null){
+				throw new IllegalArgumentException("no customer was added on line " + value.substring(1));
+			}
+			return id;
+		}
+		return integer(value, "customer_id");
+	}
+
+	private static Date date(String[] f, int index){
+		if(f.length <= index || f[index].trim().length() == 0){
+			return new Date(System.currentTimeMillis());
+		}
+		try{
+			return Date.valueOf(f[index].trim());
+		}catch(IllegalArgumentException e){
+			throw new IllegalArgumentException("date must be in the format yyyy-mm-dd");
+		}
+	}
+
+	/**
+	 * Method to write the current chunk with one executeBatch per table and
+	 * commit it.  If the batch fails the chunk is rolled back and replayed
+	 * row by row.
+	 */
+	private void flush(PooledConnection conn) throws SQLException {
+		if(chunk.isEmpty()){
+			chunkOperations = 0;
+			return;
+		}
+		Connection connection = conn.getConnection();
+		Set<Integer> lines = new HashSet<Integer>();
+		for(Op op : chunk){
+			lines.add(op.line);
+		}
+		try{
+			for(int table = 0; table < INSERTS.length; ++table){
+				PreparedStatement stmt = null;
+				for(Op op : chunk){
+					if(op.table == table){
+						if(stmt == null){
+							stmt = conn.prepare(INSERTS[table]);
+						}
+						MechanicShop.bind(stmt, op.params);
+						stmt.addBatch();
+					}
+				}
+				if(stmt != null){
+					stmt.executeBatch();
+				}
+			}
+			connection.commit();
+			stored += lines.size();
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			if(conn.broken){
+				throw e;
+			}
+			connection.rollback();
+			for(String template : INSERTS){
+				conn.prepare(template).clearBatch();
+			}
+			replay(conn, lines);
+		}
+		chunk.clear();
+		chunkOperations = 0;
+	}//end flush
+
+	/**
+	 * Method to write the current chunk one input line at a time, in input
+	 * order, each line behind a savepoint so a failing line leaves nothing
+	 * behind and its error is recorded.
+	 */
+	private void replay(PooledConnection conn, Set<Integer> lines) throws SQLException {
+		Connection connection = conn.getConnection();
+		int failed = 0;
+		int i = 0;
+		while(i < chunk.size()){
+			int line = chunk.get(i).line;
+			Savepoint savepoint = connection.setSavepoint();
+			try{
+				for(; i < chunk.size() && chunk.get(i).line == line; ++i){
+					Op op = chunk.get(i);
+					PreparedStatement stmt = conn.prepare(INSERTS[op.table]);
+					MechanicShop.bind(stmt, op.params);
+					stmt.executeUpdate();
+				}
+				connection.releaseSavepoint(savepoint);
+			}catch(SQLException e){
+				conn.checkBroken(e);
+				if(conn.broken){
+					throw e;
+				}
+				connection.rollback(savepoint);
+				++failed;
+				errors.add("line " + line + ": " + e.getMessage());
+				while(i < chunk.size() && chunk.get(i).line == line){
+					++i;
+				}
+			}
+		}
+		connection.commit();
+		stored += lines.size() - failed;
+	}//end replay
+
+}//end BatchRunner
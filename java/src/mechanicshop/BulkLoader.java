@@ -0,0 +1,359 @@
+/*
+ * Bulk loading of the shop data set
+ * =================================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * This class loads the data/*.csv files into the database from the client
+ * side, streaming every file through COPY ... FROM STDIN, so the files do
+ * not have to be on the database host.
+ *
+ * Tables without foreign keys between them load at the same time, each on
+ * its own pooled connection, and a table only starts once the tables it
+ * references are loaded.  Dates in the M/d/yyyy HH:mm format of the files
+ * are rewritten to yyyy-mm-dd while streaming.  Secondary indexes can be
+ * dropped before the load and built again afterwards.  The requests land
+ * in the default partitions, which are split into months once loaded.
+ * The closing trigger of Closed_Request is skipped by the COPY, which only
+ * the owner of the table may do, see migration 12; the closings loaded are
+ * checked once afterwards instead, and a set that the trigger would have
+ * refused fails the load.
+ * The same load restores a Snapshot, see BulkLoader(MechanicShop, Snapshot,
+ * boolean).
+ *
+ */
+
+public class BulkLoader{
+	//bytes sent to the server per writeToCopy call
+	private static final int COPY_BUFFER = 64 * 1024;
+
+	//one table of the data set
+	private static class Table{
+		String name;
+		String file;
+		String columns;
+		//index of the date column in a row, -1 when there is none
+		int dateColumn;
+
+		Table(String name, String file, String columns, int dateColumn){
+			this.name = name;
+			this.file = file;
+			this.columns = columns;
+			this.dateColumn = dateColumn;
+		}
+	}
+
+	//tables grouped by foreign key level, every level loads in parallel
+	private static final Table[][] LEVELS = {
+		{
+			new Table("Customer", "customer.csv", "id, fname, lname, phone, address", -1),
+			new Table("Mechanic", "mechanic.csv", "id, fname, lname, experience", -1),
+			new Table("Car", "car.csv", "vin, make, model, year", -1)
+		},
+		{
+			new Table("Owns", "owns.csv", "ownership_id, customer_id, car_vin", -1),
+			new Table("Service_Request", "service_request.csv", "rid, customer_id, car_vin, date, odometer, complain", 3)
+		},
+		{
+			new Table("Closed_Request", "closed_request.csv", "wid, rid, mid, date, comment, bill", 3)
+		}
+	};
+
+	//restarts the key sequences after the loaded data, see create.sql
+	private static final String[] RESEED = {
+		"SELECT setval('customer_id_seq', (SELECT COALESCE(MAX(id) + 1, 0) FROM Customer), false)",
+		"SELECT setval('mechanic_id_seq', (SELECT COALESCE(MAX(id) + 1, 0) FROM Mechanic), false)",
+		"SELECT setval('owns_ownership_id_seq', (SELECT COALESCE(MAX(ownership_id) + 1, 0) FROM Owns), false)",
+		"SELECT setval('service_request_rid_seq', (SELECT COALESCE(MAX(rid) + 1, 0) FROM Service_Request), false)",
+		"SELECT setval('closed_request_wid_seq', (SELECT COALESCE(MAX(wid) + 1, 0) FROM Closed_Request), false)"
+	};
+
+	//the tables partitioned by month, see migration 9
+	private static final String[] PARTITIONED = {"service_request", "closed_request"};
+
+	//the month partitions attached to the archive tables
+	private static final String ARCHIVED_PARTITIONS =
+		"SELECT c.relname FROM pg_inherits AS i, pg_class AS c, pg_class AS p " +
+		"WHERE i.inhrelid = c.oid AND i.inhparent = p.oid AND pg_table_is_visible(p.oid) AND p.relname IN ('service_request_archive', 'closed_request_archive')";
+
+	//the closings the trigger of Closed_Request would have refused: of no request, or of a request closed twice
+	private static final String BAD_CLOSINGS =
+		"SELECT (SELECT COUNT(*) FROM Closed_Request AS C WHERE NOT EXISTS (SELECT 1 FROM Service_Request AS S WHERE S.rid = C.rid)), " +
+		"(SELECT COUNT(*) FROM (SELECT rid FROM Closed_Request GROUP BY rid HAVING COUNT(*) > 1) AS D)";
+
+	private MechanicShop esql;
+	private File dataDir;
+	private Snapshot snapshot;
+	private boolean rebuildIndexes;
+
+	public BulkLoader(MechanicShop esql, File dataDir, boolean rebuildIndexes){
+		this.esql = esql;
+		this.dataDir = dataDir;
+		this.rebuildIndexes = rebuildIndexes;
+	}
+
+	/**
+	 * Creates a loader of the tables of a snapshot instead of CSV files, each
+	 * table sent in the binary format of COPY.
+	 */
+	public BulkLoader(MechanicShop esql, Snapshot snapshot, boolean rebuildIndexes){
+		this.esql = esql;
+		this.snapshot = snapshot;
+		this.rebuildIndexes = rebuildIndexes;
+	}
+
+	/**
+	 * Method to replace the content of the six tables with the CSV files of
+	 * the data directory, or with the snapshot.
+	 *
+	 * @throws java.sql.SQLException when a statement or a COPY fails, or a
+	 *         closing loaded has no service request or closes one twice
+	 * @throws java.io.IOException when a file cannot be read
+	 */
+	public void load() throws SQLException, IOException {
+		long start = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(3);
+		try{
+			esql.executeUpdate("TRUNCATE Customer, Mechanic, Car, Owns, Service_Request, Closed_Request, Service_Request_Archive, Closed_Request_Archive");
+			//the archived months load into the hot tables again, see Partitions
+			for(List<String> archived : esql.executeQueryAndReturnResult(ARCHIVED_PARTITIONS)){
+				esql.executeUpdate("DROP TABLE " + archived.get(0));
+			}
+
+			//secondary indexes only, the ones backing constraints stay
+			List<List<String>> indexes = new ArrayList<List<String>>();
+			if(rebuildIndexes){
+				indexes = esql.executePreparedQueryAndReturnResult(
+					"SELECT i.relname, pg_get_indexdef(i.oid) FROM pg_index AS x, pg_class AS i, pg_class AS t " +
+					"WHERE i.oid = x.indexrelid AND t.oid = x.indrelid AND pg_table_is_visible(t.oid) AND t.relname = ANY(?) " +
+					"AND NOT EXISTS (SELECT 1 FROM pg_constraint AS c WHERE c.conindid = i.oid)",
+					(Object) new String[]{"customer", "mechanic", "car", "owns", "service_request", "closed_request"});
+				for(List<String> index : indexes){
+					esql.executeUpdate("DROP INDEX " + index.get(0));
+				}
+				System.out.println("Dropped " + indexes.size() + " indexes");
+			}
+
+			for(Table[] level : LEVELS){
+				List<Future<Long>> loads = new ArrayList<Future<Long>>();
+				for(final Table table : level){
+					loads.add(workers.submit(new Callable<Long>(){
+						public Long call() throws Exception {
+							return copy(table);
+						}
+					}));
+				}
+				for(int i = 0; i < level.length; ++i){
+					System.out.println(level[i].name + ": " + get(loads.get(i)) + " rows");
+				}
+			}
+
+			//the rows went to the default partitions, each month moves to a partition of its own
+			for(String table : PARTITIONED){
+				esql.executeQueryAndReturnResult("SELECT shop_month_partition('" + table + "', M.month) FROM (SELECT DISTINCT date_trunc('month', date)::date AS month FROM " + table + "_default) AS M");
+			}
+
+			if(rebuildIndexes){
+				List<Future<Long>> builds = new ArrayList<Future<Long>>();
+				for(final List<String> index : indexes){
+					builds.add(workers.submit(new Callable<Long>(){
+						public Long call() throws Exception {
+							//the index of a partitioned table is built on its partitions too
+							esql.executeUpdate(index.get(1).replace(" ON ONLY ", " ON "));
+							return 0L;
+						}
+					}));
+				}
+				for(Future<Long> build : builds){
+					get(build);
+				}
+				System.out.println("Rebuilt " + indexes.size() + " indexes");
+			}
+
+			//the loaded rows are committed, the customer indexes and report pages of every shop are out of date
+			esql.bumpAfterCommit(JdbcShopStore.CUSTOMER_VERSION_SEQUENCE);
+			esql.bumpAfterCommit(JdbcShopStore.REPORT_VERSIONS);
+
+			//the COPY skipped the closing trigger, the loaded set must have been consistent
+			List<String> bad = esql.executeQueryAndReturnResult(BAD_CLOSINGS).get(0);
+			if(!bad.get(0).equals("0") || !bad.get(1).equals("0")){
+				throw new SQLException("The loaded Closed_Request has " + bad.get(0) + " closings of no service request and " +
+					bad.get(1) + " requests closed more than once; load a consistent data set again", "23503");
+			}
+
+			for(String reseed : RESEED){
+				esql.executeQueryAndReturnResult(reseed);
+			}
+			//COPY does not maintain the aggregates of reports 9 and 10
+			esql.getStore().rebuildAggregates();
+			esql.executeUpdate("ANALYZE Customer, Mechanic, Car, Owns, Service_Request, Closed_Request, Service_Request_Archive, Closed_Request_Archive, Car_Service_Count, Customer_Bill_Total");
+		}finally{
+			workers.shutdown();
+		}
+		System.out.println(String.format("Loaded in %.3f s", (System.nanoTime() - start) / 1e9));
+	}//end load
+
+	private static long get(Future<Long> future) throws SQLException, IOException {
+		try{
+			return future.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading", e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof SQLException){
+				throw (SQLException) e.getCause();
+			}
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Method to stream one CSV file, or one table of the snapshot, into its
+	 * table on a connection of its own.
+	 *
+	 * @return the number of rows loaded
+	 */
+	private long copy(Table table) throws SQLException, IOException {
+		PooledConnection conn = esql.borrowConnection();
+		BufferedReader reader = null;
+		CopyIn copy = null;
+		try{
+			//the closing trigger of Closed_Request checks no row of the COPY, load() checks them all once afterwards
+			Statement stmt = conn.getConnection().createStatement();
+			try{
+				stmt.execute("SET shop.bulk_load = on");
+			}finally{
+				stmt.close();
+			}
+			CopyManager copyManager = conn.getConnection().unwrap(PGConnection.class).getCopyAPI();
+			if(snapshot != null){
+				return snapshot.copy(table.name, copyManager);
+			}
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dataDir, table.file)), StandardCharsets.UTF_8), COPY_BUFFER);
+			copy = copyManager.copyIn("COPY " + table.name + " (" + table.columns + ") FROM STDIN WITH DELIMITER ','");
+			StringBuilder buffer = new StringBuilder(COPY_BUFFER + 1024);
+			String line;
+			while((line = reader.readLine()) != null){
+				if(table.dateColumn < 0){
+					buffer.append(line);
+				}
+				else{
+					appendWithIsoDate(buffer, line, table.dateColumn);
+				}
+				buffer.append('\n');
+				if(buffer.length() >= COPY_BUFFER){
+					byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+					copy.writeToCopy(bytes, 0, bytes.length);
+					buffer.setLength(0);
+				}
+			}
+			byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+			copy.writeToCopy(bytes, 0, bytes.length);
+			long rows = copy.endCopy();
+			copy = null;
+			return rows;
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			try{
+				if(copy != null && copy.isActive()){
+					copy.cancelCopy();
+				}
+			}catch(SQLException e){
+				conn.checkBroken(e);
+			}
+			if(reader != null){
+				reader.close();
+			}
+			resetBulkLoad(conn);
+			esql.releaseConnection(conn);
+		}
+	}//end copy
+
+	//the pooled connection goes back with the trigger checks on
+	private static void resetBulkLoad(PooledConnection conn){
+		if(conn.broken){
+			return;
+		}
+		try{
+			Statement stmt = conn.getConnection().createStatement();
+			try{
+				stmt.execute("RESET shop.bulk_load");
+			}finally{
+				stmt.close();
+			}
+		}catch(SQLException e){
+			conn.checkBroken(e);
+		}
+	}
+
+	/**
+	 * Method to append a CSV line, rewriting its M/d/yyyy[ HH:mm] date field
+	 * as yyyy-mm-dd.  Fields that do not look like such a date are copied
+	 * unchanged.
+	 */
+	static void appendWithIsoDate(StringBuilder out, String line, int dateColumn){
+		//find the bounds of the date field
+		int start = 0;
+		for(int column = 0; column < dateColumn && start >= 0; ++column){
+			start = line.indexOf(',', start);
+			start = start < 0 ? -1 : start + 1;
+		}
+		if(start < 0){
+			out.append(line);
+			return;
+		}
+		int end = line.indexOf(',', start);
+		if(end < 0){
+			end = line.length();
+		}
+
+		int slash1 = line.indexOf('/', start);
+		int slash2 = slash1 < 0 ? -1 : line.indexOf('/', slash1 + 1);
+		if(slash2 < 0 || slash2 >= end || slash2 + 5 > end){
+			out.append(line);
+			return;
+		}
+		out.append(line, 0, start);
+		out.append(line, slash2 + 1, slash2 + 5).append('-');
+		if(slash1 - start == 1){
+			out.append('0');
+		}
+		out.append(line, start, slash1).append('-');
+		if(slash2 - slash1 == 2){
+			out.append('0');
+		}
+		out.append(line, slash1 + 1, slash2);
+		out.append(line, end, line.length());
+	}//end appendWithIsoDate
+
+}//end BulkLoader
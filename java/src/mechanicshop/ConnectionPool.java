@@ -0,0 +1,288 @@
+/*
+ * Connection pooling for MechanicShop
+ * ===================================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a bounded pool of physical connections to one database.
+ * Connections are borrowed for a unit of work and released afterwards,
+ * so several operations can use the database at the same time.
+ *
+ * Idle connections are validated before they are handed out again, broken
+ * ones are dropped and replaced by a new physical connection, and a
+ * background task closes connections that stayed idle for too long.
+ *
+ */
+
+public class ConnectionPool{
+	//connections idle for less than this are handed out without validation
+	private static final long VALIDATION_WINDOW_MILLIS = 500;
+	//seconds the driver may take to validate a connection
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+	//how often the idle evictor runs
+	private static final long EVICTION_PERIOD_MILLIS = 30000;
+
+	private String url;
+	private String user;
+	private String passwd;
+	private int maxSize;
+	private int minIdle;
+	private long idleTimeoutMillis;
+	private long borrowTimeoutMillis;
+
+	//idle connections, most recently used first
+	private Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+	//number of open physical connections, idle or borrowed
+	private int size = 0;
+	private boolean closed = false;
+	private ScheduledExecutorService evictor;
+
+	//statistics
+	private long borrows = 0;
+	private long waits = 0;
+	private long totalWaitNanos = 0;
+	private long maxWaitNanos = 0;
+	private long timeouts = 0;
+	private long created = 0;
+	private long evicted = 0;
+	private long dropped = 0;
+
+	/**
+	 * @param url the JDBC connection URL
+	 * @param user the database user
+	 * @param passwd the password of the user
+	 * @param maxSize the most physical connections open at once
+	 * @param minIdle idle connections the evictor keeps open
+	 * @param idleTimeoutMillis idle time after which a connection is closed
+	 * @param borrowTimeoutMillis how long borrow() waits for a free connection
+	 */
+	public ConnectionPool(String url, String user, String passwd, int maxSize, int minIdle, long idleTimeoutMillis, long borrowTimeoutMillis){
+		this.url = url;
+		this.user = user;
+		this.passwd = passwd;
+		this.maxSize = maxSize;
+		this.minIdle = minIdle;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "pool-evictor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.evictor.scheduleWithFixedDelay(new Runnable(){
+			public void run(){
+				evictIdle();
+			}
+		}, EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Method to borrow a connection.  An idle connection is reused when one
+	 * is valid, otherwise a new one is opened while the pool is below its
+	 * size limit, otherwise the caller waits for a release.
+	 *
+	 * @return a connection only the caller uses until it is released
+	 * @throws java.sql.SQLException when the pool is closed, no connection
+	 *         became free in time, or a new connection cannot be opened
+	 */
+	public PooledConnection borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+		boolean waited = false;
+		while(true){
+			PooledConnection conn = null;
+			boolean open = false;
+			synchronized(this){
+				while(!closed && idle.isEmpty() && size >= maxSize){
+					long left = deadline - System.nanoTime();
+					if(left <= 0){
+						++timeouts;
+						throw new SQLException("Timed out waiting for a database connection", "08001");
+					}
+					waited = true;
+					try{
+						TimeUnit.NANOSECONDS.timedWait(this, left);
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted waiting for a database connection", "08001");
+					}
+				}
+				if(closed){
+					throw new SQLException("Connection pool is closed", "08003");
+				}
+				if(!idle.isEmpty()){
+					conn = idle.pollFirst();
+				}
+				else{
+					//reserve the slot now, open the connection outside the lock
+					++size;
+					open = true;
+				}
+			}
+
+			if(open){
+				try{
+					conn = new PooledConnection(DriverManager.getConnection(url, user, passwd));
+				}catch(SQLException e){
+					synchronized(this){
+						--size;
+						notifyAll();
+					}
+					throw e;
+				}
+				synchronized(this){
+					++created;
+				}
+			}
+			else if(!isValid(conn)){
+				discard(conn);
+				continue;
+			}
+
+			long wait = System.nanoTime() - start;
+			synchronized(this){
+				++borrows;
+				if(waited){
+					++waits;
+				}
+				totalWaitNanos += wait;
+				maxWaitNanos = Math.max(maxWaitNanos, wait);
+			}
+			return conn;
+		}
+	}//end borrow
+
+	/**
+	 * Method to give a borrowed connection back.  Broken connections, and
+	 * every connection once the pool is closed, are closed instead.
+	 *
+	 * @param conn the connection returned by borrow()
+	 */
+	public void release(PooledConnection conn){
+		if(conn.broken){
+			discard(conn);
+			return;
+		}
+		synchronized(this){
+			if(!closed){
+				conn.lastUsed = System.currentTimeMillis();
+				idle.addFirst(conn);
+				notifyAll();
+				return;
+			}
+		}
+		discard(conn);
+	}//end release
+
+	private boolean isValid(PooledConnection conn){
+		if(System.currentTimeMillis() - conn.lastUsed < VALIDATION_WINDOW_MILLIS){
+			return true;
+		}
+		try{
+			return conn.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+		}catch(SQLException e){
+			return false;
+		}
+	}
+
+	private void discard(PooledConnection conn){
+		conn.close();
+		synchronized(this){
+			--size;
+			++dropped;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Method to close connections that stayed idle longer than the idle
+	 * timeout, keeping at least minIdle of them open.
+	 */
+	void evictIdle(){
+		long now = System.currentTimeMillis();
+		Deque<PooledConnection> expired = new ArrayDeque<PooledConnection>();
+		synchronized(this){
+			//least recently used connections are at the end of the deque
+			Iterator<PooledConnection> it = idle.descendingIterator();
+			while(it.hasNext() && idle.size() > minIdle){
+				PooledConnection conn = it.next();
+				if(now - conn.lastUsed < idleTimeoutMillis){
+					break;
+				}
+				it.remove();
+				--size;
+				++evicted;
+				expired.add(conn);
+			}
+			notifyAll();
+		}
+		for(PooledConnection conn : expired){
+			conn.close();
+		}
+	}//end evictIdle
+
+	/**
+	 * Method to drain the pool.  Idle connections are closed right away,
+	 * borrowed ones when they are released, waiting at most timeoutMillis
+	 * for them to come back.
+	 *
+	 * @param timeoutMillis how long to wait for borrowed connections
+	 */
+	public void close(long timeoutMillis){
+		evictor.shutdownNow();
+		Deque<PooledConnection> toClose;
+		synchronized(this){
+			closed = true;
+			toClose = new ArrayDeque<PooledConnection>(idle);
+			size -= idle.size();
+			idle.clear();
+			notifyAll();
+		}
+		for(PooledConnection conn : toClose){
+			conn.close();
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized(this){
+			while(size > 0){
+				long left = deadline - System.currentTimeMillis();
+				if(left <= 0){
+					break;
+				}
+				try{
+					wait(left);
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+	}//end close
+
+	/**
+	 * @return a one-line summary of the pool size and borrow statistics
+	 */
+	public synchronized String getStats(){
+		double avgWaitMs = borrows == 0 ? 0 : totalWaitNanos / 1e6 / borrows;
+		return String.format("open=%d idle=%d max=%d borrows=%d waited=%d timeouts=%d avgWait=%.3fms maxWait=%.3fms created=%d evicted=%d dropped=%d",
+			size, idle.size(), maxSize, borrows, waits, timeouts, avgWaitMs, maxWaitNanos / 1e6, created, evicted, dropped);
+	}
+
+}//end ConnectionPool
@@ -0,0 +1,952 @@
+/*
+ * Offline analytics over the shop CSV files
+ * =========================================
+ *
+ * Target DBMS: none, the data/*.csv files
+ *
+ */
+
+package mechanicshop;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class runs the five reports of sql/queries.sql (menu items 6 to 10)
+ * straight from the CSV files of a data directory, without a database.
+ *
+ * Every file is memory-mapped in chunks cut at line ends, and the chunks
+ * are scanned by fork/join tasks on all cores.  Fields are parsed in place
+ * from the mapped bytes: numbers and dates digit by digit, and a vin is
+ * packed into two longs, so scanning a file allocates nothing per row.
+ * Strings are only made for the rows a report outputs, by parsing their
+ * line again.
+ *
+ * The joins are hash joins: the smaller side (Car by vin, Customer by id,
+ * Service_Request by rid) is indexed by a parallel build into an
+ * open-addressing table whose slots are claimed with compare-and-set, and
+ * the larger side probes it in parallel.  Counts and sums are kept in
+ * atomic arrays by row of the build side.
+ *
+ * The reports return the same columns in the same order as the ShopStore
+ * list methods, sort key columns included, so they can be printed or
+ * exported like the reports of the menu.
+ *
+ */
+
+public class CsvAnalytics{
+	//bytes of a file mapped and scanned by one task, cut at a line end
+	private static final int CHUNK_SIZE = Integer.getInteger("shop.analyticsChunk", 32 << 20);
+
+	private final File dataDir;
+	private final ForkJoinPool pool;
+
+	//the files, mapped on first use
+	private MappedCsv customerFile, ownsFile, carFile, requestFile, closedFile;
+	//Customer by id and Car by vin, built on first use
+	private KeyIndex customers;
+	private KeyIndex cars;
+	private int[] carYears;
+
+	/**
+	 * @param dataDir the directory holding customer.csv, car.csv, ...
+	 * @param parallelism the number of threads scanning the files
+	 */
+	public CsvAnalytics(File dataDir, int parallelism){
+		this.dataDir = dataDir;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Method to run reports and print them, or export one.  Without a file
+	 * every report is run, and its row count, time and first rows are
+	 * printed.  With a file the report is written to it, see ReportExporter.
+	 *
+	 * @param report the report to export (6 to 10) with its arguments, see
+	 *        ReportDefinition.isReport; null for all
+	 * @param file the file to export to, null to print
+	 * @param limit the most rows of a report
+	 * @throws java.io.IOException when a file cannot be read or written
+	 * @throws java.sql.SQLException when a row cannot be handled
+	 */
+	public void run(String report, File file, int limit) throws IOException, SQLException {
+		long start = System.nanoTime();
+		try{
+			if(file != null){
+				ReportDefinition definition = ReportDefinition.forSpec(report);
+				ReportExporter exporter = ReportExporter.forFile(file, definition.getColumns());
+				try{
+					report(definition, definition.argsOf(report), limit, exporter);
+				}finally{
+					exporter.close();
+				}
+				ReportExporter.printStats(exporter, file, start);
+			}
+			else{
+				final int shown = limit == Integer.MAX_VALUE ? 10 : limit;
+				for(ReportDefinition definition : ReportDefinition.REPORTS){
+					long reportStart = System.nanoTime();
+					final List<String> lines = new ArrayList<String>();
+					int rows = report(definition, definition.getDefaults(), Integer.MAX_VALUE, new RowHandler(){
+						public void handle(Row row) throws SQLException{
+							if(lines.size() < shown){
+								StringBuilder line = new StringBuilder("  ");
+								for(int i = 1; i <= row.getColumnCount(); ++i){
+									line.append(row.getString(i)).append(i < row.getColumnCount() ? "\t" : "");
+								}
+								lines.add(line.toString());
+							}
+						}
+					});
+					System.out.println(String.format("Report %d: %d rows in %.3f s", definition.getNumber(), rows, (System.nanoTime() - reportStart) / 1e9));
+					for(String line : lines){
+						System.out.println(line);
+					}
+				}
+			}
+		}catch(UncheckedIOException e){
+			throw e.getCause();
+		}finally{
+			pool.shutdown();
+		}
+		long bytes = 0;
+		for(MappedCsv csv : new MappedCsv[]{customerFile, ownsFile, carFile, requestFile, closedFile}){
+			bytes += csv == null ? 0 : csv.size;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Scanned %.1f MB in %.3f s on %d threads: %.1f MB/s", bytes / 1e6, seconds, pool.getParallelism(), bytes / 1e6 / seconds));
+	}//end run
+
+	/**
+	 * Method to run a report of the menu and stream its rows.
+	 *
+	 * @param args the arguments of the report, see ReportDefinition
+	 * @param limit the most rows to return
+	 * @return the number of rows
+	 */
+	public int report(ReportDefinition report, int[] args, int limit, RowHandler handler) throws IOException, SQLException {
+		limit = Math.min(limit, report.total(args));
+		//the window is the last argument of the reports that have one
+		if(report.getNumber() != 7 && args[args.length - 1] > 0){
+			throw new IllegalArgumentException("The files are read whole, report " + report.getNumber() + " takes no window here");
+		}
+		switch(report.getNumber()){
+			case 6: return closedRequestsWithBillUnder(args[0], limit, handler);
+			case 7: return customersWithMoreCarsThan(args[0], limit, handler);
+			case 8: return carsBeforeYearUnderMileage(args[0], args[1], limit, handler);
+			case 9: return carsWithMostServices(limit, handler);
+			case 10: return customersByTotalBill(limit, handler);
+			default: throw new IllegalArgumentException("No report " + report.getNumber());
+		}
+	}
+
+	/*
+	 * The reports.
+	 */
+
+	/**
+	 * Closed requests with a bill under the limit, cheapest first: date,
+	 * comment, bill, wid.
+	 */
+	int closedRequestsWithBillUnder(final int bill, int limit, RowHandler handler) throws IOException, SQLException {
+		final MappedCsv closed = closed();
+		final Matches matches = scan(closed, new ChunkJob<Matches>(){
+			public Matches scan(int chunk, ByteBuffer data){
+				Matches found = new Matches();
+				for(int start = 0, size = data.limit(); start < size; ){
+					int next = lineEnd(data, start) + 1;
+					int end = trimEnd(data, start, next - 1);
+					if(end > start){
+						//wid,rid,mid,date,comment,bill; the comment may hold commas, the bill is read from the end
+						int comma = lastComma(data, start, end);
+						int value = parseInt(data, comma + 1, end);
+						if(value < bill){
+							found.add(ref(chunk, start), value, parseInt(data, start, comma(data, start, end)));
+						}
+					}
+					start = next;
+				}
+				return found;
+			}
+			public Matches merge(Matches left, Matches right){
+				return left.append(right);
+			}
+		});
+		//by (bill, wid)
+		MemoryShopStore.TopRows top = new MemoryShopStore.TopRows(limit){
+			boolean before(int a, int b){
+				return matches.a[a] != matches.a[b] ? matches.a[a] < matches.a[b] : matches.b[a] < matches.b[b];
+			}
+		};
+		for(int i = 0; i < matches.size; ++i){
+			top.offer(i);
+		}
+		MemoryShopStore.MemoryRow row = new MemoryShopStore.MemoryRow(MemoryShopStore.MemoryRow.DATE, MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.NUMBER, MemoryShopStore.MemoryRow.NUMBER);
+		for(int i : top.ranked()){
+			Line line = closed.line(matches.refs[i]);
+			row.number[0] = parseDays(line.data, line.field(3), line.fieldEnd(3));
+			row.text[1] = line.text(line.field(4), line.lastComma());
+			row.number[2] = matches.a[i];
+			row.number[3] = matches.b[i];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	/**
+	 * Customers owning more than the given number of cars, by id: fname,
+	 * lname, id.
+	 */
+	int customersWithMoreCarsThan(int carCount, int limit, RowHandler handler) throws IOException, SQLException {
+		final KeyIndex customers = customers();
+		final AtomicIntegerArray owned = new AtomicIntegerArray(customers.rows);
+		scan(owns(), new ChunkJob<Void>(){
+			public Void scan(int chunk, ByteBuffer data){
+				for(int start = 0, size = data.limit(); start < size; ){
+					int next = lineEnd(data, start) + 1;
+					int end = trimEnd(data, start, next - 1);
+					if(end > start){
+						//ownership_id,customer_id,car_vin
+						int from = comma(data, start, end) + 1;
+						int customer = customers.find(parseInt(data, from, comma(data, from, end)), 0);
+						if(customer >= 0){
+							owned.getAndIncrement(customer);
+						}
+					}
+					start = next;
+				}
+				return null;
+			}
+			public Void merge(Void left, Void right){
+				return null;
+			}
+		});
+		//by id
+		MemoryShopStore.TopRows top = new MemoryShopStore.TopRows(limit){
+			boolean before(int a, int b){
+				return customers.k1[a] < customers.k1[b];
+			}
+		};
+		for(int customer = 0; customer < customers.rows; ++customer){
+			if(owned.get(customer) > carCount){
+				top.offer(customer);
+			}
+		}
+		MemoryShopStore.MemoryRow row = new MemoryShopStore.MemoryRow(MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.NUMBER);
+		for(int customer : top.ranked()){
+			Line line = customerFile.line(customers.refs[customer]);
+			row.text[0] = line.text(line.field(1), line.fieldEnd(1)).trim();
+			row.text[1] = line.text(line.field(2), line.fieldEnd(2));
+			row.number[2] = customers.k1[customer];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	/**
+	 * Distinct cars built before the year with a service request under the
+	 * mileage, by year, make and model: make, model, year.
+	 */
+	int carsBeforeYearUnderMileage(final int year, final int miles, int limit, RowHandler handler) throws IOException, SQLException {
+		final KeyIndex cars = cars();
+		final int[] years = carYears;
+		//set by any task that finds a request of the car, read after the scan
+		final byte[] found = new byte[cars.rows];
+		scan(requests(), new ChunkJob<Void>(){
+			public Void scan(int chunk, ByteBuffer data){
+				for(int start = 0, size = data.limit(); start < size; ){
+					int next = lineEnd(data, start) + 1;
+					int end = trimEnd(data, start, next - 1);
+					if(end > start){
+						//rid,customer_id,car_vin,date,odometer,complain
+						int vin = comma(data, comma(data, start, end) + 1, end) + 1;
+						int vinEnd = comma(data, vin, end);
+						int odometer = comma(data, vinEnd + 1, end) + 1;
+						if(parseInt(data, odometer, comma(data, odometer, end)) < miles){
+							int car = cars.find(packHigh(data, vin, vinEnd), packLow(data, vin, vinEnd));
+							if(car >= 0 && years[car] < year){
+								found[car] = 1;
+							}
+						}
+					}
+					start = next;
+				}
+				return null;
+			}
+			public Void merge(Void left, Void right){
+				return null;
+			}
+		});
+		//DISTINCT make, model, year over the cars found, ordered
+		Set<List<Object>> distinct = new HashSet<List<Object>>();
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		for(int car = 0; car < cars.rows; ++car){
+			if(found[car] != 0){
+				Line line = carFile.line(cars.refs[car]);
+				List<Object> key = Arrays.<Object>asList(years[car], line.text(line.field(1), line.fieldEnd(1)), line.text(line.field(2), line.fieldEnd(2)));
+				if(distinct.add(key)){
+					rows.add(key);
+				}
+			}
+		}
+		final List<List<Object>> keys = rows;
+		MemoryShopStore.TopRows top = new MemoryShopStore.TopRows(limit){
+			boolean before(int a, int b){
+				List<Object> x = keys.get(a), y = keys.get(b);
+				int c = Integer.compare((Integer) x.get(0), (Integer) y.get(0));
+				if(c == 0){
+					c = ((String) x.get(1)).compareTo((String) y.get(1));
+				}
+				if(c == 0){
+					c = ((String) x.get(2)).compareTo((String) y.get(2));
+				}
+				return c < 0;
+			}
+		};
+		for(int i = 0; i < keys.size(); ++i){
+			top.offer(i);
+		}
+		MemoryShopStore.MemoryRow row = new MemoryShopStore.MemoryRow(MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.NUMBER);
+		for(int i : top.ranked()){
+			row.text[0] = (String) keys.get(i).get(1);
+			row.text[1] = (String) keys.get(i).get(2);
+			row.number[2] = (Integer) keys.get(i).get(0);
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	/**
+	 * The k cars with the most service requests, most first: make, model,
+	 * number of requests, vin.  Ties go to the greatest vin.
+	 */
+	int carsWithMostServices(int k, RowHandler handler) throws IOException, SQLException {
+		final KeyIndex cars = cars();
+		final AtomicIntegerArray requests = new AtomicIntegerArray(cars.rows);
+		scan(requests(), new ChunkJob<Void>(){
+			public Void scan(int chunk, ByteBuffer data){
+				for(int start = 0, size = data.limit(); start < size; ){
+					int next = lineEnd(data, start) + 1;
+					int end = trimEnd(data, start, next - 1);
+					if(end > start){
+						int vin = comma(data, comma(data, start, end) + 1, end) + 1;
+						int vinEnd = comma(data, vin, end);
+						int car = cars.find(packHigh(data, vin, vinEnd), packLow(data, vin, vinEnd));
+						if(car >= 0){
+							requests.getAndIncrement(car);
+						}
+					}
+					start = next;
+				}
+				return null;
+			}
+			public Void merge(Void left, Void right){
+				return null;
+			}
+		});
+		//by (requests, vin), both descending; a vin packed big-endian compares as unsigned longs
+		MemoryShopStore.TopRows top = new MemoryShopStore.TopRows(k){
+			boolean before(int a, int b){
+				int ra = requests.get(a), rb = requests.get(b);
+				if(ra != rb){
+					return ra > rb;
+				}
+				int c = Long.compareUnsigned(cars.k1[a], cars.k1[b]);
+				return (c != 0 ? c : Long.compareUnsigned(cars.k2[a], cars.k2[b])) > 0;
+			}
+		};
+		for(int car = 0; car < cars.rows; ++car){
+			if(requests.get(car) > 0){
+				top.offer(car);
+			}
+		}
+		MemoryShopStore.MemoryRow row = new MemoryShopStore.MemoryRow(MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.NUMBER, MemoryShopStore.MemoryRow.TEXT);
+		for(int car : top.ranked()){
+			Line line = carFile.line(cars.refs[car]);
+			row.text[0] = line.text(line.field(1), line.fieldEnd(1));
+			row.text[1] = line.text(line.field(2), line.fieldEnd(2));
+			row.number[2] = requests.get(car);
+			row.text[3] = line.text(line.field(0), line.fieldEnd(0));
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	/**
+	 * Customers by the total of their closed request bills, highest first:
+	 * fname, lname, total, id.  Ties go to the greatest id.
+	 */
+	int customersByTotalBill(int limit, RowHandler handler) throws IOException, SQLException {
+		final KeyIndex customers = customers();
+
+		//Service_Request by rid, with the customer row of each request
+		final MappedCsv requestCsv = requests();
+		final int[] firstRow = requestCsv.firstRows(this);
+		final KeyIndex requests = new KeyIndex(requestCsv.rows, false);
+		final int[] customerOfRequest = new int[requestCsv.rows];
+		scan(requestCsv, new ChunkJob<Void>(){
+			public Void scan(int chunk, ByteBuffer data){
+				int r = firstRow[chunk];
+				for(int start = 0, size = data.limit(); start < size; ){
+					int next = lineEnd(data, start) + 1;
+					int end = trimEnd(data, start, next - 1);
+					if(end > start){
+						int comma = comma(data, start, end);
+						int from = comma + 1;
+						requests.put(r, ref(chunk, start), parseInt(data, start, comma), 0);
+						customerOfRequest[r++] = customers.find(parseInt(data, from, comma(data, from, end)), 0);
+					}
+					start = next;
+				}
+				return null;
+			}
+			public Void merge(Void left, Void right){
+				return null;
+			}
+		});
+
+		final AtomicLongArray totals = new AtomicLongArray(customers.rows);
+		final byte[] billed = new byte[customers.rows];
+		scan(closed(), new ChunkJob<Void>(){
+			public Void scan(int chunk, ByteBuffer data){
+				for(int start = 0, size = data.limit(); start < size; ){
+					int next = lineEnd(data, start) + 1;
+					int end = trimEnd(data, start, next - 1);
+					if(end > start){
+						//wid,rid,...,bill
+						int from = comma(data, start, end) + 1;
+						int request = requests.find(parseInt(data, from, comma(data, from, end)), 0);
+						int customer = request < 0 ? -1 : customerOfRequest[request];
+						if(customer >= 0){
+							totals.getAndAdd(customer, parseInt(data, lastComma(data, start, end) + 1, end));
+							billed[customer] = 1;
+						}
+					}
+					start = next;
+				}
+				return null;
+			}
+			public Void merge(Void left, Void right){
+				return null;
+			}
+		});
+		MemoryShopStore.TopRows top = new MemoryShopStore.TopRows(limit){
+			boolean before(int a, int b){
+				long ta = totals.get(a), tb = totals.get(b);
+				return ta != tb ? ta > tb : customers.k1[a] > customers.k1[b];
+			}
+		};
+		for(int customer = 0; customer < customers.rows; ++customer){
+			if(billed[customer] != 0){
+				top.offer(customer);
+			}
+		}
+		MemoryShopStore.MemoryRow row = new MemoryShopStore.MemoryRow(MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.TEXT, MemoryShopStore.MemoryRow.NUMBER, MemoryShopStore.MemoryRow.NUMBER);
+		for(int customer : top.ranked()){
+			Line line = customerFile.line(customers.refs[customer]);
+			row.text[0] = line.text(line.field(1), line.fieldEnd(1)).trim();
+			row.text[1] = line.text(line.field(2), line.fieldEnd(2)).trim();
+			row.number[2] = totals.get(customer);
+			row.number[3] = customers.k1[customer];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	/*
+	 * The build sides, made once.
+	 */
+
+	private KeyIndex customers() throws IOException {
+		if(customers == null){
+			MappedCsv csv = customerFile = map(customerFile, "customer.csv");
+			final int[] firstRow = csv.firstRows(this);
+			final KeyIndex index = new KeyIndex(csv.rows, false);
+			scan(csv, new ChunkJob<Void>(){
+				public Void scan(int chunk, ByteBuffer data){
+					int r = firstRow[chunk];
+					for(int start = 0, size = data.limit(); start < size; ){
+						int next = lineEnd(data, start) + 1;
+						int end = trimEnd(data, start, next - 1);
+						if(end > start){
+							index.put(r++, ref(chunk, start), parseInt(data, start, comma(data, start, end)), 0);
+						}
+						start = next;
+					}
+					return null;
+				}
+				public Void merge(Void left, Void right){
+					return null;
+				}
+			});
+			customers = index;
+		}
+		return customers;
+	}
+
+	private KeyIndex cars() throws IOException {
+		if(cars == null){
+			MappedCsv csv = carFile = map(carFile, "car.csv");
+			final int[] firstRow = csv.firstRows(this);
+			final KeyIndex index = new KeyIndex(csv.rows, true);
+			final int[] years = new int[csv.rows];
+			scan(csv, new ChunkJob<Void>(){
+				public Void scan(int chunk, ByteBuffer data){
+					int r = firstRow[chunk];
+					for(int start = 0, size = data.limit(); start < size; ){
+						int next = lineEnd(data, start) + 1;
+						int end = trimEnd(data, start, next - 1);
+						if(end > start){
+							//vin,make,model,year
+							int vinEnd = comma(data, start, end);
+							years[r] = parseInt(data, lastComma(data, start, end) + 1, end);
+							index.put(r++, ref(chunk, start), packHigh(data, start, vinEnd), packLow(data, start, vinEnd));
+						}
+						start = next;
+					}
+					return null;
+				}
+				public Void merge(Void left, Void right){
+					return null;
+				}
+			});
+			carYears = years;
+			cars = index;
+		}
+		return cars;
+	}
+
+	private MappedCsv owns() throws IOException {
+		return ownsFile = map(ownsFile, "owns.csv");
+	}
+
+	private MappedCsv requests() throws IOException {
+		return requestFile = map(requestFile, "service_request.csv");
+	}
+
+	private MappedCsv closed() throws IOException {
+		return closedFile = map(closedFile, "closed_request.csv");
+	}
+
+	private MappedCsv map(MappedCsv csv, String name) throws IOException {
+		return csv != null ? csv : new MappedCsv(new File(dataDir, name));
+	}
+
+	/*
+	 * Parallel scans.
+	 */
+
+	/**
+	 * The work done on every chunk of a file, and how the results of two
+	 * adjacent runs of chunks are combined, left before right.
+	 */
+	interface ChunkJob<R>{
+		R scan(int chunk, ByteBuffer data);
+
+		R merge(R left, R right);
+	}
+
+	/**
+	 * A run of chunks, split in halves until one chunk is left.
+	 */
+	static final class ScanTask<R> extends RecursiveTask<R>{
+		private static final long serialVersionUID = 1L;
+
+		private final MappedCsv csv;
+		private final ChunkJob<R> job;
+		private final int lo, hi;
+
+		ScanTask(MappedCsv csv, ChunkJob<R> job, int lo, int hi){
+			this.csv = csv;
+			this.job = job;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected R compute(){
+			if(hi - lo == 1){
+				return job.scan(lo, csv.chunks[lo]);
+			}
+			int mid = (lo + hi) >>> 1;
+			ScanTask<R> left = new ScanTask<R>(csv, job, lo, mid);
+			left.fork();
+			R right = new ScanTask<R>(csv, job, mid, hi).compute();
+			return job.merge(left.join(), right);
+		}
+	}//end ScanTask
+
+	<R> R scan(MappedCsv csv, ChunkJob<R> job){
+		if(csv.chunks.length == 0){
+			return job.scan(0, ByteBuffer.allocate(0));
+		}
+		return pool.invoke(new ScanTask<R>(csv, job, 0, csv.chunks.length));
+	}
+
+	/**
+	 * A CSV file mapped in chunks of about CHUNK_SIZE bytes, each ending
+	 * with a whole line.
+	 */
+	static final class MappedCsv{
+		final String name;
+		final long size;
+		final MappedByteBuffer[] chunks;
+		//the number of rows, and the first row of every chunk, once counted
+		int rows = -1;
+		private int[] firstRows;
+
+		MappedCsv(File file) throws IOException {
+			this.name = file.getName();
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try{
+				this.size = channel.size();
+				List<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+				ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+				long start = 0;
+				while(start < size){
+					long end = Math.min(size, start + CHUNK_SIZE);
+					//move the end past the next line end
+					while(end < size){
+						probe.clear();
+						int read = channel.read(probe, end);
+						int newline = -1;
+						for(int i = 0; i < read && newline < 0; ++i){
+							if(probe.get(i) == '\n'){
+								newline = i;
+							}
+						}
+						if(newline >= 0){
+							end += newline + 1;
+							break;
+						}
+						end += read;
+					}
+					if(end - start > Integer.MAX_VALUE){
+						throw new IOException(name + " has a line longer than 2 GB");
+					}
+					mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+					start = end;
+				}
+				this.chunks = mapped.toArray(new MappedByteBuffer[mapped.size()]);
+			}finally{
+				//a mapping stays valid after its channel is closed
+				channel.close();
+			}
+		}
+
+		/**
+		 * Method to count the rows of every chunk in parallel, so a build
+		 * can give every row its index without coordination.
+		 *
+		 * @return the index of the first row of every chunk
+		 */
+		int[] firstRows(CsvAnalytics analytics){
+			if(firstRows == null){
+				final int[] counts = new int[chunks.length];
+				analytics.scan(this, new ChunkJob<Void>(){
+					public Void scan(int chunk, ByteBuffer data){
+						int count = 0;
+						for(int start = 0, size = data.limit(); start < size; ){
+							int next = lineEnd(data, start) + 1;
+							if(trimEnd(data, start, next - 1) > start){
+								++count;
+							}
+							start = next;
+						}
+						if(chunk < counts.length){
+							counts[chunk] = count;
+						}
+						return null;
+					}
+					public Void merge(Void left, Void right){
+						return null;
+					}
+				});
+				int[] first = new int[chunks.length];
+				long total = 0;
+				for(int i = 0; i < chunks.length; ++i){
+					first[i] = (int) total;
+					total += counts[i];
+				}
+				if(total > Integer.MAX_VALUE){
+					throw new UncheckedIOException(new IOException(name + " has more than " + Integer.MAX_VALUE + " rows"));
+				}
+				rows = (int) total;
+				firstRows = first;
+			}
+			return firstRows;
+		}
+
+		//the line of a row reference, see ref()
+		Line line(long ref){
+			ByteBuffer data = chunks[(int) (ref >>> 32)];
+			int start = (int) ref;
+			return new Line(data, start, trimEnd(data, start, lineEnd(data, start)));
+		}
+	}//end MappedCsv
+
+	/**
+	 * One line of a mapped file, read again to make the Strings of an
+	 * output row.
+	 */
+	static final class Line{
+		final ByteBuffer data;
+		final int start, end;
+
+		Line(ByteBuffer data, int start, int end){
+			this.data = data;
+			this.start = start;
+			this.end = end;
+		}
+
+		//the start of the nth field, from 0
+		int field(int n){
+			int p = start;
+			for(int i = 0; i < n; ++i){
+				p = comma(data, p, end) + 1;
+			}
+			return Math.min(p, end);
+		}
+
+		int fieldEnd(int n){
+			return comma(data, field(n), end);
+		}
+
+		int lastComma(){
+			return CsvAnalytics.lastComma(data, start, end);
+		}
+
+		String text(int from, int to){
+			byte[] bytes = new byte[Math.max(to - from, 0)];
+			for(int i = 0; i < bytes.length; ++i){
+				bytes[i] = data.get(from + i);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}//end Line
+
+	/**
+	 * Rows of a file found by a scan: a reference to their line and two
+	 * int values each.
+	 */
+	static final class Matches{
+		long[] refs = new long[16];
+		int[] a = new int[16];
+		int[] b = new int[16];
+		int size = 0;
+
+		void add(long ref, int x, int y){
+			if(size == refs.length){
+				refs = Arrays.copyOf(refs, size * 2);
+				a = Arrays.copyOf(a, size * 2);
+				b = Arrays.copyOf(b, size * 2);
+			}
+			refs[size] = ref;
+			a[size] = x;
+			b[size] = y;
+			++size;
+		}
+
+		Matches append(Matches other){
+			if(size + other.size > refs.length){
+				refs = Arrays.copyOf(refs, size + other.size);
+				a = Arrays.copyOf(a, size + other.size);
+				b = Arrays.copyOf(b, size + other.size);
+			}
+			System.arraycopy(other.refs, 0, refs, size, other.size);
+			System.arraycopy(other.a, 0, a, size, other.size);
+			System.arraycopy(other.b, 0, b, size, other.size);
+			size += other.size;
+			return this;
+		}
+	}//end Matches
+
+	/**
+	 * The rows of a build side by key, a key being one or two longs (a
+	 * packed vin).  Every row is stored at the index given to it, and its
+	 * slot in the open-addressing table is claimed with compare-and-set,
+	 * so all tasks of a scan can put rows at the same time.  Lookups are
+	 * only made once the build is done.
+	 */
+	static final class KeyIndex{
+		final int rows;
+		final long[] k1;
+		final long[] k2;
+		//the line of every row
+		final long[] refs;
+		//row + 1 of every slot, 0 for a free one
+		private final AtomicIntegerArray slots;
+		private final int mask;
+
+		KeyIndex(int rows, boolean twoKeys){
+			this.rows = rows;
+			this.k1 = new long[rows];
+			this.k2 = twoKeys ? new long[rows] : null;
+			this.refs = new long[rows];
+			int capacity = Integer.highestOneBit(Math.max(rows, 1) * 2 - 1) << 1;
+			this.slots = new AtomicIntegerArray(capacity);
+			this.mask = capacity - 1;
+		}
+
+		void put(int row, long ref, long key1, long key2){
+			k1[row] = key1;
+			if(k2 != null){
+				k2[row] = key2;
+			}
+			refs[row] = ref;
+			int slot = hash(key1, key2) & mask;
+			while(!slots.compareAndSet(slot, 0, row + 1)){
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		//the row of a key, or -1
+		int find(long key1, long key2){
+			for(int slot = hash(key1, key2) & mask; ; slot = (slot + 1) & mask){
+				int row = slots.get(slot) - 1;
+				if(row < 0 || (k1[row] == key1 && (k2 == null || k2[row] == key2))){
+					return row;
+				}
+			}
+		}
+
+		private static int hash(long key1, long key2){
+			long h = key1 * 0x9E3779B97F4A7C15L ^ key2 * 0xC2B2AE3D27D4EB4FL;
+			return (int) (h ^ h >>> 32);
+		}
+	}//end KeyIndex
+
+	/*
+	 * In-place parsing of the mapped bytes.
+	 */
+
+	//a row reference: the chunk and the start of the line in it
+	static long ref(int chunk, int start){
+		return (long) chunk << 32 | start;
+	}
+
+	//the index of the '\n' ending the line, or the end of the data
+	static int lineEnd(ByteBuffer data, int from){
+		int limit = data.limit();
+		while(from < limit && data.get(from) != '\n'){
+			++from;
+		}
+		return from;
+	}
+
+	//the end of a line without its '\r'
+	static int trimEnd(ByteBuffer data, int start, int end){
+		return end > start && data.get(end - 1) == '\r' ? end - 1 : end;
+	}
+
+	//the index of the next ',' of a line, or its end
+	static int comma(ByteBuffer data, int from, int end){
+		while(from < end && data.get(from) != ',') {
+			++from;
+		}
+		return from;
+	}
+
+	static int lastComma(ByteBuffer data, int start, int end){
+		int p = end - 1;
+		while(p >= start && data.get(p) != ','){
+			--p;
+		}
+		return p;
+	}
+
+	static int parseInt(ByteBuffer data, int from, int to){
+		while(from < to && data.get(from) == ' '){
+			++from;
+		}
+		boolean negative = from < to && data.get(from) == '-';
+		if(negative){
+			++from;
+		}
+		if(from >= to){
+			throw new UncheckedIOException(new IOException("Expected a number, found an empty field"));
+		}
+		long value = 0;
+		for(; from < to; ++from){
+			int digit = data.get(from) - '0';
+			if(digit < 0 || digit > 9){
+				if(data.get(from) == ' '){
+					break;
+				}
+				throw new UncheckedIOException(new IOException("Expected a number, found '" + (char) data.get(from) + "'"));
+			}
+			value = value * 10 + digit;
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * Method to parse a M/d/yyyy[ HH:mm] date into days since 1970-01-01,
+	 * like MemoryShopStore.parseDate.
+	 */
+	static int parseDays(ByteBuffer data, int from, int to){
+		int slash1 = from;
+		while(slash1 < to && data.get(slash1) != '/'){
+			++slash1;
+		}
+		int slash2 = slash1 + 1;
+		while(slash2 < to && data.get(slash2) != '/'){
+			++slash2;
+		}
+		if(slash2 + 5 > to){
+			throw new UncheckedIOException(new IOException("Expected a M/d/yyyy date"));
+		}
+		return daysFromCivil(parseInt(data, slash2 + 1, slash2 + 5), parseInt(data, from, slash1), parseInt(data, slash1 + 1, slash2));
+	}
+
+	//days since 1970-01-01 of a proleptic Gregorian date, without allocating a LocalDate
+	static int daysFromCivil(int year, int month, int day){
+		year -= month <= 2 ? 1 : 0;
+		int era = (year >= 0 ? year : year - 399) / 400;
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/*
+	 * A vin of up to 16 bytes packed big-endian into two longs, so keys
+	 * compare and hash without a String, and compare as unsigned longs in
+	 * the order of the text.
+	 */
+
+	static long packHigh(ByteBuffer data, int from, int to){
+		if(to - from > 16){
+			throw new UncheckedIOException(new IOException("A vin has more than 16 characters"));
+		}
+		return pack(data, from, Math.min(to, from + 8));
+	}
+
+	static long packLow(ByteBuffer data, int from, int to){
+		return to - from > 8 ? pack(data, from + 8, to) : 0;
+	}
+
+	private static long pack(ByteBuffer data, int from, int to){
+		long value = 0;
+		for(int i = from; i < to; ++i){
+			value = value << 8 | (data.get(i) & 0xFF);
+		}
+		return value << 8 * (8 - (to - from));
+	}
+
+}//end CsvAnalytics
@@ -0,0 +1,379 @@
+/*
+ * Customer name index
+ * ===================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class finds the customer of a service intake by last name or phone
+ * number from a copy of the customers held in the process.  A last name
+ * matches exactly, as a prefix, or within a small edit distance, so a typo
+ * still finds the customer instead of leading to a duplicate; a phone
+ * number matches on its last digits.  Matches are ranked exact first, then
+ * prefix, then by distance.
+ *
+ * The store stays the source of truth.  Every lookup first reads the
+ * version of Customer from the store: when it is not the version the copy
+ * was read at, the lookup is answered by the store and the copy is read
+ * again in the background.  AddCustomer hands its new customer to added(),
+ * which keeps the copy current when nothing else changed Customer.
+ *
+ */
+
+public class CustomerIndex{
+	//most matches returned by find
+	static final int MAX_MATCHES = 20;
+	//a query with this many digits and no letters is a phone number
+	static final int MIN_PHONE_DIGITS = 4;
+
+	//one customer of the copy
+	private static final class Entry{
+		int id;
+		String fname, lname, phone, address;
+
+		Entry(int id, String fname, String lname, String phone, String address){
+			this.id = id;
+			this.fname = fname;
+			this.lname = lname;
+			this.phone = phone;
+			this.address = address;
+		}
+	}
+
+	//an entry found by a lookup and how well it matched, lower is better
+	private static final class Match{
+		Entry entry;
+		int rank;
+
+		Match(Entry entry, int rank){
+			this.entry = entry;
+			this.rank = rank;
+		}
+	}
+
+	private static final Comparator<Match> BY_RANK = new Comparator<Match>(){
+		public int compare(Match a, Match b){
+			if(a.rank != b.rank){
+				return Integer.compare(a.rank, b.rank);
+			}
+			int byLname = a.entry.lname.compareToIgnoreCase(b.entry.lname);
+			if(byLname != 0){
+				return byLname;
+			}
+			int byFname = a.entry.fname.compareToIgnoreCase(b.entry.fname);
+			return byFname != 0 ? byFname : Integer.compare(a.entry.id, b.entry.id);
+		}
+	};
+
+	/**
+	 * The customers as read at one version of Customer.
+	 */
+	private static final class Names{
+		long version;
+		//lower case last name -> customers
+		TreeMap<String, List<Entry>> byName = new TreeMap<String, List<Entry>>();
+		//digits of the phone number, reversed so a suffix is a prefix -> customers
+		TreeMap<String, List<Entry>> byPhone = new TreeMap<String, List<Entry>>();
+		//the keys of byName by length, with their letters(), for the edit distance scan
+		List<List<String>> namesByLength = new ArrayList<List<String>>();
+		List<int[]> lettersByLength = new ArrayList<int[]>();
+
+		Names(long version){
+			this.version = version;
+		}
+
+		void add(Entry entry){
+			String name = entry.lname.toLowerCase();
+			List<Entry> entries = byName.get(name);
+			if(entries == null){
+				entries = new ArrayList<Entry>(1);
+				byName.put(name, entries);
+				while(namesByLength.size() <= name.length()){
+					namesByLength.add(new ArrayList<String>());
+					lettersByLength.add(new int[4]);
+				}
+				List<String> sameLength = namesByLength.get(name.length());
+				int[] letters = lettersByLength.get(name.length());
+				if(sameLength.size() == letters.length){
+					letters = Arrays.copyOf(letters, letters.length * 2);
+					lettersByLength.set(name.length(), letters);
+				}
+				letters[sameLength.size()] = letters(name);
+				sameLength.add(name);
+			}
+			entries.add(entry);
+			String phone = reversedDigits(entry.phone);
+			List<Entry> samePhone = byPhone.get(phone);
+			if(samePhone == null){
+				samePhone = new ArrayList<Entry>(1);
+				byPhone.put(phone, samePhone);
+			}
+			samePhone.add(entry);
+		}
+
+		List<Match> findName(String query){
+			String name = query.trim().toLowerCase();
+			List<Match> matches = new ArrayList<Match>();
+			if(name.isEmpty()){
+				return matches;
+			}
+			List<Entry> exact = byName.get(name);
+			if(exact != null){
+				for(Entry entry : exact){
+					matches.add(new Match(entry, 0));
+				}
+			}
+			//prefixes come in name order, the first MAX_MATCHES are enough
+			int prefixes = 0;
+			for(List<Entry> entries : byName.subMap(name, false, name + Character.MAX_VALUE, false).values()){
+				for(Entry entry : entries){
+					matches.add(new Match(entry, 1));
+				}
+				prefixes += entries.size();
+				if(prefixes >= MAX_MATCHES){
+					break;
+				}
+			}
+			int maxDistance = name.length() <= 4 ? 1 : 2;
+			int shortest = Math.max(1, name.length() - maxDistance);
+			int longest = Math.min(namesByLength.size() - 1, name.length() + maxDistance);
+			int letters = letters(name);
+			int[][] rows = new int[3][longest + 1];
+			for(int length = shortest; length <= longest; ++length){
+				List<String> sameLength = namesByLength.get(length);
+				int[] lettersOfLength = lettersByLength.get(length);
+				for(int n = 0; n < sameLength.size(); ++n){
+					//an edit adds or removes at most two letters of the set
+					if(Integer.bitCount(letters ^ lettersOfLength[n]) > 2 * maxDistance){
+						continue;
+					}
+					String other = sameLength.get(n);
+					if(other.startsWith(name)){
+						continue;
+					}
+					int distance = distance(name, other, maxDistance, rows);
+					if(distance <= maxDistance){
+						for(Entry entry : byName.get(other)){
+							matches.add(new Match(entry, 1 + distance));
+						}
+					}
+				}
+			}
+			return matches;
+		}
+
+		List<Match> findPhone(String query){
+			String digits = reversedDigits(query);
+			List<Match> matches = new ArrayList<Match>();
+			for(Map.Entry<String, List<Entry>> phone : byPhone.subMap(digits, true, digits + Character.MAX_VALUE, false).entrySet()){
+				for(Entry entry : phone.getValue()){
+					matches.add(new Match(entry, phone.getKey().equals(digits) ? 0 : 1));
+				}
+				if(matches.size() >= MAX_MATCHES){
+					break;
+				}
+			}
+			return matches;
+		}
+	}//end Names
+
+	private ShopStore store;
+	//the copy, null until load() or after a failed reload
+	private Names names;
+	private boolean reloading = false;
+
+	public CustomerIndex(ShopStore store){
+		this.store = store;
+	}
+
+	/**
+	 * Method to read every customer of the store into the index.
+	 */
+	public void load() throws SQLException {
+		Names fresh = read();
+		synchronized(this){
+			names = fresh;
+		}
+	}
+
+	/**
+	 * Method to add a customer just added to the store.  The customer is
+	 * only added when the version of Customer moved by one since the copy
+	 * was read, that is by this insert alone; otherwise the next lookup
+	 * finds the copy out of date.
+	 */
+	public void added(int id, String fname, String lname, String phone, String address) throws SQLException {
+		long version = store.getCustomerVersion();
+		synchronized(this){
+			if(names != null && version == names.version + 1){
+				names.add(new Entry(id, fname.trim(), lname.trim(), phone, address));
+				names.version = version;
+			}
+		}
+	}
+
+	/**
+	 * Method to find the customers of a last name or a phone number, best
+	 * matches first.
+	 *
+	 * @param query a last name, or part of a phone number
+	 * @return at most MAX_MATCHES records, like
+	 *         ShopStore.findCustomersByLastName: fname, phone, address, id,
+	 *         lname
+	 */
+	public List<List<String>> find(String query) throws SQLException {
+		long version = store.getCustomerVersion();
+		List<Match> matches;
+		synchronized(this){
+			if(names == null || names.version != version){
+				matches = null;
+			}
+			else if(isPhone(query)){
+				matches = names.findPhone(query);
+			}
+			else{
+				matches = names.findName(query);
+			}
+		}
+		if(matches == null && isPhone(query)){
+			//the store has no phone lookup, read the copy now
+			Names fresh = read();
+			synchronized(this){
+				names = fresh;
+				matches = fresh.findPhone(query);
+			}
+		}
+		else if(matches == null){
+			reloadLater();
+			return store.findCustomersByLastName(query);
+		}
+		Collections.sort(matches, BY_RANK);
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(Match match : matches.subList(0, Math.min(MAX_MATCHES, matches.size()))){
+			Entry entry = match.entry;
+			result.add(Arrays.asList(entry.fname, entry.phone, entry.address, Integer.toString(entry.id), entry.lname));
+		}
+		return result;
+	}//end find
+
+	//reads the version first, so a change made while reading makes the copy out of date
+	private Names read() throws SQLException {
+		final Names fresh = new Names(store.getCustomerVersion());
+		store.listCustomers(new RowHandler(){
+			public void handle(Row row) throws SQLException{
+				fresh.add(new Entry(row.getInt(1), row.getString(2), row.getString(3), row.getString(4), row.getString(5)));
+			}
+		});
+		return fresh;
+	}
+
+	//reads the copy again in a daemon thread, unless a reload is running
+	private void reloadLater(){
+		synchronized(this){
+			if(reloading){
+				return;
+			}
+			reloading = true;
+		}
+		Thread thread = new Thread(new Runnable(){
+			public void run(){
+				try{
+					load();
+				}catch(SQLException e){
+					System.err.println("Cannot load the customer index: " + e.getMessage());
+				}finally{
+					synchronized(CustomerIndex.this){
+						reloading = false;
+					}
+				}
+			}
+		}, "customer-index");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	static boolean isPhone(String query){
+		int digits = 0;
+		for(int i = 0; i < query.length(); ++i){
+			char c = query.charAt(i);
+			if(Character.isLetter(c)){
+				return false;
+			}
+			if(Character.isDigit(c)){
+				++digits;
+			}
+		}
+		return digits >= MIN_PHONE_DIGITS;
+	}
+
+	private static String reversedDigits(String phone){
+		StringBuilder digits = new StringBuilder(phone.length());
+		for(int i = phone.length() - 1; i >= 0; --i){
+			if(Character.isDigit(phone.charAt(i))){
+				digits.append(phone.charAt(i));
+			}
+		}
+		return digits.toString();
+	}
+
+	//the set of characters of a name, one bit per character modulo 32
+	private static int letters(String name){
+		int letters = 0;
+		for(int i = 0; i < name.length(); ++i){
+			letters |= 1 << (name.charAt(i) & 31);
+		}
+		return letters;
+	}
+
+	/**
+	 * Method to compute the edit distance of two names, counting an
+	 * insertion, a deletion, a substitution or a swap of two neighbouring
+	 * letters as one edit.  The scan stops once every path is over max.
+	 *
+	 * @param rows three work rows of at least b.length() + 1 entries
+	 * @return the distance, or max + 1 when it is over max
+	 */
+	static int distance(String a, String b, int max, int[][] rows){
+		int[] before = rows[0];
+		int[] previous = rows[1];
+		int[] current = rows[2];
+		for(int j = 0; j <= b.length(); ++j){
+			previous[j] = j;
+		}
+		for(int i = 1; i <= a.length(); ++i){
+			current[0] = i;
+			int best = current[0];
+			for(int j = 1; j <= b.length(); ++j){
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+				if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)){
+					d = Math.min(d, before[j - 2] + 1);
+				}
+				current[j] = d;
+				best = Math.min(best, d);
+			}
+			if(best > max){
+				return max + 1;
+			}
+			int[] t = before;
+			before = previous;
+			previous = current;
+			current = t;
+		}
+		return Math.min(previous[b.length()], max + 1);
+	}//end distance
+
+}//end CustomerIndex
@@ -0,0 +1,421 @@
+/*
+ * Synthetic shop data set
+ * =======================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class writes a data set in the formats of the data/*.csv files, for
+ * any scale factor: scale 1 has the sizes of data/ (500 customers, 250
+ * mechanics, 5,000 cars, 30,000 service requests), scale 100 a hundred
+ * times that.
+ *
+ * Every value of a row is drawn from a hash of the seed, the table, the row
+ * number and the field, never from a shared random generator.  So any slice
+ * of a file can be generated on its own, by any thread, and the foreign
+ * keys are computed instead of looked up: the owner of a car is the same
+ * function of the car in owns.csv and in service_request.csv.  Files are
+ * generated in chunks on all cores and written in order while the next
+ * chunks are generated, so only a few chunks are ever in memory.
+ *
+ * The data is skewed the way a real shop is:
+ *   - one customer in 50 is a fleet owner, together they own 30% of the
+ *     cars, far more than 20 cars each;
+ *   - a quarter of the service requests go to a small set of cars, with a
+ *     power law, the long tail of vehicles that keep coming back;
+ *   - 90% of the requests are closed, with log-normal bills around $120,
+ *     so about 40% fall under $100.
+ *
+ */
+
+public class DataGenerator{
+	//sizes at scale 1, the sizes of data/
+	private static final int CUSTOMERS = 500;
+	private static final int MECHANICS = 250;
+	private static final int CARS = 5000;
+	private static final int REQUESTS = 30000;
+
+	//rows generated by one task
+	private static final int CHUNK = 64 * 1024;
+
+	private static final int CUSTOMER = 0;
+	private static final int MECHANIC = 1;
+	private static final int CAR = 2;
+	private static final int OWNS = 3;
+	private static final int SERVICE_REQUEST = 4;
+	private static final int CLOSED_REQUEST = 5;
+	private static final String[] FILES = {"customer.csv", "mechanic.csv", "car.csv", "owns.csv", "service_request.csv", "closed_request.csv"};
+
+	//skew of the data, see above
+	private static final int CUSTOMERS_PER_FLEET = 50;
+	private static final double FLEET_CARS = 0.3;
+	private static final double REPEAT_REQUESTS = 0.25;
+	private static final double REPEAT_EXPONENT = 2;
+	private static final double CLOSED = 0.9;
+	private static final double BILL_MEDIAN = 120;
+	private static final double BILL_SIGMA = 0.8;
+
+	//service requests are in 2016, like data/
+	private static final long FIRST_DAY = 16801; //2016-01-01
+	private static final int DAYS = 366;
+
+	private static final String[] FIRST_NAMES = {
+		"Armand", "Alberto", "Wyatt", "Alfonso", "Pearl", "Vincent", "Breanne", "Annette", "Dorothy", "Ina",
+		"Alane", "Nova", "Tomeka", "Drusilla", "Lloyd", "Connie", "Krystle", "Julieta", "Clelia", "Willie",
+		"Aimee", "Veronika", "Clyde", "Yvonne", "Leeanne", "Sharita", "Antione", "Melonie", "Britt", "Geri",
+		"Estela", "Anneliese", "Frankie", "Nelia", "Thu", "Candie", "Linnea", "Leandro", "Alexandria", "Rory"
+	};
+	private static final String[] LAST_NAMES = {
+		"Enderle", "Scarlett", "Ruoff", "Denmark", "Straube", "Wohlwend", "Flick", "Onken", "Sherk", "Lecroy",
+		"Piland", "Bodiford", "Imburgia", "Amerson", "Kogan", "Woodruff", "Smolen", "Palmateer", "Trembath", "Marts",
+		"Hodgins", "Woodham", "Vanderploeg", "Luoma", "Knell", "Honig", "Sauer", "Medellin", "Nuttall", "Helmers"
+	};
+	//the other last names are made of two of these
+	private static final String[] NAME_PARTS = {
+		"ash", "bar", "ber", "cal", "dan", "den", "el", "far", "gar", "hol", "ing", "kin", "lan", "ley", "mar",
+		"mor", "nel", "ott", "per", "ran", "ros", "sel", "son", "ter", "ton", "van", "wal", "win", "wood", "zel"
+	};
+	private static final String[] STREETS = {
+		"Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Young Avenue", "East Warren St.", "Spruce Dr.",
+		"Golf Ave.", "Shub Farm St.", "W. Greystone Dr.", "Edgewood Ave.", "Berkshire Street", "Rose St.",
+		"Court Lane", "Lake Dr.", "Brickyard Ave.", "Second Rd.", "Strawberry Drive", "3rd St.", "Logan Dr.", "Sunset St."
+	};
+	private static final String[] CITIES = {
+		"Melbourne", "Baton Rouge", "Cockeysville", "Oak Forest", "New Brunswick", "Lanham", "Rocky Mount",
+		"Appleton", "Jamaica", "Newtown", "Fishers", "Brentwood", "Hendersonville", "Zeeland", "Flemington",
+		"Glendora", "Neenah", "Dublin", "Latrobe", "Greenfield"
+	};
+	private static final String[] MAKES = {
+		"Toyota", "Honda", "Ford", "Chevrolet", "Nissan", "Volkswagen", "BMW", "Audi", "Mercedes-Benz", "Kia",
+		"Hyundai", "Mazda", "Subaru", "Fiat", "Volvo", "Jeep", "Dodge", "Tesla", "Porsche", "Lamborghini",
+		"Ferrari", "Morgan", "Jaguar", "Skoda", "Tata", "Spyker", "Koenigsegg", "Rolls-Royce", "Alfa Romeo", "LandRover"
+	};
+	private static final String[] MODELS = {
+		"Prius", "C1", "C2", "C3", "C4", "C5", "Camry", "Cooper", "Corolla", "DB", "DB7", "DB8", "Elentra",
+		"Impreza", "Jimny", "M1", "M2", "M5", "Passat", "Polo", "RX5", "Rio", "Summer", "Sunny"
+	};
+	private static final String[] COMPLAINTS = {
+		"Add rockets", "Burns too much gas", "Change oil", "I cannot hear the horn", "I cannot hear the radio",
+		"It came back from space and it makes a funny noise", "It is not fast enough", "It smells funny",
+		"Needs new parachute", "No brakes", "Passenger side is always empty", "Replace windows",
+		"The wheel does not turn right", "The wings do not work"
+	};
+	private static final String[] COMMENTS = {
+		"Breaks", "Buy a new Car", "Change Roof", "Changed Oil", "Fixed!!!", "Good Luck", "I do not know",
+		"Made it faster", "Needs new Tires", "This is a bicycle", "We changed the color", "We lost your car",
+		"You are missing an engine"
+	};
+
+	private long seed;
+	private int threads;
+	private int customers;
+	private int mechanics;
+	private int cars;
+	private int requests;
+	private int fleets;
+
+	/**
+	 * @param scale the size of the data set relative to data/
+	 * @param seed the same seed and scale always give the same files
+	 * @param threads the number of generating threads
+	 */
+	public DataGenerator(double scale, long seed, int threads){
+		if(scale <= 0 || CARS * scale >= 26L * 26 * 26 * 26 * 26 * 26){
+			throw new IllegalArgumentException("scale must be greater than 0 and less than 60000");
+		}
+		this.seed = seed;
+		this.threads = threads;
+		this.customers = (int) Math.max(1, Math.round(CUSTOMERS * scale));
+		this.mechanics = (int) Math.max(1, Math.round(MECHANICS * scale));
+		this.cars = (int) Math.max(1, Math.round(CARS * scale));
+		this.requests = (int) Math.max(1, Math.round(REQUESTS * scale));
+		this.fleets = Math.max(1, customers / CUSTOMERS_PER_FLEET);
+	}
+
+	/**
+	 * Method to write the six files of the data set into a directory.
+	 *
+	 * @param dir the directory, created when missing
+	 * @throws java.io.IOException when a file cannot be written
+	 */
+	public void generate(File dir) throws IOException {
+		if(!dir.isDirectory() && !dir.mkdirs()){
+			throw new IOException("Cannot create " + dir);
+		}
+		long start = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try{
+			int[] rows = {customers, mechanics, cars, cars, requests, requests};
+			for(int table = 0; table < FILES.length; ++table){
+				long lines = write(workers, new File(dir, FILES[table]), table, rows[table]);
+				System.out.println(FILES[table] + ": " + lines + " rows");
+			}
+		}finally{
+			workers.shutdown();
+		}
+		System.out.println(String.format("Generated in %.3f s", (System.nanoTime() - start) / 1e9));
+	}//end generate
+
+	/**
+	 * Method to write one file, generating its chunks in parallel and writing
+	 * them in order.  At most two chunks per thread are pending at a time.
+	 *
+	 * @return the number of lines written
+	 */
+	private long write(ExecutorService workers, File file, final int table, final int rows) throws IOException {
+		Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		OutputStream out = new FileOutputStream(file);
+		long lines = 0;
+		try{
+			int next = 0;
+			while(next < rows || !pending.isEmpty()){
+				while(next < rows && pending.size() < 2 * threads){
+					final int from = next;
+					final int to = (int) Math.min(rows, (long) next + CHUNK);
+					pending.add(workers.submit(new Callable<Chunk>(){
+						public Chunk call(){
+							return chunk(table, from, to);
+						}
+					}));
+					next = to;
+				}
+				Chunk chunk = get(pending.poll());
+				out.write(chunk.bytes);
+				lines += chunk.lines;
+			}
+		}finally{
+			for(Future<Chunk> future : pending){
+				future.cancel(true);
+			}
+			out.close();
+		}
+		return lines;
+	}//end write
+
+	//the lines of rows [from, to) of a file
+	private static class Chunk{
+		byte[] bytes;
+		int lines;
+	}
+
+	private static Chunk get(Future<Chunk> future) throws IOException {
+		try{
+			return future.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while generating", e);
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Method to generate the lines of rows [from, to) of a table.
+	 */
+	private Chunk chunk(int table, int from, int to){
+		StringBuilder out = new StringBuilder((to - from) * 64);
+		Chunk chunk = new Chunk();
+		for(int row = from; row < to; ++row){
+			switch(table){
+				case CUSTOMER: chunk.lines += customer(out, row); break;
+				case MECHANIC: chunk.lines += mechanic(out, row); break;
+				case CAR: chunk.lines += car(out, row); break;
+				case OWNS: chunk.lines += owns(out, row); break;
+				case SERVICE_REQUEST: chunk.lines += serviceRequest(out, row); break;
+				case CLOSED_REQUEST: chunk.lines += closedRequest(out, row); break;
+			}
+		}
+		chunk.bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+		return chunk;
+	}
+
+	//id,fname,lname,phone,address
+	private int customer(StringBuilder out, int id){
+		out.append(id).append(',');
+		out.append(pick(FIRST_NAMES, CUSTOMER, id, 0)).append(',');
+		appendLastName(out, CUSTOMER, id);
+		out.append(',').append('(');
+		appendDigits(out, 200 + random(CUSTOMER, id, 3) % 800, 3);
+		out.append(')');
+		appendDigits(out, 200 + random(CUSTOMER, id, 4) % 800, 3);
+		out.append('-');
+		appendDigits(out, random(CUSTOMER, id, 5) % 10000, 4);
+		out.append(',');
+		out.append(1 + random(CUSTOMER, id, 6) % 9999).append(' ');
+		out.append(pick(STREETS, CUSTOMER, id, 7)).append(' ').append(pick(CITIES, CUSTOMER, id, 8));
+		out.append('\n');
+		return 1;
+	}
+
+	//id,fname,lname,experience
+	private int mechanic(StringBuilder out, int id){
+		out.append(id).append(',');
+		out.append(pick(FIRST_NAMES, MECHANIC, id, 0)).append(',');
+		appendLastName(out, MECHANIC, id);
+		out.append(',').append(random(MECHANIC, id, 3) % 31);
+		out.append('\n');
+		return 1;
+	}
+
+	//vin,make,model,year, recent cars more likely
+	private int car(StringBuilder out, int car){
+		out.append(vin(car)).append(',');
+		out.append(pick(MAKES, CAR, car, 1)).append(',');
+		out.append(pick(MODELS, CAR, car, 2)).append(',');
+		out.append(2018 - (int) (49 * Math.pow(uniform(CAR, car, 3), 1.5)));
+		out.append('\n');
+		return 1;
+	}
+
+	//ownership_id,customer_id,car_vin, every car has one owner
+	private int owns(StringBuilder out, int car){
+		out.append(car).append(',').append(owner(car)).append(',').append(vin(car));
+		out.append('\n');
+		return 1;
+	}
+
+	//rid,customer_id,car_vin,date,odometer,complain, the customer owns the car
+	private int serviceRequest(StringBuilder out, int rid){
+		int car = requestCar(rid);
+		out.append(rid).append(',').append(owner(car)).append(',').append(vin(car)).append(',');
+		appendDate(out, requestDay(rid));
+		out.append(',').append(1000 + random(SERVICE_REQUEST, rid, 4) % 249000);
+		out.append(',').append(pick(COMPLAINTS, SERVICE_REQUEST, rid, 5));
+		out.append('\n');
+		return 1;
+	}
+
+	//wid,rid,mid,date,comment,bill, wid is the rid of the closed request
+	private int closedRequest(StringBuilder out, int rid){
+		if(uniform(CLOSED_REQUEST, rid, 0) >= CLOSED){
+			return 0;
+		}
+		out.append(rid).append(',').append(rid).append(',');
+		out.append(random(CLOSED_REQUEST, rid, 2) % mechanics).append(',');
+		appendDate(out, requestDay(rid) + random(CLOSED_REQUEST, rid, 3) % 30);
+		out.append(',').append(pick(COMMENTS, CLOSED_REQUEST, rid, 4));
+		double bill = BILL_MEDIAN * Math.exp(BILL_SIGMA * gaussian(CLOSED_REQUEST, rid, 5));
+		out.append(',').append(Math.max(1, Math.min(5000, Math.round(bill))));
+		out.append('\n');
+		return 1;
+	}
+
+	/**
+	 * Method to give the owner of a car: a fleet owner for FLEET_CARS of the
+	 * cars, any customer for the others.  Fleet owners are spread over the
+	 * ids, one every CUSTOMERS_PER_FLEET customers.
+	 */
+	private int owner(int car){
+		if(uniform(OWNS, car, 0) < FLEET_CARS){
+			return (int) (random(OWNS, car, 1) % fleets) * (customers / fleets);
+		}
+		return (int) (random(OWNS, car, 2) % customers);
+	}
+
+	/**
+	 * Method to give the car of a service request: any car for most
+	 * requests, for REPEAT_REQUESTS of them a car drawn with a power law so a
+	 * few cars get many requests.
+	 */
+	private int requestCar(int rid){
+		if(uniform(SERVICE_REQUEST, rid, 0) < REPEAT_REQUESTS){
+			return (int) (cars * Math.pow(uniform(SERVICE_REQUEST, rid, 1), REPEAT_EXPONENT));
+		}
+		return (int) (random(SERVICE_REQUEST, rid, 2) % cars);
+	}
+
+	private long requestDay(int rid){
+		return FIRST_DAY + random(SERVICE_REQUEST, rid, 3) % DAYS;
+	}
+
+	/**
+	 * Method to give the VIN of a car: six letters that are a permutation of
+	 * the car number, so no two cars share a VIN, and ten digits.
+	 */
+	private String vin(int car){
+		long space = 26L * 26 * 26 * 26 * 26 * 26;
+		//the multiplier is coprime with 26, the map is a bijection of [0, space)
+		long letters = ((long) car * 198491317L + (seed & 0xffffff)) % space;
+		char[] vin = new char[16];
+		for(int i = 5; i >= 0; --i){
+			vin[i] = (char) ('A' + letters % 26);
+			letters /= 26;
+		}
+		long digits = random(CAR, car, 0) % 10000000000L;
+		for(int i = 15; i >= 6; --i){
+			vin[i] = (char) ('0' + digits % 10);
+			digits /= 10;
+		}
+		return new String(vin);
+	}
+
+	private void appendLastName(StringBuilder out, int table, int id){
+		if(uniform(table, id, 1) < 0.5){
+			out.append(pick(LAST_NAMES, table, id, 2));
+			return;
+		}
+		long r = random(table, id, 2);
+		String first = NAME_PARTS[(int) (r % NAME_PARTS.length)];
+		String second = NAME_PARTS[(int) (r / NAME_PARTS.length % NAME_PARTS.length)];
+		out.append(Character.toUpperCase(first.charAt(0))).append(first, 1, first.length()).append(second);
+	}
+
+	//M/d/yyyy 00:00 as in the data/ files
+	private static void appendDate(StringBuilder out, long epochDay){
+		java.time.LocalDate date = java.time.LocalDate.ofEpochDay(epochDay);
+		out.append(date.getMonthValue()).append('/').append(date.getDayOfMonth()).append('/').append(date.getYear()).append(" 00:00");
+	}
+
+	private static void appendDigits(StringBuilder out, long value, int width){
+		String digits = Long.toString(value);
+		for(int i = digits.length(); i < width; ++i){
+			out.append('0');
+		}
+		out.append(digits);
+	}
+
+	private String pick(String[] values, int table, long row, int field){
+		return values[(int) (random(table, row, field) % values.length)];
+	}
+
+	/**
+	 * Method to draw a field of a row: a non-negative value that only depends
+	 * on the seed, the table, the row and the field (SplitMix64 finalizer).
+	 */
+	private long random(int table, long row, int field){
+		long z = seed + row * 0x9E3779B97F4A7C15L + (table * 64 + field) * 0xD1B54A32D192ED03L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return (z ^ (z >>> 31)) >>> 1;
+	}
+
+	//in [0, 1)
+	private double uniform(int table, long row, int field){
+		return (random(table, row, field) >>> 10) * 0x1.0p-53;
+	}
+
+	//standard normal, Box-Muller over two fields
+	private double gaussian(int table, long row, int field){
+		double u = 1 - uniform(table, row, field);
+		double v = uniform(table, row, field + 32);
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+	}
+
+}//end DataGenerator
@@ -0,0 +1,113 @@
+/*
+ * Key allocation for the MechanicShop tables
+ * ==========================================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class hands out primary keys from Postgres sequences using a hi/lo
+ * scheme.  Each sequence is created with INCREMENT BY BLOCK_SIZE (see
+ * sql/create.sql), so one nextval() reserves a whole block of keys for this
+ * session.  Keys are then handed out from memory until the block runs out,
+ * which means most inserts need no extra round trip and two sessions never
+ * receive the same key.
+ *
+ * Bulk inserts reserve() the keys they need first, which fetches all the
+ * missing blocks in one round trip.
+ *
+ * The allocator is shared by all the sessions of a server, so each sequence
+ * has its own lock: a session waiting for a new block of one sequence does
+ * not hold up the keys of the others.
+ *
+ */
+
+public class IdAllocator{
+	//must match the INCREMENT BY of the sequences in sql/create.sql
+	public static final int BLOCK_SIZE = 50;
+
+	//sequences backing the primary keys
+	public static final String CUSTOMER_ID = "customer_id_seq";
+	public static final String MECHANIC_ID = "mechanic_id_seq";
+	public static final String OWNERSHIP_ID = "owns_ownership_id_seq";
+	public static final String SERVICE_REQUEST_ID = "service_request_rid_seq";
+	public static final String CLOSED_REQUEST_ID = "closed_request_wid_seq";
+
+	private MechanicShop esql;
+	//the blocks reserved for every sequence, the one being handed out first;
+	//each queue is also the lock of its sequence
+	private ConcurrentMap<String, ArrayDeque<int[]>> blocks = new ConcurrentHashMap<String, ArrayDeque<int[]>>();
+
+	public IdAllocator(MechanicShop esql){
+		this.esql = esql;
+	}
+
+	/**
+	 * Method to get the next key of a sequence.  A new block is reserved
+	 * from the DBMS only when the current one has been used up.
+	 *
+	 * @param sequence name of the DB sequence
+	 * @return a key no other session will receive
+	 * @throws java.sql.SQLException when a new block cannot be reserved
+	 */
+	public int next(String sequence) throws SQLException {
+		//block[0] is the next key to hand out, block[1] the end of the block
+		ArrayDeque<int[]> reserved = blocksOf(sequence);
+		synchronized(reserved){
+			if(reserved.isEmpty()){
+				int hi = esql.getNextSeqVal(sequence);
+				reserved.add(new int[]{hi, hi + BLOCK_SIZE});
+			}
+			int[] block = reserved.peek();
+			int key = block[0]++;
+			if(block[0] >= block[1]){
+				reserved.poll();
+			}
+			return key;
+		}
+	}//end next
+
+	/**
+	 * Method to make sure the next count keys of a sequence are handed out
+	 * from memory.  The blocks missing for them are reserved with a single
+	 * query.
+	 *
+	 * @param sequence name of the DB sequence
+	 * @param count number of keys about to be used
+	 * @throws java.sql.SQLException when the blocks cannot be reserved
+	 */
+	public void reserve(String sequence, int count) throws SQLException {
+		ArrayDeque<int[]> reserved = blocksOf(sequence);
+		synchronized(reserved){
+			for(int[] block : reserved){
+				count -= block[1] - block[0];
+			}
+			if(count > 0){
+				for(int hi : esql.getNextSeqVals(sequence, (count + BLOCK_SIZE - 1) / BLOCK_SIZE)){
+					reserved.add(new int[]{hi, hi + BLOCK_SIZE});
+				}
+			}
+		}
+	}//end reserve
+
+	private ArrayDeque<int[]> blocksOf(String sequence){
+		ArrayDeque<int[]> reserved = blocks.get(sequence);
+		if(reserved == null){
+			ArrayDeque<int[]> created = new ArrayDeque<int[]>();
+			reserved = blocks.putIfAbsent(sequence, created);
+			if(reserved == null){
+				reserved = created;
+			}
+		}
+		return reserved;
+	}
+
+}//end IdAllocator
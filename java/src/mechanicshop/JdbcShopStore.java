@@ -0,0 +1,468 @@
+/*
+ * Storage of the shop data
+ * ========================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is the PostgreSQL implementation of ShopStore.  It holds the
+ * SQL of the menu operations and runs it through the parameterized
+ * execute methods of MechanicShop.
+ *
+ */
+
+public class JdbcShopStore implements ShopStore{
+	//inserts, also used by the batch mode
+	static final String INSERT_CUSTOMER = "INSERT INTO Customer(id, fname, lname, phone, address) VALUES (?, ?, ?, ?, ?)";
+	static final String INSERT_MECHANIC = "INSERT INTO Mechanic(id, fname, lname, experience) VALUES (?, ?, ?, ?)";
+	static final String INSERT_CAR = "INSERT INTO Car(vin, make, model, year) VALUES (?, ?, ?, ?)";
+	static final String INSERT_OWNS = "INSERT INTO Owns(ownership_id, customer_id, car_vin) VALUES(?, ?, ?)";
+	//these two also count the request of the car and add the bill to the total of the customer, in the same statement
+	static final String INSERT_SERVICE_REQUEST = "WITH R AS (INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) VALUES (?, ?, ?, ?, ?, ?) RETURNING car_vin) " +
+		"INSERT INTO Car_Service_Count(car_vin, requests) SELECT car_vin, 1 FROM R ON CONFLICT (car_vin) DO UPDATE SET requests = Car_Service_Count.requests + 1";
+	static final String INSERT_CLOSED_REQUEST = "WITH W AS (INSERT INTO Closed_Request(wid, rid, mid, date, comment, bill) VALUES (?, ?, ?, ?, ?, ?) RETURNING rid, bill) " +
+		"INSERT INTO Customer_Bill_Total(customer_id, total) SELECT S.customer_id, W.bill FROM W, Service_Request AS S WHERE S.rid = W.rid " +
+		"ON CONFLICT (customer_id) DO UPDATE SET total = Customer_Bill_Total.total + EXCLUDED.total";
+
+	//lookups
+	static final String CUSTOMERS_BY_LAST_NAME = "SELECT TRIM(fname), phone, address, id, TRIM(lname) FROM Customer WHERE LOWER(lname) = LOWER(?)";
+	static final String ALL_CUSTOMERS = "SELECT id, TRIM(fname), TRIM(lname), phone, address FROM Customer";
+	//the number of times a version sequence was moved on; one never moved on has
+	//last_value 1, like one moved on once, so it counts as 0
+	private static final String SEQUENCE_VERSION = "CASE WHEN is_called THEN last_value ELSE 0 END";
+	//moved on after every commit that changed Customer, see addCustomer() and Migrations
+	static final String CUSTOMER_VERSION_SEQUENCE = "customer_version_seq";
+	static final String CUSTOMER_VERSION = "SELECT " + SEQUENCE_VERSION + " FROM " + CUSTOMER_VERSION_SEQUENCE;
+	//moved on after every commit that changed a table the reports read, see changed() and Migrations
+	static final String TABLE_VERSIONS = "SELECT 'Owns', " + SEQUENCE_VERSION + " FROM owns_version_seq " +
+		"UNION ALL SELECT 'Service_Request', " + SEQUENCE_VERSION + " FROM service_request_version_seq " +
+		"UNION ALL SELECT 'Closed_Request', " + SEQUENCE_VERSION + " FROM closed_request_version_seq";
+	//one round trip for the cars of the intake, its rows also fill carCache
+	static final String CARS_OF_CUSTOMERS = "SELECT O.customer_id, C.vin, C.make, C.model, C.year FROM Owns AS O, Car AS C WHERE O.car_vin = C.vin AND O.customer_id = ANY(?) ORDER BY O.ownership_id";
+	static final String CARS_BY_VIN = "SELECT vin, make, model, year FROM Car WHERE vin = ANY(?)";
+	static final String MECHANICS_BY_ID = "SELECT id, TRIM(fname), TRIM(lname), experience FROM Mechanic WHERE id = ANY(?)";
+	//the ShopStore.checkClosings result of every (rid, mid) pair, in the order given, archive included
+	static final String CHECK_CLOSINGS = "SELECT CASE " +
+		"WHEN NOT EXISTS (SELECT 1 FROM Service_Request AS S WHERE S.rid = V.rid) AND NOT EXISTS (SELECT 1 FROM Service_Request_Archive AS S WHERE S.rid = V.rid) THEN 1 " +
+		"WHEN EXISTS (SELECT 1 FROM Closed_Request AS C WHERE C.rid = V.rid) OR EXISTS (SELECT 1 FROM Closed_Request_Archive AS C WHERE C.rid = V.rid) THEN 2 " +
+		"WHEN V.mid IS NOT NULL AND NOT EXISTS (SELECT 1 FROM Mechanic AS M WHERE M.id = V.mid) THEN 3 ELSE 0 END " +
+		"FROM unnest(?::integer[], ?::integer[]) WITH ORDINALITY AS V(rid, mid, n) ORDER BY V.n";
+
+	//the requests of the whole history: the reports read the archive with the hot tables,
+	//as the aggregates of reports 9 and 10 count it, so archiving changes no report
+	static final String ALL_SERVICE_REQUESTS = "(SELECT * FROM Service_Request UNION ALL SELECT * FROM Service_Request_Archive)";
+	static final String ALL_CLOSED_REQUESTS = "(SELECT * FROM Closed_Request UNION ALL SELECT * FROM Closed_Request_Archive)";
+
+	//reports, see sql/queries.sql, each as a first page and a page after a key
+	static final String CLOSED_REQUESTS_WITH_BILL_UNDER = "SELECT date, comment, bill, wid FROM " + ALL_CLOSED_REQUESTS + " AS W WHERE bill < ? ORDER BY bill, wid LIMIT ?";
+	static final String CLOSED_REQUESTS_WITH_BILL_UNDER_AFTER = "SELECT date, comment, bill, wid FROM " + ALL_CLOSED_REQUESTS + " AS W WHERE bill < ? AND (bill, wid) > (?, ?) ORDER BY bill, wid LIMIT ?";
+	static final String CLOSED_REQUESTS_WITH_BILL_UNDER_SINCE = "SELECT date, comment, bill, wid FROM " + ALL_CLOSED_REQUESTS + " AS W WHERE bill < ? AND date >= ? ORDER BY bill, wid LIMIT ?";
+	static final String CLOSED_REQUESTS_WITH_BILL_UNDER_SINCE_AFTER = "SELECT date, comment, bill, wid FROM " + ALL_CLOSED_REQUESTS + " AS W WHERE bill < ? AND date >= ? AND (bill, wid) > (?, ?) ORDER BY bill, wid LIMIT ?";
+	static final String CUSTOMERS_WITH_MORE_CARS_THAN = "SELECT TRIM(fname), lname, id FROM Customer, (SELECT customer_id FROM Owns GROUP BY customer_id HAVING COUNT(customer_id) > ?) AS O WHERE O.customer_id = id ORDER BY id LIMIT ?";
+	static final String CUSTOMERS_WITH_MORE_CARS_THAN_AFTER = "SELECT TRIM(fname), lname, id FROM Customer, (SELECT customer_id FROM Owns WHERE customer_id > ? GROUP BY customer_id HAVING COUNT(customer_id) > ?) AS O WHERE O.customer_id = id ORDER BY id LIMIT ?";
+	static final String CARS_BEFORE_YEAR_UNDER_MILEAGE = "SELECT DISTINCT make, model, year FROM Car AS C, " + ALL_SERVICE_REQUESTS + " AS S WHERE year < ? AND S.car_vin = C.vin AND S.odometer < ? ORDER BY year, make, model LIMIT ?";
+	static final String CARS_BEFORE_YEAR_UNDER_MILEAGE_AFTER = "SELECT DISTINCT make, model, year FROM Car AS C, " + ALL_SERVICE_REQUESTS + " AS S WHERE year < ? AND S.car_vin = C.vin AND S.odometer < ? AND (year, make, model) > (?, ?, ?) ORDER BY year, make, model LIMIT ?";
+	static final String CARS_BEFORE_YEAR_UNDER_MILEAGE_SINCE = "SELECT DISTINCT make, model, year FROM Car AS C, " + ALL_SERVICE_REQUESTS + " AS S WHERE year < ? AND S.car_vin = C.vin AND S.odometer < ? AND S.date >= ? ORDER BY year, make, model LIMIT ?";
+	static final String CARS_BEFORE_YEAR_UNDER_MILEAGE_SINCE_AFTER = "SELECT DISTINCT make, model, year FROM Car AS C, " + ALL_SERVICE_REQUESTS + " AS S WHERE year < ? AND S.car_vin = C.vin AND S.odometer < ? AND S.date >= ? AND (year, make, model) > (?, ?, ?) ORDER BY year, make, model LIMIT ?";
+	//reports 9 and 10 read the aggregates kept by the inserts instead of grouping the request tables
+	static final String CARS_WITH_MOST_SERVICES = "SELECT make, model, S.requests, S.car_vin FROM Car_Service_Count AS S, Car AS C WHERE C.vin = S.car_vin ORDER BY S.requests DESC, S.car_vin DESC LIMIT ?";
+	static final String CARS_WITH_MOST_SERVICES_AFTER = "SELECT make, model, S.requests, S.car_vin FROM Car_Service_Count AS S, Car AS C WHERE C.vin = S.car_vin AND (S.requests, S.car_vin) < (?, ?) ORDER BY S.requests DESC, S.car_vin DESC LIMIT ?";
+	static final String CUSTOMERS_BY_TOTAL_BILL = "SELECT TRIM(C.fname), TRIM(C.lname), B.total, B.customer_id FROM Customer_Bill_Total AS B, Customer AS C WHERE C.id = B.customer_id ORDER BY B.total DESC, B.customer_id DESC LIMIT ?";
+	static final String CUSTOMERS_BY_TOTAL_BILL_AFTER = "SELECT TRIM(C.fname), TRIM(C.lname), B.total, B.customer_id FROM Customer_Bill_Total AS B, Customer AS C WHERE C.id = B.customer_id AND (B.total, B.customer_id) < (?, ?) ORDER BY B.total DESC, B.customer_id DESC LIMIT ?";
+	//reports 9 and 10 over a window group the partitions of the window, hot or archived
+	static final String SERVICES_SINCE = "(SELECT car_vin, COUNT(*) AS requests FROM " + ALL_SERVICE_REQUESTS + " AS R WHERE date >= ? GROUP BY car_vin) AS S";
+	static final String CARS_WITH_MOST_SERVICES_SINCE = "SELECT make, model, S.requests, S.car_vin FROM " + SERVICES_SINCE + ", Car AS C WHERE C.vin = S.car_vin ORDER BY S.requests DESC, S.car_vin DESC LIMIT ?";
+	static final String CARS_WITH_MOST_SERVICES_SINCE_AFTER = "SELECT make, model, S.requests, S.car_vin FROM " + SERVICES_SINCE + ", Car AS C WHERE C.vin = S.car_vin AND (S.requests, S.car_vin) < (?, ?) ORDER BY S.requests DESC, S.car_vin DESC LIMIT ?";
+	static final String BILLS_SINCE = "(SELECT S.customer_id, SUM(W.bill) AS total FROM " + ALL_CLOSED_REQUESTS + " AS W, " + ALL_SERVICE_REQUESTS + " AS S WHERE W.date >= ? AND S.rid = W.rid GROUP BY S.customer_id) AS B";
+	static final String CUSTOMERS_BY_TOTAL_BILL_SINCE = "SELECT TRIM(C.fname), TRIM(C.lname), B.total, B.customer_id FROM " + BILLS_SINCE + ", Customer AS C WHERE C.id = B.customer_id ORDER BY B.total DESC, B.customer_id DESC LIMIT ?";
+	static final String CUSTOMERS_BY_TOTAL_BILL_SINCE_AFTER = "SELECT TRIM(C.fname), TRIM(C.lname), B.total, B.customer_id FROM " + BILLS_SINCE + ", Customer AS C WHERE C.id = B.customer_id AND (B.total, B.customer_id) < (?, ?) ORDER BY B.total DESC, B.customer_id DESC LIMIT ?";
+
+	//the version sequences of all the tables the reports read, moved on after the changes
+	//made outside the write methods: a rebuild of the aggregates, which also ends every
+	//bulk load, and a partition moved to the archive or dropped, see Partitions
+	static final String[] REPORT_VERSIONS = {"owns_version_seq", "service_request_version_seq", "closed_request_version_seq"};
+
+	//recompute the aggregates from the request tables and their archive
+	static final String[] REBUILD_AGGREGATES = {
+		"LOCK TABLE Service_Request, Closed_Request, Service_Request_Archive, Closed_Request_Archive IN SHARE MODE",
+		"DELETE FROM Car_Service_Count",
+		"INSERT INTO Car_Service_Count(car_vin, requests) SELECT car_vin, COUNT(*) FROM (SELECT car_vin FROM Service_Request UNION ALL SELECT car_vin FROM Service_Request_Archive) AS S GROUP BY car_vin",
+		"DELETE FROM Customer_Bill_Total",
+		"INSERT INTO Customer_Bill_Total(customer_id, total) SELECT S.customer_id, SUM(C.bill) " +
+			"FROM (SELECT rid, bill FROM Closed_Request UNION ALL SELECT rid, bill FROM Closed_Request_Archive) AS C, " +
+			"(SELECT rid, customer_id FROM Service_Request UNION ALL SELECT rid, customer_id FROM Service_Request_Archive) AS S WHERE C.rid = S.rid GROUP BY S.customer_id"
+	};
+
+	//cache settings, overridable with -Dshop.cacheSize=... etc.; a time to
+	//live bounds how stale cars and mechanics changed by other processes
+	//can get, report pages are checked against the version sequences instead
+	private static final int CACHE_SIZE = Integer.getInteger("shop.cacheSize", 10000);
+	private static final long CACHE_TTL_MILLIS = Long.getLong("shop.cacheTtl", 0L);
+	private static final int REPORT_CACHE_SIZE = Integer.getInteger("shop.reportCacheSize", 1000);
+	private static final int REPORT_CACHE_ROWS = Integer.getInteger("shop.reportCacheRows", 1000);
+
+	//the tables each report depends on.  Rows are only ever inserted, so a
+	//new Customer or Car changes no report until it owns a car or has a
+	//request; reports 9 and 10 read the aggregates kept by the inserts of
+	//Service_Request and Closed_Request
+	private static final String SERVICE_REQUEST = "Service_Request", CLOSED_REQUEST = "Closed_Request", OWNS = "Owns";
+	private static final String[] READS_CLOSED_REQUEST = {CLOSED_REQUEST};
+	private static final String[] READS_OWNS = {OWNS};
+	private static final String[] READS_SERVICE_REQUEST = {SERVICE_REQUEST};
+
+	private MechanicShop esql;
+	//the month partitions known to exist, by table and first day, see partition()
+	private Set<String> partitions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	//Car records by vin and Mechanic records by id, read through and written through
+	private LruCache<String, List<String>> carCache = new LruCache<String, List<String>>("Car", CACHE_SIZE, CACHE_TTL_MILLIS);
+	private LruCache<Integer, List<String>> mechanicCache = new LruCache<Integer, List<String>>("Mechanic", CACHE_SIZE, CACHE_TTL_MILLIS);
+	//report pages, dropped when a table they read changes, in this process or any other
+	private ReportCache reports = new ReportCache(REPORT_CACHE_SIZE, CACHE_TTL_MILLIS, REPORT_CACHE_ROWS, new ReportCache.Versions(){
+		public Map<String, Long> read() throws SQLException{
+			Map<String, Long> versions = new HashMap<String, Long>();
+			for(List<String> table : esql.executePreparedQueryAndReturnResult(TABLE_VERSIONS)){
+				versions.put(table.get(0), Long.valueOf(table.get(1)));
+			}
+			return versions;
+		}
+	});
+
+	public JdbcShopStore(MechanicShop esql){
+		this.esql = esql;
+	}
+
+	public int addCustomer(String fname, String lname, String phone, String address) throws SQLException {
+		int id = esql.nextId(IdAllocator.CUSTOMER_ID);
+		esql.executePreparedUpdate(INSERT_CUSTOMER, id, fname, lname, phone, address);
+		esql.bumpAfterCommit(CUSTOMER_VERSION_SEQUENCE);
+		return id;
+	}
+
+	public int addMechanic(String fname, String lname, int experience) throws SQLException {
+		final int id = esql.nextId(IdAllocator.MECHANIC_ID);
+		esql.executePreparedUpdate(INSERT_MECHANIC, id, fname, lname, experience);
+		final List<String> record = Arrays.asList(Integer.toString(id), fname.trim(), lname.trim(), Integer.toString(experience));
+		esql.afterCommit(new Runnable(){
+			public void run(){
+				mechanicCache.put(id, record);
+			}
+		});
+		return id;
+	}
+
+	public void addCar(final String vin, String make, String model, int year) throws SQLException {
+		esql.executePreparedUpdate(INSERT_CAR, vin, make, model, year);
+		final List<String> record = Arrays.asList(vin, make, model, Integer.toString(year));
+		esql.afterCommit(new Runnable(){
+			public void run(){
+				carCache.put(vin, record);
+			}
+		});
+	}
+
+	public int addOwnership(int customerId, String vin) throws SQLException {
+		int ownershipId = esql.nextId(IdAllocator.OWNERSHIP_ID);
+		esql.executePreparedUpdate(INSERT_OWNS, ownershipId, customerId, vin);
+		changed(OWNS);
+		return ownershipId;
+	}
+
+	public int addServiceRequest(int customerId, String vin, Date date, int odometer, String complaint) throws SQLException {
+		int rid = esql.nextId(IdAllocator.SERVICE_REQUEST_ID);
+		partition("service_request", date);
+		esql.executePreparedUpdate(INSERT_SERVICE_REQUEST, rid, customerId, vin, date, odometer, complaint);
+		changed(SERVICE_REQUEST);
+		return rid;
+	}
+
+	public int addClosedRequest(int rid, int mid, Date date, String comment, int bill) throws SQLException {
+		int wid = esql.nextId(IdAllocator.CLOSED_REQUEST_ID);
+		partition("closed_request", date);
+		esql.executePreparedUpdate(INSERT_CLOSED_REQUEST, wid, rid, mid, date, comment, bill);
+		changed(CLOSED_REQUEST);
+		return wid;
+	}
+
+	public int[] addClosedRequests(final int[] rids, final int[] mids, final Date date, final String[] comments, final int[] bills) throws SQLException {
+		final int[] wids = new int[rids.length];
+		//all the wids in at most one round trip, and all the rows in one batch
+		esql.reserveIds(IdAllocator.CLOSED_REQUEST_ID, rids.length);
+		esql.runInTransaction(new UnitOfWork.Work(){
+			public void run() throws SQLException{
+				for(int i = 0; i < rids.length; ++i){
+					wids[i] = addClosedRequest(rids[i], mids[i], date, comments[i], bills[i]);
+				}
+			}
+		});
+		return wids;
+	}
+
+	public void runInTransaction(UnitOfWork.Work work) throws SQLException {
+		esql.runInTransaction(work);
+	}
+
+	public List<List<String>> findCustomersByLastName(String lname) throws SQLException {
+		return esql.executePreparedQueryAndReturnResult(CUSTOMERS_BY_LAST_NAME, lname);
+	}
+
+	public int listCustomers(RowHandler handler) throws SQLException {
+		return esql.executeQueryAndStream(ALL_CUSTOMERS, handler);
+	}
+
+	public long getCustomerVersion() throws SQLException {
+		List<List<String>> result = esql.executePreparedQueryAndReturnResult(CUSTOMER_VERSION);
+		return Long.parseLong(result.get(0).get(0));
+	}
+
+	public List<List<String>> getCarsOfCustomers(Integer... customerIds) throws SQLException {
+		List<List<String>> result = esql.executePreparedQueryAndReturnResult(CARS_OF_CUSTOMERS, (Object) customerIds);
+		for(List<String> owned : result){
+			List<String> car = Collections.unmodifiableList(new ArrayList<String>(owned.subList(1, 5)));
+			carCache.put(car.get(0), car);
+		}
+		return result;
+	}
+
+	/**
+	 * Method to read cars through carCache: the ones not cached are read
+	 * in one query and cached.
+	 */
+	public List<List<String>> getCars(String... vins) throws SQLException {
+		List<List<String>> result = new ArrayList<List<String>>();
+		List<String> missing = new ArrayList<String>();
+		for(String vin : vins){
+			List<String> car = carCache.get(vin);
+			if(car != null){
+				result.add(car);
+			}
+			else{
+				missing.add(vin);
+			}
+		}
+		if(!missing.isEmpty()){
+			for(List<String> car : esql.executePreparedQueryAndReturnResult(CARS_BY_VIN, (Object) missing.toArray(new String[missing.size()]))){
+				car = Collections.unmodifiableList(car);
+				carCache.put(car.get(0), car);
+				result.add(car);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method to read mechanics through mechanicCache, like getCars.
+	 */
+	public List<List<String>> getMechanics(Integer... ids) throws SQLException {
+		List<List<String>> result = new ArrayList<List<String>>();
+		List<Integer> missing = new ArrayList<Integer>();
+		for(Integer id : ids){
+			List<String> mechanic = mechanicCache.get(id);
+			if(mechanic != null){
+				result.add(mechanic);
+			}
+			else{
+				missing.add(id);
+			}
+		}
+		if(!missing.isEmpty()){
+			for(List<String> mechanic : esql.executePreparedQueryAndReturnResult(MECHANICS_BY_ID, (Object) missing.toArray(new Integer[missing.size()]))){
+				mechanic = Collections.unmodifiableList(mechanic);
+				mechanicCache.put(Integer.valueOf(mechanic.get(0)), mechanic);
+				result.add(mechanic);
+			}
+		}
+		return result;
+	}
+
+	public int[] checkClosings(Integer[] rids, Integer[] mids) throws SQLException {
+		List<List<String>> checked = esql.executePreparedQueryAndReturnResult(CHECK_CLOSINGS, rids, mids);
+		int[] result = new int[checked.size()];
+		for(int i = 0; i < result.length; ++i){
+			result[i] = Integer.parseInt(checked.get(i).get(0));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the statistics of the Car, Mechanic and report caches, one per
+	 *         line
+	 */
+	public String getCacheStats(){
+		return carCache.getStats() + "\n" + mechanicCache.getStats() + "\n" + reports.getStats();
+	}
+
+	public int listClosedRequestsWithBillUnder(final int bill, final Date since, final Object[] after, final int limit, RowHandler handler) throws SQLException {
+		return reports.run(reportKey("ClosedRequestsWithBillUnder", since, after, limit, bill), READS_CLOSED_REQUEST, new ReportCache.Query(){
+			public int run(RowHandler rows) throws SQLException{
+				if(since != null){
+					if(after == null){
+						return esql.executeQueryAndStream(CLOSED_REQUESTS_WITH_BILL_UNDER_SINCE, rows, bill, since, limit);
+					}
+					return esql.executeQueryAndStream(CLOSED_REQUESTS_WITH_BILL_UNDER_SINCE_AFTER, rows, bill, since, after[0], after[1], limit);
+				}
+				if(after == null){
+					return esql.executeQueryAndStream(CLOSED_REQUESTS_WITH_BILL_UNDER, rows, bill, limit);
+				}
+				return esql.executeQueryAndStream(CLOSED_REQUESTS_WITH_BILL_UNDER_AFTER, rows, bill, after[0], after[1], limit);
+			}
+		}, handler);
+	}
+
+	public int listCustomersWithMoreCarsThan(final int cars, final Object[] after, final int limit, RowHandler handler) throws SQLException {
+		return reports.run(reportKey("CustomersWithMoreCarsThan", null, after, limit, cars), READS_OWNS, new ReportCache.Query(){
+			public int run(RowHandler rows) throws SQLException{
+				if(after == null){
+					return esql.executeQueryAndStream(CUSTOMERS_WITH_MORE_CARS_THAN, rows, cars, limit);
+				}
+				return esql.executeQueryAndStream(CUSTOMERS_WITH_MORE_CARS_THAN_AFTER, rows, after[0], cars, limit);
+			}
+		}, handler);
+	}
+
+	public int listCarsBeforeYearUnderMileage(final int year, final int miles, final Date since, final Object[] after, final int limit, RowHandler handler) throws SQLException {
+		return reports.run(reportKey("CarsBeforeYearUnderMileage", since, after, limit, year, miles), READS_SERVICE_REQUEST, new ReportCache.Query(){
+			public int run(RowHandler rows) throws SQLException{
+				if(since != null){
+					if(after == null){
+						return esql.executeQueryAndStream(CARS_BEFORE_YEAR_UNDER_MILEAGE_SINCE, rows, year, miles, since, limit);
+					}
+					return esql.executeQueryAndStream(CARS_BEFORE_YEAR_UNDER_MILEAGE_SINCE_AFTER, rows, year, miles, since, after[0], after[1], after[2], limit);
+				}
+				if(after == null){
+					return esql.executeQueryAndStream(CARS_BEFORE_YEAR_UNDER_MILEAGE, rows, year, miles, limit);
+				}
+				return esql.executeQueryAndStream(CARS_BEFORE_YEAR_UNDER_MILEAGE_AFTER, rows, year, miles, after[0], after[1], after[2], limit);
+			}
+		}, handler);
+	}
+
+	public int listCarsWithMostServices(final Date since, final Object[] after, final int limit, RowHandler handler) throws SQLException {
+		return reports.run(reportKey("CarsWithMostServices", since, after, limit), READS_SERVICE_REQUEST, new ReportCache.Query(){
+			public int run(RowHandler rows) throws SQLException{
+				if(since != null){
+					if(after == null){
+						return esql.executeQueryAndStream(CARS_WITH_MOST_SERVICES_SINCE, rows, since, limit);
+					}
+					return esql.executeQueryAndStream(CARS_WITH_MOST_SERVICES_SINCE_AFTER, rows, since, after[0], after[1], limit);
+				}
+				if(after == null){
+					return esql.executeQueryAndStream(CARS_WITH_MOST_SERVICES, rows, limit);
+				}
+				return esql.executeQueryAndStream(CARS_WITH_MOST_SERVICES_AFTER, rows, after[0], after[1], limit);
+			}
+		}, handler);
+	}
+
+	public int listCustomersByTotalBill(final Date since, final Object[] after, final int limit, RowHandler handler) throws SQLException {
+		return reports.run(reportKey("CustomersByTotalBill", since, after, limit), READS_CLOSED_REQUEST, new ReportCache.Query(){
+			public int run(RowHandler rows) throws SQLException{
+				if(since != null){
+					if(after == null){
+						return esql.executeQueryAndStream(CUSTOMERS_BY_TOTAL_BILL_SINCE, rows, since, limit);
+					}
+					return esql.executeQueryAndStream(CUSTOMERS_BY_TOTAL_BILL_SINCE_AFTER, rows, since, after[0], after[1], limit);
+				}
+				if(after == null){
+					return esql.executeQueryAndStream(CUSTOMERS_BY_TOTAL_BILL, rows, limit);
+				}
+				return esql.executeQueryAndStream(CUSTOMERS_BY_TOTAL_BILL_AFTER, rows, after[0], after[1], limit);
+			}
+		}, handler);
+	}
+
+	//the report, its arguments, its window and the page, as a ReportCache key
+	private static String reportKey(String report, Date since, Object[] after, int limit, int... args){
+		return report + Arrays.toString(args) + since + Arrays.toString(after) + limit;
+	}
+
+	/**
+	 * Method to make the month partition of a request before the first
+	 * insert of that month in this process.  Partitions.prepare() only
+	 * makes this month and the next at startup, so a shop that stays up,
+	 * or a request dated another month, would otherwise fill the default
+	 * partition, which archive() never moves.
+	 */
+	private void partition(String table, Date date) throws SQLException {
+		final String month = table + date.toLocalDate().withDayOfMonth(1);
+		if(partitions.contains(month)){
+			return;
+		}
+		esql.executePreparedQueryAndReturnResult(Partitions.MONTH_PARTITION, table, date);
+		//made in the transaction of the insert, so known once it commits
+		esql.afterCommit(new Runnable(){
+			public void run(){
+				partitions.add(month);
+			}
+		});
+	}
+
+	/**
+	 * Method to record a write to a table read by the reports, once it is
+	 * committed: here, and for other processes in the version sequence of
+	 * the table.
+	 */
+	private void changed(final String table) throws SQLException {
+		esql.bumpAfterCommit(table.toLowerCase() + "_version_seq");
+		esql.afterCommit(new Runnable(){
+			public void run(){
+				reports.changed(table);
+			}
+		});
+	}
+
+	/**
+	 * Method to recompute the aggregates in one transaction.  Writes to the
+	 * request tables wait until it commits, reports keep reading the old
+	 * aggregates meanwhile.
+	 */
+	public void rebuildAggregates() throws SQLException {
+		PooledConnection conn = esql.borrowConnection();
+		try{
+			Connection connection = conn.getConnection();
+			connection.setAutoCommit(false);
+			try{
+				Statement stmt = connection.createStatement();
+				try{
+					for(String sql : REBUILD_AGGREGATES){
+						stmt.execute(sql);
+					}
+				}finally{
+					stmt.close();
+				}
+				connection.commit();
+			}catch(SQLException e){
+				conn.checkBroken(e);
+				if(!conn.broken){
+					connection.rollback();
+				}
+				throw e;
+			}finally{
+				if(!conn.broken){
+					connection.setAutoCommit(true);
+				}
+			}
+		}finally{
+			esql.releaseConnection(conn);
+			reports.clear();
+		}
+		esql.bumpAfterCommit(REPORT_VERSIONS);
+	}//end rebuildAggregates
+
+}//end JdbcShopStore
@@ -0,0 +1,164 @@
+/*
+ * Replay of recorded sessions
+ * ===========================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class puts the load of a shop floor on the shop: it replays the
+ * sessions of a SessionScript with a number of simulated clerks, each
+ * running the menu on a thread of its own exactly as a client of
+ * ShopServer does, sharing the pool, the key allocator, the caches and
+ * the metrics of the shop.
+ *
+ * Sessions arrive at a target rate, with exponential gaps between them
+ * (a Poisson arrival process), and wait for a free clerk; with no rate
+ * every clerk starts the next session as soon as it is done.  The script
+ * is cycled through until the number of sessions asked for has run.  The
+ * answers are typed without think time, so the rate sets the load.
+ *
+ * The report gives the sessions per second reached, the time sessions
+ * waited for a clerk, and for every menu operation its rate, latency
+ * percentiles, error rate and key collisions (see Metrics.failed), then
+ * the waits for a pooled connection.
+ *
+ */
+
+public class LoadDriver{
+	private MechanicShop shop;
+	private List<List<String>> sessions;
+	private int clerks;
+	//sessions started per second, 0 for as fast as the clerks go
+	private double rate;
+	private int count;
+	private Random random;
+
+	//statistics, in nanoseconds
+	private final Metrics.Histogram queued = new Metrics.Histogram();
+	private final Metrics.Histogram sessionTime = new Metrics.Histogram();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/**
+	 * @param shop the shop every clerk shares
+	 * @param sessions the typed lines of every session, see SessionScript
+	 * @param clerks the number of sessions run at the same time
+	 * @param rate the sessions started per second, 0 for no pacing
+	 * @param count the number of sessions to run
+	 * @param seed the seed of the arrival gaps
+	 */
+	public LoadDriver(MechanicShop shop, List<List<String>> sessions, int clerks, double rate, int count, long seed){
+		if(sessions.isEmpty()){
+			throw new IllegalArgumentException("The script has no session");
+		}
+		if(clerks <= 0 || rate < 0 || count <= 0){
+			throw new IllegalArgumentException("Expected clerks > 0, rate >= 0 and sessions > 0");
+		}
+		this.shop = shop;
+		this.sessions = sessions;
+		this.clerks = clerks;
+		this.rate = rate;
+		this.count = count;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Method to run the sessions, wait for all of them and print the
+	 * report.
+	 */
+	public void run() throws InterruptedException {
+		final AtomicInteger threads = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(clerks, new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "clerk-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		shop.getMetrics().reset();
+		System.out.println("Replaying " + count + " sessions with " + clerks + " clerks" + (rate > 0 ? " at " + rate + " sessions/s" : ""));
+		long start = System.nanoTime();
+		long arrival = start;
+		try{
+			for(int i = 0; i < count; ++i){
+				if(rate > 0){
+					//exponential gap, the arrival time does not drift with the time spent submitting
+					arrival += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+					long wait = arrival - System.nanoTime();
+					if(wait > 0){
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+				}
+				else{
+					arrival = System.nanoTime();
+				}
+				final List<String> lines = sessions.get(i % sessions.size());
+				final long arrived = arrival;
+				executor.execute(new Runnable(){
+					public void run(){
+						replay(lines, arrived);
+					}
+				});
+			}
+		}finally{
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		report((System.nanoTime() - start) / 1e9);
+	}//end run
+
+	//runs one session on this clerk's thread, its output discarded
+	private void replay(List<String> lines, long arrived){
+		long start = System.nanoTime();
+		StringBuilder input = new StringBuilder();
+		for(String line : lines){
+			input.append(line).append('\n');
+		}
+		PrintStream discard = new PrintStream(new OutputStream(){
+			public void write(int b){}
+			public void write(byte[] b, int off, int len){}
+		});
+		try{
+			ShopServer.runSession(shop, new BufferedReader(new StringReader(input.toString())), discard);
+		}catch(Exception e){
+			failed.incrementAndGet();
+		}
+		long end = System.nanoTime();
+		synchronized(this){
+			queued.record(start - arrived);
+			sessionTime.record(end - start);
+		}
+	}
+
+	private synchronized void report(double seconds){
+		System.out.println(String.format("%d sessions in %.3f s: %.1f sessions/s%s, %d failed",
+			sessionTime.count, seconds, sessionTime.count / seconds, rate > 0 ? " (target " + rate + ")" : "", failed.get()));
+		System.out.println(String.format("Waited for a clerk: p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+			queued.percentile(0.5) / 1e6, queued.percentile(0.99) / 1e6, queued.max / 1e6));
+		System.out.println(String.format("Session time: p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+			sessionTime.percentile(0.5) / 1e6, sessionTime.percentile(0.99) / 1e6, sessionTime.max / 1e6));
+		System.out.println();
+		System.out.print(shop.getMetrics().throughput(seconds));
+		if(shop.getStore() instanceof JdbcShopStore){
+			System.out.println();
+			System.out.println("Pool: " + shop.getPoolStats());
+			System.out.println(((JdbcShopStore) shop.getStore()).getCacheStats());
+		}
+	}//end report
+
+}//end LoadDriver
@@ -0,0 +1,122 @@
+/*
+ * Caching of reference data
+ * =========================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is a bounded cache of records by key, used by JdbcShopStore
+ * for the rows that are read far more often than they change (Car by vin,
+ * Mechanic by id).
+ *
+ * It keeps at most maxSize entries and evicts the least recently used one
+ * to make room.  With a time to live, an entry older than it is dropped
+ * when it is next read, so rows changed by another process are read again
+ * after at most that long.  It counts hits, misses, evictions and
+ * expirations.
+ *
+ * The cache does not load anything itself: the store reads the misses,
+ * all of them in one query, and put()s them.
+ *
+ */
+
+public class LruCache<K, V>{
+	//a cached value with the time it was put, for the time to live
+	private static final class Cached<V>{
+		V value;
+		long loaded;
+
+		Cached(V value, long loaded){
+			this.value = value;
+			this.loaded = loaded;
+		}
+	}
+
+	private final String name;
+	private final int maxSize;
+	private final long ttlNanos;
+	private final LinkedHashMap<K, Cached<V>> entries;
+
+	//statistics
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+
+	/**
+	 * @param name the name shown in the statistics
+	 * @param maxSize the most entries kept, 0 to cache nothing
+	 * @param ttlMillis how long an entry is served, 0 for ever
+	 */
+	public LruCache(String name, int maxSize, long ttlMillis){
+		this.name = name;
+		this.maxSize = Math.max(maxSize, 0);
+		this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1000000L : Long.MAX_VALUE;
+		//access order: every get moves the entry to the most recent end
+		this.entries = new LinkedHashMap<K, Cached<V>>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<K, Cached<V>> eldest){
+				if(size() > LruCache.this.maxSize){
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached value, or null when it is not cached or too old
+	 */
+	public synchronized V get(K key){
+		Cached<V> entry = entries.get(key);
+		if(entry != null && System.nanoTime() - entry.loaded >= ttlNanos){
+			entries.remove(key);
+			++expirations;
+			entry = null;
+		}
+		if(entry == null){
+			++misses;
+			return null;
+		}
+		++hits;
+		return entry.value;
+	}
+
+	/**
+	 * Method to cache a value read from the database or just written to it.
+	 */
+	public synchronized void put(K key, V value){
+		if(maxSize > 0){
+			entries.put(key, new Cached<V>(value, System.nanoTime()));
+		}
+	}
+
+	public synchronized void remove(K key){
+		entries.remove(key);
+	}
+
+	public synchronized void clear(){
+		entries.clear();
+	}
+
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	/**
+	 * @return a one-line summary of the size and the statistics
+	 */
+	public synchronized String getStats(){
+		long reads = hits + misses;
+		return String.format("%s: %d/%d entries, %d hits, %d misses (%.1f%% hits), %d evictions, %d expirations",
+			name, entries.size(), maxSize, hits, misses, reads == 0 ? 0.0 : 100.0 * hits / reads, evictions, expirations);
+	}
+
+}//end LruCache
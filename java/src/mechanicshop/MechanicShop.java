@@ -0,0 +1,1896 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ *
+ */
+
+public class MechanicShop{
+	//pool of physical database connections, borrowed per unit of work
+	private ConnectionPool _pool = null;
+	//storage used by the menu operations
+	private ShopStore _store = null;
+	//hands out primary keys from the DB sequences
+	private IdAllocator _ids = new IdAllocator(this);
+	//customer lookup of the service intake, loaded before the menu starts
+	private CustomerIndex _customers = null;
+	//latency of the statements and menu operations, see Metrics
+	private Metrics _metrics = new Metrics (SLOW_QUERY_MILLIS, SLOW_QUERY_LOG == null ? null : new File (SLOW_QUERY_LOG), SLOW_QUERY_PARAMS);
+	private static final Object[] NO_PARAMS = new Object[0];
+	//names of the timed menu operations, by menu number
+	private static final String[] OPERATIONS = {"AddCustomer", "AddMechanic", "AddCar", "InsertServiceRequest", "CloseServiceRequest",
+		"ListCustomersWithBillLessThan100", "ListCustomersWithMoreThan20Cars", "ListCarsBefore1995With50000Milles",
+		"ListKCarsWithTheMostServices", "ListCustomersInDescendingOrderOfTheirTotalBill"};
+	//number of rows fetched per round trip by executeQueryAndStream
+	private int _fetchSize = 1000;
+	//the transaction open on each thread, see runInTransaction
+	private ThreadLocal<UnitOfWork> _unit = new ThreadLocal<UnitOfWork>();
+	//the menu input and output, routed to the session of the thread in server mode, see ShopServer
+	static BufferedReader in = new ShopServer.Input();
+	static PrintStream out = new ShopServer.Output(System.out);
+	static PrintStream err = new ShopServer.Output(System.err);
+	//the script the menu sessions are recorded to, null when not recording
+	static SessionScript recording = null;
+	//moves version sequences on, see bumpAfterCommit
+	private static final String BUMP_VERSIONS = "SELECT nextval(s::regclass) FROM unnest(?::varchar[]) AS s";
+	//the menu number of EXIT, also chosen when the input ends
+	static final int MENU_EXIT = 11;
+
+	//connection pool settings, overridable with -Dshop.poolSize=... etc.
+	private static final int POOL_SIZE = Integer.getInteger("shop.poolSize", 8);
+	private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("shop.poolIdleTimeout", 300000L);
+	private static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("shop.poolBorrowTimeout", 30000L);
+	//rows per page of the reports when the user keeps the default
+	static final int PAGE_SIZE = 20;
+	//statements slower than this are kept for ShowMetrics, -Dshop.slowQueryMillis=...; they are
+	//also appended to a file with -Dshop.slowQueryLog=<file>, with their bound values only with
+	//-Dshop.slowQueryParams=true
+	private static final long SLOW_QUERY_MILLIS = Long.getLong("shop.slowQueryMillis", 100L);
+	private static final String SLOW_QUERY_LOG = System.getProperty("shop.slowQueryLog");
+	private static final boolean SLOW_QUERY_PARAMS = Boolean.getBoolean("shop.slowQueryParams");
+	//times a transaction is run before a serialization failure or deadlock is given up on
+	private static final int TRANSACTION_ATTEMPTS = Integer.getInteger("shop.transactionAttempts", 5);
+
+	public MechanicShop(String dbname, String dbport, String user, String passwd) throws SQLException {
+		System.out.print("Connecting to database...");
+		try{
+			// constructs the connection URL
+			// prepareThreshold=1 lets the driver switch cached statements to a
+			// named server-side plan on their first execution
+			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname + "?prepareThreshold=1";
+			System.out.println ("Connection URL: " + url + "\n");
+			
+			// create the pool and check that a physical connection can be obtained
+			this._pool = new ConnectionPool(url, user, passwd, POOL_SIZE, 1, POOL_IDLE_TIMEOUT_MILLIS, POOL_BORROW_TIMEOUT_MILLIS);
+			this._pool.release(this._pool.borrow());
+	        System.out.println("Done");
+			this._store = new JdbcShopStore(this);
+		}catch(Exception e){
+			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
+	        System.out.println("Make sure you started postgres on this machine");
+	        System.exit(-1);
+		}
+	}
+	
+	/**
+	 * Creates a shop that keeps its data in the given store instead of a
+	 * database, e.g. a MemoryShopStore.  The execute methods are not
+	 * available on such a shop.
+	 * 
+	 * @param store the storage of the menu operations
+	 */
+	public MechanicShop(ShopStore store) {
+		this._store = store;
+	}
+
+	/**
+	 * Creates a shop on a connection pool opened by the caller, with a
+	 * JdbcShopStore.  Used to run the shop on another JDBC driver, e.g. the
+	 * one the tests fake the database with.
+	 * 
+	 * @param pool the pool of the execute methods, closed by cleanup
+	 */
+	MechanicShop(ConnectionPool pool) {
+		this._pool = pool;
+		this._store = new JdbcShopStore(this);
+	}
+
+	/**
+	 * Creates a session of a shop for one clerk of the server mode.  It
+	 * shares the connection pool, the store, the key allocator, the customer
+	 * index and the metrics of the shop; transactions are per thread.  It
+	 * must not be cleaned up, the shop is.
+	 * 
+	 * @param shop the shop of the process
+	 */
+	MechanicShop(MechanicShop shop) {
+		this._pool = shop._pool;
+		this._store = shop._store;
+		this._ids = shop._ids;
+		this._customers = shop._customers;
+		this._metrics = shop._metrics;
+		this._fetchSize = shop._fetchSize;
+		this._unit = shop._unit;
+	}
+
+	/**
+	 * @return the storage used by the menu operations
+	 */
+	public ShopStore getStore() {
+		return this._store;
+	}
+
+	/**
+	 * Method to get the connection for one execute call: the connection of
+	 * the transaction open on this thread, with its pending writes sent, or
+	 * else a pooled connection.  It is given back with release.
+	 * 
+	 * @throws java.sql.SQLException when the shop has no database or no
+	 *         connection could be obtained
+	 */
+	private PooledConnection borrow () throws SQLException {
+		UnitOfWork unit = this._unit.get ();
+		if (unit != null){
+			unit.flush ();
+			return unit.getConnection ();
+		}//end if
+		return borrowPooled ();
+	}
+
+	private PooledConnection borrowPooled () throws SQLException {
+		if (this._pool == null)
+			throw new SQLException ("No database connection, the shop runs on " + this._store.getClass ().getName ());
+		return this._pool.borrow ();
+	}
+
+	/**
+	 * Method to give back a connection obtained from borrow.  The
+	 * connection of a transaction stays with it.
+	 */
+	private void release (PooledConnection conn) {
+		UnitOfWork unit = this._unit.get ();
+		if (unit == null || unit.getConnection () != conn)
+			this._pool.release (conn);
+	}
+
+	/**
+	 * Method to execute an update SQL statement.  Update SQL instructions
+	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * 
+	 * @param sql the input SQL string
+	 * @throws java.sql.SQLException when update failed
+	 * */
+	public void executeUpdate (String sql) throws SQLException { 
+		long start = System.nanoTime ();
+		int rows = 0;
+		boolean failed = true;
+		PooledConnection conn = borrow ();
+		try{
+			// creates a statement object
+			Statement stmt = conn.getConnection ().createStatement ();
+
+			// issues the update instruction
+			rows = stmt.executeUpdate (sql);
+
+			// close the instruction
+		    stmt.close ();
+		    failed = false;
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (sql, NO_PARAMS, start, rows, 0, failed);
+		}
+	}//end executeUpdate
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and outputs the results to
+	 * the menu output.
+	 * 
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndPrintResult (String query) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = 0;
+		boolean failed = true;
+		PooledConnection conn = borrow ();
+		try{
+			//creates a statement object
+			Statement stmt = conn.getConnection ().createStatement ();
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery (query);
+
+			rowCount = printResult (rs);
+			stmt.close ();
+			failed = false;
+			return rowCount;
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (query, NO_PARAMS, start, rowCount, 0, failed);
+		}
+	}
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the results as
+	 * a list of records. Each record in turn is a list of attribute values
+	 * 
+	 * @param query the input query string
+	 * @return the query result as a list of records
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
+		long start = System.nanoTime ();
+		List<List<String>> result = null;
+		PooledConnection conn = borrow ();
+		try{
+			//creates a statement object 
+			Statement stmt = conn.getConnection ().createStatement (); 
+			
+			//issues the query instruction 
+			ResultSet rs = stmt.executeQuery (query); 
+		 
+			result = readResult (rs); 
+			stmt.close (); 
+			return result; 
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (query, NO_PARAMS, start, result == null ? 0 : result.size (), sizeOf (result), result == null);
+		}
+	}//end executeQueryAndReturnResult
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the number of results
+	 * 
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQuery (String query) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = 0;
+		boolean failed = true;
+		PooledConnection conn = borrow ();
+		try{
+			//creates a statement object
+			Statement stmt = conn.getConnection ().createStatement ();
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery (query);
+
+			//iterates through the result set and count nuber of results.
+			if(rs.next()){
+				rowCount++;
+			}//end while
+			stmt.close ();
+			failed = false;
+			return rowCount;
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (query, NO_PARAMS, start, rowCount, 0, failed);
+		}
+	}
+	
+	/**
+	 * Method to bind the given values to the placeholders of a prepared
+	 * statement, in order.  Integer[] and String[] values are bound as
+	 * SQL arrays, for use with "= ANY(?)".
+	 * 
+	 * @param stmt the prepared statement
+	 * @param params the values for the '?' placeholders
+	 * @throws java.sql.SQLException when a value cannot be bound
+	 */
+	static void bind (PreparedStatement stmt, Object... params) throws SQLException {
+		for (int i = 0; i < params.length; ++i){
+			if (params[i] instanceof Integer[])
+				stmt.setArray (i + 1, stmt.getConnection ().createArrayOf ("int4", (Integer[]) params[i]));
+			else if (params[i] instanceof String[])
+				stmt.setArray (i + 1, stmt.getConnection ().createArrayOf ("varchar", (String[]) params[i]));
+			else
+				stmt.setObject (i + 1, params[i]);
+		}//end for
+	}//end bind
+
+	/**
+	 * Method to execute a parameterized update SQL statement.  Update SQL
+	 * instructions includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * 
+	 * The executePrepared methods keep the statement of every template in
+	 * the cache of the connection (see PooledConnection.prepare), so they
+	 * are for fixed templates only; SQL built for one call, e.g. DDL naming
+	 * a partition, goes through executeUpdate and the other plain methods.
+	 * 
+	 * Inside runInTransaction the statement is only added to the
+	 * transaction, to be sent in a batch with the writes around it, and 1
+	 * is returned; a failure is then thrown by the statement that sends it.
+	 * 
+	 * @param template the SQL string, with '?' placeholders for parameters
+	 * @param params the values for the placeholders
+	 * @return the number of rows affected
+	 * @throws java.sql.SQLException when update failed
+	 * */
+	public int executePreparedUpdate (String template, Object... params) throws SQLException {
+		UnitOfWork unit = this._unit.get ();
+		if (unit != null){
+			unit.add (template, params);
+			return 1;
+		}//end if
+		long start = System.nanoTime ();
+		int rows = -1;
+		PooledConnection conn = borrow ();
+		try{
+			PreparedStatement stmt = conn.prepare (template);
+			bind (stmt, params);
+			rows = stmt.executeUpdate ();
+			return rows;
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (template, params, start, Math.max (rows, 0), 0, rows < 0);
+		}
+	}//end executePreparedUpdate
+
+	/**
+	 * Method to execute a parameterized query and output the results to
+	 * the menu output.  The rows are streamed, see executeQueryAndStream.
+	 * 
+	 * @param template the SQL string, with '?' placeholders for parameters
+	 * @param params the values for the placeholders
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executePreparedQueryAndPrintResult (String template, Object... params) throws SQLException {
+		return executeQueryAndStream (template, new RowHandler(){
+			public void handle (Row row) throws SQLException {
+				int numCol = row.getColumnCount ();
+				if (row.getRowNumber () == 1){
+					for (int i = 1; i <= numCol; i++)
+						out.print (row.getColumnName (i) + "\t");
+					out.println ();
+				}//end if
+				for (int i = 1; i <= numCol; ++i)
+					out.print (row.getString (i) + "\t");
+				out.println ();
+			}
+		}, params);
+	}
+
+	/**
+	 * Method to execute a parameterized query and return the results as a
+	 * list of records.  Each record in turn is a list of attribute values
+	 * 
+	 * @param template the SQL string, with '?' placeholders for parameters
+	 * @param params the values for the placeholders
+	 * @return the query result as a list of records
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public List<List<String>> executePreparedQueryAndReturnResult (String template, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		List<List<String>> result = null;
+		PooledConnection conn = borrow ();
+		try{
+			PreparedStatement stmt = conn.prepare (template);
+			bind (stmt, params);
+			ResultSet rs = stmt.executeQuery ();
+			try{
+				result = readResult (rs);
+				return result;
+			}finally{
+				rs.close ();
+			}
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (template, params, start, result == null ? 0 : result.size (), sizeOf (result), result == null);
+		}
+	}//end executePreparedQueryAndReturnResult
+
+	/**
+	 * Method to execute a parameterized query and return whether it found
+	 * any row (1) or not (0).
+	 * 
+	 * @param template the SQL string, with '?' placeholders for parameters
+	 * @param params the values for the placeholders
+	 * @return the number of rows returned, capped at 1
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executePreparedQuery (String template, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		PooledConnection conn = borrow ();
+		try{
+			PreparedStatement stmt = conn.prepare (template);
+			bind (stmt, params);
+			ResultSet rs = stmt.executeQuery ();
+			try{
+				rowCount = rs.next () ? 1 : 0;
+				return rowCount;
+			}finally{
+				rs.close ();
+			}
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			throw e;
+		}finally{
+			release (conn);
+			this._metrics.statement (template, params, start, Math.max (rowCount, 0), 0, rowCount < 0);
+		}
+	}
+
+	/**
+	 * Method to execute a parameterized query and hand its rows to a
+	 * callback one at a time.  The rows are read through a server-side
+	 * cursor, fetchSize rows per round trip, so memory use does not depend
+	 * on the size of the result.
+	 * 
+	 * @param template the SQL string, with '?' placeholders for parameters
+	 * @param handler the callback called for every row, in order
+	 * @param params the values for the placeholders
+	 * @return the number of rows streamed
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndStream (String template, RowHandler handler, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		ResultSetRow row = null;
+		boolean failed = true;
+		PooledConnection conn = borrow ();
+		Connection connection = conn.getConnection ();
+		//the driver only uses a cursor inside a transaction
+		boolean autoCommit = true;
+		try{
+			autoCommit = connection.getAutoCommit ();
+			if (autoCommit)
+				connection.setAutoCommit (false);
+			PreparedStatement stmt = conn.prepare (template);
+			bind (stmt, params);
+			stmt.setFetchSize (this._fetchSize);
+			ResultSet rs = stmt.executeQuery ();
+			row = new ResultSetRow (rs);
+			try{
+				while (rs.next ()){
+					row.rowNumber++;
+					handler.handle (row);
+				}//end while
+			}finally{
+				rs.close ();
+			}
+			if (autoCommit)
+				connection.commit ();
+			failed = false;
+			return row.rowNumber;
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			if (autoCommit && !conn.broken)
+				connection.rollback ();
+			throw e;
+		}finally{
+			try{
+				if (autoCommit && !conn.broken)
+					connection.setAutoCommit (true);
+			}catch (SQLException e){
+				conn.checkBroken (e);
+			}finally{
+				release (conn);
+				this._metrics.statement (template, params, start, row == null ? 0 : row.rowNumber, row == null ? 0 : row.bytes, failed);
+			}
+		}
+	}//end executeQueryAndStream
+
+	/**
+	 * Method to set how many rows executeQueryAndStream fetches per round
+	 * trip.
+	 * 
+	 * @param fetchSize the number of rows per fetch, greater than 0
+	 */
+	public void setFetchSize (int fetchSize) {
+		this._fetchSize = fetchSize;
+	}
+
+	/**
+	 * Row view over the current position of a result set.  It counts the
+	 * size of the values read through it, for the metrics.
+	 */
+	private static class ResultSetRow implements Row {
+		private ResultSet rs;
+		private int rowNumber = 0;
+		private long bytes = 0;
+
+		ResultSetRow (ResultSet rs) {
+			this.rs = rs;
+		}
+
+		public int getRowNumber () { return rowNumber; }
+
+		public int getColumnCount () throws SQLException { return rs.getMetaData ().getColumnCount (); }
+
+		public String getColumnName (int column) throws SQLException { return rs.getMetaData ().getColumnName (column); }
+
+		public int getColumnType (int column) throws SQLException { return rs.getMetaData ().getColumnType (column); }
+
+		public int getInt (int column) throws SQLException { bytes += 4; return rs.getInt (column); }
+
+		public long getLong (int column) throws SQLException { bytes += 8; return rs.getLong (column); }
+
+		public Date getDate (int column) throws SQLException { bytes += 8; return rs.getDate (column); }
+
+		public String getString (int column) throws SQLException {
+			String value = rs.getString (column);
+			bytes += value == null ? 0 : value.length ();
+			return value;
+		}
+
+		public boolean wasNull () throws SQLException { return rs.wasNull (); }
+	}//end ResultSetRow
+
+	/**
+	 * @return the number of characters of the values of a result, 0 for null
+	 */
+	private static long sizeOf (List<List<String>> result) {
+		long size = 0;
+		if (result != null)
+			for (List<String> record : result)
+				for (String value : record)
+					size += value == null ? 0 : value.length ();
+		return size;
+	}
+
+	/**
+	 * Method to output a result set to standard out, with a header line
+	 * of column names.
+	 * 
+	 * @param rs the result set to print
+	 * @return the number of rows printed
+	 * @throws java.sql.SQLException when failed to read the result
+	 */
+	private static int printResult (ResultSet rs) throws SQLException {
+		/*
+		 *  obtains the metadata object for the returned result set.  The metadata
+		 *  contains row and column info.
+		 */
+		ResultSetMetaData rsmd = rs.getMetaData ();
+		int numCol = rsmd.getColumnCount ();
+		int rowCount = 0;
+		
+		//iterates through the result set and output them to the menu output.
+		boolean outputHeader = true;
+		while (rs.next()){
+			if(outputHeader){
+				for(int i = 1; i <= numCol; i++){
+					out.print(rsmd.getColumnName(i) + "\t");
+			    }
+			    out.println();
+			    outputHeader = false;
+			}
+			for (int i=1; i<=numCol; ++i)
+				out.print (rs.getString (i) + "\t");
+			out.println ();
+			++rowCount;
+		}//end while
+		return rowCount;
+	}//end printResult
+
+	/**
+	 * Method to read a result set into a list of records.  Each record in
+	 * turn is a list of attribute values
+	 * 
+	 * @param rs the result set to read
+	 * @return the rows of the result set
+	 * @throws java.sql.SQLException when failed to read the result
+	 */
+	private static List<List<String>> readResult (ResultSet rs) throws SQLException {
+		/*
+		 * obtains the metadata object for the returned result set.  The metadata 
+		 * contains row and column info. 
+		*/ 
+		ResultSetMetaData rsmd = rs.getMetaData (); 
+		int numCol = rsmd.getColumnCount (); 
+	 
+		//iterates through the result set and saves the data returned by the query. 
+		List<List<String>> result  = new ArrayList<List<String>>(); 
+		while (rs.next()){
+			List<String> record = new ArrayList<String>(); 
+			for (int i=1; i<=numCol; ++i) 
+				record.add(rs.getString (i)); 
+			result.add(record); 
+		}//end while 
+		return result;
+	}//end readResult
+
+	/**
+	 * Method to fetch the last value from sequence. This
+	 * method issues the query to the DBMS and returns the current 
+	 * value of sequence used for autogenerated keys
+	 * 
+	 * @param sequence name of the DB sequence
+	 * @return current value of a sequence
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	
+	public int getCurrSeqVal(String sequence) throws SQLException {
+		List<List<String>> result = executeQueryAndReturnResult (String.format("Select currval('%s')", sequence));
+		if (result.size () > 0) return Integer.parseInt (result.get (0).get (0));
+		return -1;
+	}
+
+	/**
+	 * Method to advance a sequence. This method issues the query to the
+	 * DBMS and returns the next value of sequence used for autogenerated
+	 * keys
+	 * 
+	 * @param sequence name of the DB sequence
+	 * @return next value of a sequence
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int getNextSeqVal(String sequence) throws SQLException {
+		//sequences ignore transactions, so a transaction open on this thread
+		//is left out: its pending writes stay unsent and batched
+		UnitOfWork unit = this._unit.get ();
+		this._unit.remove ();
+		try{
+			List<List<String>> result = executePreparedQueryAndReturnResult ("SELECT nextval(?)", sequence);
+			return Integer.parseInt (result.get (0).get (0));
+		}finally{
+			if (unit != null)
+				this._unit.set (unit);
+		}
+	}
+
+	/**
+	 * Method to advance a sequence several times in one round trip.
+	 * 
+	 * @param sequence name of the DB sequence
+	 * @param count number of values wanted
+	 * @return the next count values of the sequence
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int[] getNextSeqVals(String sequence, int count) throws SQLException {
+		UnitOfWork unit = this._unit.get ();
+		this._unit.remove ();
+		try{
+			List<List<String>> result = executePreparedQueryAndReturnResult ("SELECT nextval(?) FROM generate_series(1, ?)", sequence, count);
+			int[] values = new int[result.size ()];
+			for (int i = 0; i < values.length; ++i)
+				values[i] = Integer.parseInt (result.get (i).get (0));
+			return values;
+		}finally{
+			if (unit != null)
+				this._unit.set (unit);
+		}
+	}
+
+	/**
+	 * Method to run the statements of a workflow in one transaction.  Their
+	 * writes are batched (see UnitOfWork) and committed together, or rolled
+	 * back together when one fails.  A transaction that fails on a
+	 * serialization failure or a deadlock is rolled back and run again, up
+	 * to TRANSACTION_ATTEMPTS times.  Called inside a transaction, the work
+	 * becomes part of it.
+	 * 
+	 * @param work the statements, run through the execute methods
+	 * @throws java.sql.SQLException when the work or the commit failed
+	 */
+	public void runInTransaction(UnitOfWork.Work work) throws SQLException {
+		if (this._unit.get () != null){
+			work.run ();
+			return;
+		}//end if
+		for (int attempt = 1; ; ++attempt){
+			PooledConnection conn = borrowPooled ();
+			Connection connection = conn.getConnection ();
+			UnitOfWork unit = new UnitOfWork (conn, this._metrics);
+			try{
+				connection.setAutoCommit (false);
+				this._unit.set (unit);
+				work.run ();
+				unit.flush ();
+				long start = System.nanoTime ();
+				boolean failed = true;
+				try{
+					connection.commit ();
+					failed = false;
+				}finally{
+					this._metrics.statement ("COMMIT", NO_PARAMS, start, 0, 0, failed);
+				}
+				this._unit.remove ();
+				bumpVersions (conn, unit.getVersions ());
+				unit.committed ();
+				return;
+			}catch (SQLException e){
+				conn.checkBroken (e);
+				if (!conn.broken)
+					connection.rollback ();
+				if (attempt >= TRANSACTION_ATTEMPTS || !UnitOfWork.isRetryable (e))
+					throw e;
+			}finally{
+				this._unit.remove ();
+				try{
+					if (!conn.broken)
+						connection.setAutoCommit (true);
+				}catch (SQLException e){
+					conn.checkBroken (e);
+				}finally{
+					this._pool.release (conn);
+				}
+			}
+			//back off a random time that doubles with every attempt
+			try{
+				Thread.sleep ((long) (Math.random () * (5L << attempt)));
+			}catch (InterruptedException e){
+				Thread.currentThread ().interrupt ();
+				throw new SQLException ("Interrupted while retrying a transaction", e);
+			}
+		}//end for
+	}//end runInTransaction
+
+	//moves on the versions a committed transaction asked for, on its connection; the writes
+	//are committed, so a failure here is not thrown, it only leaves other processes stale
+	private void bumpVersions (PooledConnection conn, Collection<String> sequences){
+		if (sequences.isEmpty ())
+			return;
+		long start = System.nanoTime ();
+		Object[] params = {sequences.toArray (new String[sequences.size ()])};
+		boolean failed = true;
+		try{
+			PreparedStatement stmt = conn.prepare (BUMP_VERSIONS);
+			bind (stmt, params);
+			stmt.executeQuery ().close ();
+			failed = false;
+		}catch (SQLException e){
+			conn.checkBroken (e);
+			err.println ("Cannot move the versions " + sequences + " on: " + e.getMessage ());
+		}finally{
+			this._metrics.statement (BUMP_VERSIONS, params, start, sequences.size (), 0, failed);
+		}
+	}
+
+	/**
+	 * Method to move version sequences on once the writes before it are
+	 * committed: after the commit of the transaction open on this thread,
+	 * once however many of its writes asked, or now when there is none.
+	 * Moving a sequence takes no lock, so concurrent writers do not queue
+	 * on a version; moving it after the commit means a process that reads
+	 * a version and then the rows never keeps rows older than the version.
+	 * 
+	 * @param sequences the names of the version sequences
+	 * @throws java.sql.SQLException when there is no transaction and the
+	 *         versions cannot be moved
+	 */
+	public void bumpAfterCommit (String... sequences) throws SQLException {
+		UnitOfWork unit = this._unit.get ();
+		if (unit == null){
+			executePreparedQueryAndReturnResult (BUMP_VERSIONS, (Object) sequences);
+			return;
+		}//end if
+		for (String sequence : sequences)
+			unit.bumpAfterCommit (sequence);
+	}
+
+	/**
+	 * Method to get a new primary key from a sequence.  Keys are reserved
+	 * from the DBMS in blocks, so most calls do not touch the database.
+	 * 
+	 * @param sequence name of the DB sequence, see IdAllocator
+	 * @return a key no other session will receive
+	 * @throws java.sql.SQLException when failed to reserve a block of keys
+	 */
+	public int nextId(String sequence) throws SQLException {
+		return this._ids.next (sequence);
+	}
+
+	/**
+	 * Method to reserve the keys of a bulk insert, so the nextId calls for
+	 * its rows do not touch the database.
+	 * 
+	 * @param sequence name of the DB sequence, see IdAllocator
+	 * @param count number of keys about to be used
+	 * @throws java.sql.SQLException when failed to reserve the blocks
+	 */
+	public void reserveIds(String sequence, int count) throws SQLException {
+		this._ids.reserve (sequence, count);
+	}
+
+	/**
+	 * Method to run an action once the writes before it are committed: at
+	 * the commit of the transaction open on this thread, or now when there
+	 * is none.  Actions of a transaction that rolls back are dropped.  Used
+	 * to update caches only with rows that are stored.
+	 * 
+	 * @param action what to run, it must not throw
+	 */
+	public void afterCommit(Runnable action){
+		UnitOfWork unit = this._unit.get ();
+		if (unit != null)
+			unit.afterCommit (action);
+		else
+			action.run ();
+	}
+
+	/**
+	 * Method to drain the connection pool, closing every physical
+	 * connection once it is no longer borrowed.
+	 */
+	public void cleanup(){
+		if (this._pool != null){
+			this._pool.close (POOL_BORROW_TIMEOUT_MILLIS);
+		}//end if
+	}//end cleanup
+
+	/**
+	 * Method to borrow a pooled connection for a unit of work that spans
+	 * several statements.  It must be given back with releaseConnection.
+	 * 
+	 * @return a connection only the caller uses until it is released
+	 * @throws java.sql.SQLException when no connection could be obtained
+	 */
+	public PooledConnection borrowConnection() throws SQLException {
+		return borrowPooled ();
+	}
+
+	/**
+	 * Method to give back a connection obtained from borrowConnection.
+	 * 
+	 * @param conn the borrowed connection
+	 */
+	public void releaseConnection(PooledConnection conn){
+		this._pool.release (conn);
+	}
+
+	/**
+	 * @return the latency histograms of the statements and menu operations
+	 */
+	public Metrics getMetrics(){
+		return this._metrics;
+	}
+
+	/**
+	 * @return a one-line summary of the connection pool statistics
+	 */
+	public String getPoolStats(){
+		return this._pool.getStats ();
+	}
+
+	/**
+	 * The main execution method
+	 * 
+	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+	 */
+	public static void main (String[] args) {
+		//<dbname> <port> <user> followed by optional flags
+		List<String> positional = new ArrayList<String>();
+		String batchFile = null;
+		int commitSize = 1000;
+		String loadDir = null;
+		boolean rebuildIndexes = false;
+		String memoryDir = null;
+		String generateDir = null;
+		String analyzeDir = null;
+		double scale = 1;
+		long seed = 0;
+		boolean check = false;
+		boolean rebuildAggregates = false;
+		String metricsFile = null;
+		int servePort = -1;
+		String export = null;
+		String exportFile = null;
+		int exportLimit = Integer.MAX_VALUE;
+		int archiveMonths = -1;
+		String recordFile = null;
+		String replayFile = null;
+		int clerks = 8;
+		double rate = 0;
+		int sessions = -1;
+		String snapshotFile = null;
+		String restoreFile = null;
+		for (int i = 0; i < args.length; ++i) {
+			if (!args[i].startsWith ("--")) {
+				positional.add (args[i]);
+			}
+			else if (args[i].equals ("--memory") && i + 1 < args.length) {
+				memoryDir = args[++i];
+			}
+			else if (args[i].equals ("--batch") && i + 1 < args.length) {
+				batchFile = args[++i];
+			}
+			else if (args[i].equals ("--commit-size") && i + 1 < args.length) {
+				commitSize = Integer.parseInt (args[++i]);
+			}
+			else if (args[i].equals ("--load") && i + 1 < args.length) {
+				loadDir = args[++i];
+			}
+			else if (args[i].equals ("--rebuild-indexes")) {
+				rebuildIndexes = true;
+			}
+			else if (args[i].equals ("--check")) {
+				check = true;
+			}
+			else if (args[i].equals ("--metrics") && i + 1 < args.length) {
+				metricsFile = args[++i];
+			}
+			else if (args[i].equals ("--serve") && i + 1 < args.length) {
+				servePort = Integer.parseInt (args[++i]);
+			}
+			else if (args[i].equals ("--export") && i + 1 < args.length) {
+				export = args[++i];
+			}
+			else if (args[i].equals ("--out") && i + 1 < args.length) {
+				exportFile = args[++i];
+			}
+			else if (args[i].equals ("--limit") && i + 1 < args.length) {
+				exportLimit = Integer.parseInt (args[++i]);
+			}
+			else if (args[i].equals ("--archive") && i + 1 < args.length) {
+				archiveMonths = Integer.parseInt (args[++i]);
+			}
+			else if (args[i].equals ("--record") && i + 1 < args.length) {
+				recordFile = args[++i];
+			}
+			else if (args[i].equals ("--replay") && i + 1 < args.length) {
+				replayFile = args[++i];
+			}
+			else if (args[i].equals ("--clerks") && i + 1 < args.length) {
+				clerks = Integer.parseInt (args[++i]);
+			}
+			else if (args[i].equals ("--rate") && i + 1 < args.length) {
+				rate = Double.parseDouble (args[++i]);
+			}
+			else if (args[i].equals ("--sessions") && i + 1 < args.length) {
+				sessions = Integer.parseInt (args[++i]);
+			}
+			else if (args[i].equals ("--snapshot") && i + 1 < args.length) {
+				snapshotFile = args[++i];
+			}
+			else if (args[i].equals ("--restore") && i + 1 < args.length) {
+				restoreFile = args[++i];
+			}
+			else if (args[i].equals ("--rebuild-aggregates")) {
+				rebuildAggregates = true;
+			}
+			else if (args[i].equals ("--analyze") && i + 1 < args.length) {
+				analyzeDir = args[++i];
+			}
+			else if (args[i].equals ("--generate") && i + 1 < args.length) {
+				generateDir = args[++i];
+			}
+			else if (args[i].equals ("--scale") && i + 1 < args.length) {
+				scale = Double.parseDouble (args[++i]);
+			}
+			else if (args[i].equals ("--seed") && i + 1 < args.length) {
+				seed = Long.parseLong (args[++i]);
+			}
+			else {
+				usage ();
+				return;
+			}//end if
+		}//end for
+		if (memoryDir == null && generateDir == null && analyzeDir == null ? positional.size () != 3 : (positional.size () != 0 || batchFile != null || loadDir != null || restoreFile != null || check || rebuildAggregates || archiveMonths >= 0)
+			|| (export == null) != (exportFile == null) && archiveMonths < 0 || recordFile != null && replayFile != null) {
+			usage ();
+			return;
+		}//end if
+
+		//generate mode: write a synthetic data set in the data/*.csv formats and exit
+		if (generateDir != null) {
+			try{
+				new DataGenerator (scale, seed, Runtime.getRuntime ().availableProcessors ()).generate (new File (generateDir));
+			}catch(Exception e){
+				System.err.println (e.getMessage ());
+			}
+			return;
+		}//end if
+		
+		//analyze mode: run the reports over the CSV files, without a database, and exit
+		if (analyzeDir != null) {
+			try{
+				new CsvAnalytics (new File (analyzeDir), Runtime.getRuntime ().availableProcessors ())
+					.run (export, exportFile == null ? null : new File (exportFile), exportLimit);
+			}catch(Exception e){
+				System.err.println (e.getMessage ());
+			}
+			return;
+		}//end if
+
+		MechanicShop esql = null;
+		
+		try{
+			System.out.println("(1)");
+
+			if (memoryDir != null) {
+				//in-memory mode: no database, the tables come from the CSV files
+				System.out.print("Loading " + memoryDir + "...");
+				esql = new MechanicShop (MemoryShopStore.load (new File (memoryDir)));
+				System.out.println("Done");
+			}
+			else {
+				try {
+					Class.forName("org.postgresql.Driver");
+				}catch(Exception e){
+
+					System.out.println("Where is your PostgreSQL JDBC Driver? " + "Include in your library path!");
+					e.printStackTrace();
+					return;
+				}
+
+				System.out.println("(2)");
+				String dbname = positional.get(0);
+				String dbport = positional.get(1);
+				String user = positional.get(2);
+
+				esql = new MechanicShop (dbname, dbport, user, "");
+				new Migrations (esql).migrate ();
+				new Partitions (esql).prepare ();
+			}//end if
+			esql.getMetrics ().register ();
+
+			//recompute the service counts and bill totals of reports 9 and 10 and exit
+			if (rebuildAggregates) {
+				esql.getStore ().rebuildAggregates ();
+				System.out.println ("Rebuilt the aggregates");
+				return;
+			}//end if
+
+			//check mode: EXPLAIN the queries of the menu and exit
+			if (check) {
+				new Migrations (esql).check ();
+				return;
+			}//end if
+
+			//archive mode: move the months before the horizon out of the hot tables and exit
+			if (archiveMonths >= 0) {
+				new Partitions (esql).archive (archiveMonths, exportFile == null ? null : new File (exportFile));
+				return;
+			}//end if
+
+			//restore mode: replace the tables with a snapshot and exit
+			if (restoreFile != null) {
+				long start = System.nanoTime ();
+				Snapshot snapshot = Snapshot.read (new File (restoreFile));
+				System.out.println (String.format ("Read %s in %.3f s", snapshot.describe (), (System.nanoTime () - start) / 1e9));
+				new BulkLoader (esql, snapshot, rebuildIndexes).load ();
+				return;
+			}//end if
+
+			//snapshot mode: write the tables to a snapshot file and exit
+			if (snapshotFile != null) {
+				long start = System.nanoTime ();
+				Snapshot snapshot = esql.getStore () instanceof MemoryShopStore ? Snapshot.of ((MemoryShopStore) esql.getStore ()) : Snapshot.of (esql);
+				long bytes = snapshot.write (new File (snapshotFile));
+				System.out.println (String.format ("Wrote %s, %d bytes to %s in %.3f s", snapshot.describe (), bytes, snapshotFile, (System.nanoTime () - start) / 1e9));
+				return;
+			}//end if
+
+			//load mode: replace the tables with the CSV files of a directory and exit
+			if (loadDir != null) {
+				new BulkLoader (esql, new File (loadDir), rebuildIndexes).load ();
+				return;
+			}//end if
+
+			//export mode: write a report or a query to a file and exit
+			if (export != null) {
+				ReportExporter.export (esql, export, exportLimit, new File (exportFile));
+				return;
+			}//end if
+
+			//batch mode: run the operations of the file (or stdin for '-') and exit
+			if (batchFile != null) {
+				BufferedReader reader = batchFile.equals ("-") ? in : new BufferedReader (new FileReader (batchFile));
+				new BatchRunner (esql, commitSize).run (reader);
+				return;
+			}//end if
+
+			esql._customers = new CustomerIndex (esql.getStore ());
+			esql._customers.load ();
+
+			//replay mode: run the sessions of a script with concurrent clerks, report and exit
+			if (replayFile != null) {
+				List<List<String>> script = SessionScript.read (new File (replayFile));
+				new LoadDriver (esql, script, clerks, rate, sessions > 0 ? sessions : script.size (), seed).run ();
+				return;
+			}//end if
+
+			//record mode: the menu sessions below are appended to a script for LoadDriver
+			if (recordFile != null)
+				recording = new SessionScript (new File (recordFile));
+			
+			//server mode: the menu for every clerk that connects, until the process is stopped
+			if (servePort >= 0) {
+				//the process is stopped with a signal, which skips the finally below
+				final MechanicShop shop = esql;
+				final String dumpFile = metricsFile;
+				Runtime.getRuntime ().addShutdownHook (new Thread (){
+					public void run () {
+						try{
+							if (dumpFile != null)
+								shop.getMetrics ().dump (new File (dumpFile));
+						}catch(IOException e){
+							System.err.println ("Cannot write the metrics to " + dumpFile + ": " + e.getMessage ());
+						}
+						if (recording != null)
+							recording.close ();
+						shop.cleanup ();
+					}
+				});
+				new ShopServer (esql, servePort).serve ();
+				return;
+			}//end if
+
+			menu (esql);
+		}catch(Exception e){
+			System.err.println (e.getMessage ());
+		}finally{
+			if (recording != null)
+				recording.close ();
+			if (esql != null && metricsFile != null) {
+				try{
+					esql.getMetrics ().dump (new File (metricsFile));
+				}catch(IOException e){
+					System.err.println ("Cannot write the metrics to " + metricsFile + ": " + e.getMessage ());
+				}
+			}//end if
+			try{
+				if(esql != null && esql._pool != null) {
+					System.out.print("Disconnecting from database...");
+					esql.cleanup ();
+					System.out.println("Done\n\nBye!");
+				}//end if
+				else if(esql != null) {
+					System.out.println("\nBye!");
+				}//end else
+			}catch(Exception e){
+				// ignored.
+			}
+		}
+	}
+
+	/**
+	 * Method to show the main menu and run the operations chosen until EXIT
+	 * is chosen or the input ends.  The lines typed are appended to the
+	 * recording, if any, as one session.
+	 * 
+	 * @param esql the shop, or a session of it in server mode
+	 */
+	static void menu (MechanicShop esql) throws Exception {
+		if (recording != null)
+			recording.begin ();
+		try{
+			menuLoop (esql);
+		}finally{
+			if (recording != null)
+				recording.end ();
+		}
+	}//end menu
+
+	private static void menuLoop (MechanicShop esql) throws Exception {
+		boolean keepon = true;
+		while(keepon){
+			out.println("MAIN MENU");
+			out.println("---------");
+			out.println("1. AddCustomer");
+			out.println("2. AddMechanic");
+			out.println("3. AddCar");
+			out.println("4. InsertServiceRequest");
+			out.println("5. CloseServiceRequest");
+			out.println("6. ListCustomersWithBillLessThan100");
+			out.println("7. ListCustomersWithMoreThan20Cars");
+			out.println("8. ListCarsBefore1995With50000Milles");
+			out.println("9. ListKCarsWithTheMostServices");
+			out.println("10. ListCustomersInDescendingOrderOfTheirTotalBill");
+			out.println("11. < EXIT");
+			out.println("12. ShowMetrics");
+			
+			/*
+			 * FOLLOW THE SPECIFICATION IN THE PROJECT DESCRIPTION
+			 */
+			int choice = readChoice();
+			//the menu operations are timed, leaving out the time spent on the prompts
+			Metrics.Operation operation = choice >= 1 && choice <= OPERATIONS.length ? esql.getMetrics ().begin (OPERATIONS[choice - 1]) : null;
+			try{
+				switch (choice){
+					case 1: AddCustomer(esql); break;
+					case 2: AddMechanic(esql); break;
+					case 3: AddCar(esql); break;
+					case 4: InsertServiceRequest(esql); break;
+					case 5: CloseServiceRequest(esql); break;
+					case 6: ListCustomersWithBillLessThan100(esql); break;
+					case 7: ListCustomersWithMoreThan20Cars(esql); break;
+					case 8: ListCarsBefore1995With50000Milles(esql); break;
+					case 9: ListKCarsWithTheMostServices(esql); break;
+					case 10: ListCustomersInDescendingOrderOfTheirTotalBill(esql); break;
+					case MENU_EXIT: keepon = false; break;
+					case 12: ShowMetrics(esql); break;
+				}
+			}finally{
+				if (operation != null)
+					operation.end ();
+			}
+		}
+	}//end menuLoop
+
+	private static void usage () {
+		System.err.println (
+			"Usage: " + "java [-classpath <classpath>] " + MechanicShop.class.getName () +
+	            " <dbname> <port> <user> [--batch <file|-> [--commit-size <n>]] [--load <data dir> [--rebuild-indexes]] [--check] [--rebuild-aggregates] [--serve <port>] [--metrics <file>] [--record <script>]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " <dbname> <port> <user> --archive <months> [--out <export dir>]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " <dbname> <port> <user> --restore <snapshot> [--rebuild-indexes]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " <dbname> <port> <user> | --memory <data dir|snapshot> --snapshot <file>");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " --memory <data dir|snapshot> [--serve <port>] [--metrics <file>] [--record <script>]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " <dbname> <port> <user> | --memory <data dir> --replay <script> [--clerks <n>] [--rate <sessions/s>] [--sessions <n>] [--seed <n>]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " <dbname> <port> <user> | --memory <data dir> --export <6-10[:args]|query> --out <file.csv|file.jsonl>[.gz] [--limit <n>]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " --generate <data dir> [--scale <factor>] [--seed <n>]");
+		System.err.println (
+			"       " + "java [-classpath <classpath>] " + MechanicShop.class.getName () + " --analyze <data dir> [--export <6-10[:args]> --out <file>] [--limit <n>]");
+	}//end usage
+
+	public static int readChoice() {
+		int input;
+		// returns only if a correct value is given.
+		do {
+			out.print("Please make your choice: ");
+			try { // read the integer, parse it and break.
+				String line = in.readLine();
+				if (line == null) // the input ended
+					return MENU_EXIT;
+				input = Integer.parseInt(line);
+				break;
+			}catch (IOException e) { // the client of the session is gone
+				return MENU_EXIT;
+			}catch (Exception e) {
+				out.println("Your input is invalid!");
+				continue;
+			}//end try
+		}while (true);
+		return input;
+	}//end readChoice
+	
+	/*
+	 * Domain checks shared by the prompts and the batch mode.  They mirror
+	 * the CHECK constraints of the domains in create.sql.
+	 */
+
+	//phone numbers are stored as (xxx)xxx-xxxx
+	public static boolean isValidPhone(String phone){
+		//TODO Check if chars entered are numeric
+		return phone.length() == 13 && phone.charAt(0) == '(' && phone.charAt(4) == ')' && phone.charAt(8) == '-';
+	}
+
+	//_YEARS
+	public static boolean isValidExperience(int years){
+		return years >= 0 && years < 100;
+	}
+
+	//_YEAR
+	public static boolean isValidYear(int year){
+		return year >= 1970;
+	}
+
+	//_PINTEGER
+	public static boolean isValidOdometer(int miles){
+		return miles > 0;
+	}
+
+	//_PINTEGER
+	public static boolean isValidBill(int bill){
+		return bill > 0;
+	}
+
+	public static void AddCustomer(MechanicShop esql){//1	
+		String fname, lname, phone = "", address;
+		int id; //Customer PRIMARY KEY
+
+		boolean correctFormat = false;
+
+		try{
+			//Get customer info
+			out.print("Customer's first name: ");
+			fname = in.readLine();
+			out.print("Customer's last name: ");
+			lname = in.readLine();
+			out.print("Customer's phone number (xxx)xxx-xxxx: ");
+			while(!correctFormat){
+				phone = in.readLine();
+				if(!isValidPhone(phone)){
+					out.print("Enter the customer's phone number in the format (xxx)xxx-xxxx: ");
+				}
+				else{
+					correctFormat = true;
+				}
+			}
+			out.print("Customer's address: ");
+			address = in.readLine();
+			//Store info in DB
+			id = esql.getStore().addCustomer(fname, lname, phone, address);
+			if(esql._customers != null){
+				esql._customers.added(id, fname, lname, phone, address);
+			}
+		}catch(Exception e){
+			err.println(e.getMessage());
+			Metrics.failed(e);
+		}
+		
+	}
+	
+	public static void AddMechanic(MechanicShop esql){//2
+		String fname, lname, experience = "-1";
+		int id; //Mechanic PRIMARY KEY
+
+		//To check if a proper value for 'experience' has been given
+		boolean correctDomain = false;
+		int checkYears;
+
+		try{
+			//Get mechanic info
+			out.print("Mechanic's first name: ");
+			fname = in.readLine();
+			out.print("Mechanic's last name: ");
+			lname = in.readLine();
+			out.print("Mechanic's years of experience: ");
+			//Check if experience is in its declared domain
+			while(!correctDomain){
+				try{
+					experience = in.readLine();
+					checkYears = Integer.parseInt(experience);
+				}catch(NumberFormatException e){
+					out.println("Value entered must be an integer");
+					out.print("Mechanic's years of experience: ");
+					continue;
+				}
+				if(!isValidExperience(checkYears)){
+					out.print("Enter a value greater than or equal to 0 or less than 100: ");
+				}
+				else{
+					correctDomain = true;
+				}
+			}
+			//Store info in DB
+			id = esql.getStore().addMechanic(fname, lname, Integer.parseInt(experience));
+		}catch(Exception e){
+			err.println(e.getMessage());
+			Metrics.failed(e);
+		}
+	}
+	
+	public static void AddCar(MechanicShop esql){//3
+		try{
+			String[] car = readCar();
+			//Store info in DB
+			esql.getStore().addCar(car[0], car[1], car[2], Integer.parseInt(car[3]));
+		}catch(Exception e){
+			err.println(e.getMessage());
+			Metrics.failed(e);
+		}
+	}
+
+	/**
+	 * Method to ask for the details of a car without storing it.
+	 * 
+	 * @return the vin, make, model and year of the car
+	 */
+	static String[] readCar() throws IOException {
+		//VIN is Car PRIMARY KEY
+		String make, model, year = "-1", vin;
+
+		//To check if a proper value for 'year' has been given
+		boolean correctDomain = false;
+		int checkYear;
+
+		//Get car info
+		out.print("Car's VIN: ");
+		vin = in.readLine();
+		out.print("Car's make: ");
+		make = in.readLine();
+		out.print("Car's model: ");
+		model = in.readLine();
+		out.print("Car's year: ");
+		//Check if year is in its declared domain
+		while(!correctDomain){
+			try{
+				year = in.readLine();
+				checkYear = Integer.parseInt(year);
+			}catch(NumberFormatException e){
+				out.println("Value entered must be an integer");
+				out.print("Car's year: ");
+				continue;
+			}
+			if(!isValidYear(checkYear)){
+				out.print("Car's year must be greater than or equal to 1970: ");
+			}
+			else{
+				correctDomain = true;
+			}
+		}
+		return new String[]{vin, make, model, year};
+	}
+	
+	public static void InsertServiceRequest(final MechanicShop esql){//4
+		String input = ""; //For getting user input
+		boolean chosen = false;
+		String id = ""; //id of customer initiating the service request
+		String vin = ""; //VIN of car needing the service
+		String[] newCar = null; //The car to add first when the customer has none
+		int odometer = 0; //Number of miles on the cars odometer
+		String complaint = ""; //The reason for bringing the car in for service
+
+		try{
+			out.print("Enter customer's last name or phone number: ");
+			String lname = in.readLine();
+			
+			//Select customers whose name is or is close to the given last name, best first
+			List<List<String>> potentialCustomers = esql._customers != null ? esql._customers.find(lname) : esql.getStore().findCustomersByLastName(lname);
+			//a single customer is chosen for the clerk only when the name is an exact match
+			boolean exact = potentialCustomers.size() == 1 && potentialCustomers.get(0).get(4).equalsIgnoreCase(lname.trim());
+			
+			//If no customer exists with given last name
+			if(potentialCustomers.size() == 0){
+				out.println("Sorry, we couldn't find any customers with that last name");
+				out.println("Would you like to add a new customer?");
+				out.println("1. Yes\n2. No");
+				input = in.readLine();
+				if(Integer.parseInt(input) == 1){
+					AddCustomer(esql);
+					return;
+				}
+				else if(Integer.parseInt(input) == 2){
+					//do nothing
+					return;
+				}
+			}
+			
+			//If more than one customer matches, or only a close one
+			else if(!exact){
+				//Print out all the matching customers, best match first
+				for(int i = 0; i < potentialCustomers.size(); ++i){
+					out.println(Integer.toString(i + 1) + ". Name: " + potentialCustomers.get(i).get(0) + " " + potentialCustomers.get(i).get(4) + ", Phone Number: " + potentialCustomers.get(i).get(1) + ", Address: " + potentialCustomers.get(i).get(2));
+				}
+				out.println("0. None of these, add a new customer");
+				//Choose the customer who is initiating the service request
+				out.println("Choose which customer initiated the service request");
+				chosen = false;
+				while(!chosen){
+					input = in.readLine();//TODO Input error checking
+					if(Integer.parseInt(input) > potentialCustomers.size() || Integer.parseInt(input) < 0){
+						out.println("Invalid input, enter a number from 0-" + Integer.toString(potentialCustomers.size()));
+					}
+					else{
+						chosen = true;
+					}
+				}
+				if(Integer.parseInt(input) == 0){
+					AddCustomer(esql);
+					return;
+				}
+				//id of chosen customer
+				id = potentialCustomers.get(Integer.parseInt(input) - 1).get(3);
+			}
+			
+			//If only one customer exists with the given last name
+			else{
+				//Get the id of the customer
+				id = potentialCustomers.get(0).get(3);
+			}
+			
+			//Get the cars belonging to the customer
+			List<List<String>> cars = esql.getStore().getCarsOfCustomers(Integer.parseInt(id));
+			
+			//Print list of cars to potentially service
+			if(cars.size() > 0){
+				out.println("Choose which car needs to be serviced:");
+				for(int i = 0; i < cars.size(); ++i){
+					//Print car year make model, VIN
+					out.println(Integer.toString(i + 1) + ": " + cars.get(i).get(4) + " " + cars.get(i).get(2) + " " + cars.get(i).get(3) + ", VIN: " + cars.get(i).get(1));
+				}
+				out.println();
+				chosen = false;
+				while(!chosen){
+					input = in.readLine();
+					if(Integer.parseInt(input) > cars.size() || Integer.parseInt(input) <= 0){
+						out.print("Invalid input, enter a number from 1-" + Integer.toString(cars.size()));
+					}
+					else{
+						chosen = true;
+						out.println();
+					}
+				}
+				//VIN of chosen car
+				vin = cars.get(Integer.parseInt(input) - 1).get(1);
+			}
+			else{
+				//Ask for a new car, stored with the request below
+				newCar = readCar();
+				vin = newCar[0];
+			}
+
+			//Get the miles from the odometer
+			out.println("Enter the amount of miles displayed on the odometer: ");
+			chosen = false;
+			while(!chosen){
+				input = in.readLine();
+				if(!isValidOdometer(Integer.parseInt(input))){
+					out.println("Invalid input, enter a number greater than 0");
+				}
+				else{
+					chosen = true;
+					odometer = Integer.parseInt(input);
+				}
+			}
+
+			//Get the current date
+			Date date = new Date(System.currentTimeMillis());
+
+			//Get the customer's complaint
+			out.println("Enter a brief description of the problem: ");
+			complaint = in.readLine();
+			out.println();
+
+			//Store the new car, its 'Owns' row and the service request in one transaction
+			final String[] car = newCar;
+			final int customerId = Integer.parseInt(id);
+			final String carVin = vin;
+			final Date requestDate = date;
+			final int miles = odometer;
+			final String problem = complaint;
+			esql.getStore().runInTransaction(new UnitOfWork.Work(){
+				public void run() throws SQLException{
+					if(car != null){
+						esql.getStore().addCar(car[0], car[1], car[2], Integer.parseInt(car[3]));
+						esql.getStore().addOwnership(customerId, carVin);
+					}
+					esql.getStore().addServiceRequest(customerId, carVin, requestDate, miles, problem);
+				}
+			});
+		}catch(Exception e){
+			err.println(e.getMessage());
+			Metrics.failed(e);
+		}
+	}
+	
+	public static void CloseServiceRequest(MechanicShop esql) throws Exception{//5
+		try{
+			out.println("1. Close one service request");
+			out.println("2. Close many service requests");
+			String input = in.readLine();
+			if(input == null){
+				return;
+			}
+			if(input.trim().equals("2")){
+				CloseServiceRequests(esql);
+				return;
+			}
+
+			//The request must exist and not be closed yet
+			int rid;
+			while(true){
+				Integer value = readInteger("Enter the service request id: ");
+				if(value == null){
+					return;
+				}
+				int[] checked = esql.getStore().checkClosings(new Integer[]{value}, new Integer[]{null});
+				if(checked[0] == ShopStore.NO_SUCH_REQUEST){
+					out.println("There is no service request with that id");
+				}
+				else if(checked[0] == ShopStore.ALREADY_CLOSED){
+					out.println("That service request is already closed");
+				}
+				else{
+					rid = value;
+					break;
+				}
+			}
+
+			//The mechanic who did the work
+			int mid;
+			while(true){
+				Integer value = readInteger("Enter the id of the mechanic: ");
+				if(value == null){
+					return;
+				}
+				List<List<String>> mechanics = esql.getStore().getMechanics(value);
+				if(mechanics.isEmpty()){
+					out.println("There is no mechanic with that id");
+				}
+				else{
+					out.println("Mechanic: " + mechanics.get(0).get(1) + " " + mechanics.get(0).get(2));
+					mid = value;
+					break;
+				}
+			}
+
+			int bill;
+			while(true){
+				Integer value = readInteger("Enter the bill: ");
+				if(value == null){
+					return;
+				}
+				if(!isValidBill(value)){
+					out.println("Invalid input, enter a number greater than 0");
+				}
+				else{
+					bill = value;
+					break;
+				}
+			}
+
+			out.println("Enter a comment on the work done: ");
+			String comment = in.readLine();
+
+			//Closed today
+			Date date = new Date(System.currentTimeMillis());
+			int wid = esql.getStore().addClosedRequest(rid, mid, date, comment == null ? "" : comment, bill);
+			out.println("Service request " + rid + " closed, wid " + wid);
+		}catch(Exception e){
+			err.println(e.getMessage());
+			Metrics.failed(e);
+		}
+	}
+
+	/**
+	 * Method to close many service requests at once, from a file or typed
+	 * in, one per line as rid,mid,bill,comment.  All the lines are checked
+	 * with one query, and the valid ones are stored as one batched
+	 * transaction.  The invalid ones are listed and left out.
+	 */
+	static void CloseServiceRequests(MechanicShop esql) throws IOException, SQLException {
+		out.print("File with one closing per line (rid,mid,bill,comment), or nothing to type them: ");
+		String path = in.readLine();
+		List<String> lines = new ArrayList<String>();
+		if(path != null && !path.trim().isEmpty()){
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path.trim()), "UTF-8"));
+			try{
+				for(String line = reader.readLine(); line != null; line = reader.readLine()){
+					if(!line.trim().isEmpty()){
+						lines.add(line);
+					}
+				}
+			}finally{
+				reader.close();
+			}
+		}
+		else{
+			out.println("Enter one closing per line as rid,mid,bill,comment, and an empty line to finish:");
+			for(String line = in.readLine(); line != null && !line.trim().isEmpty(); line = in.readLine()){
+				lines.add(line);
+			}
+		}
+
+		//Parse the lines, keeping the first closing of every request
+		List<String[]> closings = new ArrayList<String[]>();
+		Set<Integer> rids = new HashSet<Integer>();
+		int rejected = 0;
+		for(int i = 0; i < lines.size(); ++i){
+			String[] f = lines.get(i).split(",", 4);
+			String problem = null;
+			try{
+				if(f.length < 3){
+					problem = "expected rid,mid,bill,comment";
+				}
+				else{
+					int rid = Integer.parseInt(f[0].trim());
+					Integer.parseInt(f[1].trim());
+					if(!isValidBill(Integer.parseInt(f[2].trim()))){
+						problem = "the bill must be greater than 0";
+					}
+					else if(!rids.add(rid)){
+						problem = "the request is closed by an earlier line";
+					}
+				}
+			}catch(NumberFormatException e){
+				problem = "rid, mid and bill must be integers";
+			}
+			if(problem != null){
+				out.println("Line " + (i + 1) + ": " + problem);
+				++rejected;
+			}
+			else{
+				closings.add(new String[]{f[0].trim(), f[1].trim(), f[2].trim(), f.length > 3 ? f[3].trim() : "", Integer.toString(i + 1)});
+			}
+		}
+
+		//Check every request and mechanic with one query
+		Integer[] checkRids = new Integer[closings.size()];
+		Integer[] checkMids = new Integer[closings.size()];
+		for(int i = 0; i < closings.size(); ++i){
+			checkRids[i] = Integer.valueOf(closings.get(i)[0]);
+			checkMids[i] = Integer.valueOf(closings.get(i)[1]);
+		}
+		int[] checked = closings.isEmpty() ? new int[0] : esql.getStore().checkClosings(checkRids, checkMids);
+		int valid = 0;
+		for(int i = 0; i < checked.length; ++i){
+			if(checked[i] != ShopStore.CLOSING_OK){
+				String[] problems = {"", "there is no service request " + checkRids[i], "service request " + checkRids[i] + " is already closed", "there is no mechanic " + checkMids[i]};
+				out.println("Line " + closings.get(i)[4] + ": " + problems[checked[i]]);
+				++rejected;
+			}
+			else{
+				++valid;
+			}
+		}
+
+		//Store the valid closings in one transaction
+		int[] rid = new int[valid], mid = new int[valid], bill = new int[valid];
+		String[] comment = new String[valid];
+		for(int i = 0, j = 0; i < checked.length; ++i){
+			if(checked[i] == ShopStore.CLOSING_OK){
+				String[] closing = closings.get(i);
+				rid[j] = checkRids[i];
+				mid[j] = checkMids[i];
+				bill[j] = Integer.parseInt(closing[2]);
+				comment[j++] = closing[3];
+			}
+		}
+		long start = System.nanoTime();
+		if(valid > 0){
+			esql.getStore().addClosedRequests(rid, mid, new Date(System.currentTimeMillis()), comment, bill);
+		}
+		out.println(String.format("Closed %d service requests in %.1f ms, %d rejected", valid, (System.nanoTime() - start) / 1e6, rejected));
+	}
+
+	/**
+	 * Method to read an integer, asking again until one is entered.
+	 * 
+	 * @return the integer, or null when the input ends or is left empty
+	 */
+	static Integer readInteger(String prompt) throws IOException {
+		out.print(prompt);
+		while(true){
+			String line = in.readLine();
+			if(line == null || line.trim().isEmpty()){
+				return null;
+			}
+			try{
+				return Integer.valueOf(line.trim());
+			}catch(NumberFormatException e){
+				out.print("Value entered must be an integer: ");
+			}
+		}
+	}
+	
+	public static void ListCustomersWithBillLessThan100(MechanicShop esql){//6
+		ShowReport(esql, ReportDefinition.get(6));
+	}
+	
+	public static void ListCustomersWithMoreThan20Cars(MechanicShop esql){//7
+		ShowReport(esql, ReportDefinition.get(7));
+	}
+	
+	public static void ListCarsBefore1995With50000Milles(MechanicShop esql){//8
+		ShowReport(esql, ReportDefinition.get(8));
+	}
+	
+	public static void ListKCarsWithTheMostServices(MechanicShop esql){//9
+		ShowReport(esql, ReportDefinition.get(9));
+	}
+	
+	public static void ListCustomersInDescendingOrderOfTheirTotalBill(MechanicShop esql){//10
+		ShowReport(esql, ReportDefinition.get(10));
+	}
+
+	/**
+	 * Method to ask for the parameters of a report, an empty answer keeping
+	 * the default, and show it page by page.
+	 */
+	static void ShowReport(final MechanicShop esql, final ReportDefinition report){
+		try{
+			String[] parameters = report.getParameters();
+			final int[] args = report.getDefaults();
+			for(int i = 0; i < parameters.length; ++i){
+				Integer value = readInteger(parameters[i] + " [" + args[i] + "]: ");
+				if(value != null){
+					args[i] = value;
+				}
+			}
+			int total = report.total(args);
+			if(total <= 0){
+				out.println("Nothing to list.");
+				return;
+			}
+			new ReportPager(readPageSize(), total){
+				protected int fetch(Object[] after, int limit, RowHandler handler) throws SQLException{
+					return report.fetch(esql.getStore(), args, after, limit, handler);
+				}
+				protected Object[] keyOf(Row row) throws SQLException{
+					return report.keyOf(row);
+				}
+				protected void print(int number, Row row) throws SQLException{
+					out.println(number + ". " + report.format(row));
+				}
+			}.run(in);
+			out.println();
+		}catch(Exception e){
+			err.println(e.getMessage());
+			Metrics.failed(e);
+		}
+	}
+	
+	public static void ShowMetrics(MechanicShop esql){//12
+		out.println(esql.getMetrics().report());
+		if(esql.getStore() instanceof JdbcShopStore){
+			out.println("Connection pool");
+			out.println(esql.getPoolStats());
+			out.println();
+			out.println("Caches");
+			out.println(((JdbcShopStore) esql.getStore()).getCacheStats());
+			out.println();
+		}
+	}
+	
+	/**
+	 * Method to ask for the rows per page of a report.  An empty answer, or
+	 * the end of the input, keeps PAGE_SIZE.
+	 */
+	static int readPageSize() throws IOException {
+		out.print("Rows per page [" + PAGE_SIZE + "]: ");
+		while(true){
+			String line = in.readLine();
+			if(line == null || line.trim().isEmpty()){
+				return PAGE_SIZE;
+			}
+			try{
+				int size = Integer.parseInt(line.trim());
+				if(size > 0){
+					return size;
+				}
+				out.print("Enter a number greater than 0: ");
+			}catch(NumberFormatException e){
+				out.print("Value entered must be an integer: ");
+			}
+		}
+	}//end readPageSize
+	
+}
@@ -0,0 +1,1155 @@
+/*
+ * Storage of the shop data
+ * ========================
+ *
+ * Target DBMS: in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * This class is an in-process implementation of ShopStore, so the shop can
+ * run without a database.
+ *
+ * Every table is a set of int columns: keys and numbers are stored as they
+ * are, dates as days since 1970-01-01, and strings as codes into one
+ * dictionary that keeps every distinct string once.  Open-addressing hash
+ * indexes map customer ids, VINs and rids to rows, and Owns rows of the
+ * same customer are chained through an extra column.  The reports scan
+ * these columns directly and keep only the rows of the page they return,
+ * except reports 9 and 10 which read aggregates kept up to date by the
+ * inserts.
+ *
+ * The tables are loaded from the data/*.csv files or from a Snapshot by
+ * load().  Changes are kept in memory only.
+ *
+ */
+
+public class MemoryShopStore implements ShopStore{
+	//Customer columns
+	static final int CUSTOMER_ID = 0, CUSTOMER_FNAME = 1, CUSTOMER_LNAME = 2, CUSTOMER_PHONE = 3, CUSTOMER_ADDRESS = 4;
+	//Mechanic columns
+	static final int MECHANIC_ID = 0, MECHANIC_FNAME = 1, MECHANIC_LNAME = 2, MECHANIC_EXPERIENCE = 3;
+	//Car columns
+	static final int CAR_VIN = 0, CAR_MAKE = 1, CAR_MODEL = 2, CAR_YEAR = 3;
+	//Owns columns, OWNS_PREVIOUS is the previous Owns row of the same customer or -1
+	static final int OWNS_ID = 0, OWNS_CUSTOMER = 1, OWNS_VIN = 2, OWNS_PREVIOUS = 3;
+	//Service_Request columns
+	static final int REQUEST_RID = 0, REQUEST_CUSTOMER = 1, REQUEST_VIN = 2, REQUEST_DATE = 3, REQUEST_ODOMETER = 4, REQUEST_COMPLAINT = 5;
+	//Closed_Request columns
+	static final int CLOSED_WID = 0, CLOSED_RID = 1, CLOSED_MID = 2, CLOSED_DATE = 3, CLOSED_COMMENT = 4, CLOSED_BILL = 5;
+
+	//every string of every table
+	final Dictionary strings = new Dictionary();
+
+	final Table customer = new Table(5);
+	final Table mechanic = new Table(4);
+	final Table car = new Table(4);
+	final Table owns = new Table(4);
+	final Table request = new Table(6);
+	final Table closed = new Table(6);
+
+	//primary key and foreign key indexes, key -> row
+	final IntIndex customerById = new IntIndex();
+	final IntIndex mechanicById = new IntIndex();
+	final IntIndex carByVin = new IntIndex();
+	final IntIndex requestByRid = new IntIndex();
+	//rid -> Closed_Request row, a request is closed at most once
+	final IntIndex closedByRid = new IntIndex();
+	//customer id -> last Owns row of the customer
+	final IntIndex lastOwnsOfCustomer = new IntIndex();
+
+	//service requests per car row, and the car rows ranked by it, see countRequest
+	int[] requestsOfCar = new int[64];
+	int[] carsByRequests = new int[64];
+	int[] rankOfCar = new int[64];
+	//rank of the first car with a given number of requests
+	int[] firstRankWithRequests = new int[64];
+	//sum of the bills per customer row, and {total, customer id} of the customers with a bill, highest first
+	long[] billOfCustomer = new long[64];
+	final TreeSet<long[]> customersByBill = new TreeSet<long[]>(new Comparator<long[]>(){
+		public int compare(long[] a, long[] b){
+			int byBill = Long.compare(b[0], a[0]);
+			return byBill != 0 ? byBill : Long.compare(b[1], a[1]);
+		}
+	});
+
+	//number of customers added, the version of Customer
+	private long customerVersion = 0;
+
+	//next keys to hand out
+	private int nextCustomerId = 0;
+	private int nextMechanicId = 0;
+	private int nextOwnershipId = 0;
+	private int nextRid = 0;
+	private int nextWid = 0;
+
+	/**
+	 * Method to build a store from the CSV files of a data directory, in the
+	 * format of the data/ folder of the project, or from a snapshot file.
+	 *
+	 * @param dataDir the directory holding customer.csv, mechanic.csv, ...,
+	 *        or a file written by Snapshot
+	 * @return the loaded store
+	 * @throws java.io.IOException when a file cannot be read or parsed
+	 */
+	public static MemoryShopStore load(File dataDir) throws IOException {
+		if(dataDir.isFile()){
+			return load(Snapshot.read(dataDir));
+		}
+		try{
+			return loadFiles(dataDir);
+		}catch(UncheckedIOException e){
+			throw e.getCause();
+		}
+	}
+
+	private static MemoryShopStore loadFiles(File dataDir) throws IOException {
+		MemoryShopStore store = new MemoryShopStore();
+		for(String[] f : new CsvFile(dataDir, "customer.csv", 5)){
+			store.insertCustomer(Integer.parseInt(f[0]), f[1], f[2], f[3], f[4]);
+		}
+		for(String[] f : new CsvFile(dataDir, "mechanic.csv", 4)){
+			store.insertMechanic(Integer.parseInt(f[0]), f[1], f[2], Integer.parseInt(f[3]));
+		}
+		for(String[] f : new CsvFile(dataDir, "car.csv", 4)){
+			store.insertCar(f[0], f[1], f[2], Integer.parseInt(f[3]));
+		}
+		for(String[] f : new CsvFile(dataDir, "owns.csv", 3)){
+			store.insertOwns(Integer.parseInt(f[0]), Integer.parseInt(f[1]), store.strings.intern(f[2]));
+		}
+		for(String[] f : new CsvFile(dataDir, "service_request.csv", 6)){
+			store.insertRequest(Integer.parseInt(f[0]), Integer.parseInt(f[1]), store.strings.intern(f[2]), parseDate(f[3]), Integer.parseInt(f[4]), f[5]);
+		}
+		for(String[] f : new CsvFile(dataDir, "closed_request.csv", 6)){
+			store.insertClosed(Integer.parseInt(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]), parseDate(f[3]), f[4], Integer.parseInt(f[5]));
+		}
+		return store;
+	}//end load
+
+	/**
+	 * Method to build a store from the tables of a snapshot.
+	 */
+	static MemoryShopStore load(Snapshot snapshot){
+		MemoryShopStore store = new MemoryShopStore();
+		//the codes of the snapshot become the codes of the store
+		for(int code = 0; code < snapshot.stringCount; ++code){
+			store.strings.intern(snapshot.string(code));
+		}
+		Snapshot.Table table = snapshot.table("Customer");
+		int[][] c = table.values;
+		for(int row = 0; row < table.rows; ++row){
+			store.insertCustomer(c[0][row], snapshot.string(c[1][row]), snapshot.string(c[2][row]), snapshot.string(c[3][row]), snapshot.string(c[4][row]));
+		}
+		table = snapshot.table("Mechanic");
+		c = table.values;
+		for(int row = 0; row < table.rows; ++row){
+			store.insertMechanic(c[0][row], snapshot.string(c[1][row]), snapshot.string(c[2][row]), c[3][row]);
+		}
+		table = snapshot.table("Car");
+		c = table.values;
+		for(int row = 0; row < table.rows; ++row){
+			store.insertCar(snapshot.string(c[0][row]), snapshot.string(c[1][row]), snapshot.string(c[2][row]), c[3][row]);
+		}
+		table = snapshot.table("Owns");
+		c = table.values;
+		for(int row = 0; row < table.rows; ++row){
+			store.insertOwns(c[0][row], c[1][row], c[2][row]);
+		}
+		table = snapshot.table("Service_Request");
+		c = table.values;
+		for(int row = 0; row < table.rows; ++row){
+			store.insertRequest(c[0][row], c[1][row], c[2][row], c[3][row], c[4][row], snapshot.string(c[5][row]));
+		}
+		table = snapshot.table("Closed_Request");
+		c = table.values;
+		for(int row = 0; row < table.rows; ++row){
+			store.insertClosed(c[0][row], c[1][row], c[2][row], c[3][row], snapshot.string(c[4][row]), c[5][row]);
+		}
+		return store;
+	}//end load
+
+	/**
+	 * Method to turn a M/d/yyyy[ HH:mm] date of the CSV files into days
+	 * since 1970-01-01.
+	 */
+	static int parseDate(String text){
+		int slash1 = text.indexOf('/');
+		int slash2 = text.indexOf('/', slash1 + 1);
+		int month = Integer.parseInt(text.substring(0, slash1));
+		int day = Integer.parseInt(text.substring(slash1 + 1, slash2));
+		int year = Integer.parseInt(text.substring(slash2 + 1, slash2 + 5));
+		return (int) LocalDate.of(year, month, day).toEpochDay();
+	}
+
+	static int toDays(Date date){
+		return (int) date.toLocalDate().toEpochDay();
+	}
+
+	static Date toDate(int days){
+		return Date.valueOf(LocalDate.ofEpochDay(days));
+	}
+
+	/*
+	 * Row inserts.  They keep the indexes and the next keys up to date, and
+	 * check keys the way the constraints of create.sql do.
+	 */
+
+	private void insertCustomer(int id, String fname, String lname, String phone, String address){
+		int row = customer.add(id, strings.intern(fname), strings.intern(lname), strings.intern(phone), strings.intern(address));
+		customerById.put(id, row);
+		++customerVersion;
+		if(row == billOfCustomer.length){
+			billOfCustomer = Arrays.copyOf(billOfCustomer, row * 2);
+		}
+		nextCustomerId = Math.max(nextCustomerId, id + 1);
+	}
+
+	private void insertMechanic(int id, String fname, String lname, int experience){
+		mechanicById.put(id, mechanic.add(id, strings.intern(fname), strings.intern(lname), experience));
+		nextMechanicId = Math.max(nextMechanicId, id + 1);
+	}
+
+	private void insertCar(String vin, String make, String model, int year){
+		int vinCode = strings.intern(vin);
+		int row = car.add(vinCode, strings.intern(make), strings.intern(model), year);
+		carByVin.put(vinCode, row);
+		if(row == requestsOfCar.length){
+			requestsOfCar = Arrays.copyOf(requestsOfCar, row * 2);
+			carsByRequests = Arrays.copyOf(carsByRequests, row * 2);
+			rankOfCar = Arrays.copyOf(rankOfCar, row * 2);
+		}
+		//no request yet, ranked last
+		carsByRequests[row] = row;
+		rankOfCar[row] = row;
+	}
+
+	private void insertOwns(int ownershipId, int customerId, int vinCode){
+		int row = owns.add(ownershipId, customerId, vinCode, lastOwnsOfCustomer.get(customerId));
+		lastOwnsOfCustomer.put(customerId, row);
+		nextOwnershipId = Math.max(nextOwnershipId, ownershipId + 1);
+	}
+
+	private void insertRequest(int rid, int customerId, int vinCode, int date, int odometer, String complaint){
+		requestByRid.put(rid, request.add(rid, customerId, vinCode, date, odometer, strings.intern(complaint)));
+		countRequest(vinCode);
+		nextRid = Math.max(nextRid, rid + 1);
+	}
+
+	private void insertClosed(int wid, int rid, int mid, int date, String comment, int bill){
+		closedByRid.put(rid, closed.add(wid, rid, mid, date, strings.intern(comment), bill));
+		addBill(rid, bill);
+		nextWid = Math.max(nextWid, wid + 1);
+	}
+
+	/*
+	 * Aggregates of reports 9 and 10.
+	 */
+
+	/**
+	 * Method to count a service request of a car.  carsByRequests holds the
+	 * car rows by number of requests, most first, so the cars with c
+	 * requests are the ranks from firstRankWithRequests[c] up to
+	 * firstRankWithRequests[c - 1].  A count only grows by one: the car
+	 * swaps places with the first car of its group and the group starts one
+	 * rank later, which moves the car to the end of the group above.
+	 */
+	private void countRequest(int vinCode){
+		int carRow = carByVin.get(vinCode);
+		if(carRow < 0){
+			return;
+		}
+		int requests = requestsOfCar[carRow];
+		if(requests + 1 >= firstRankWithRequests.length){
+			firstRankWithRequests = Arrays.copyOf(firstRankWithRequests, firstRankWithRequests.length * 2);
+		}
+		int rank = rankOfCar[carRow];
+		int first = firstRankWithRequests[requests];
+		int other = carsByRequests[first];
+		carsByRequests[first] = carRow;
+		rankOfCar[carRow] = first;
+		carsByRequests[rank] = other;
+		rankOfCar[other] = rank;
+		firstRankWithRequests[requests] = first + 1;
+		requestsOfCar[carRow] = requests + 1;
+	}
+
+	//adds the bill of a closed request to the total of the customer of the request
+	private void addBill(int rid, int bill){
+		int requestRow = requestByRid.get(rid);
+		int customerRow = requestRow < 0 ? -1 : customerById.get(request.get(REQUEST_CUSTOMER, requestRow));
+		if(customerRow < 0){
+			return;
+		}
+		long id = customer.get(CUSTOMER_ID, customerRow);
+		customersByBill.remove(new long[]{billOfCustomer[customerRow], id});
+		billOfCustomer[customerRow] += bill;
+		customersByBill.add(new long[]{billOfCustomer[customerRow], id});
+	}
+
+	private static SQLException foreignKey(String table, String column, Object value){
+		return new SQLException("insert or update on table \"" + table + "\" violates foreign key constraint, key (" + column + ")=(" + value + ") is not present", "23503");
+	}
+
+	private int requireCar(String table, String vin) throws SQLException {
+		int vinCode = strings.find(vin);
+		if(vinCode < 0 || carByVin.get(vinCode) < 0){
+			throw foreignKey(table, "car_vin", vin);
+		}
+		return vinCode;
+	}
+
+	private void requireCustomer(String table, int customerId) throws SQLException {
+		if(customerById.get(customerId) < 0){
+			throw foreignKey(table, "customer_id", customerId);
+		}
+	}
+
+	public synchronized int addCustomer(String fname, String lname, String phone, String address){
+		int id = nextCustomerId;
+		insertCustomer(id, fname, lname, phone, address);
+		return id;
+	}
+
+	public synchronized int addMechanic(String fname, String lname, int experience){
+		int id = nextMechanicId;
+		insertMechanic(id, fname, lname, experience);
+		return id;
+	}
+
+	public synchronized void addCar(String vin, String make, String model, int year) throws SQLException {
+		int vinCode = strings.find(vin);
+		if(vinCode >= 0 && carByVin.get(vinCode) >= 0){
+			throw new SQLException("duplicate key value violates unique constraint \"car_pkey\", key (vin)=(" + vin + ") already exists", "23505");
+		}
+		insertCar(vin, make, model, year);
+	}
+
+	public synchronized int addOwnership(int customerId, String vin) throws SQLException {
+		requireCustomer("owns", customerId);
+		int vinCode = requireCar("owns", vin);
+		int id = nextOwnershipId;
+		insertOwns(id, customerId, vinCode);
+		return id;
+	}
+
+	public synchronized int addServiceRequest(int customerId, String vin, Date date, int odometer, String complaint) throws SQLException {
+		requireCustomer("service_request", customerId);
+		int vinCode = requireCar("service_request", vin);
+		int rid = nextRid;
+		insertRequest(rid, customerId, vinCode, toDays(date), odometer, complaint);
+		return rid;
+	}
+
+	public synchronized int addClosedRequest(int rid, int mid, Date date, String comment, int bill) throws SQLException {
+		requireClosing(rid, mid);
+		int wid = nextWid;
+		insertClosed(wid, rid, mid, toDays(date), comment, bill);
+		return wid;
+	}
+
+	public synchronized int[] addClosedRequests(int[] rids, int[] mids, Date date, String[] comments, int[] bills) throws SQLException {
+		//every row is checked before any is stored, so the closings are all or nothing
+		IntIndex seen = new IntIndex();
+		for(int i = 0; i < rids.length; ++i){
+			requireClosing(rids[i], mids[i]);
+			if(seen.get(rids[i]) >= 0){
+				throw closedTwice(rids[i]);
+			}
+			seen.put(rids[i], i);
+		}
+		int[] wids = new int[rids.length];
+		int days = toDays(date);
+		for(int i = 0; i < rids.length; ++i){
+			wids[i] = nextWid;
+			insertClosed(wids[i], rids[i], mids[i], days, comments[i], bills[i]);
+		}
+		return wids;
+	}
+
+	private void requireClosing(int rid, int mid) throws SQLException {
+		if(requestByRid.get(rid) < 0){
+			throw foreignKey("closed_request", "rid", rid);
+		}
+		if(closedByRid.get(rid) >= 0){
+			throw closedTwice(rid);
+		}
+		if(mechanicById.get(mid) < 0){
+			throw foreignKey("closed_request", "mid", mid);
+		}
+	}
+
+	private static SQLException closedTwice(int rid){
+		return new SQLException("duplicate key value violates unique constraint \"closed_request_rid_idx\", key (rid)=(" + rid + ") already exists", "23505");
+	}
+
+	/**
+	 * Method to run the work holding the lock of the store, so no other
+	 * operation sees it half done.  There is no rollback: every insert
+	 * checks its row before storing anything, but a failing step keeps the
+	 * steps before it.
+	 */
+	public synchronized void runInTransaction(UnitOfWork.Work work) throws SQLException {
+		work.run();
+	}
+
+	public synchronized int[] checkClosings(Integer[] rids, Integer[] mids){
+		int[] result = new int[rids.length];
+		for(int i = 0; i < rids.length; ++i){
+			if(rids[i] == null || requestByRid.get(rids[i]) < 0){
+				result[i] = NO_SUCH_REQUEST;
+			}
+			else if(closedByRid.get(rids[i]) >= 0){
+				result[i] = ALREADY_CLOSED;
+			}
+			else if(mids[i] != null && mechanicById.get(mids[i]) < 0){
+				result[i] = NO_SUCH_MECHANIC;
+			}
+			else{
+				result[i] = CLOSING_OK;
+			}
+		}
+		return result;
+	}
+
+	public synchronized List<List<String>> findCustomersByLastName(String lname){
+		List<List<String>> result = new ArrayList<List<String>>();
+		int[] lnames = customer.columns[CUSTOMER_LNAME];
+		for(int row = 0; row < customer.size; ++row){
+			if(strings.get(lnames[row]).equalsIgnoreCase(lname)){
+				result.add(Arrays.asList(
+					strings.get(customer.get(CUSTOMER_FNAME, row)).trim(),
+					strings.get(customer.get(CUSTOMER_PHONE, row)),
+					strings.get(customer.get(CUSTOMER_ADDRESS, row)),
+					Integer.toString(customer.get(CUSTOMER_ID, row)),
+					strings.get(lnames[row]).trim()));
+			}
+		}
+		return result;
+	}
+
+	public synchronized int listCustomers(RowHandler handler) throws SQLException {
+		MemoryRow row = new MemoryRow(MemoryRow.NUMBER, MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.TEXT);
+		for(int r = 0; r < customer.size; ++r){
+			row.number[0] = customer.get(CUSTOMER_ID, r);
+			row.text[1] = strings.get(customer.get(CUSTOMER_FNAME, r)).trim();
+			row.text[2] = strings.get(customer.get(CUSTOMER_LNAME, r)).trim();
+			row.text[3] = strings.get(customer.get(CUSTOMER_PHONE, r));
+			row.text[4] = strings.get(customer.get(CUSTOMER_ADDRESS, r));
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	public synchronized long getCustomerVersion(){
+		return customerVersion;
+	}
+
+	public synchronized List<List<String>> getCarsOfCustomers(Integer... customerIds){
+		//Owns rows are added in ownership_id order, so row order is ownership order
+		int[] rows = new int[16];
+		int count = 0;
+		for(Integer id : customerIds){
+			for(int row = lastOwnsOfCustomer.get(id); row >= 0; row = owns.get(OWNS_PREVIOUS, row)){
+				if(count == rows.length){
+					rows = Arrays.copyOf(rows, count * 2);
+				}
+				rows[count++] = row;
+			}
+		}
+		Arrays.sort(rows, 0, count);
+
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(int i = 0; i < count; ++i){
+			int carRow = carByVin.get(owns.get(OWNS_VIN, rows[i]));
+			if(carRow >= 0){
+				result.add(Arrays.asList(
+					Integer.toString(owns.get(OWNS_CUSTOMER, rows[i])),
+					strings.get(car.get(CAR_VIN, carRow)),
+					strings.get(car.get(CAR_MAKE, carRow)),
+					strings.get(car.get(CAR_MODEL, carRow)),
+					Integer.toString(car.get(CAR_YEAR, carRow))));
+			}
+		}
+		return result;
+	}
+
+	public synchronized List<List<String>> getCars(String... vins){
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(String vin : vins){
+			int vinCode = strings.find(vin);
+			int carRow = vinCode < 0 ? -1 : carByVin.get(vinCode);
+			if(carRow >= 0){
+				result.add(Arrays.asList(vin,
+					strings.get(car.get(CAR_MAKE, carRow)),
+					strings.get(car.get(CAR_MODEL, carRow)),
+					Integer.toString(car.get(CAR_YEAR, carRow))));
+			}
+		}
+		return result;
+	}
+
+	public synchronized List<List<String>> getMechanics(Integer... ids){
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(Integer id : ids){
+			int mechanicRow = mechanicById.get(id);
+			if(mechanicRow >= 0){
+				result.add(Arrays.asList(Integer.toString(id),
+					strings.get(mechanic.get(MECHANIC_FNAME, mechanicRow)).trim(),
+					strings.get(mechanic.get(MECHANIC_LNAME, mechanicRow)).trim(),
+					Integer.toString(mechanic.get(MECHANIC_EXPERIENCE, mechanicRow))));
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Reports.  A page keeps only the rows that rank after the key and,
+	 * among them, the first limit ones in a TopRows heap, so the memory of a
+	 * page does not grow with the number of matching rows.
+	 */
+
+	public synchronized int listClosedRequestsWithBillUnder(int bill, Date since, Object[] after, int limit, RowHandler handler) throws SQLException {
+		final int[] bills = closed.columns[CLOSED_BILL];
+		final int[] wids = closed.columns[CLOSED_WID];
+		int[] dates = closed.columns[CLOSED_DATE];
+		int first = since == null ? Integer.MIN_VALUE : toDays(since);
+		TopRows top = new TopRows(limit){
+			boolean before(int a, int b){
+				return bills[a] != bills[b] ? bills[a] < bills[b] : wids[a] < wids[b];
+			}
+		};
+		int afterBill = after == null ? Integer.MIN_VALUE : intKey(after[0]);
+		int afterWid = after == null ? Integer.MIN_VALUE : intKey(after[1]);
+		for(int r = 0; r < closed.size; ++r){
+			if(bills[r] < bill && dates[r] >= first && (bills[r] > afterBill || (bills[r] == afterBill && wids[r] > afterWid))){
+				top.offer(r);
+			}
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.DATE, MemoryRow.TEXT, MemoryRow.NUMBER, MemoryRow.NUMBER);
+		for(int r : top.ranked()){
+			row.number[0] = closed.get(CLOSED_DATE, r);
+			row.text[1] = strings.get(closed.get(CLOSED_COMMENT, r));
+			row.number[2] = bills[r];
+			row.number[3] = wids[r];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	public synchronized int listCustomersWithMoreCarsThan(int cars, Object[] after, int limit, RowHandler handler) throws SQLException {
+		//cars per customer row
+		int[] counts = new int[customer.size];
+		int[] ownsCustomers = owns.columns[OWNS_CUSTOMER];
+		for(int r = 0; r < owns.size; ++r){
+			int customerRow = customerById.get(ownsCustomers[r]);
+			if(customerRow >= 0){
+				++counts[customerRow];
+			}
+		}
+		final int[] ids = customer.columns[CUSTOMER_ID];
+		TopRows top = new TopRows(limit){
+			boolean before(int a, int b){
+				return ids[a] < ids[b];
+			}
+		};
+		int afterId = after == null ? Integer.MIN_VALUE : intKey(after[0]);
+		for(int r = 0; r < customer.size; ++r){
+			if(counts[r] > cars && ids[r] > afterId){
+				top.offer(r);
+			}
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.NUMBER);
+		for(int r : top.ranked()){
+			row.text[0] = strings.get(customer.get(CUSTOMER_FNAME, r)).trim();
+			row.text[1] = strings.get(customer.get(CUSTOMER_LNAME, r));
+			row.number[2] = ids[r];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	public synchronized int listCarsBeforeYearUnderMileage(int year, int miles, Date since, Object[] after, int limit, RowHandler handler) throws SQLException {
+		final int[] years = car.columns[CAR_YEAR];
+		final int[] makes = car.columns[CAR_MAKE];
+		final int[] models = car.columns[CAR_MODEL];
+		//orders car rows by (year, make, model)
+		TopRows top = new TopRows(limit){
+			boolean before(int a, int b){
+				return compareCars(a, years[b], strings.get(makes[b]), strings.get(models[b])) < 0;
+			}
+		};
+		int afterYear = after == null ? 0 : intKey(after[0]);
+		String afterMake = after == null ? null : (String) after[1];
+		String afterModel = after == null ? null : (String) after[2];
+		IntTripleSet seen = new IntTripleSet();
+		int[] odometers = request.columns[REQUEST_ODOMETER];
+		int[] vins = request.columns[REQUEST_VIN];
+		int[] dates = request.columns[REQUEST_DATE];
+		int first = since == null ? Integer.MIN_VALUE : toDays(since);
+		for(int r = 0; r < request.size; ++r){
+			if(odometers[r] >= miles || dates[r] < first){
+				continue;
+			}
+			int carRow = carByVin.get(vins[r]);
+			if(carRow < 0 || years[carRow] >= year){
+				continue;
+			}
+			if(after != null && compareCars(carRow, afterYear, afterMake, afterModel) <= 0){
+				continue;
+			}
+			if(seen.add(makes[carRow], models[carRow], years[carRow])){
+				top.offer(carRow);
+			}
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.NUMBER);
+		for(int carRow : top.ranked()){
+			row.text[0] = strings.get(makes[carRow]);
+			row.text[1] = strings.get(models[carRow]);
+			row.number[2] = years[carRow];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	//compares the (year, make, model) of a car row to the given one, strings by their text
+	private int compareCars(int carRow, int year, String make, String model){
+		int byYear = Integer.compare(car.get(CAR_YEAR, carRow), year);
+		if(byYear != 0){
+			return byYear;
+		}
+		int byMake = strings.get(car.get(CAR_MAKE, carRow)).compareTo(make);
+		return byMake != 0 ? byMake : strings.get(car.get(CAR_MODEL, carRow)).compareTo(model);
+	}
+
+	public synchronized int listCarsWithMostServices(Date since, Object[] after, int limit, RowHandler handler) throws SQLException {
+		if(since != null){
+			return listCarsWithMostServicesSince(toDays(since), after, limit, handler);
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.NUMBER, MemoryRow.TEXT);
+		if(car.size == 0){
+			return 0;
+		}
+		//the cars of a group are not kept in order, the page takes the largest VINs of each group it reaches
+		int requests = after == null ? requestsOfCar[carsByRequests[0]] : intKey(after[0]);
+		String afterVin = after == null ? null : (String) after[1];
+		if(requests >= firstRankWithRequests.length){
+			//more than any car, every group comes after the key
+			requests = firstRankWithRequests.length - 1;
+			afterVin = null;
+		}
+		for(; requests > 0 && row.rowNumber < limit; --requests){
+			int first = firstRankWithRequests[requests];
+			int end = firstRankWithRequests[requests - 1];
+			TopRows top = new TopRows(limit - row.rowNumber){
+				boolean before(int a, int b){
+					return vinOf(a).compareTo(vinOf(b)) > 0;
+				}
+			};
+			for(int rank = first; rank < end; ++rank){
+				int carRow = carsByRequests[rank];
+				if(afterVin == null || vinOf(carRow).compareTo(afterVin) < 0){
+					top.offer(carRow);
+				}
+			}
+			afterVin = null;
+			for(int carRow : top.ranked()){
+				row.text[0] = strings.get(car.get(CAR_MAKE, carRow));
+				row.text[1] = strings.get(car.get(CAR_MODEL, carRow));
+				row.number[2] = requests;
+				row.text[3] = vinOf(carRow);
+				row.emit(handler);
+			}
+		}
+		return row.rowNumber;
+	}
+
+	//report 9 over a window: the requests since the first day are counted per car row
+	private int listCarsWithMostServicesSince(int first, Object[] after, int limit, RowHandler handler) throws SQLException {
+		final int[] counts = new int[car.size];
+		int[] vins = request.columns[REQUEST_VIN];
+		int[] dates = request.columns[REQUEST_DATE];
+		for(int r = 0; r < request.size; ++r){
+			int carRow = carByVin.get(vins[r]);
+			if(dates[r] >= first && carRow >= 0){
+				++counts[carRow];
+			}
+		}
+		TopRows top = new TopRows(limit){
+			boolean before(int a, int b){
+				return counts[a] != counts[b] ? counts[a] > counts[b] : vinOf(a).compareTo(vinOf(b)) > 0;
+			}
+		};
+		int afterRequests = after == null ? Integer.MAX_VALUE : intKey(after[0]);
+		String afterVin = after == null ? null : (String) after[1];
+		for(int carRow = 0; carRow < car.size; ++carRow){
+			if(counts[carRow] > 0 && (counts[carRow] < afterRequests || (counts[carRow] == afterRequests && vinOf(carRow).compareTo(afterVin) < 0))){
+				top.offer(carRow);
+			}
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.NUMBER, MemoryRow.TEXT);
+		for(int carRow : top.ranked()){
+			row.text[0] = strings.get(car.get(CAR_MAKE, carRow));
+			row.text[1] = strings.get(car.get(CAR_MODEL, carRow));
+			row.number[2] = counts[carRow];
+			row.text[3] = vinOf(carRow);
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	private String vinOf(int carRow){
+		return strings.get(car.get(CAR_VIN, carRow));
+	}
+
+	public synchronized int listCustomersByTotalBill(Date since, Object[] after, int limit, RowHandler handler) throws SQLException {
+		if(since != null){
+			return listCustomersByTotalBillSince(toDays(since), after, limit, handler);
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.NUMBER, MemoryRow.NUMBER);
+		Iterable<long[]> ranked = after == null ? customersByBill
+			: customersByBill.tailSet(new long[]{((Number) after[0]).longValue(), ((Number) after[1]).longValue()}, false);
+		for(long[] entry : ranked){
+			if(row.rowNumber == limit){
+				break;
+			}
+			int customerRow = customerById.get((int) entry[1]);
+			row.text[0] = strings.get(customer.get(CUSTOMER_FNAME, customerRow)).trim();
+			row.text[1] = strings.get(customer.get(CUSTOMER_LNAME, customerRow)).trim();
+			row.number[2] = entry[0];
+			row.number[3] = entry[1];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	//report 10 over a window: the bills of the closings since the first day are added up per customer row
+	private int listCustomersByTotalBillSince(int first, Object[] after, int limit, RowHandler handler) throws SQLException {
+		final long[] totals = new long[customer.size];
+		final int[] ids = customer.columns[CUSTOMER_ID];
+		int[] dates = closed.columns[CLOSED_DATE];
+		for(int r = 0; r < closed.size; ++r){
+			int requestRow = dates[r] >= first ? requestByRid.get(closed.get(CLOSED_RID, r)) : -1;
+			int customerRow = requestRow < 0 ? -1 : customerById.get(request.get(REQUEST_CUSTOMER, requestRow));
+			if(customerRow >= 0){
+				totals[customerRow] += closed.get(CLOSED_BILL, r);
+			}
+		}
+		TopRows top = new TopRows(limit){
+			boolean before(int a, int b){
+				return totals[a] != totals[b] ? totals[a] > totals[b] : ids[a] > ids[b];
+			}
+		};
+		long afterTotal = after == null ? Long.MAX_VALUE : ((Number) after[0]).longValue();
+		long afterId = after == null ? Long.MAX_VALUE : ((Number) after[1]).longValue();
+		for(int r = 0; r < customer.size; ++r){
+			if(totals[r] > 0 && (totals[r] < afterTotal || (totals[r] == afterTotal && ids[r] < afterId))){
+				top.offer(r);
+			}
+		}
+		MemoryRow row = new MemoryRow(MemoryRow.TEXT, MemoryRow.TEXT, MemoryRow.NUMBER, MemoryRow.NUMBER);
+		for(int r : top.ranked()){
+			row.text[0] = strings.get(customer.get(CUSTOMER_FNAME, r)).trim();
+			row.text[1] = strings.get(customer.get(CUSTOMER_LNAME, r)).trim();
+			row.number[2] = totals[r];
+			row.number[3] = ids[r];
+			row.emit(handler);
+		}
+		return row.rowNumber;
+	}
+
+	private static int intKey(Object value){
+		return ((Number) value).intValue();
+	}
+
+	public synchronized void rebuildAggregates(){
+		Arrays.fill(requestsOfCar, 0);
+		Arrays.fill(firstRankWithRequests, 0);
+		for(int carRow = 0; carRow < car.size; ++carRow){
+			carsByRequests[carRow] = carRow;
+			rankOfCar[carRow] = carRow;
+		}
+		for(int r = 0; r < request.size; ++r){
+			countRequest(request.get(REQUEST_VIN, r));
+		}
+		customersByBill.clear();
+		Arrays.fill(billOfCustomer, 0);
+		for(int r = 0; r < closed.size; ++r){
+			addBill(closed.get(CLOSED_RID, r), closed.get(CLOSED_BILL, r));
+		}
+	}
+
+	/**
+	 * A table stored as int columns that grow together.
+	 */
+	static final class Table{
+		int size = 0;
+		int[][] columns;
+
+		Table(int columnCount){
+			columns = new int[columnCount][64];
+		}
+
+		int add(int... values){
+			if(size == columns[0].length){
+				for(int c = 0; c < columns.length; ++c){
+					columns[c] = Arrays.copyOf(columns[c], size * 2);
+				}
+			}
+			for(int c = 0; c < columns.length; ++c){
+				columns[c][size] = values[c];
+			}
+			return size++;
+		}
+
+		int get(int column, int row){
+			return columns[column][row];
+		}
+	}//end Table
+
+	/**
+	 * Every distinct string once, numbered in order of first appearance.
+	 */
+	static final class Dictionary{
+		String[] values = new String[1024];
+		int size = 0;
+		private Map<String, Integer> codes = new HashMap<String, Integer>();
+
+		int intern(String value){
+			Integer code = codes.get(value);
+			if(code != null){
+				return code;
+			}
+			if(size == values.length){
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size] = value;
+			codes.put(value, size);
+			return size++;
+		}
+
+		//the code of a string, or -1 when it was never interned
+		int find(String value){
+			Integer code = codes.get(value);
+			return code == null ? -1 : code;
+		}
+
+		String get(int code){
+			return values[code];
+		}
+	}//end Dictionary
+
+	/**
+	 * Open-addressing hash map from int keys to non-negative int values.
+	 */
+	static final class IntIndex{
+		private int[] keys = new int[64];
+		//value + 1, 0 marks a free slot
+		private int[] values = new int[64];
+		private int size = 0;
+
+		//the value of the key, or -1
+		int get(int key){
+			int mask = keys.length - 1;
+			for(int slot = hash(key) & mask; values[slot] != 0; slot = (slot + 1) & mask){
+				if(keys[slot] == key){
+					return values[slot] - 1;
+				}
+			}
+			return -1;
+		}
+
+		void put(int key, int value){
+			if(2 * (size + 1) > keys.length){
+				resize();
+			}
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while(values[slot] != 0 && keys[slot] != key){
+				slot = (slot + 1) & mask;
+			}
+			if(values[slot] == 0){
+				++size;
+			}
+			keys[slot] = key;
+			values[slot] = value + 1;
+		}
+
+		private void resize(){
+			int[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			size = 0;
+			for(int i = 0; i < oldKeys.length; ++i){
+				if(oldValues[i] != 0){
+					put(oldKeys[i], oldValues[i] - 1);
+				}
+			}
+		}
+
+		static int hash(int key){
+			int h = key * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}//end IntIndex
+
+	/**
+	 * Open-addressing hash set of int triples, used for DISTINCT.
+	 */
+	static final class IntTripleSet{
+		private int[] a = new int[64], b = new int[64], c = new int[64];
+		private boolean[] used = new boolean[64];
+		private int size = 0;
+
+		//true when the triple was not in the set yet
+		boolean add(int x, int y, int z){
+			if(2 * (size + 1) > used.length){
+				int[] oa = a, ob = b, oc = c;
+				boolean[] ou = used;
+				a = new int[ou.length * 2]; b = new int[ou.length * 2]; c = new int[ou.length * 2];
+				used = new boolean[ou.length * 2];
+				size = 0;
+				for(int i = 0; i < ou.length; ++i){
+					if(ou[i]){
+						add(oa[i], ob[i], oc[i]);
+					}
+				}
+			}
+			int mask = used.length - 1;
+			int slot = IntIndex.hash(x * 31 * 31 + y * 31 + z) & mask;
+			while(used[slot]){
+				if(a[slot] == x && b[slot] == y && c[slot] == z){
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+			used[slot] = true;
+			a[slot] = x; b[slot] = y; c[slot] = z;
+			++size;
+			return true;
+		}
+	}//end IntTripleSet
+
+	/**
+	 * The first k rows of a report in the order of before(), kept in a
+	 * max-heap whose root is the kept row that ranks last: a row that ranks
+	 * before it replaces it, any other row is dropped.  The heap grows as
+	 * rows come, up to k.
+	 */
+	abstract static class TopRows{
+		private int k;
+		private int[] heap;
+		private int size = 0;
+
+		TopRows(int k){
+			this.k = Math.max(k, 0);
+			this.heap = new int[Math.min(this.k, 64)];
+		}
+
+		//true when row a ranks before row b
+		abstract boolean before(int a, int b);
+
+		void offer(int row){
+			if(size < k){
+				if(size == heap.length){
+					heap = Arrays.copyOf(heap, (int) Math.min((long) k, size * 2L));
+				}
+				heap[size] = row;
+				siftUp(size++);
+			}
+			else if(k > 0 && before(row, heap[0])){
+				heap[0] = row;
+				siftDown(0);
+			}
+		}
+
+		//the kept rows in order, empties the heap
+		int[] ranked(){
+			int[] rows = new int[size];
+			while(size > 0){
+				rows[size - 1] = heap[0];
+				heap[0] = heap[--size];
+				siftDown(0);
+			}
+			return rows;
+		}
+
+		private void siftUp(int i){
+			while(i > 0){
+				int parent = (i - 1) / 2;
+				if(!before(heap[parent], heap[i])){
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i){
+			while(true){
+				int last = i;
+				int left = 2 * i + 1, right = left + 1;
+				if(left < size && before(heap[last], heap[left])){
+					last = left;
+				}
+				if(right < size && before(heap[last], heap[right])){
+					last = right;
+				}
+				if(last == i){
+					return;
+				}
+				swap(i, last);
+				i = last;
+			}
+		}
+
+		private void swap(int i, int j){
+			int t = heap[i];
+			heap[i] = heap[j];
+			heap[j] = t;
+		}
+	}//end TopRows
+
+	/**
+	 * The Row handed to report handlers.  One instance is reused for every
+	 * row of a report; text columns point into the dictionary and numbers
+	 * and dates are kept as primitives.
+	 */
+	static final class MemoryRow implements Row{
+		static final int TEXT = 0, NUMBER = 1, DATE = 2;
+
+		int rowNumber = 0;
+		int[] kinds;
+		String[] text;
+		long[] number;
+
+		MemoryRow(int... kinds){
+			this.kinds = kinds;
+			this.text = new String[kinds.length];
+			this.number = new long[kinds.length];
+		}
+
+		void emit(RowHandler handler) throws SQLException {
+			++rowNumber;
+			handler.handle(this);
+		}
+
+		public int getRowNumber(){ return rowNumber; }
+
+		public int getColumnCount(){ return kinds.length; }
+
+		public String getColumnName(int column){ return "column" + column; }
+
+		public int getColumnType(int column){
+			switch(kinds[column - 1]){
+				case TEXT: return Types.VARCHAR;
+				case DATE: return Types.DATE;
+				default: return Types.BIGINT;
+			}
+		}
+
+		public int getInt(int column){ return (int) number[column - 1]; }
+
+		public long getLong(int column){ return number[column - 1]; }
+
+		public Date getDate(int column){ return toDate((int) number[column - 1]); }
+
+		public String getString(int column){
+			switch(kinds[column - 1]){
+				case TEXT: return text[column - 1];
+				case DATE: return getDate(column).toString();
+				default: return Long.toString(number[column - 1]);
+			}
+		}
+
+		//the tables have no NULL values
+		public boolean wasNull(){ return false; }
+	}//end MemoryRow
+
+	/**
+	 * The lines of a CSV file of the data directory, split into a fixed
+	 * number of fields and read one at a time.  The last field keeps any
+	 * further commas.
+	 */
+	static final class CsvFile implements Iterable<String[]>{
+		private String name;
+		private int fields;
+		private BufferedReader reader;
+		private int number = 0;
+
+		CsvFile(File dir, String name, int fields) throws IOException {
+			this.name = name;
+			this.fields = fields;
+			this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, name)), StandardCharsets.UTF_8));
+		}
+
+		//the fields of the next non-empty line, or null at the end of the file
+		private String[] readRow() throws IOException {
+			String line;
+			while((line = reader.readLine()) != null){
+				++number;
+				if(line.length() == 0){
+					continue;
+				}
+				String[] f = line.split(",", fields);
+				if(f.length != fields){
+					throw new IOException(name + ":" + number + ": expected " + fields + " fields");
+				}
+				return f;
+			}
+			reader.close();
+			return null;
+		}
+
+		public Iterator<String[]> iterator(){
+			return new Iterator<String[]>(){
+				private String[] current = read();
+
+				private String[] read(){
+					try{
+						return readRow();
+					}catch(IOException e){
+						throw new UncheckedIOException(e);
+					}
+				}
+
+				public boolean hasNext(){
+					return current != null;
+				}
+
+				public String[] next(){
+					if(current == null){
+						throw new NoSuchElementException();
+					}
+					String[] f = current;
+					current = read();
+					return f;
+				}
+			};
+		}
+	}//end CsvFile
+
+}//end MemoryShopStore
@@ -0,0 +1,405 @@
+/*
+ * Shop metrics
+ * ============
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.ObjectName;
+
+/**
+ * This class records where the time of the shop goes: a latency histogram
+ * with row, byte and error counts for every SQL statement text run by the
+ * execute methods of MechanicShop, and the same for every menu operation
+ * together with the number of statements it ran, which shows an operation
+ * that runs one statement per row.
+ *
+ * The operation of a thread is set by begin() and ended by
+ * Operation.end(); statements run in between are counted to it, and so
+ * are the failures the operation reports with failed().  The time a
+ * thread spends waiting for input, see inputWait(), is left out of the
+ * latency of its operation.
+ *
+ * A statement slower than the threshold is kept for the menu and, when a
+ * slow query log is given, appended to that file, opened on the first slow
+ * statement.  Its bound values are only written when asked for: they hold
+ * the names, phone numbers and addresses of the customers.  The metrics are read with report(), through JMX, or
+ * written to a file with dump().
+ *
+ */
+
+public class Metrics implements MetricsMXBean{
+	public static final String OBJECT_NAME = "mechanicshop:type=Metrics";
+	//slow statements kept for getSlowQueries
+	static final int SLOW_QUERIES_KEPT = 20;
+
+	/**
+	 * A latency histogram in nanoseconds.  Values under 8 have a bucket
+	 * each, then every power of two is split into 8 buckets, so a
+	 * percentile is within 12.5% of the recorded value.
+	 */
+	static final class Histogram{
+		private static final int SUB_BUCKETS = 8;
+		private final long[] counts = new long[64 * SUB_BUCKETS];
+		long count = 0;
+		long max = 0;
+
+		void record(long value){
+			value = Math.max(value, 0);
+			++counts[bucket(value)];
+			++count;
+			max = Math.max(max, value);
+		}
+
+		static int bucket(long value){
+			if(value < SUB_BUCKETS){
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+			return (exponent - 2) * SUB_BUCKETS + sub;
+		}
+
+		//the largest value of a bucket
+		static long upper(int bucket){
+			if(bucket < SUB_BUCKETS){
+				return bucket;
+			}
+			int exponent = bucket / SUB_BUCKETS + 2;
+			long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 3);
+			return lower + (1L << (exponent - 3)) - 1;
+		}
+
+		/**
+		 * @param fraction between 0 and 1, e.g. 0.99
+		 * @return the value under which that fraction of the values are
+		 */
+		long percentile(double fraction){
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for(int bucket = 0; bucket < counts.length; ++bucket){
+				seen += counts[bucket];
+				if(seen >= rank){
+					return Math.min(upper(bucket), max);
+				}
+			}
+			return max;
+		}
+	}//end Histogram
+
+	//the totals of one statement text or one menu operation
+	static final class Stats{
+		final Histogram latency = new Histogram();
+		long statements = 0;
+		long rows = 0;
+		long bytes = 0;
+		long errors = 0;
+		//failures on a duplicate key, see failed()
+		long collisions = 0;
+	}
+
+	/**
+	 * A menu operation running on a thread.
+	 */
+	public final class Operation{
+		private String name;
+		private long start = System.nanoTime();
+		private long waited = 0;
+		private long statements = 0;
+		private long rows = 0;
+		private long bytes = 0;
+		private long errors = 0;
+		private long collisions = 0;
+		private Operation outer;
+
+		private Operation(String name, Operation outer){
+			this.name = name;
+			this.outer = outer;
+		}
+
+		/**
+		 * Method to record the operation and give the thread back to the
+		 * operation it was started in, if any.
+		 */
+		public void end(){
+			long latency = System.nanoTime() - start - waited;
+			synchronized(Metrics.this){
+				Stats stats = statsOf(operations, name);
+				stats.latency.record(latency);
+				stats.statements += statements;
+				stats.rows += rows;
+				stats.bytes += bytes;
+				stats.errors += errors;
+				stats.collisions += collisions;
+			}
+			current.set(outer);
+		}
+	}//end Operation
+
+	//the operation of every thread, shared by all shops of the process
+	private static final ThreadLocal<Operation> current = new ThreadLocal<Operation>();
+
+	private final Map<String, Stats> statements = new TreeMap<String, Stats>();
+	private final Map<String, Stats> operations = new TreeMap<String, Stats>();
+	private volatile long slowQueryNanos;
+	private File slowQueryLog;
+	private final boolean logParams;
+	private PrintWriter slowLog = null;
+	private final ArrayDeque<String> slowQueries = new ArrayDeque<String>();
+
+	/**
+	 * @param slowQueryMillis statements slower than this are logged
+	 * @param slowQueryLog the file slow statements are appended to, null to
+	 *        keep them in memory only
+	 * @param logParams whether the bound values of a slow statement are
+	 *        logged with it
+	 */
+	public Metrics(long slowQueryMillis, File slowQueryLog, boolean logParams){
+		this.slowQueryNanos = slowQueryMillis * 1000000L;
+		this.slowQueryLog = slowQueryLog;
+		this.logParams = logParams;
+	}
+
+	/**
+	 * Method to start a menu operation on this thread.  It must be ended
+	 * with Operation.end(), in a finally block.
+	 */
+	public Operation begin(String name){
+		Operation operation = new Operation(name, current.get());
+		current.set(operation);
+		return operation;
+	}
+
+	/**
+	 * Method to leave time spent waiting for the user out of the operation
+	 * of this thread.
+	 */
+	public static void inputWait(long nanos){
+		for(Operation operation = current.get(); operation != null; operation = operation.outer){
+			operation.waited += nanos;
+		}
+	}
+
+	/**
+	 * Method to count a failure of the operation of this thread, the
+	 * exception a menu operation caught and showed.  A unique violation
+	 * (SQLState 23505) is also counted as a key collision.
+	 */
+	public static void failed(Exception e){
+		Operation operation = current.get();
+		if(operation == null){
+			return;
+		}
+		++operation.errors;
+		if(isDuplicateKey(e)){
+			++operation.collisions;
+		}
+	}
+
+	//a batch hides the failure of its statement behind getNextException
+	private static boolean isDuplicateKey(Throwable e){
+		for(Throwable cause = e; cause != null; cause = cause.getCause()){
+			for(SQLException next = cause instanceof SQLException ? (SQLException) cause : null; next != null; next = next.getNextException()){
+				if("23505".equals(next.getSQLState())){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Method to record one statement.
+	 *
+	 * @param sql the statement text, with '?' placeholders
+	 * @param params the bound values, logged when the statement is slow and
+	 *        logParams is set
+	 * @param start System.nanoTime() before the statement was run
+	 * @param rows the rows returned or changed
+	 * @param bytes the size of the values read from the result
+	 * @param failed whether the statement threw
+	 */
+	public void statement(String sql, Object[] params, long start, long rows, long bytes, boolean failed){
+		long latency = System.nanoTime() - start;
+		Operation operation = current.get();
+		for(Operation o = operation; o != null; o = o.outer){
+			++o.statements;
+			o.rows += rows;
+			o.bytes += bytes;
+		}
+		synchronized(this){
+			Stats stats = statsOf(statements, sql);
+			stats.latency.record(latency);
+			++stats.statements;
+			stats.rows += rows;
+			stats.bytes += bytes;
+			if(failed){
+				++stats.errors;
+			}
+		}
+		if(latency >= slowQueryNanos){
+			slow(String.format("%s %9.2f ms rows=%d operation=%s%s %s%s",
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").format(new Date()), latency / 1e6, rows,
+				operation == null ? "-" : operation.name, failed ? " FAILED" : "", sql, logParams ? " params=" + Arrays.deepToString(params) : ""));
+		}
+	}//end statement
+
+	private synchronized void slow(String line){
+		slowQueries.addLast(line);
+		if(slowQueries.size() > SLOW_QUERIES_KEPT){
+			slowQueries.removeFirst();
+		}
+		if(slowQueryLog == null){
+			return;
+		}
+		try{
+			if(slowLog == null){
+				slowLog = new PrintWriter(new OutputStreamWriter(new FileOutputStream(slowQueryLog, true), StandardCharsets.UTF_8));
+			}
+			slowLog.println(line);
+			slowLog.flush();
+		}catch(IOException e){
+			//the slow statements are still kept in memory
+			System.err.println("Cannot write the slow query log " + slowQueryLog + ": " + e.getMessage());
+			slowQueryLog = null;
+		}
+	}
+
+	private static Stats statsOf(Map<String, Stats> map, String key){
+		Stats stats = map.get(key);
+		if(stats == null){
+			stats = new Stats();
+			map.put(key, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Method to register the metrics with the platform MBean server, so
+	 * they can be read with jconsole or any JMX client.
+	 */
+	public void register(){
+		try{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		}catch(Exception e){
+			System.err.println("Cannot register the metrics with JMX: " + e.getMessage());
+		}
+	}
+
+	private static final String HEADER = String.format("%8s %9s %9s %9s %8s %9s %10s  %s", "count", "p50 ms", "p99 ms", "max ms", "stmts", "rows", "bytes", "");
+
+	//one line of a report, the counts averaged per call
+	private static String line(String name, Stats stats){
+		long count = Math.max(1, stats.latency.count);
+		return String.format("%8d %9.2f %9.2f %9.2f %8.1f %9.1f %10d  %s%s",
+			stats.latency.count, stats.latency.percentile(0.5) / 1e6, stats.latency.percentile(0.99) / 1e6, stats.latency.max / 1e6,
+			(double) stats.statements / count, (double) stats.rows / count, stats.bytes / count,
+			name, stats.errors > 0 ? " (" + stats.errors + " failed" + (stats.collisions > 0 ? ", " + stats.collisions + " key collisions" : "") + ")" : "");
+	}
+
+	private static String[] lines(Map<String, Stats> map){
+		List<String> lines = new ArrayList<String>();
+		for(Map.Entry<String, Stats> entry : map.entrySet()){
+			lines.add(line(entry.getKey(), entry.getValue()));
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * @return the operations and statements with their latency percentiles
+	 *         and their statements, rows and bytes per call
+	 */
+	public synchronized String report(){
+		StringBuilder report = new StringBuilder();
+		report.append("Operations\n").append(HEADER).append("operation\n");
+		for(String line : lines(operations)){
+			report.append(line).append('\n');
+		}
+		report.append("\nStatements\n").append(HEADER).append("statement\n");
+		for(String line : lines(statements)){
+			report.append(line).append('\n');
+		}
+		report.append("\nSlow queries (over ").append(getSlowQueryMillis()).append(" ms)\n");
+		for(String line : slowQueries){
+			report.append(line).append('\n');
+		}
+		return report.toString();
+	}
+
+	/**
+	 * @param seconds the time the operations were run in
+	 * @return every operation with its rate, latency percentiles, error rate
+	 *         and key collisions, see LoadDriver
+	 */
+	public synchronized String throughput(double seconds){
+		StringBuilder report = new StringBuilder(String.format("%8s %8s %9s %9s %9s %9s %8s %10s  %s%n",
+			"count", "per s", "p50 ms", "p90 ms", "p99 ms", "max ms", "errors", "collisions", "operation"));
+		for(Map.Entry<String, Stats> entry : operations.entrySet()){
+			Stats stats = entry.getValue();
+			Histogram latency = stats.latency;
+			report.append(String.format("%8d %8.1f %9.2f %9.2f %9.2f %9.2f %7.2f%% %10d  %s%n",
+				latency.count, latency.count / seconds, latency.percentile(0.5) / 1e6, latency.percentile(0.9) / 1e6, latency.percentile(0.99) / 1e6,
+				latency.max / 1e6, 100.0 * stats.errors / Math.max(1, latency.count), stats.collisions, entry.getKey()));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Method to write report() to a file, replacing it.
+	 */
+	public void dump(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try{
+			out.print(report());
+		}finally{
+			out.close();
+		}
+	}
+
+	public synchronized String[] getOperations(){
+		return lines(operations);
+	}
+
+	public synchronized String[] getStatements(){
+		return lines(statements);
+	}
+
+	public synchronized String[] getSlowQueries(){
+		return slowQueries.toArray(new String[slowQueries.size()]);
+	}
+
+	public long getSlowQueryMillis(){
+		return slowQueryNanos / 1000000L;
+	}
+
+	public void setSlowQueryMillis(long millis){
+		slowQueryNanos = millis * 1000000L;
+	}
+
+	public synchronized void reset(){
+		statements.clear();
+		operations.clear();
+		slowQueries.clear();
+	}
+
+}//end Metrics
@@ -0,0 +1,41 @@
+/*
+ * Shop metrics over JMX
+ * =====================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+/**
+ * This interface is the JMX view of Metrics, registered under
+ * Metrics.OBJECT_NAME.  Every line has the columns of Metrics.report().
+ *
+ */
+
+public interface MetricsMXBean{
+	/**
+	 * @return one line per menu operation
+	 */
+	String[] getOperations();
+
+	/**
+	 * @return one line per SQL statement text
+	 */
+	String[] getStatements();
+
+	/**
+	 * @return the latest statements over the slow query threshold, oldest first
+	 */
+	String[] getSlowQueries();
+
+	long getSlowQueryMillis();
+
+	void setSlowQueryMillis(long millis);
+
+	/**
+	 * Method to clear every histogram and count.
+	 */
+	void reset();
+}
@@ -0,0 +1,366 @@
+/*
+ * Schema migrations
+ * =================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * This class brings the schema created by sql/create.sql up to date.  The
+ * schema changes are numbered and applied in order, each one with the row
+ * that records it in Schema_Version in the same transaction, so a failed
+ * change leaves nothing behind and is tried again on the next start.
+ *
+ * A change is never edited once released: a new number is added to the
+ * end of MIGRATIONS instead.  The covering indexes (INCLUDE) and the
+ * partitioned tables need PostgreSQL 11 or later.
+ *
+ * check() runs EXPLAIN on every query of JdbcShopStore and lists the ones
+ * whose plan still reads a whole table.
+ *
+ */
+
+public class Migrations{
+	//one numbered schema change
+	private static class Migration{
+		int version;
+		String description;
+		String[] statements;
+
+		Migration(int version, String description, String... statements){
+			this.version = version;
+			this.description = description;
+			this.statements = statements;
+		}
+	}
+
+	private static final Migration[] MIGRATIONS = {
+		new Migration(1, "Drop vin_idx, it duplicates the primary key of Car",
+			"DROP INDEX IF EXISTS vin_idx"),
+		new Migration(2, "Index the foreign keys of Owns, Service_Request and Closed_Request",
+			//cars of a customer, and the car count of report 7 from the index alone
+			"CREATE INDEX owns_customer_id_idx ON Owns (customer_id) INCLUDE (car_vin)",
+			//requests of a car, and the request count of report 9 from the index alone
+			"CREATE INDEX service_request_car_vin_idx ON Service_Request (car_vin) INCLUDE (rid)",
+			"CREATE INDEX service_request_customer_id_idx ON Service_Request (customer_id) INCLUDE (rid)",
+			//closing of a request, and the bill totals of report 10
+			"CREATE INDEX closed_request_rid_idx ON Closed_Request (rid) INCLUDE (bill)"),
+		new Migration(3, "Index customers by last name ignoring case",
+			"CREATE INDEX customer_lower_lname_idx ON Customer (LOWER(lname))"),
+		new Migration(4, "Partial covering indexes for the predicates of reports 6 and 8",
+			"CREATE INDEX closed_request_bill_under_100_idx ON Closed_Request (bill) INCLUDE (date, comment) WHERE bill < 100",
+			"CREATE INDEX car_before_1995_idx ON Car (vin) INCLUDE (make, model, year) WHERE year < 1995",
+			"CREATE INDEX service_request_odometer_under_50000_idx ON Service_Request (car_vin) WHERE odometer < 50000"),
+		new Migration(5, "Service counts per car and bill totals per customer for reports 9 and 10",
+			"CREATE TABLE Car_Service_Count (car_vin VARCHAR(16) NOT NULL PRIMARY KEY, requests INTEGER NOT NULL)",
+			"CREATE INDEX car_service_count_requests_idx ON Car_Service_Count (requests DESC)",
+			"INSERT INTO Car_Service_Count(car_vin, requests) SELECT car_vin, COUNT(*) FROM Service_Request GROUP BY car_vin",
+			"CREATE TABLE Customer_Bill_Total (customer_id INTEGER NOT NULL PRIMARY KEY, total BIGINT NOT NULL)",
+			"CREATE INDEX customer_bill_total_total_idx ON Customer_Bill_Total (total DESC)",
+			"INSERT INTO Customer_Bill_Total(customer_id, total) SELECT S.customer_id, SUM(C.bill) FROM Closed_Request AS C, Service_Request AS S WHERE C.rid = S.rid GROUP BY S.customer_id"),
+		new Migration(6, "Index the keyset order of the pages of reports 6, 9 and 10",
+			"DROP INDEX closed_request_bill_under_100_idx",
+			"CREATE INDEX closed_request_bill_under_100_idx ON Closed_Request (bill, wid) INCLUDE (date, comment) WHERE bill < 100",
+			"DROP INDEX car_service_count_requests_idx",
+			"CREATE INDEX car_service_count_requests_idx ON Car_Service_Count (requests DESC, car_vin DESC)",
+			"DROP INDEX customer_bill_total_total_idx",
+			"CREATE INDEX customer_bill_total_total_idx ON Customer_Bill_Total (total DESC, customer_id DESC)"),
+		new Migration(7, "Count the changes of Customer for the customer name index",
+			"CREATE TABLE Customer_Version (version BIGINT NOT NULL)",
+			"INSERT INTO Customer_Version(version) VALUES (0)",
+			//one bump per statement, so a COPY or a batch of inserts costs one update
+			"CREATE OR REPLACE FUNCTION count_customer_change() RETURNS trigger AS $$ BEGIN UPDATE Customer_Version SET version = version + 1; RETURN NULL; END $$ LANGUAGE plpgsql",
+			"CREATE TRIGGER customer_version_trigger AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Customer FOR EACH STATEMENT EXECUTE PROCEDURE count_customer_change()"),
+		new Migration(8, "Close a service request at most once",
+			//two clerks closing the same request: the second insert fails instead of billing twice
+			"DROP INDEX closed_request_rid_idx",
+			"CREATE UNIQUE INDEX closed_request_rid_idx ON Closed_Request (rid) INCLUDE (bill)"),
+		new Migration(9, "Partition Service_Request and Closed_Request by month, with archive tables",
+			"ALTER TABLE Closed_Request RENAME TO Closed_Request_Unpartitioned",
+			"ALTER TABLE Service_Request RENAME TO Service_Request_Unpartitioned",
+			"CREATE TABLE Service_Request (rid INTEGER NOT NULL, customer_id INTEGER NOT NULL, car_vin VARCHAR(16) NOT NULL, date DATE NOT NULL, odometer _PINTEGER NOT NULL, complain TEXT) PARTITION BY RANGE (date)",
+			"CREATE TABLE Closed_Request (wid INTEGER NOT NULL, rid INTEGER NOT NULL, mid INTEGER NOT NULL, date DATE NOT NULL, comment TEXT, bill _PINTEGER NOT NULL) PARTITION BY RANGE (date)",
+			"CREATE TABLE Service_Request_Archive (LIKE Service_Request) PARTITION BY RANGE (date)",
+			"CREATE TABLE Closed_Request_Archive (LIKE Closed_Request) PARTITION BY RANGE (date)",
+			//rows of a month without a partition yet
+			"CREATE TABLE service_request_default PARTITION OF Service_Request DEFAULT",
+			"CREATE TABLE closed_request_default PARTITION OF Closed_Request DEFAULT",
+			//the partition of a month, e.g. service_request_y2016m05, moving its rows out of the default partition
+			"CREATE OR REPLACE FUNCTION shop_month_partition(parent TEXT, day DATE) RETURNS VOID AS $$ " +
+				"DECLARE month DATE := date_trunc('month', day)::date; part TEXT := parent || to_char(month, '\"_y\"YYYY\"m\"MM'); " +
+				"BEGIN " +
+				"PERFORM pg_advisory_xact_lock(hashtext(parent)); " +
+				"IF to_regclass(part) IS NOT NULL THEN RETURN; END IF; " +
+				"EXECUTE format('CREATE TABLE %I (LIKE %I)', part, parent); " +
+				"EXECUTE format('WITH M AS (DELETE FROM %I WHERE date >= %L AND date < %L RETURNING *) INSERT INTO %I SELECT * FROM M', parent || '_default', month, (month + interval '1 month')::date, part); " +
+				"EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', parent, part, month, (month + interval '1 month')::date); " +
+				"END $$ LANGUAGE plpgsql",
+			"SELECT shop_month_partition('service_request', M.month) FROM (SELECT DISTINCT date_trunc('month', date)::date AS month FROM Service_Request_Unpartitioned) AS M",
+			"SELECT shop_month_partition('closed_request', M.month) FROM (SELECT DISTINCT date_trunc('month', date)::date AS month FROM Closed_Request_Unpartitioned) AS M",
+			"INSERT INTO Service_Request SELECT * FROM Service_Request_Unpartitioned",
+			"INSERT INTO Closed_Request SELECT * FROM Closed_Request_Unpartitioned",
+			"DROP TABLE Closed_Request_Unpartitioned",
+			"DROP TABLE Service_Request_Unpartitioned",
+			//a unique key of a partitioned table holds the partition key, so rid alone is no longer unique
+			"ALTER TABLE Service_Request ADD PRIMARY KEY (rid, date)",
+			"ALTER TABLE Service_Request ADD FOREIGN KEY (customer_id) REFERENCES Customer(id)",
+			"ALTER TABLE Service_Request ADD FOREIGN KEY (car_vin) REFERENCES Car(vin)",
+			"ALTER TABLE Closed_Request ADD PRIMARY KEY (wid, date)",
+			"ALTER TABLE Closed_Request ADD FOREIGN KEY (mid) REFERENCES Mechanic(id)",
+			"ALTER TABLE Service_Request_Archive ADD PRIMARY KEY (rid, date)",
+			"ALTER TABLE Closed_Request_Archive ADD PRIMARY KEY (wid, date)",
+			"CREATE INDEX service_request_car_vin_idx ON Service_Request (car_vin) INCLUDE (rid)",
+			"CREATE INDEX service_request_customer_id_idx ON Service_Request (customer_id) INCLUDE (rid)",
+			"CREATE INDEX service_request_odometer_under_50000_idx ON Service_Request (car_vin) WHERE odometer < 50000",
+			"CREATE INDEX closed_request_rid_idx ON Closed_Request (rid) INCLUDE (bill)",
+			"CREATE INDEX closed_request_bill_under_100_idx ON Closed_Request (bill, wid) INCLUDE (date, comment) WHERE bill < 100",
+			"CREATE INDEX closed_request_archive_rid_idx ON Closed_Request_Archive (rid) INCLUDE (bill)",
+			//the foreign key to Service_Request and the unique rid, checked over the archive too; the
+			//lock makes a second closing of the same request wait for the first and then fail; BulkLoader
+			//turns the check off for its COPY of a consistent data set
+			"CREATE OR REPLACE FUNCTION check_closed_request() RETURNS trigger AS $$ BEGIN " +
+				"IF current_setting('shop.bulk_load', true) = 'on' THEN RETURN NULL; END IF; " +
+				"PERFORM pg_advisory_xact_lock(hashtext('closed_request'), NEW.rid); " +
+				"IF NOT EXISTS (SELECT 1 FROM Service_Request WHERE rid = NEW.rid) AND NOT EXISTS (SELECT 1 FROM Service_Request_Archive WHERE rid = NEW.rid) THEN " +
+				"RAISE EXCEPTION 'insert or update on table \"closed_request\" violates foreign key constraint, key (rid)=(%) is not present', NEW.rid USING ERRCODE = 'foreign_key_violation'; END IF; " +
+				"IF (SELECT COUNT(*) FROM Closed_Request WHERE rid = NEW.rid) + (SELECT COUNT(*) FROM Closed_Request_Archive WHERE rid = NEW.rid) > 1 THEN " +
+				"RAISE EXCEPTION 'duplicate key value violates unique constraint \"closed_request_rid_idx\", key (rid)=(%) already exists', NEW.rid USING ERRCODE = 'unique_violation'; END IF; " +
+				"RETURN NULL; END $$ LANGUAGE plpgsql",
+			"CREATE TRIGGER closed_request_check AFTER INSERT ON Closed_Request FOR EACH ROW EXECUTE PROCEDURE check_closed_request()"),
+		new Migration(10, "Count the changes of the tables the reports read, for the report cache",
+			"CREATE TABLE Table_Version (table_name TEXT NOT NULL PRIMARY KEY, version BIGINT NOT NULL)",
+			"INSERT INTO Table_Version(table_name, version) VALUES ('Owns', 0), ('Service_Request', 0), ('Closed_Request', 0)",
+			//like Customer_Version, one bump per statement; an archive table counts as its hot table
+			"CREATE OR REPLACE FUNCTION count_table_change() RETURNS trigger AS $$ BEGIN UPDATE Table_Version SET version = version + 1 WHERE table_name = TG_ARGV[0]; RETURN NULL; END $$ LANGUAGE plpgsql",
+			"CREATE TRIGGER owns_version_trigger AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Owns FOR EACH STATEMENT EXECUTE PROCEDURE count_table_change('Owns')",
+			"CREATE TRIGGER service_request_version_trigger AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Service_Request FOR EACH STATEMENT EXECUTE PROCEDURE count_table_change('Service_Request')",
+			"CREATE TRIGGER service_request_archive_version_trigger AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Service_Request_Archive FOR EACH STATEMENT EXECUTE PROCEDURE count_table_change('Service_Request')",
+			"CREATE TRIGGER closed_request_version_trigger AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Closed_Request FOR EACH STATEMENT EXECUTE PROCEDURE count_table_change('Closed_Request')",
+			"CREATE TRIGGER closed_request_archive_version_trigger AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON Closed_Request_Archive FOR EACH STATEMENT EXECUTE PROCEDURE count_table_change('Closed_Request')"),
+		new Migration(11, "Index the archive tables for reports 6 and 8, which read them too",
+			"CREATE INDEX closed_request_archive_bill_under_100_idx ON Closed_Request_Archive (bill, wid) INCLUDE (date, comment) WHERE bill < 100",
+			"CREATE INDEX service_request_archive_odometer_under_50000_idx ON Service_Request_Archive (car_vin) WHERE odometer < 50000"),
+		//any session can set shop.bulk_load, so a clerk could close requests unchecked; BulkLoader also checks what it loaded
+		new Migration(12, "Skip the closing check of a bulk load only for the owner of Closed_Request",
+			"CREATE OR REPLACE FUNCTION check_closed_request() RETURNS trigger AS $$ BEGIN " +
+				"IF current_setting('shop.bulk_load', true) = 'on' AND pg_has_role(current_user, (SELECT relowner FROM pg_class WHERE oid = 'closed_request'::regclass), 'MEMBER') THEN RETURN NULL; END IF; " +
+				"PERFORM pg_advisory_xact_lock(hashtext('closed_request'), NEW.rid); " +
+				"IF NOT EXISTS (SELECT 1 FROM Service_Request WHERE rid = NEW.rid) AND NOT EXISTS (SELECT 1 FROM Service_Request_Archive WHERE rid = NEW.rid) THEN " +
+				"RAISE EXCEPTION 'insert or update on table \"closed_request\" violates foreign key constraint, key (rid)=(%) is not present', NEW.rid USING ERRCODE = 'foreign_key_violation'; END IF; " +
+				"IF (SELECT COUNT(*) FROM Closed_Request WHERE rid = NEW.rid) + (SELECT COUNT(*) FROM Closed_Request_Archive WHERE rid = NEW.rid) > 1 THEN " +
+				"RAISE EXCEPTION 'duplicate key value violates unique constraint \"closed_request_rid_idx\", key (rid)=(%) already exists', NEW.rid USING ERRCODE = 'unique_violation'; END IF; " +
+				"RETURN NULL; END $$ LANGUAGE plpgsql"),
+		//the one Table_Version row updated by every write stayed locked until its commit, so all the
+		//writers queued on it; a sequence takes no lock, and the shop moves it on after its commit
+		new Migration(13, "Count the changes of the tables the reports read in sequences moved on after the commit",
+			"DROP TRIGGER owns_version_trigger ON Owns",
+			"DROP TRIGGER service_request_version_trigger ON Service_Request",
+			"DROP TRIGGER service_request_archive_version_trigger ON Service_Request_Archive",
+			"DROP TRIGGER closed_request_version_trigger ON Closed_Request",
+			"DROP TRIGGER closed_request_archive_version_trigger ON Closed_Request_Archive",
+			"DROP FUNCTION count_table_change()",
+			"DROP TABLE Table_Version",
+			"CREATE SEQUENCE owns_version_seq",
+			"CREATE SEQUENCE service_request_version_seq",
+			"CREATE SEQUENCE closed_request_version_seq"),
+		//the same for Customer: the intakes adding a customer queued on the Customer_Version row
+		new Migration(14, "Count the changes of Customer in a sequence moved on after the commit",
+			"DROP TRIGGER customer_version_trigger ON Customer",
+			"DROP FUNCTION count_customer_change()",
+			"DROP TABLE Customer_Version",
+			"CREATE SEQUENCE customer_version_seq")
+	};
+
+	//rows per page of the reports explained by check()
+	private static final int PAGE = 20;
+
+	private MechanicShop esql;
+
+	public Migrations(MechanicShop esql){
+		this.esql = esql;
+	}
+
+	/**
+	 * Method to apply the migrations newer than the version recorded in
+	 * Schema_Version.  Several shops may start at the same time: the table
+	 * is locked while a migration is applied and the version is read again
+	 * under the lock.
+	 *
+	 * @return the number of migrations applied
+	 * @throws java.sql.SQLException when a migration fails, it is rolled back
+	 */
+	public int migrate() throws SQLException {
+		esql.executeUpdate("CREATE TABLE IF NOT EXISTS Schema_Version (version INTEGER NOT NULL PRIMARY KEY, description TEXT NOT NULL, applied_at TIMESTAMP NOT NULL DEFAULT now())");
+		PooledConnection conn = esql.borrowConnection();
+		int applied = 0;
+		try{
+			Connection connection = conn.getConnection();
+			connection.setAutoCommit(false);
+			try{
+				for(Migration migration : MIGRATIONS){
+					Statement stmt = connection.createStatement();
+					try{
+						stmt.execute("LOCK TABLE Schema_Version IN EXCLUSIVE MODE");
+						ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM Schema_Version");
+						rs.next();
+						if(rs.getInt(1) >= migration.version){
+							connection.commit();
+							continue;
+						}
+						for(String sql : migration.statements){
+							stmt.execute(sql);
+						}
+					}finally{
+						stmt.close();
+					}
+					PreparedStatement record = conn.prepare("INSERT INTO Schema_Version(version, description) VALUES (?, ?)");
+					MechanicShop.bind(record, migration.version, migration.description);
+					record.executeUpdate();
+					connection.commit();
+					++applied;
+					System.out.println("Applied migration " + migration.version + ": " + migration.description);
+				}
+			}catch(SQLException e){
+				conn.checkBroken(e);
+				if(!conn.broken){
+					connection.rollback();
+				}
+				throw e;
+			}finally{
+				if(!conn.broken){
+					connection.setAutoCommit(true);
+				}
+			}
+		}finally{
+			esql.releaseConnection(conn);
+		}
+		return applied;
+	}//end migrate
+
+	/**
+	 * Method to EXPLAIN every query of JdbcShopStore, with the arguments the
+	 * menu passes, and print the ones whose plan has a Seq Scan.
+	 *
+	 * The plans are made with enable_seqscan off, so the answer does not
+	 * depend on the size of the tables: on a small data set the planner
+	 * prefers reading a whole table anyway, with the setting off a Seq Scan
+	 * is only left when no index can serve the access.
+	 *
+	 * @return the number of queries with a Seq Scan
+	 * @throws java.sql.SQLException when a query cannot be explained
+	 */
+	public int check() throws SQLException {
+		List<List<String>> customers = esql.executeQueryAndReturnResult("SELECT TRIM(lname), id FROM Customer LIMIT 1");
+		List<List<String>> cars = esql.executeQueryAndReturnResult("SELECT vin FROM Car LIMIT 1");
+		String lname = customers.isEmpty() ? "Scarlett" : customers.get(0).get(0);
+		int customerId = customers.isEmpty() ? 0 : Integer.parseInt(customers.get(0).get(1));
+		String vin = cars.isEmpty() ? "" : cars.get(0).get(0);
+		Date since = ReportDefinition.since(1);
+
+		PooledConnection conn = esql.borrowConnection();
+		int flagged = 0;
+		int checked = 0;
+		try{
+			Connection connection = conn.getConnection();
+			connection.setAutoCommit(false);
+			SQLException failure = null;
+			try{
+				Statement stmt = connection.createStatement();
+				stmt.execute("SET LOCAL enable_seqscan = off");
+				stmt.close();
+				flagged += explain(connection, "findCustomersByLastName", JdbcShopStore.CUSTOMERS_BY_LAST_NAME, lname);
+				flagged += explain(connection, "getCarsOfCustomers", JdbcShopStore.CARS_OF_CUSTOMERS, (Object) new Integer[]{customerId});
+				flagged += explain(connection, "getCars", JdbcShopStore.CARS_BY_VIN, (Object) new String[]{vin});
+				flagged += explain(connection, "getMechanics", JdbcShopStore.MECHANICS_BY_ID, (Object) new Integer[]{0});
+				flagged += explain(connection, "checkClosings", JdbcShopStore.CHECK_CLOSINGS, new Integer[]{0}, new Integer[]{0});
+				//the reports, on their first page and on a page after a key
+				flagged += explain(connection, "listClosedRequestsWithBillUnder", JdbcShopStore.CLOSED_REQUESTS_WITH_BILL_UNDER, 100, PAGE);
+				flagged += explain(connection, "listClosedRequestsWithBillUnder after", JdbcShopStore.CLOSED_REQUESTS_WITH_BILL_UNDER_AFTER, 100, 50, 0, PAGE);
+				flagged += explain(connection, "listCustomersWithMoreCarsThan", JdbcShopStore.CUSTOMERS_WITH_MORE_CARS_THAN, 20, PAGE);
+				flagged += explain(connection, "listCustomersWithMoreCarsThan after", JdbcShopStore.CUSTOMERS_WITH_MORE_CARS_THAN_AFTER, customerId, 20, PAGE);
+				flagged += explain(connection, "listCarsBeforeYearUnderMileage", JdbcShopStore.CARS_BEFORE_YEAR_UNDER_MILEAGE, 1995, 50000, PAGE);
+				flagged += explain(connection, "listCarsBeforeYearUnderMileage after", JdbcShopStore.CARS_BEFORE_YEAR_UNDER_MILEAGE_AFTER, 1995, 50000, 1990, "", "", PAGE);
+				flagged += explain(connection, "listCarsWithMostServices", JdbcShopStore.CARS_WITH_MOST_SERVICES, PAGE);
+				flagged += explain(connection, "listCarsWithMostServices after", JdbcShopStore.CARS_WITH_MOST_SERVICES_AFTER, 2, vin, PAGE);
+				flagged += explain(connection, "listCustomersByTotalBill", JdbcShopStore.CUSTOMERS_BY_TOTAL_BILL, PAGE);
+				flagged += explain(connection, "listCustomersByTotalBill after", JdbcShopStore.CUSTOMERS_BY_TOTAL_BILL_AFTER, 1000L, customerId, PAGE);
+				//the same over the window of the last month, which reads one or two partitions
+				flagged += explain(connection, "listClosedRequestsWithBillUnder since", JdbcShopStore.CLOSED_REQUESTS_WITH_BILL_UNDER_SINCE, 100, since, PAGE);
+				flagged += explain(connection, "listCarsBeforeYearUnderMileage since", JdbcShopStore.CARS_BEFORE_YEAR_UNDER_MILEAGE_SINCE, 1995, 50000, since, PAGE);
+				flagged += explain(connection, "listCarsWithMostServices since", JdbcShopStore.CARS_WITH_MOST_SERVICES_SINCE, since, PAGE);
+				flagged += explain(connection, "listCustomersByTotalBill since", JdbcShopStore.CUSTOMERS_BY_TOTAL_BILL_SINCE, since, PAGE);
+				checked = 19;
+			}catch(SQLException e){
+				conn.checkBroken(e);
+				failure = e;
+				throw e;
+			}finally{
+				//a broken connection is dropped by the pool, and a failed cleanup
+				//must not hide the failure of the EXPLAIN
+				if(!conn.broken){
+					try{
+						connection.rollback();
+						connection.setAutoCommit(true);
+					}catch(SQLException e){
+						conn.checkBroken(e);
+						if(failure == null){
+							throw e;
+						}
+						failure.addSuppressed(e);
+					}
+				}
+			}
+		}catch(SQLException e){
+			conn.checkBroken(e);
+			throw e;
+		}finally{
+			esql.releaseConnection(conn);
+		}
+		System.out.println(flagged + " of " + checked + " queries do a sequential scan");
+		return flagged;
+	}//end check
+
+	/**
+	 * Method to EXPLAIN one query and print its plan when it has a Seq Scan.
+	 *
+	 * @return 1 when the plan has a Seq Scan, 0 otherwise
+	 */
+	private static int explain(Connection connection, String name, String template, Object... params) throws SQLException {
+		List<String> plan = new ArrayList<String>();
+		boolean seqScan = false;
+		PreparedStatement stmt = connection.prepareStatement("EXPLAIN " + template);
+		try{
+			MechanicShop.bind(stmt, params);
+			ResultSet rs = stmt.executeQuery();
+			while(rs.next()){
+				String line = rs.getString(1);
+				plan.add(line);
+				seqScan |= line.contains("Seq Scan");
+			}
+		}finally{
+			stmt.close();
+		}
+		if(!seqScan){
+			System.out.println("OK        " + name);
+			return 0;
+		}
+		System.out.println("SEQ SCAN  " + name);
+		for(String line : plan){
+			System.out.println("          " + line);
+		}
+		return 1;
+	}//end explain
+
+}//end Migrations
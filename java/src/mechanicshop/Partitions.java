@@ -0,0 +1,193 @@
+/*
+ * Monthly partitions of the request tables
+ * ========================================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class looks after the month partitions of Service_Request and
+ * Closed_Request made by migration 9.
+ *
+ * prepare() makes the partitions of this month and the next one at
+ * startup; JdbcShopStore makes the partition of any other month before
+ * its first request, so the new requests of the menu never land in the
+ * default partition.
+ *
+ * archive() moves the months older than a horizon out of the hot tables,
+ * which the reports and the closing of requests read, into
+ * Service_Request_Archive and Closed_Request_Archive.  A partition moves
+ * whole: it is detached from the hot table and attached to the archive,
+ * no row is copied.  With an export directory the partition is instead
+ * written to <dir>/<partition>.csv.gz and dropped.  A month of service
+ * requests only moves with the months of all their closings, see cutoff(),
+ * so it is never moved while it holds an open request.
+ *
+ * The reports answer over everything still in the database: reports 6 and
+ * 8 read the archive with the hot tables, and Car_Service_Count and
+ * Customer_Bill_Total count it, so attaching months to the archive changes
+ * no report.  Months exported and dropped leave every report: their rows
+ * are taken off the aggregates in the transaction that drops them.
+ *
+ */
+
+public class Partitions{
+	//makes the partition of the month of a day, if it does not exist yet
+	static final String MONTH_PARTITION = "SELECT shop_month_partition(?, ?::date)";
+	//the partitioned tables, by the names of shop_month_partition(); the closings
+	//move first, so the requests they bill are still there for the aggregates
+	private static final String[] TABLES = {"closed_request", "service_request"};
+
+	//the first day of the month the given number of months before this one
+	private static final String HORIZON = "SELECT (date_trunc('month', CURRENT_DATE) - make_interval(months => ?))::date";
+	//per month of the hot service requests: the month of their last closing and their number still open
+	private static final String REQUEST_MONTHS =
+		"SELECT date_trunc('month', S.date)::date, MAX(date_trunc('month', C.date))::date, COUNT(*) - COUNT(C.rid) " +
+		"FROM Service_Request AS S LEFT JOIN Closed_Request AS C ON C.rid = S.rid GROUP BY 1";
+	//the month partitions of a table before a month, oldest first
+	private static final String MONTHS_BEFORE =
+		"SELECT c.relname, to_date(right(c.relname, 8), '\"y\"YYYY\"m\"MM') AS month FROM pg_inherits AS i, pg_class AS c, pg_class AS p " +
+		"WHERE i.inhrelid = c.oid AND i.inhparent = p.oid AND pg_table_is_visible(p.oid) AND p.relname = ? AND c.relname ~ '_y[0-9]{4}m[0-9]{2}$' " +
+		"AND to_date(right(c.relname, 8), '\"y\"YYYY\"m\"MM') < ? ORDER BY month";
+	//the rows of a dropped partition, taken off the aggregates of reports 9 and 10
+	private static final String UNCOUNT_SERVICE_REQUESTS =
+		"UPDATE Car_Service_Count AS A SET requests = A.requests - P.requests FROM (SELECT car_vin, COUNT(*) AS requests FROM %s GROUP BY car_vin) AS P WHERE A.car_vin = P.car_vin";
+	private static final String DROP_UNSERVICED_CARS = "DELETE FROM Car_Service_Count WHERE requests = 0";
+	private static final String UNCOUNT_CLOSED_REQUESTS =
+		"UPDATE Customer_Bill_Total AS A SET total = A.total - P.total FROM (SELECT S.customer_id, SUM(W.bill) AS total FROM %s AS W, " +
+		JdbcShopStore.ALL_SERVICE_REQUESTS + " AS S WHERE S.rid = W.rid GROUP BY S.customer_id) AS P WHERE A.customer_id = P.customer_id";
+	private static final String DROP_UNBILLED_CUSTOMERS =
+		"DELETE FROM Customer_Bill_Total AS A WHERE A.total = 0 AND NOT EXISTS (SELECT 1 FROM " + JdbcShopStore.ALL_CLOSED_REQUESTS + " AS W, " +
+		JdbcShopStore.ALL_SERVICE_REQUESTS + " AS S WHERE S.rid = W.rid AND S.customer_id = A.customer_id)";
+
+	private MechanicShop esql;
+
+	public Partitions(MechanicShop esql){
+		this.esql = esql;
+	}
+
+	/**
+	 * Method to make the partitions of this month and the next one, when
+	 * they do not exist yet.
+	 *
+	 * @throws java.sql.SQLException when a partition cannot be made
+	 */
+	public void prepare() throws SQLException {
+		for(String table : TABLES){
+			esql.executePreparedQueryAndReturnResult("SELECT shop_month_partition(?, CURRENT_DATE), shop_month_partition(?, (CURRENT_DATE + interval '1 month')::date)", table, table);
+		}
+	}
+
+	/**
+	 * Method to move the months before the horizon out of the hot tables,
+	 * one partition per transaction.
+	 *
+	 * @param horizonMonths the number of months kept hot before this one
+	 * @param exportDir where to write the partitions before dropping them,
+	 *        null to attach them to the archive tables
+	 * @return the number of partitions moved
+	 * @throws java.sql.SQLException when a partition cannot be moved, the
+	 *         ones before it stay moved
+	 * @throws java.io.IOException when an export cannot be written
+	 */
+	public int archive(int horizonMonths, File exportDir) throws SQLException, IOException {
+		if(horizonMonths < 0){
+			throw new IllegalArgumentException("The horizon is a number of months, not " + horizonMonths);
+		}
+		if(exportDir != null && !exportDir.isDirectory() && !exportDir.mkdirs()){
+			throw new IOException("Cannot create the directory " + exportDir);
+		}
+		Date horizon = Date.valueOf(esql.executePreparedQueryAndReturnResult(HORIZON, horizonMonths).get(0).get(0));
+		Date cutoff = cutoff(horizon, esql.executeQueryAndReturnResult(REQUEST_MONTHS));
+		System.out.println("Keeping the months from " + cutoff);
+		int moved = 0;
+		for(String table : TABLES){
+			for(List<String> partition : esql.executePreparedQueryAndReturnResult(MONTHS_BEFORE, table, cutoff)){
+				String name = partition.get(0);
+				move(table, name, Date.valueOf(partition.get(1)), exportDir);
+				System.out.println((exportDir == null ? "Archived " : "Exported and dropped ") + name);
+				++moved;
+			}
+		}
+		return moved;
+	}//end archive
+
+	/**
+	 * Method to find the first month kept in the hot tables: the horizon,
+	 * or an earlier month when a request before it is still open or closed
+	 * from it on.  The requests of every month moved are then closed in a
+	 * month moved too, so a closing never outlives its request in an export.
+	 *
+	 * @param horizon the first day of the first month to keep at least
+	 * @param months per month of the hot service requests: its first day,
+	 *        the first day of the month of its last closing or null, and
+	 *        the number of its requests still open
+	 * @return the first day of the first month to keep
+	 */
+	static Date cutoff(Date horizon, List<List<String>> months){
+		Date cutoff = horizon;
+		boolean lowered = true;
+		//each month kept can hold back the ones before it, until none does
+		while(lowered){
+			lowered = false;
+			for(List<String> month : months){
+				Date first = Date.valueOf(month.get(0));
+				boolean held = Integer.parseInt(month.get(2)) > 0 || month.get(1) != null && !Date.valueOf(month.get(1)).before(cutoff);
+				if(held && first.before(cutoff)){
+					cutoff = first;
+					lowered = true;
+				}
+			}
+		}
+		return cutoff;
+	}//end cutoff
+
+	//detaches the partition of a month and attaches it to the archive, or exports and drops it
+	private void move(final String table, final String name, final Date month, final File exportDir) throws SQLException, IOException {
+		final Date next = Date.valueOf(month.toLocalDate().plusMonths(1));
+		final IOException[] failed = {null};
+		try{
+			esql.runInTransaction(new UnitOfWork.Work(){
+				public void run() throws SQLException {
+					esql.executeUpdate("ALTER TABLE " + table + " DETACH PARTITION " + name);
+					//neither moving nor dropping a partition goes through the write methods of the store
+					esql.bumpAfterCommit(JdbcShopStore.REPORT_VERSIONS);
+					if(exportDir == null){
+						esql.executeUpdate("ALTER TABLE " + table + "_archive ATTACH PARTITION " + name + " FOR VALUES FROM ('" + month + "') TO ('" + next + "')");
+						return;
+					}
+					if(table.equals("service_request")){
+						esql.executeUpdate(String.format(UNCOUNT_SERVICE_REQUESTS, name));
+						esql.executeUpdate(DROP_UNSERVICED_CARS);
+					}else{
+						esql.executeUpdate(String.format(UNCOUNT_CLOSED_REQUESTS, name));
+						esql.executeUpdate(DROP_UNBILLED_CUSTOMERS);
+					}
+					//written again when the transaction is retried
+					try{
+						ReportExporter.export(esql, "SELECT * FROM " + name, Integer.MAX_VALUE, new File(exportDir, name + ".csv.gz"));
+					}catch(IOException e){
+						failed[0] = e;
+						throw new SQLException("Cannot export " + name, e);
+					}
+					esql.executeUpdate("DROP TABLE " + name);
+				}
+			});
+		}catch(SQLException e){
+			if(failed[0] != null){
+				throw failed[0];
+			}
+			throw e;
+		}
+	}//end move
+
+}//end Partitions
@@ -0,0 +1,94 @@
+/*
+ * Connection pooling for MechanicShop
+ * ===================================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * This class wraps one physical connection of a ConnectionPool together
+ * with its prepared statement cache.  Prepared statements belong to the
+ * connection that created them, so every pooled connection keeps its own
+ * cache keyed by SQL template.
+ *
+ */
+
+public class PooledConnection{
+	private Connection connection;
+	//prepared statements of this connection, keyed by their SQL template
+	private Map<String, PreparedStatement> statementCache = new HashMap<String, PreparedStatement>();
+
+	//when this connection was last handed back to the pool
+	long lastUsed = System.currentTimeMillis();
+	//set once the connection failed in a way it cannot recover from
+	boolean broken = false;
+
+	PooledConnection(Connection connection){
+		this.connection = connection;
+	}
+
+	public Connection getConnection(){
+		return connection;
+	}
+
+	/**
+	 * Method to fetch the prepared statement for a SQL template.  Statements
+	 * are created once per connection and kept in the statement cache, so
+	 * the server-side plan of a template is reused by every later call.
+	 *
+	 * @param template the SQL string, with '?' placeholders for parameters
+	 * @return the cached prepared statement
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String template) throws SQLException {
+		PreparedStatement stmt = statementCache.get(template);
+		if(stmt == null){
+			stmt = connection.prepareStatement(template);
+			statementCache.put(template, stmt);
+		}
+		return stmt;
+	}//end prepare
+
+	/**
+	 * Method to inspect a failure of this connection.  Connection-class
+	 * errors (SQLSTATE 08xxx) or a closed connection mark it broken, so the
+	 * pool drops it instead of handing it out again.
+	 *
+	 * @param e the failure raised while using this connection
+	 */
+	public void checkBroken(SQLException e){
+		String state = e.getSQLState();
+		try{
+			if((state != null && state.startsWith("08")) || connection.isClosed()){
+				broken = true;
+			}
+		}catch(SQLException ignored){
+			broken = true;
+		}
+	}//end checkBroken
+
+	/**
+	 * Method to close the cached statements and the physical connection.
+	 */
+	void close(){
+		try{
+			for(PreparedStatement stmt : statementCache.values()){
+				stmt.close();
+			}
+			statementCache.clear();
+			connection.close();
+		}catch(SQLException e){
+			// ignored.
+		}
+	}//end close
+
+}//end PooledConnection
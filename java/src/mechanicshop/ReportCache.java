@@ -0,0 +1,252 @@
+/*
+ * Caching of report pages
+ * =======================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * This class keeps the pages of the reports read by JdbcShopStore, so a
+ * report shown again with the same parameters (a dashboard refreshed every
+ * few seconds, a clerk going back a page) is answered from memory.
+ *
+ * Every page depends on the tables its report reads.  The store calls
+ * changed() for a table once a write to it is committed, which moves the
+ * version of the table on.  A page is cached under the versions of its
+ * tables, so after a change it is read again, while the pages of the
+ * reports that do not read the table stay cached.  A page read while a
+ * table changed is not cached at all: it may predate the change.
+ *
+ * The writes of other processes (another shop, a bulk load, an archive
+ * run) are seen through the shared versions, sequences in the database
+ * that every shop moves on after it commits a write, see Versions and
+ * MechanicShop.bumpAfterCommit: they are read before every page is served
+ * and are part of its version too.  This costs a small query per page,
+ * much less than the report.  A write made outside the shop, e.g. from
+ * psql, is only seen once something moves the sequence on, or when the
+ * time to live of the pages runs out, if they have one.
+ *
+ * Pages are kept in an LruCache.  Pages of more than maxRows rows are not
+ * cached.
+ *
+ */
+
+public class ReportCache{
+
+	/**
+	 * A report page read from the database.
+	 */
+	public interface Query{
+		int run(RowHandler handler) throws SQLException;
+	}
+
+	/**
+	 * The versions of the tables as the database counts them, committed
+	 * changes only, by table.
+	 */
+	public interface Versions{
+		Map<String, Long> read() throws SQLException;
+	}
+
+	//the rows of a page, copied out of the result set
+	private static final class Page{
+		String[] names;
+		int[] types;
+		List<Object[]> rows = new ArrayList<Object[]>();
+	}
+
+	private final LruCache<String, Page> pages;
+	private final int maxRows;
+	//null when the pages only change in this process
+	private final Versions shared;
+	//table -> number of committed changes
+	private final Map<String, Long> versions = new HashMap<String, Long>();
+	private long changes = 0;
+	//number of clear() calls, part of every version
+	private long clears = 0;
+
+	/**
+	 * @param maxSize the most pages kept, 0 to cache nothing
+	 * @param ttlMillis how long a page is served, 0 until its tables change
+	 * @param maxRows the most rows of a cached page
+	 * @param shared the versions kept in the database, null for none
+	 */
+	public ReportCache(int maxSize, long ttlMillis, int maxRows, Versions shared){
+		this.pages = new LruCache<String, Page>("Reports", maxSize, ttlMillis);
+		this.maxRows = maxRows;
+		this.shared = shared;
+	}
+
+	/**
+	 * Method to stream a report page from the cache, or else from the query,
+	 * caching it.
+	 *
+	 * @param key the report and all its arguments, the page included
+	 * @param tables the tables the report reads
+	 * @param query reads the page from the database
+	 * @return the number of rows
+	 */
+	public int run(String key, String[] tables, Query query, final RowHandler handler) throws SQLException {
+		String versionedKey = key + "@" + version(tables);
+		Page cached = pages.get(versionedKey);
+		if(cached != null){
+			CachedRow row = new CachedRow(cached);
+			for(Object[] values : cached.rows){
+				row.values = values;
+				++row.rowNumber;
+				handler.handle(row);
+			}
+			return cached.rows.size();
+		}
+		final Page page = new Page();
+		final boolean[] tooLarge = {false};
+		int rows = query.run(new RowHandler(){
+			public void handle(Row row) throws SQLException{
+				if(!tooLarge[0]){
+					copy(page, row);
+					tooLarge[0] = page.rows.size() > maxRows;
+				}
+				handler.handle(row);
+			}
+		});
+		if(!tooLarge[0] && versionedKey.equals(key + "@" + version(tables))){
+			pages.put(versionedKey, page);
+		}
+		return rows;
+	}//end run
+
+	/**
+	 * Method to record a committed change of a table: the cached pages of
+	 * the reports reading it are not served any more.
+	 */
+	public synchronized void changed(String table){
+		Long version = versions.get(table);
+		versions.put(table, version == null ? 1L : version + 1);
+		++changes;
+	}
+
+	/**
+	 * Method to drop every page, after a change of the tables around the
+	 * store.
+	 */
+	public synchronized void clear(){
+		pages.clear();
+		++clears;
+	}
+
+	//the clears and the versions of the tables, here and in the database,
+	//e.g. "0:3/12.0/4."; they only grow, so a change of any of them gives
+	//another string
+	private String version(String[] tables) throws SQLException {
+		Map<String, Long> database = shared == null ? null : shared.read();
+		synchronized(this){
+			StringBuilder version = new StringBuilder().append(clears).append(':');
+			for(String table : tables){
+				Long changed = versions.get(table);
+				version.append(changed == null ? 0L : changed);
+				if(database != null){
+					Long committed = database.get(table);
+					version.append('/').append(committed == null ? 0L : committed);
+				}
+				version.append('.');
+			}
+			return version.toString();
+		}
+	}
+
+	private static void copy(Page page, Row row) throws SQLException {
+		int columns = row.getColumnCount();
+		if(page.names == null){
+			page.names = new String[columns];
+			page.types = new int[columns];
+			for(int i = 0; i < columns; ++i){
+				page.names[i] = row.getColumnName(i + 1);
+				page.types[i] = row.getColumnType(i + 1);
+			}
+		}
+		Object[] values = new Object[columns];
+		for(int i = 0; i < columns; ++i){
+			switch(page.types[i]){
+				case Types.DATE: values[i] = row.getDate(i + 1); break;
+				case Types.INTEGER:
+				case Types.SMALLINT:
+				case Types.BIGINT: values[i] = row.getLong(i + 1); break;
+				default: values[i] = row.getString(i + 1);
+			}
+			if(row.wasNull()){
+				values[i] = null;
+			}
+		}
+		page.rows.add(values);
+	}
+
+	/**
+	 * @return a one-line summary of the pages and the statistics
+	 */
+	public synchronized String getStats(){
+		return pages.getStats() + ", " + changes + " table changes";
+	}
+
+	/**
+	 * A row of a cached page, replayed to the handler of the report.
+	 */
+	private static final class CachedRow implements Row{
+		private final Page page;
+		Object[] values;
+		int rowNumber = 0;
+		private boolean wasNull = false;
+
+		CachedRow(Page page){
+			this.page = page;
+		}
+
+		private Object value(int column){
+			Object value = values[column - 1];
+			wasNull = value == null;
+			return value;
+		}
+
+		public int getRowNumber(){ return rowNumber; }
+
+		public int getColumnCount(){ return page.names.length; }
+
+		public String getColumnName(int column){ return page.names[column - 1]; }
+
+		public int getColumnType(int column){ return page.types[column - 1]; }
+
+		public int getInt(int column){
+			return (int) getLong(column);
+		}
+
+		public long getLong(int column){
+			Object value = value(column);
+			if(value == null){
+				return 0;
+			}
+			return value instanceof Long ? (Long) value : Long.parseLong(value.toString().trim());
+		}
+
+		public Date getDate(int column){
+			return (Date) value(column);
+		}
+
+		public String getString(int column){
+			Object value = value(column);
+			return value == null ? null : value.toString();
+		}
+
+		public boolean wasNull(){ return wasNull; }
+	}//end CachedRow
+
+}//end ReportCache
@@ -0,0 +1,241 @@
+/*
+ * Reports of the menu
+ * ===================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * This class describes one report of the menu (items 6 to 10): its
+ * parameters with their default values, the columns of its rows, how its
+ * rows are read from a ShopStore and how a row is shown.
+ *
+ * The thresholds of sql/queries.sql (bill under 100, more than 20 cars,
+ * built before 1995, under 50000 miles, the 10 cars with the most
+ * services) are the defaults; the menu asks for every parameter and the
+ * export mode takes them after the report number, e.g. "8:1990,60000".
+ * The reports on the request tables also take a window, the number of
+ * months back to read; 0, the default, reads the whole history.
+ *
+ * The rows are those of the ShopStore list methods, so the last columns
+ * are the sort key the pages seek past, see ReportPager.
+ *
+ */
+
+public abstract class ReportDefinition{
+	private final int number;
+	private final String title;
+	private final String[] parameters;
+	private final int[] defaults;
+	private final String[] columns;
+
+	ReportDefinition(int number, String title, String[] parameters, int[] defaults, String... columns){
+		this.number = number;
+		this.title = title;
+		this.parameters = parameters;
+		this.defaults = defaults;
+		this.columns = columns;
+	}
+
+	/**
+	 * Method to read one page of the report.
+	 *
+	 * @param args a value for every parameter, in order
+	 * @param after the sort key of the last row of the previous page, null
+	 *        for the first page
+	 * @param limit the most rows to read
+	 * @return the number of rows read
+	 */
+	abstract int fetch(ShopStore store, int[] args, Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * @return the sort key of a row, as passed to fetch() for the next page
+	 */
+	abstract Object[] keyOf(Row row) throws SQLException;
+
+	/**
+	 * @return the row as shown by the menu
+	 */
+	abstract String format(Row row) throws SQLException;
+
+	/**
+	 * @return the most rows of the whole report with these arguments
+	 */
+	int total(int[] args){
+		return Integer.MAX_VALUE;
+	}
+
+	public int getNumber(){
+		return number;
+	}
+
+	public String getTitle(){
+		return title;
+	}
+
+	/**
+	 * @return the prompts of the parameters, in order
+	 */
+	public String[] getParameters(){
+		return parameters;
+	}
+
+	//the prompt of the window parameter
+	private static final String MONTHS = "Months back (0 for all)";
+
+	/**
+	 * @return the first date of a window of months back to today, null for
+	 *         no window
+	 */
+	static Date since(int months){
+		return months <= 0 ? null : Date.valueOf(LocalDate.now().minusMonths(months));
+	}
+
+	public int[] getDefaults(){
+		return defaults.clone();
+	}
+
+	public String[] getColumns(){
+		return columns;
+	}
+
+	static final ReportDefinition[] REPORTS = {
+		new ReportDefinition(6, "Closed requests with a bill under a limit", new String[]{"Bill under", MONTHS}, new int[]{100, 0},
+				"date", "comment", "bill", "wid"){
+			int fetch(ShopStore store, int[] args, Object[] after, int limit, RowHandler handler) throws SQLException{
+				return store.listClosedRequestsWithBillUnder(args[0], since(args[1]), after, limit, handler);
+			}
+			Object[] keyOf(Row row) throws SQLException{
+				return new Object[]{row.getInt(3), row.getInt(4)};
+			}
+			String format(Row row) throws SQLException{
+				return row.getDate(1) + " $" + row.getInt(3) + " " + row.getString(2);
+			}
+		},
+		new ReportDefinition(7, "Customers owning more than a number of cars", new String[]{"More cars than"}, new int[]{20},
+				"fname", "lname", "id"){
+			int fetch(ShopStore store, int[] args, Object[] after, int limit, RowHandler handler) throws SQLException{
+				return store.listCustomersWithMoreCarsThan(args[0], after, limit, handler);
+			}
+			Object[] keyOf(Row row) throws SQLException{
+				return new Object[]{row.getInt(3)};
+			}
+			String format(Row row) throws SQLException{
+				return row.getString(1) + " " + row.getString(2);
+			}
+		},
+		new ReportDefinition(8, "Cars built before a year with a service under a mileage", new String[]{"Built before", "Miles under", MONTHS}, new int[]{1995, 50000, 0},
+				"make", "model", "year"){
+			int fetch(ShopStore store, int[] args, Object[] after, int limit, RowHandler handler) throws SQLException{
+				return store.listCarsBeforeYearUnderMileage(args[0], args[1], since(args[2]), after, limit, handler);
+			}
+			Object[] keyOf(Row row) throws SQLException{
+				return new Object[]{row.getInt(3), row.getString(1), row.getString(2)};
+			}
+			String format(Row row) throws SQLException{
+				return row.getInt(3) + " " + row.getString(1) + " " + row.getString(2);
+			}
+		},
+		new ReportDefinition(9, "Cars with the most service requests", new String[]{"Number of cars to list", MONTHS}, new int[]{10, 0},
+				"make", "model", "requests", "vin"){
+			int fetch(ShopStore store, int[] args, Object[] after, int limit, RowHandler handler) throws SQLException{
+				return store.listCarsWithMostServices(since(args[1]), after, limit, handler);
+			}
+			Object[] keyOf(Row row) throws SQLException{
+				return new Object[]{row.getInt(3), row.getString(4)};
+			}
+			String format(Row row) throws SQLException{
+				return row.getString(1) + " " + row.getString(2) + ", Services: " + row.getLong(3);
+			}
+			int total(int[] args){
+				return args[0];
+			}
+		},
+		new ReportDefinition(10, "Customers by their total bill", new String[]{MONTHS}, new int[]{0},
+				"fname", "lname", "total", "id"){
+			int fetch(ShopStore store, int[] args, Object[] after, int limit, RowHandler handler) throws SQLException{
+				return store.listCustomersByTotalBill(since(args[0]), after, limit, handler);
+			}
+			Object[] keyOf(Row row) throws SQLException{
+				return new Object[]{row.getLong(3), row.getInt(4)};
+			}
+			String format(Row row) throws SQLException{
+				return row.getString(1) + " " + row.getString(2) + ", Total bill: $" + row.getLong(3);
+			}
+		}
+	};
+
+	/**
+	 * @return the report of a menu number
+	 * @throws IllegalArgumentException when there is no such report
+	 */
+	static ReportDefinition get(int number){
+		for(ReportDefinition report : REPORTS){
+			if(report.number == number){
+				return report;
+			}
+		}
+		throw new IllegalArgumentException("Reports " + REPORTS[0].number + " to " + REPORTS[REPORTS.length - 1].number + " exist, not " + number);
+	}
+
+	/**
+	 * @return whether the text names a report with its arguments, e.g. "8"
+	 *         or "8:1990,60000", rather than being a query
+	 */
+	static boolean isReport(String spec){
+		return spec.trim().matches("\\d+(:.*)?");
+	}
+
+	/**
+	 * @return the report named by a text, see isReport
+	 * @throws IllegalArgumentException when there is no such report
+	 */
+	static ReportDefinition forSpec(String spec){
+		String text = spec.trim();
+		int colon = text.indexOf(':');
+		return get(Integer.parseInt(colon < 0 ? text : text.substring(0, colon)));
+	}
+
+	/**
+	 * Method to read the arguments of the report from the text naming it,
+	 * see isReport.  Missing arguments keep their default.
+	 *
+	 * @throws IllegalArgumentException when there are too many or one is not
+	 *         an integer
+	 */
+	int[] argsOf(String spec){
+		int[] args = getDefaults();
+		int colon = spec.indexOf(':');
+		if(colon < 0 || spec.substring(colon + 1).trim().isEmpty()){
+			return args;
+		}
+		String[] values = spec.substring(colon + 1).split(",");
+		if(values.length > args.length){
+			throw new IllegalArgumentException("Report " + number + " takes " + args.length + " arguments: " + Arrays.toString(parameters));
+		}
+		for(int i = 0; i < values.length; ++i){
+			if(!values[i].trim().isEmpty()){
+				args[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+		return args;
+	}
+
+	/**
+	 * Method to stream the rows of the whole report, up to limit.
+	 *
+	 * @return the number of rows
+	 */
+	int stream(ShopStore store, int[] args, int limit, RowHandler handler) throws SQLException {
+		return fetch(store, args, null, Math.min(limit, total(args)), handler);
+	}
+
+}//end ReportDefinition
@@ -0,0 +1,466 @@
+/*
+ * Export of query results to files
+ * ================================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class writes the rows of a report or of any query to a file, as CSV
+ * with a header line or as JSON lines (one object per row).  Either can be
+ * gzip-compressed.
+ *
+ * It is a RowHandler, so the rows go from the streamed result straight to
+ * the file: every value is encoded as UTF-8 into one fixed buffer, numbers
+ * digit by digit, and the buffer is written to a FileChannel (or through a
+ * gzip stream over it) whenever it fills up.  Memory use does not depend on
+ * the size of the result, and no String is built per row.
+ *
+ * The format is taken from the file name: .csv or .jsonl, optionally
+ * followed by .gz.
+ *
+ */
+
+public class ReportExporter implements RowHandler{
+	static final int CSV = 0;
+	static final int JSON_LINES = 1;
+
+	//bytes encoded before a write to the file
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private int format;
+	private FileChannel channel;
+	//the gzip stream over the channel, null when not compressed
+	private OutputStream gzip;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+	private int position = 0;
+
+	//column names, from the report or from the first row
+	private String[] columns;
+	//"name": of every column, encoded once, for JSON lines
+	private byte[][] keys;
+	//java.sql.Types of every column, read from the first row
+	private int[] types;
+
+	//statistics
+	private long rows = 0;
+	private long bytes = 0;
+
+	/**
+	 * @param file the file to create or replace
+	 * @param format CSV or JSON_LINES
+	 * @param gzip whether to compress the file
+	 * @param columns the column names, null to use the names of the result
+	 * @throws java.io.IOException when the file cannot be created
+	 */
+	public ReportExporter(File file, int format, boolean gzip, String[] columns) throws IOException {
+		this.format = format;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try{
+			if(gzip){
+				this.gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+			}
+		}catch(IOException e){
+			channel.close();
+			throw e;
+		}
+		if(columns != null){
+			setColumns(columns);
+		}
+	}
+
+	/**
+	 * Method to create an exporter with the format of a file name: .csv or
+	 * .jsonl, optionally followed by .gz.
+	 *
+	 * @throws java.lang.IllegalArgumentException when the name has no known extension
+	 */
+	public static ReportExporter forFile(File file, String[] columns) throws IOException {
+		String name = file.getName().toLowerCase();
+		boolean gzip = name.endsWith(".gz");
+		if(gzip){
+			name = name.substring(0, name.length() - 3);
+		}
+		int format;
+		if(name.endsWith(".csv")){
+			format = CSV;
+		}
+		else if(name.endsWith(".jsonl") || name.endsWith(".json")){
+			format = JSON_LINES;
+		}
+		else{
+			throw new IllegalArgumentException("Unknown export format of " + file + ", expected .csv, .jsonl, .csv.gz or .jsonl.gz");
+		}
+		return new ReportExporter(file, format, gzip, columns);
+	}
+
+	/**
+	 * Method to export a report of the menu or a query, and print the rows
+	 * and the throughput.
+	 *
+	 * @param esql the shop
+	 * @param what a report number (6 to 10), optionally with its arguments
+	 *        as in "8:1990,60000", or a SELECT statement
+	 * @param limit the most rows of a report
+	 * @param file the file to write, see forFile
+	 * @throws java.sql.SQLException when the query fails
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public static void export(MechanicShop esql, String what, int limit, File file) throws SQLException, IOException {
+		long start = System.nanoTime();
+		ReportDefinition report = ReportDefinition.isReport(what) ? ReportDefinition.forSpec(what) : null;
+		int[] args = report != null ? report.argsOf(what) : null;
+		ReportExporter exporter = forFile(file, report != null ? report.getColumns() : null);
+		try{
+			if(report != null){
+				report.stream(esql.getStore(), args, limit, exporter);
+			}
+			else{
+				esql.executeQueryAndStream(what, exporter);
+			}
+		}finally{
+			exporter.close();
+		}
+		printStats(exporter, file, start);
+	}//end export
+
+	/**
+	 * Method to print the rows, size and throughput of a finished export.
+	 *
+	 * @param start System.nanoTime() when the export started
+	 */
+	static void printStats(ReportExporter exporter, File file, long start){
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double megabytes = exporter.getBytes() / 1e6;
+		System.out.println(String.format("Exported %d rows, %.1f MB to %s (%d bytes on disk) in %.3f s: %.0f rows/s, %.1f MB/s",
+			exporter.getRows(), megabytes, file, file.length(), seconds, exporter.getRows() / seconds, megabytes / seconds));
+	}
+
+	private void setColumns(String[] columns){
+		this.columns = columns;
+		if(format == CSV){
+			return;
+		}
+		keys = new byte[columns.length][];
+		for(int i = 0; i < columns.length; ++i){
+			StringBuilder key = new StringBuilder(i == 0 ? "{\"" : ",\"");
+			for(int j = 0; j < columns[i].length(); ++j){
+				char c = columns[i].charAt(j);
+				if(c == '"' || c == '\\'){
+					key.append('\\');
+				}
+				key.append(c);
+			}
+			keys[i] = key.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	public void handle(Row row) throws SQLException {
+		try{
+			if(types == null){
+				start(row);
+			}
+			if(format == CSV){
+				writeCsv(row);
+			}
+			else{
+				writeJson(row);
+			}
+			++rows;
+		}catch(IOException e){
+			//RowHandler only throws SQLException
+			throw new SQLException("Cannot write the export: " + e.getMessage(), e);
+		}
+	}
+
+	//reads the column types and writes the CSV header before the first row
+	private void start(Row row) throws SQLException, IOException {
+		int count = row.getColumnCount();
+		if(columns == null){
+			String[] names = new String[count];
+			for(int i = 0; i < count; ++i){
+				names[i] = row.getColumnName(i + 1);
+			}
+			setColumns(names);
+		}
+		types = new int[count];
+		for(int i = 0; i < count; ++i){
+			types[i] = row.getColumnType(i + 1);
+		}
+		if(format == CSV){
+			writeHeader();
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		for(int i = 0; i < columns.length; ++i){
+			if(i > 0){
+				put((byte) ',');
+			}
+			putCsv(columns[i]);
+		}
+		put((byte) '\n');
+	}
+
+	private void writeCsv(Row row) throws SQLException, IOException {
+		for(int i = 0; i < types.length; ++i){
+			if(i > 0){
+				put((byte) ',');
+			}
+			if(isInteger(types[i])){
+				long value = row.getLong(i + 1);
+				if(!row.wasNull()){
+					putLong(value);
+				}
+			}
+			else{
+				String value = row.getString(i + 1);
+				if(value != null){
+					putCsv(value);
+				}
+			}
+		}
+		put((byte) '\n');
+	}
+
+	private void writeJson(Row row) throws SQLException, IOException {
+		for(int i = 0; i < types.length; ++i){
+			put(keys[i]);
+			if(isInteger(types[i])){
+				long value = row.getLong(i + 1);
+				if(row.wasNull()){
+					putNull();
+				}
+				else{
+					putLong(value);
+				}
+			}
+			else{
+				String value = row.getString(i + 1);
+				if(value == null){
+					putNull();
+				}
+				else{
+					putJson(value);
+				}
+			}
+		}
+		put((byte) '}');
+		put((byte) '\n');
+	}
+
+	private static boolean isInteger(int type){
+		return type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT || type == Types.TINYINT;
+	}
+
+	/*
+	 * Encoding into the buffer.
+	 */
+
+	private void put(byte b) throws IOException {
+		if(position == buffer.length){
+			flush();
+		}
+		buffer[position++] = b;
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		if(position + bytes.length > buffer.length){
+			flush();
+		}
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	private void putNull() throws IOException {
+		put((byte) 'n');
+		put((byte) 'u');
+		put((byte) 'l');
+		put((byte) 'l');
+	}
+
+	//the decimal digits of a number, without going through a String
+	private void putLong(long value) throws IOException {
+		if(position + 20 > buffer.length){
+			flush();
+		}
+		if(value == Long.MIN_VALUE){
+			put("-9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+			return;
+		}
+		if(value < 0){
+			buffer[position++] = '-';
+			value = -value;
+		}
+		int end = position + 1;
+		for(long rest = value; rest >= 10; rest /= 10){
+			++end;
+		}
+		for(int i = end - 1; i >= position; --i){
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position = end;
+	}
+
+	//a field quoted only when it holds a comma, a quote or a line break
+	private void putCsv(String value) throws IOException {
+		boolean quote = false;
+		for(int i = 0; i < value.length() && !quote; ++i){
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if(quote){
+			put((byte) '"');
+		}
+		for(int i = 0; i < value.length(); ++i){
+			char c = value.charAt(i);
+			if(c == '"'){
+				put((byte) '"');
+			}
+			i = putChar(value, i);
+		}
+		if(quote){
+			put((byte) '"');
+		}
+	}
+
+	private void putJson(String value) throws IOException {
+		put((byte) '"');
+		for(int i = 0; i < value.length(); ++i){
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\'){
+				put((byte) '\\');
+				put((byte) c);
+			}
+			else if(c == '\n'){
+				put((byte) '\\');
+				put((byte) 'n');
+			}
+			else if(c == '\r'){
+				put((byte) '\\');
+				put((byte) 'r');
+			}
+			else if(c == '\t'){
+				put((byte) '\\');
+				put((byte) 't');
+			}
+			else if(c < 0x20){
+				put((byte) '\\');
+				put((byte) 'u');
+				put((byte) '0');
+				put((byte) '0');
+				put((byte) HEX[c >> 4]);
+				put((byte) HEX[c & 0xF]);
+			}
+			else{
+				i = putChar(value, i);
+			}
+		}
+		put((byte) '"');
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Method to encode the character at i as UTF-8, with the low surrogate
+	 * after it when it is a high surrogate.
+	 *
+	 * @return the index of the last character encoded
+	 */
+	private int putChar(String value, int i) throws IOException {
+		if(position + 4 > buffer.length){
+			flush();
+		}
+		char c = value.charAt(i);
+		if(c < 0x80){
+			buffer[position++] = (byte) c;
+		}
+		else if(c < 0x800){
+			buffer[position++] = (byte) (0xC0 | c >> 6);
+			buffer[position++] = (byte) (0x80 | c & 0x3F);
+		}
+		else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))){
+			int code = Character.toCodePoint(c, value.charAt(++i));
+			buffer[position++] = (byte) (0xF0 | code >> 18);
+			buffer[position++] = (byte) (0x80 | code >> 12 & 0x3F);
+			buffer[position++] = (byte) (0x80 | code >> 6 & 0x3F);
+			buffer[position++] = (byte) (0x80 | code & 0x3F);
+		}
+		else if(Character.isSurrogate(c)){
+			//a lone surrogate, as String.getBytes does
+			buffer[position++] = '?';
+		}
+		else{
+			buffer[position++] = (byte) (0xE0 | c >> 12);
+			buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+			buffer[position++] = (byte) (0x80 | c & 0x3F);
+		}
+		return i;
+	}
+
+	//writes the encoded bytes to the file
+	private void flush() throws IOException {
+		if(gzip != null){
+			gzip.write(buffer, 0, position);
+		}
+		else{
+			wrapped.clear();
+			wrapped.limit(position);
+			while(wrapped.hasRemaining()){
+				channel.write(wrapped);
+			}
+		}
+		bytes += position;
+		position = 0;
+	}
+
+	/**
+	 * Method to write what is left in the buffer and close the file.  A
+	 * CSV export of a report with no rows still gets its header.
+	 */
+	public void close() throws IOException {
+		try{
+			if(types == null && columns != null && format == CSV){
+				writeHeader();
+			}
+			flush();
+			if(gzip != null){
+				gzip.close();
+			}
+		}finally{
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return the number of rows written
+	 */
+	public long getRows(){
+		return rows;
+	}
+
+	/**
+	 * @return the number of bytes written, before compression
+	 */
+	public long getBytes(){
+		return bytes;
+	}
+
+}//end ReportExporter
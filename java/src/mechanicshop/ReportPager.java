@@ -0,0 +1,125 @@
+/*
+ * Paged report output
+ * ===================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * This class shows a report one page at a time and lets the user move to
+ * the next or the previous page.
+ *
+ * Pages are read with keyset seeks: every page is fetched after the sort
+ * key of the last row of the page before it, so moving to a page reads
+ * that page only, however deep it is, and no result is held between two
+ * pages.  The keys of the pages already seen are kept to go back.
+ *
+ * A report implements fetch() with one of the list methods of ShopStore,
+ * keyOf() to read the sort key from the last columns of a row, and print()
+ * to show a row.
+ *
+ */
+
+public abstract class ReportPager{
+	private int pageSize;
+	private int total;
+
+	//state of the page being read
+	private int firstNumber;
+	private int pageRows;
+	private int fetched;
+	private Object[] lastKey;
+
+	/**
+	 * @param pageSize the rows per page
+	 * @param total the most rows of the whole report, Integer.MAX_VALUE for all
+	 */
+	public ReportPager(int pageSize, int total){
+		this.pageSize = pageSize;
+		this.total = total;
+	}
+
+	/**
+	 * Method to read the rows after a key, in report order.
+	 *
+	 * @param after the key of the last row shown, null for the first page
+	 * @param limit the most rows to read
+	 */
+	protected abstract int fetch(Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * @return the sort key of a row, as passed to fetch() for the next page
+	 */
+	protected abstract Object[] keyOf(Row row) throws SQLException;
+
+	/**
+	 * Method to show a row.
+	 *
+	 * @param number the position of the row in the whole report, starting at 1
+	 */
+	protected abstract void print(int number, Row row) throws SQLException;
+
+	/**
+	 * Method to show the first page and then the page the user asks for,
+	 * until the user quits or the input ends.  A report that fits in one
+	 * page is shown without asking anything.
+	 */
+	public void run(BufferedReader in) throws SQLException, IOException {
+		//the key before each page seen so far, null before the first page
+		List<Object[]> starts = new ArrayList<Object[]>();
+		starts.add(null);
+		int page = 0;
+		while(true){
+			firstNumber = page * pageSize + 1;
+			pageRows = Math.min(pageSize, total - page * pageSize);
+			fetched = 0;
+			//one row more than the page tells whether a next page exists
+			fetch(starts.get(page), pageRows + 1, new RowHandler(){
+				public void handle(Row row) throws SQLException{
+					if(fetched < pageRows){
+						print(firstNumber + fetched, row);
+						lastKey = keyOf(row);
+					}
+					++fetched;
+				}
+			});
+			boolean hasNext = fetched > pageRows && firstNumber - 1 + pageRows < total;
+			boolean hasPrevious = page > 0;
+			if(fetched == 0 && page == 0){
+				MechanicShop.out.println("No rows.");
+			}
+			if(!hasNext && !hasPrevious){
+				return;
+			}
+			String prompt = (hasNext ? "[n]ext page, " : "") + (hasPrevious ? "[p]revious page, " : "") + "[q]uit: ";
+			MechanicShop.out.print(prompt);
+			String answer = in.readLine();
+			if(answer == null){
+				return;
+			}
+			answer = answer.trim().toLowerCase();
+			if(answer.startsWith("n") && hasNext){
+				if(starts.size() == page + 1){
+					starts.add(lastKey);
+				}
+				++page;
+			}
+			else if(answer.startsWith("p") && hasPrevious){
+				--page;
+			}
+			else{
+				return;
+			}
+		}
+	}//end run
+
+}//end ReportPager
@@ -0,0 +1,50 @@
+/*
+ * Streaming query results
+ * =======================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Date;
+import java.sql.SQLException;
+
+/**
+ * This interface is the view of the current row handed to a RowHandler
+ * while a query result is streamed.  Values are read with typed accessors
+ * straight from the underlying result, so no row is ever turned into a
+ * list of Strings.  A Row is only valid inside the handle() call it was
+ * passed to.
+ *
+ */
+
+public interface Row{
+	/**
+	 * @return the position of this row in the result, starting at 1
+	 */
+	int getRowNumber();
+
+	int getColumnCount() throws SQLException;
+
+	String getColumnName(int column) throws SQLException;
+
+	/**
+	 * @return the SQL type of a column, one of java.sql.Types
+	 */
+	int getColumnType(int column) throws SQLException;
+
+	int getInt(int column) throws SQLException;
+
+	long getLong(int column) throws SQLException;
+
+	Date getDate(int column) throws SQLException;
+
+	String getString(int column) throws SQLException;
+
+	/**
+	 * @return whether the value read last was SQL NULL, as ResultSet.wasNull
+	 */
+	boolean wasNull() throws SQLException;
+}
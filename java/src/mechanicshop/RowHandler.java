@@ -0,0 +1,22 @@
+/*
+ * Streaming query results
+ * =======================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.SQLException;
+
+/**
+ * This interface is the callback of MechanicShop.executeQueryAndStream.  It
+ * is called once per row, in result order, while the rows are fetched from
+ * the server one batch at a time.
+ *
+ */
+
+public interface RowHandler{
+	void handle(Row row) throws SQLException;
+}
@@ -0,0 +1,147 @@
+/*
+ * Recorded menu sessions
+ * ======================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * This class records the menu sessions of the clerks, every line they
+ * typed (the menu choices and the answers to the prompts), into a script
+ * that LoadDriver replays.
+ *
+ * A script is a text file with one block per session:
+ *
+ *   session 3 2026-10-17T09:12:44
+ *   > 4
+ *   > Greenhill
+ *   > 1
+ *   ...
+ *
+ * Every typed line is kept after "> " exactly as it was typed, an empty
+ * answer included.  Lines starting with '#' and blank lines are comments,
+ * so a script can be written or edited by hand.  A session is written
+ * whole when it ends, so the sessions of a server never interleave.
+ *
+ */
+
+public class SessionScript{
+	private static final String SESSION = "session";
+	private static final String ANSWER = "> ";
+
+	//the lines typed in the session of each thread, unset when not recording
+	private static final ThreadLocal<List<String>> typed = new ThreadLocal<List<String>>();
+
+	private final File file;
+	private PrintWriter writer = null;
+	private int sessions = 0;
+
+	/**
+	 * @param file the script to append the sessions to
+	 */
+	public SessionScript(File file){
+		this.file = file;
+	}
+
+	/**
+	 * Method to start recording the session of this thread.
+	 */
+	void begin(){
+		typed.set(new ArrayList<String>());
+	}
+
+	/**
+	 * Method to record a line typed in the session of this thread, if it is
+	 * recorded.
+	 */
+	static void typed(String line){
+		List<String> lines = typed.get();
+		if(lines != null){
+			lines.add(line);
+		}
+	}
+
+	/**
+	 * Method to append the session of this thread to the script.
+	 */
+	void end() throws IOException {
+		List<String> lines = typed.get();
+		typed.remove();
+		if(lines == null || lines.isEmpty()){
+			return;
+		}
+		synchronized(this){
+			if(writer == null){
+				writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+			}
+			writer.println(SESSION + " " + (++sessions) + " " + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()));
+			for(String line : lines){
+				writer.println(ANSWER + line);
+			}
+			writer.flush();
+			if(writer.checkError()){
+				throw new IOException("Cannot write the session script " + file);
+			}
+		}
+	}//end end
+
+	public synchronized void close(){
+		if(writer != null){
+			writer.close();
+			writer = null;
+		}
+	}
+
+	/**
+	 * Method to read the sessions of a script.
+	 *
+	 * @return the typed lines of every session, in order
+	 * @throws java.io.IOException when the file cannot be read or a line is
+	 *         neither a session, an answer nor a comment
+	 */
+	public static List<List<String>> read(File file) throws IOException {
+		List<List<String>> sessions = new ArrayList<List<String>>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try{
+			List<String> session = null;
+			int number = 0;
+			for(String line = reader.readLine(); line != null; line = reader.readLine()){
+				++number;
+				if(line.startsWith(ANSWER) || line.equals(ANSWER.trim())){
+					if(session == null){
+						throw new IOException(file + ":" + number + ": an answer before the first session line");
+					}
+					session.add(line.length() > ANSWER.length() ? line.substring(ANSWER.length()) : "");
+				}
+				else if(line.startsWith(SESSION)){
+					session = new ArrayList<String>();
+					sessions.add(session);
+				}
+				else if(!line.trim().isEmpty() && !line.startsWith("#")){
+					throw new IOException(file + ":" + number + ": expected 'session', '> answer' or a # comment");
+				}
+			}
+		}finally{
+			reader.close();
+		}
+		return sessions;
+	}//end read
+
+}//end SessionScript
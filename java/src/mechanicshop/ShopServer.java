@@ -0,0 +1,245 @@
+/*
+ * Multi-session server
+ * ====================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class lets many clerks share one shop process: it accepts terminal
+ * sessions (e.g. nc or telnet) on a TCP port of the local host and runs the
+ * menu of MechanicShop for each of them.  Sessions share the connection
+ * pool, the store, the key allocator, the customer index and the metrics of
+ * the shop, see MechanicShop(MechanicShop).  The menu workflows keep their
+ * state in local variables, so what a session has of its own is its
+ * thread: its streams and its open transaction are thread-local.
+ *
+ * Each session runs on a thread of its own.  The build targets Java 8, so
+ * this is a daemon platform thread of a cached pool: an idle clerk holds
+ * a thread while it waits for input.  Only when the shop happens to run
+ * on a JVM with virtual threads (Java 21 and later) does sessionExecutor
+ * find them, by reflection, and use one per session instead.  A session
+ * holds a connection only for the statements it runs, so many sessions
+ * fit in a small pool.
+ *
+ * The menu reads MechanicShop.in and writes MechanicShop.out and .err:
+ * those are routed to the streams of the session of the calling thread,
+ * and to the console when the thread has no session.
+ *
+ */
+
+public class ShopServer{
+	//the streams of the session of each thread, unset on the console
+	private static final ThreadLocal<BufferedReader> sessionIn = new ThreadLocal<BufferedReader>();
+	private static final ThreadLocal<PrintStream> sessionOut = new ThreadLocal<PrintStream>();
+
+	/**
+	 * The menu input.  The time spent waiting for it is left out of the
+	 * latency of the operations.  The end of a session's input is an
+	 * EOFException, so no prompt keeps asking a client that has left.
+	 */
+	static final class Input extends BufferedReader{
+		Input(){
+			super(new InputStreamReader(System.in));
+		}
+
+		public String readLine() throws IOException {
+			BufferedReader session = sessionIn.get();
+			long start = System.nanoTime();
+			try{
+				if(session == null){
+					String line = super.readLine();
+					if(line != null){
+						SessionScript.typed(line);
+					}
+					return line;
+				}
+				//the prompt is written without a newline, send it before waiting
+				sessionOut.get().flush();
+				String line = session.readLine();
+				if(line == null){
+					throw new EOFException("The session was closed");
+				}
+				SessionScript.typed(line);
+				return line;
+			}finally{
+				Metrics.inputWait(System.nanoTime() - start);
+			}
+		}
+	}//end Input
+
+	/**
+	 * The menu output.  Every method goes straight to the stream of the
+	 * session, without the lock of this stream, so a client that stops
+	 * reading only holds up its own session.
+	 */
+	static final class Output extends PrintStream{
+		private PrintStream console;
+
+		Output(PrintStream console){
+			super(console, true);
+			this.console = console;
+		}
+
+		private PrintStream target(){
+			PrintStream session = sessionOut.get();
+			return session != null ? session : console;
+		}
+
+		public void print(boolean b){ target().print(b); }
+		public void print(char c){ target().print(c); }
+		public void print(int i){ target().print(i); }
+		public void print(long l){ target().print(l); }
+		public void print(float f){ target().print(f); }
+		public void print(double d){ target().print(d); }
+		public void print(char[] s){ target().print(s); }
+		public void print(String s){ target().print(s); }
+		public void print(Object o){ target().print(o); }
+		public void println(){ target().println(); }
+		public void println(boolean b){ target().println(b); }
+		public void println(char c){ target().println(c); }
+		public void println(int i){ target().println(i); }
+		public void println(long l){ target().println(l); }
+		public void println(float f){ target().println(f); }
+		public void println(double d){ target().println(d); }
+		public void println(char[] s){ target().println(s); }
+		public void println(String s){ target().println(s); }
+		public void println(Object o){ target().println(o); }
+		public PrintStream printf(String format, Object... args){ return target().printf(format, args); }
+		public PrintStream printf(Locale l, String format, Object... args){ return target().printf(l, format, args); }
+		public PrintStream format(String format, Object... args){ return target().format(format, args); }
+		public PrintStream format(Locale l, String format, Object... args){ return target().format(l, format, args); }
+		public PrintStream append(CharSequence csq){ return target().append(csq); }
+		public PrintStream append(CharSequence csq, int start, int end){ return target().append(csq, start, end); }
+		public PrintStream append(char c){ return target().append(c); }
+		public void write(int b){ target().write(b); }
+		public void write(byte[] buf, int off, int len){ target().write(buf, off, len); }
+		public void flush(){ target().flush(); }
+		public boolean checkError(){ return target().checkError(); }
+
+		//the console and the sessions are closed by their owners
+		public void close(){
+			flush();
+		}
+	}//end Output
+
+	private MechanicShop shop;
+	private int port;
+	private AtomicInteger sessions = new AtomicInteger();
+	//whether the sessions run on virtual threads
+	private boolean virtual = false;
+
+	/**
+	 * @param shop the shop every session shares
+	 * @param port the local TCP port to listen on
+	 */
+	public ShopServer(MechanicShop shop, int port){
+		this.shop = shop;
+		this.port = port;
+	}
+
+	/**
+	 * Method to accept sessions until the process is stopped.  Only
+	 * connections from the local host are accepted.
+	 */
+	public void serve() throws IOException {
+		ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		ExecutorService executor = sessionExecutor();
+		System.out.println("Serving sessions on " + server.getLocalSocketAddress() + (virtual ? " (virtual threads)" : ""));
+		try{
+			while(true){
+				final Socket socket = server.accept();
+				final int number = sessions.incrementAndGet();
+				executor.execute(new Runnable(){
+					public void run(){
+						session(number, socket);
+					}
+				});
+			}
+		}finally{
+			server.close();
+			executor.shutdown();
+		}
+	}//end serve
+
+	//a cached pool of daemon platform threads; a virtual thread per session only on a
+	//JVM that has them, found by reflection since the 1.8 target cannot name the method
+	private ExecutorService sessionExecutor(){
+		try{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			virtual = true;
+			return (ExecutorService) factory.invoke(null);
+		}catch(Exception e){
+			virtual = false;
+			final AtomicInteger threads = new AtomicInteger();
+			return Executors.newCachedThreadPool(new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "session-" + threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Method to run the menu for one client until it exits or
+	 * disconnects.
+	 */
+	private void session(int number, Socket socket){
+		String client = String.valueOf(socket.getRemoteSocketAddress());
+		System.out.println("Session " + number + " opened from " + client);
+		try{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintStream writer = new PrintStream(socket.getOutputStream(), false, "UTF-8");
+			runSession(shop, reader, writer);
+			writer.println("Bye!");
+			writer.flush();
+		}catch(Exception e){
+			System.err.println("Session " + number + ": " + e.getMessage());
+		}finally{
+			try{
+				socket.close();
+			}catch(IOException e){
+				// ignored.
+			}
+			System.out.println("Session " + number + " closed");
+		}
+	}//end session
+
+	/**
+	 * Method to run the menu on this thread, reading and writing the given
+	 * streams, until EXIT or the end of the input.  Used for the clients of the server and the clerks of
+	 * LoadDriver.
+	 */
+	static void runSession(MechanicShop shop, BufferedReader reader, PrintStream writer) throws Exception {
+		sessionIn.set(reader);
+		sessionOut.set(writer);
+		try{
+			MechanicShop.menu(new MechanicShop(shop));
+		}finally{
+			sessionIn.remove();
+			sessionOut.remove();
+		}
+	}
+
+}//end ShopServer
@@ -0,0 +1,174 @@
+/*
+ * Storage of the shop data
+ * ========================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This interface is everything the menu operations need from storage: the
+ * inserts of the six tables, the lookups of the service intake, and the
+ * report queries of sql/queries.sql.
+ *
+ * JdbcShopStore runs them against PostgreSQL, MemoryShopStore answers them
+ * from tables held in the process.  Lookups return records as lists of
+ * attribute values, like MechanicShop.executeQueryAndReturnResult; reports
+ * stream their rows to a RowHandler and return the number of rows.
+ *
+ */
+
+public interface ShopStore{
+
+	/**
+	 * @return the id given to the new customer
+	 */
+	int addCustomer(String fname, String lname, String phone, String address) throws SQLException;
+
+	/**
+	 * @return the id given to the new mechanic
+	 */
+	int addMechanic(String fname, String lname, int experience) throws SQLException;
+
+	void addCar(String vin, String make, String model, int year) throws SQLException;
+
+	/**
+	 * @return the ownership_id of the new Owns row
+	 */
+	int addOwnership(int customerId, String vin) throws SQLException;
+
+	/**
+	 * @return the rid of the new service request
+	 */
+	int addServiceRequest(int customerId, String vin, Date date, int odometer, String complaint) throws SQLException;
+
+	/**
+	 * @return the wid of the new closed request
+	 */
+	int addClosedRequest(int rid, int mid, Date date, String comment, int bill) throws SQLException;
+
+	/**
+	 * Method to close several service requests as one unit, all on the same
+	 * date.  The closings should have passed checkClosings first.
+	 *
+	 * @return the wids of the new closed requests, in order
+	 */
+	int[] addClosedRequests(int[] rids, int[] mids, Date date, String[] comments, int[] bills) throws SQLException;
+
+	/**
+	 * Method to run several of the operations above as one unit: all of
+	 * their rows are stored, or none is.
+	 */
+	void runInTransaction(UnitOfWork.Work work) throws SQLException;
+
+	/**
+	 * @return one record per customer with that last name, ignoring case:
+	 *         fname, phone, address, id, lname
+	 */
+	List<List<String>> findCustomersByLastName(String lname) throws SQLException;
+
+	/**
+	 * Every customer: id, fname, lname, phone, address.  Read by
+	 * CustomerIndex when it loads.
+	 */
+	int listCustomers(RowHandler handler) throws SQLException;
+
+	/**
+	 * @return a number that changes whenever a row of Customer is added,
+	 *         changed or removed, by this shop or any other writer
+	 */
+	long getCustomerVersion() throws SQLException;
+
+	/**
+	 * @return one record per car owned by the customers, in ownership order:
+	 *         customer_id, vin, make, model, year
+	 */
+	List<List<String>> getCarsOfCustomers(Integer... customerIds) throws SQLException;
+
+	/**
+	 * @return one record per car found: vin, make, model, year
+	 */
+	List<List<String>> getCars(String... vins) throws SQLException;
+
+	/**
+	 * @return one record per mechanic found: id, fname, lname, experience
+	 */
+	List<List<String>> getMechanics(Integer... ids) throws SQLException;
+
+	//results of checkClosings
+	int CLOSING_OK = 0, NO_SUCH_REQUEST = 1, ALREADY_CLOSED = 2, NO_SUCH_MECHANIC = 3;
+
+	/**
+	 * Method to check closings of service requests all at once: the request
+	 * must exist and not be closed yet, and the mechanic must exist.  A
+	 * null mid is not checked.
+	 *
+	 * @return one result per closing, in order: CLOSING_OK or the first
+	 *         problem found, in the order of the constants
+	 */
+	int[] checkClosings(Integer[] rids, Integer[] mids) throws SQLException;
+
+	/*
+	 * Reports.  They return one page of rows in a fixed order: after is the
+	 * sort key of the last row of the previous page, null for the first
+	 * page, and limit the most rows to return.  The sort key is made of the
+	 * last columns of a row, so the next page seeks past it instead of
+	 * skipping rows with OFFSET.
+	 *
+	 * The reports on the request tables take an optional window: since is
+	 * the first date of the requests they read, null for all of them.  On
+	 * the monthly partitions of Postgres only the partitions of the window
+	 * are read.
+	 */
+
+	/**
+	 * Closed requests with a bill under the limit, cheapest first: date,
+	 * comment, bill, wid.  The key is (bill, wid).  The window is on the
+	 * date of the closing.
+	 */
+	int listClosedRequestsWithBillUnder(int bill, Date since, Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * Customers owning more than the given number of cars, by id: fname,
+	 * lname, id.  The key is (id).
+	 */
+	int listCustomersWithMoreCarsThan(int cars, Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * Distinct cars built before the year with a service request under the
+	 * mileage, by year, make and model: make, model, year.  The key is
+	 * (year, make, model).  The window is on the date of the request.
+	 */
+	int listCarsBeforeYearUnderMileage(int year, int miles, Date since, Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * Cars by number of service requests, most first: make, model, number of
+	 * requests, vin.  The key is (requests, vin), both descending.  Read
+	 * from counts kept up to date by addServiceRequest, so the cost depends
+	 * on the page, not on the number of requests.  With a window the
+	 * requests since then are counted instead.
+	 */
+	int listCarsWithMostServices(Date since, Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * Customers by the total of their closed request bills, highest first:
+	 * fname, lname, total, id.  The key is (total, id), both descending.
+	 * Read from totals kept up to date by addClosedRequest.  With a window
+	 * the bills of the closings since then are added up instead.
+	 */
+	int listCustomersByTotalBill(Date since, Object[] after, int limit, RowHandler handler) throws SQLException;
+
+	/**
+	 * Method to recompute the service counts and bill totals of reports 9
+	 * and 10 from the request tables, for rows written around the store
+	 * (e.g. by hand or by COPY).
+	 */
+	void rebuildAggregates() throws SQLException;
+
+}//end ShopStore
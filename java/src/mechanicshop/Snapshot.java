@@ -0,0 +1,523 @@
+/*
+ * Binary snapshots of the shop data
+ * =================================
+ *
+ * Target DBMS: 'Postgres' or in-memory
+ *
+ */
+
+package mechanicshop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * This class is a snapshot of the six tables in a compact binary file,
+ * written from the database or from a MemoryShopStore and restored into
+ * either, much faster than the CSV files are parsed.
+ *
+ * The file is column oriented.  A schema header names every table with
+ * its row count and every column with its type and the place of its
+ * block in the file.  Every distinct string is kept once, in a dictionary
+ * block; a text column holds dictionary codes.  Numbers and dates (days
+ * since 1970-01-01) are stored as the difference from the value above,
+ * zigzag and varint encoded, so keys and dates in order take a byte or
+ * two per row.  All columns are read from memory-mapped blocks.
+ *
+ * In memory a table is an int column per column, text as codes and dates
+ * as days, the layout of MemoryShopStore, so a store is written without
+ * copying its columns.  restore goes through BulkLoader, which COPYs
+ * every table in the binary format, see copy().
+ *
+ * The snapshot of a database holds the archived requests too, see
+ * Partitions; they are restored into the hot tables.
+ *
+ */
+
+public class Snapshot{
+	static final byte INT = 1, TEXT = 2, DATE = 3;
+
+	private static final byte[] MAGIC = "MSHOPSNP".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	//signature, flags and header extension of COPY ... WITH (FORMAT binary)
+	private static final byte[] COPY_HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+	//1970-01-01 to 2000-01-01, the epoch of the binary dates of Postgres
+	private static final int POSTGRES_EPOCH_DAYS = 10957;
+	//bytes sent to the server per writeToCopy call
+	private static final int COPY_BUFFER = 256 * 1024;
+
+	/**
+	 * One table of the snapshot, in the column order of create.sql.
+	 */
+	static final class Table{
+		final String name;
+		final String[] columns;
+		final byte[] types;
+		int rows = 0;
+		//a column per column, of at least rows values
+		int[][] values;
+
+		Table(String name, String[] columns, byte[] types){
+			this.name = name;
+			this.columns = columns;
+			this.types = types;
+			this.values = new int[columns.length][64];
+		}
+
+		void add(int[] row){
+			if(rows == values[0].length){
+				for(int c = 0; c < values.length; ++c){
+					values[c] = Arrays.copyOf(values[c], rows * 2);
+				}
+			}
+			for(int c = 0; c < values.length; ++c){
+				values[c][rows] = row[c];
+			}
+			++rows;
+		}
+	}//end Table
+
+	final Table[] tables = {
+		new Table("Customer", new String[]{"id", "fname", "lname", "phone", "address"}, new byte[]{INT, TEXT, TEXT, TEXT, TEXT}),
+		new Table("Mechanic", new String[]{"id", "fname", "lname", "experience"}, new byte[]{INT, TEXT, TEXT, INT}),
+		new Table("Car", new String[]{"vin", "make", "model", "year"}, new byte[]{TEXT, TEXT, TEXT, INT}),
+		new Table("Owns", new String[]{"ownership_id", "customer_id", "car_vin"}, new byte[]{INT, INT, TEXT}),
+		new Table("Service_Request", new String[]{"rid", "customer_id", "car_vin", "date", "odometer", "complain"}, new byte[]{INT, INT, TEXT, DATE, INT, TEXT}),
+		new Table("Closed_Request", new String[]{"wid", "rid", "mid", "date", "comment", "bill"}, new byte[]{INT, INT, INT, DATE, TEXT, INT})
+	};
+
+	//the dictionary, a string may be null
+	String[] strings = new String[1024];
+	int stringCount = 0;
+	//the UTF-8 bytes of the strings, made when needed by copy()
+	private byte[][] utf8 = null;
+	//string -> code, while the snapshot is built from rows
+	private Map<String, Integer> codes = null;
+
+	Table table(String name){
+		for(Table table : tables){
+			if(table.name.equalsIgnoreCase(name)){
+				return table;
+			}
+		}
+		throw new IllegalArgumentException("The snapshot has no table " + name);
+	}
+
+	String string(int code){
+		return strings[code];
+	}
+
+	private int intern(String value){
+		if(codes == null){
+			codes = new HashMap<String, Integer>();
+		}
+		Integer code = codes.get(value);
+		if(code != null){
+			return code;
+		}
+		if(stringCount == strings.length){
+			strings = Arrays.copyOf(strings, stringCount * 2);
+		}
+		strings[stringCount] = value;
+		codes.put(value, stringCount);
+		return stringCount++;
+	}
+
+	/**
+	 * Method to take a snapshot of the database, the archive tables included.
+	 *
+	 * @throws java.sql.SQLException when a table cannot be read
+	 */
+	public static Snapshot of(MechanicShop esql) throws SQLException {
+		final Snapshot snapshot = new Snapshot();
+		for(final Table table : snapshot.tables){
+			StringBuilder select = new StringBuilder("SELECT ");
+			for(int c = 0; c < table.columns.length; ++c){
+				//CHAR columns come back without their padding
+				select.append(c == 0 ? "" : ", ").append(table.columns[c]).append(table.types[c] == TEXT ? "::text" : "");
+			}
+			String query = select + " FROM " + table.name;
+			if(table.name.endsWith("_Request")){
+				query += " UNION ALL " + select + " FROM " + table.name + "_Archive";
+			}
+			//in key order, so the keys take a byte each
+			query += " ORDER BY 1";
+			final int[] row = new int[table.columns.length];
+			esql.executeQueryAndStream(query, new RowHandler(){
+				public void handle(Row r) throws SQLException{
+					for(int c = 0; c < row.length; ++c){
+						switch(table.types[c]){
+							case TEXT:
+								row[c] = snapshot.intern(r.getString(c + 1));
+								break;
+							case DATE:
+								row[c] = (int) r.getDate(c + 1).toLocalDate().toEpochDay();
+								break;
+							default:
+								row[c] = r.getInt(c + 1);
+						}
+					}
+					table.add(row);
+				}
+			});
+		}
+		snapshot.codes = null;
+		return snapshot;
+	}//end of
+
+	/**
+	 * Method to take a snapshot of an in-memory store.  The snapshot shares
+	 * the columns of the store, it must be written before the store changes.
+	 */
+	public static Snapshot of(MemoryShopStore store){
+		Snapshot snapshot = new Snapshot();
+		MemoryShopStore.Table[] columns = {store.customer, store.mechanic, store.car, store.owns, store.request, store.closed};
+		for(int t = 0; t < columns.length; ++t){
+			Table table = snapshot.tables[t];
+			table.rows = columns[t].size;
+			//the extra columns of the store, e.g. the chain of Owns, are left out
+			table.values = Arrays.copyOf(columns[t].columns, table.columns.length);
+		}
+		snapshot.strings = store.strings.values;
+		snapshot.stringCount = store.strings.size;
+		return snapshot;
+	}
+
+	/*
+	 * The file.
+	 */
+
+	/**
+	 * Method to write the snapshot to a file, replacing it.
+	 *
+	 * @return the size of the file
+	 */
+	public long write(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try{
+			//the header has a fixed size, it is written again once the blocks are placed
+			long[][] blocks = new long[tables.length][];
+			long[] dictionary = new long[2];
+			for(int t = 0; t < tables.length; ++t){
+				blocks[t] = new long[tables[t].columns.length * 2];
+			}
+			byte[] header = header(dictionary, blocks);
+			long position = header.length;
+			channel.position(position);
+
+			Block block = new Block();
+			for(int i = 0; i < stringCount; ++i){
+				if(strings[i] == null){
+					block.writeVarint(0);
+				}
+				else{
+					byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+					block.writeVarint(bytes.length + 1L);
+					block.write(bytes);
+				}
+			}
+			dictionary[0] = position;
+			dictionary[1] = block.size;
+			position += block.writeTo(channel);
+
+			for(int t = 0; t < tables.length; ++t){
+				Table table = tables[t];
+				for(int c = 0; c < table.columns.length; ++c){
+					block.size = 0;
+					int[] values = table.values[c];
+					if(table.types[c] == TEXT){
+						for(int row = 0; row < table.rows; ++row){
+							block.writeVarint(values[row]);
+						}
+					}
+					else{
+						long previous = 0;
+						for(int row = 0; row < table.rows; ++row){
+							long delta = values[row] - previous;
+							block.writeVarint((delta << 1) ^ (delta >> 63));
+							previous = values[row];
+						}
+					}
+					blocks[t][2 * c] = position;
+					blocks[t][2 * c + 1] = block.size;
+					position += block.writeTo(channel);
+				}
+			}
+			channel.write(ByteBuffer.wrap(header(dictionary, blocks)), 0);
+			return position;
+		}finally{
+			channel.close();
+		}
+	}//end write
+
+	//magic, version, the dictionary block, then every table with its columns and their blocks
+	private byte[] header(long[] dictionary, long[][] blocks) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(stringCount);
+		out.writeLong(dictionary[0]);
+		out.writeLong(dictionary[1]);
+		out.writeInt(tables.length);
+		for(int t = 0; t < tables.length; ++t){
+			out.writeUTF(tables[t].name);
+			out.writeInt(tables[t].rows);
+			out.writeInt(tables[t].columns.length);
+			for(int c = 0; c < tables[t].columns.length; ++c){
+				out.writeUTF(tables[t].columns[c]);
+				out.writeByte(tables[t].types[c]);
+				out.writeLong(blocks[t][2 * c]);
+				out.writeLong(blocks[t][2 * c + 1]);
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Method to read a snapshot file.
+	 *
+	 * @throws java.io.IOException when the file cannot be read, or is not a
+	 *         snapshot with the tables and columns of this version
+	 */
+	public static Snapshot read(File file) throws IOException {
+		Snapshot snapshot = new Snapshot();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			DataInputStream in = new DataInputStream(new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 64 * 1024))));
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if(!Arrays.equals(magic, MAGIC)){
+				throw new IOException(file + " is not a shop snapshot");
+			}
+			int version = in.readInt();
+			if(version != VERSION){
+				throw new IOException(file + " is a snapshot of version " + version + ", expected " + VERSION);
+			}
+			int stringCount = in.readInt();
+			MappedByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, in.readLong(), in.readLong());
+			snapshot.strings = new String[Math.max(stringCount, 1)];
+			snapshot.utf8 = new byte[snapshot.strings.length][];
+			for(int i = 0; i < stringCount; ++i){
+				int length = (int) readVarint(dictionary);
+				if(length > 0){
+					byte[] bytes = new byte[length - 1];
+					dictionary.get(bytes);
+					snapshot.utf8[i] = bytes;
+					snapshot.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+				}
+			}
+			snapshot.stringCount = stringCount;
+
+			int tableCount = in.readInt();
+			if(tableCount != snapshot.tables.length){
+				throw new IOException(file + " has " + tableCount + " tables, expected " + snapshot.tables.length);
+			}
+			for(Table table : snapshot.tables){
+				String name = in.readUTF();
+				int rows = in.readInt();
+				int columns = in.readInt();
+				if(!name.equals(table.name) || columns != table.columns.length){
+					throw new IOException(file + ": expected table " + table.name + " with " + table.columns.length + " columns, not " + name + " with " + columns);
+				}
+				table.rows = rows;
+				for(int c = 0; c < columns; ++c){
+					String column = in.readUTF();
+					byte type = in.readByte();
+					if(!column.equals(table.columns[c]) || type != table.types[c]){
+						throw new IOException(file + ": unexpected column " + table.name + "." + column);
+					}
+					MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, in.readLong(), in.readLong());
+					int[] values = new int[rows];
+					if(type == TEXT){
+						for(int row = 0; row < rows; ++row){
+							values[row] = (int) readVarint(block);
+						}
+					}
+					else{
+						long previous = 0;
+						for(int row = 0; row < rows; ++row){
+							long zigzag = readVarint(block);
+							previous += (zigzag >>> 1) ^ -(zigzag & 1);
+							values[row] = (int) previous;
+						}
+					}
+					table.values[c] = values;
+				}
+			}
+		}finally{
+			channel.close();
+		}
+		return snapshot;
+	}//end read
+
+	private static long readVarint(ByteBuffer buffer){
+		long value = 0;
+		for(int shift = 0; ; shift += 7){
+			byte b = buffer.get();
+			value |= (long) (b & 0x7f) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Method to COPY a table of the snapshot into the database, in the
+	 * binary format of COPY: no value is turned into text and parsed again.
+	 *
+	 * @return the number of rows copied
+	 */
+	long copy(String name, CopyManager copyManager) throws SQLException {
+		Table table = table(name);
+		if(utf8 == null){
+			utf8 = new byte[stringCount][];
+			for(int i = 0; i < stringCount; ++i){
+				utf8[i] = strings[i] == null ? null : strings[i].getBytes(StandardCharsets.UTF_8);
+			}
+		}
+		StringBuilder columns = new StringBuilder();
+		for(int c = 0; c < table.columns.length; ++c){
+			columns.append(c == 0 ? "" : ", ").append(table.columns[c]);
+		}
+		CopyIn copy = copyManager.copyIn("COPY " + table.name + " (" + columns + ") FROM STDIN WITH (FORMAT binary)");
+		try{
+			ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER);
+			buffer.put(COPY_HEADER);
+			for(int row = 0; row < table.rows; ++row){
+				flushFor(copy, buffer, 2 + 8 * table.columns.length);
+				buffer.putShort((short) table.columns.length);
+				for(int c = 0; c < table.columns.length; ++c){
+					int value = table.values[c][row];
+					switch(table.types[c]){
+						case TEXT:
+							byte[] bytes = utf8[value];
+							if(bytes == null){
+								buffer.putInt(-1);
+								break;
+							}
+							buffer.putInt(bytes.length);
+							if(bytes.length > buffer.remaining()){
+								flushFor(copy, buffer, COPY_BUFFER);
+								copy.writeToCopy(bytes, 0, bytes.length);
+							}
+							else{
+								buffer.put(bytes);
+							}
+							flushFor(copy, buffer, 8 * (table.columns.length - c));
+							break;
+						case DATE:
+							buffer.putInt(4).putInt(value - POSTGRES_EPOCH_DAYS);
+							break;
+						default:
+							buffer.putInt(4).putInt(value);
+					}
+				}
+			}
+			flushFor(copy, buffer, 2);
+			buffer.putShort((short) -1);
+			copy.writeToCopy(buffer.array(), 0, buffer.position());
+			long rows = copy.endCopy();
+			copy = null;
+			return rows;
+		}finally{
+			if(copy != null && copy.isActive()){
+				copy.cancelCopy();
+			}
+		}
+	}//end copy
+
+	//sends the buffer when fewer than needed bytes are left in it
+	private static void flushFor(CopyIn copy, ByteBuffer buffer, int needed) throws SQLException {
+		if(buffer.remaining() < needed){
+			copy.writeToCopy(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * @return the rows of every table, e.g. "Customer 500, Mechanic 250, ..."
+	 */
+	public String describe(){
+		StringBuilder text = new StringBuilder();
+		long rows = 0;
+		for(Table table : tables){
+			text.append(text.length() == 0 ? "" : ", ").append(table.name).append(' ').append(table.rows);
+			rows += table.rows;
+		}
+		return text.append(" (").append(rows).append(" rows, ").append(stringCount).append(" distinct strings)").toString();
+	}
+
+	//a growable buffer of varints
+	private static final class Block{
+		byte[] bytes = new byte[64 * 1024];
+		int size = 0;
+
+		void writeVarint(long value){
+			if(size + 10 > bytes.length){
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			while((value & ~0x7fL) != 0){
+				bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		void write(byte[] data){
+			if(size + data.length > bytes.length){
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + data.length));
+			}
+			System.arraycopy(data, 0, bytes, size, data.length);
+			size += data.length;
+		}
+
+		long writeTo(FileChannel channel) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			return size;
+		}
+	}//end Block
+
+	//the header read through a DataInputStream
+	private static final class ByteBufferInputStream extends InputStream{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer){
+			this.buffer = buffer;
+		}
+
+		public int read(){
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len){
+			if(!buffer.hasRemaining()){
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}//end ByteBufferInputStream
+
+}//end Snapshot
@@ -0,0 +1,144 @@
+/*
+ * Transactions of MechanicShop
+ * ============================
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package mechanicshop;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.LinkedHashSet;
+
+/**
+ * This class is one transaction of MechanicShop.runInTransaction: the
+ * connection it runs on and the writes it has not sent yet.
+ *
+ * While a unit is open on a thread, executePreparedUpdate of
+ * MechanicShop does not run its statement but adds it here.  The pending
+ * writes are sent when the unit commits, or before any other statement of
+ * the unit so that statement sees them.  Consecutive writes of the same
+ * statement go out as one JDBC batch, i.e. one round trip however many
+ * rows they hold.
+ *
+ */
+
+public class UnitOfWork{
+
+	/**
+	 * The statements of a workflow, run by MechanicShop.runInTransaction.
+	 * It may be run again when the transaction is retried, so it must not
+	 * have effects outside the database before it returns.
+	 */
+	public interface Work{
+		void run() throws SQLException;
+	}
+
+	private PooledConnection conn;
+	private Metrics metrics;
+	//writes not sent yet, in order
+	private List<String> templates = new ArrayList<String>();
+	private List<Object[]> params = new ArrayList<Object[]>();
+	//run once the transaction has committed, see MechanicShop.afterCommit
+	private List<Runnable> afterCommit = new ArrayList<Runnable>();
+	//version sequences moved on once the transaction has committed, see MechanicShop.bumpAfterCommit
+	private Set<String> versions = new LinkedHashSet<String>();
+
+	UnitOfWork(PooledConnection conn, Metrics metrics){
+		this.conn = conn;
+		this.metrics = metrics;
+	}
+
+	PooledConnection getConnection(){
+		return conn;
+	}
+
+	/**
+	 * Method to add a write to be sent with the next flush.
+	 */
+	void add(String template, Object[] values){
+		templates.add(template);
+		params.add(values);
+	}
+
+	void afterCommit(Runnable action){
+		afterCommit.add(action);
+	}
+
+	void bumpAfterCommit(String sequence){
+		versions.add(sequence);
+	}
+
+	Set<String> getVersions(){
+		return versions;
+	}
+
+	/**
+	 * Method to run the actions waiting for the commit, in order.
+	 */
+	void committed(){
+		for(Runnable action : afterCommit){
+			action.run();
+		}
+		afterCommit.clear();
+	}
+
+	/**
+	 * Method to send the pending writes, one executeBatch per run of the
+	 * same statement, in the order they were added.
+	 *
+	 * @throws java.sql.SQLException when a write fails; the transaction
+	 *         must then be rolled back
+	 */
+	void flush() throws SQLException {
+		int i = 0;
+		try{
+			while(i < templates.size()){
+				String template = templates.get(i);
+				long start = System.nanoTime();
+				int first = i;
+				boolean failed = true;
+				try{
+					PreparedStatement stmt = conn.prepare(template);
+					for(; i < templates.size() && templates.get(i).equals(template); ++i){
+						MechanicShop.bind(stmt, params.get(i));
+						stmt.addBatch();
+					}
+					try{
+						stmt.executeBatch();
+					}finally{
+						stmt.clearBatch();
+					}
+					failed = false;
+				}finally{
+					metrics.statement(template, params.get(i - 1 < first ? first : i - 1), start, i - first, 0, failed);
+				}
+			}
+		}finally{
+			templates.clear();
+			params.clear();
+		}
+	}//end flush
+
+	/**
+	 * @return whether a transaction that failed with this error can be
+	 *         run again: a serialization failure (40001) or a deadlock
+	 *         (40P01)
+	 */
+	static boolean isRetryable(SQLException e){
+		//a batch reports the error of the failed row as the next exception
+		for(SQLException cause = e; cause != null; cause = cause.getNextException()){
+			String state = cause.getSQLState();
+			if("40001".equals(state) || "40P01".equals(state)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+}//end UnitOfWork
@@ -0,0 +1,317 @@
+/*
+ * A fake database for the tests
+ * =============================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * This class is a JDBC driver whose connections run nothing, so the JDBC
+ * paths of MechanicShop can be tested without PostgreSQL.  Every statement
+ * sent is recorded in executed, in order: plain and prepared statements
+ * by their SQL, a batch as "BATCH n: sql", and "COMMIT" and "ROLLBACK".
+ * Queries return the rows given to rows(), updates count one row.
+ *
+ * Every database registers under a URL of its own, see pool().
+ *
+ */
+
+final class FakeDatabase implements Driver{
+	private static final AtomicInteger databases = new AtomicInteger();
+
+	final String url = "jdbc:mechanicshop-test:" + databases.incrementAndGet();
+	//the statements sent, in order
+	final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+	//thrown by the next commits, one each, before anything else
+	final Deque<SQLException> commitFailures = new ArrayDeque<SQLException>();
+	final AtomicInteger opened = new AtomicInteger();
+
+	private volatile String[] columns = new String[0];
+	private volatile List<Object[]> rows = new ArrayList<Object[]>();
+
+	/**
+	 * @return a new database, registered with the DriverManager until close()
+	 */
+	static FakeDatabase register() throws SQLException {
+		FakeDatabase database = new FakeDatabase();
+		DriverManager.registerDriver(database);
+		return database;
+	}
+
+	void close() throws SQLException {
+		DriverManager.deregisterDriver(this);
+	}
+
+	/**
+	 * @return a pool of at most size connections to this database, whose
+	 *         borrow gives up after 200 ms
+	 */
+	ConnectionPool pool(int size){
+		return new ConnectionPool(url, "test", "", size, 0, 60000L, 200L);
+	}
+
+	/**
+	 * Method to set the result of every query from now on.
+	 */
+	void rows(String[] columns, Object[]... rows){
+		this.columns = columns;
+		this.rows = new ArrayList<Object[]>(Arrays.asList(rows));
+	}
+
+	/**
+	 * @return a copy of the statements sent so far
+	 */
+	List<String> executed(){
+		synchronized(executed){
+			return new ArrayList<String>(executed);
+		}
+	}
+
+	/*
+	 * The driver.
+	 */
+
+	public Connection connect(String url, Properties info){
+		if(!acceptsURL(url)){
+			return null;
+		}
+		opened.incrementAndGet();
+		return proxy(Connection.class, new ConnectionHandler());
+	}
+
+	public boolean acceptsURL(String url){
+		return this.url.equals(url);
+	}
+
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info){
+		return new DriverPropertyInfo[0];
+	}
+
+	public int getMajorVersion(){ return 1; }
+
+	public int getMinorVersion(){ return 0; }
+
+	public boolean jdbcCompliant(){ return false; }
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler){
+		return (T) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[]{type}, handler);
+	}
+
+	//the value a method with no behaviour here returns
+	private static Object nothing(Method method){
+		Class<?> type = method.getReturnType();
+		if(type == boolean.class){
+			return false;
+		}
+		if(type == int.class){
+			return 0;
+		}
+		if(type == long.class){
+			return 0L;
+		}
+		return null;
+	}
+
+	private final class ConnectionHandler implements InvocationHandler{
+		private boolean autoCommit = true;
+		private boolean closed = false;
+
+		public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("prepareStatement")){
+				return proxy(PreparedStatement.class, new StatementHandler((Connection) self, (String) args[0]));
+			}
+			if(name.equals("createStatement")){
+				return proxy(Statement.class, new StatementHandler((Connection) self, null));
+			}
+			if(name.equals("setAutoCommit")){
+				autoCommit = (Boolean) args[0];
+				return null;
+			}
+			if(name.equals("getAutoCommit")){
+				return autoCommit;
+			}
+			if(name.equals("commit")){
+				SQLException failure;
+				synchronized(commitFailures){
+					failure = commitFailures.poll();
+				}
+				if(failure != null){
+					throw failure;
+				}
+				executed.add("COMMIT");
+				return null;
+			}
+			if(name.equals("rollback")){
+				executed.add("ROLLBACK");
+				return null;
+			}
+			if(name.equals("createArrayOf")){
+				final Object[] elements = (Object[]) args[1];
+				return proxy(Array.class, new InvocationHandler(){
+					public Object invoke(Object array, Method m, Object[] a){
+						return m.getName().equals("getArray") ? elements : nothing(m);
+					}
+				});
+			}
+			if(name.equals("isValid")){
+				return !closed;
+			}
+			if(name.equals("isClosed")){
+				return closed;
+			}
+			if(name.equals("close")){
+				closed = true;
+				return null;
+			}
+			if(name.equals("hashCode")){
+				return System.identityHashCode(self);
+			}
+			if(name.equals("equals")){
+				return self == args[0];
+			}
+			return nothing(method);
+		}
+	}//end ConnectionHandler
+
+	private final class StatementHandler implements InvocationHandler{
+		private Connection connection;
+		//the SQL of a prepared statement, null for a plain one
+		private String sql;
+		private int batch = 0;
+
+		StatementHandler(Connection connection, String sql){
+			this.connection = connection;
+			this.sql = sql;
+		}
+
+		public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+			if(name.equals("executeQuery")){
+				executed.add(text);
+				return proxy(ResultSet.class, new ResultSetHandler(columns, rows));
+			}
+			if(name.equals("executeUpdate")){
+				executed.add(text);
+				return 1;
+			}
+			if(name.equals("execute")){
+				executed.add(text);
+				return false;
+			}
+			if(name.equals("addBatch")){
+				++batch;
+				return null;
+			}
+			if(name.equals("executeBatch")){
+				executed.add("BATCH " + batch + ": " + sql);
+				int[] counts = new int[batch];
+				Arrays.fill(counts, 1);
+				batch = 0;
+				return counts;
+			}
+			if(name.equals("clearBatch")){
+				batch = 0;
+				return null;
+			}
+			if(name.equals("getConnection")){
+				return connection;
+			}
+			if(name.equals("hashCode")){
+				return System.identityHashCode(self);
+			}
+			if(name.equals("equals")){
+				return self == args[0];
+			}
+			return nothing(method);
+		}
+	}//end StatementHandler
+
+	private static final class ResultSetHandler implements InvocationHandler{
+		private String[] columns;
+		private List<Object[]> rows;
+		private int row = -1;
+		private boolean wasNull = false;
+
+		ResultSetHandler(String[] columns, List<Object[]> rows){
+			this.columns = columns;
+			this.rows = rows;
+		}
+
+		public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("next")){
+				return ++row < rows.size();
+			}
+			if(name.equals("getMetaData")){
+				return proxy(ResultSetMetaData.class, new InvocationHandler(){
+					public Object invoke(Object meta, Method m, Object[] a){
+						if(m.getName().equals("getColumnCount")){
+							return columns.length;
+						}
+						if(m.getName().equals("getColumnName") || m.getName().equals("getColumnLabel")){
+							return columns[(Integer) a[0] - 1];
+						}
+						if(m.getName().equals("getColumnType")){
+							return Types.VARCHAR;
+						}
+						return nothing(m);
+					}
+				});
+			}
+			if(name.equals("wasNull")){
+				return wasNull;
+			}
+			if(name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer){
+				Object value = rows.get(row)[(Integer) args[0] - 1];
+				wasNull = value == null;
+				if(name.equals("getString")){
+					return value == null ? null : String.valueOf(value);
+				}
+				if(name.equals("getInt")){
+					return value == null ? 0 : ((Number) value).intValue();
+				}
+				if(name.equals("getLong")){
+					return value == null ? 0L : ((Number) value).longValue();
+				}
+				return value;
+			}
+			return nothing(method);
+		}
+	}//end ResultSetHandler
+
+}//end FakeDatabase
@@ -0,0 +1,87 @@
+/*
+ * Tests of the round trips of JdbcShopStore
+ * =========================================
+ *
+ * Target DBMS: none, see FakeDatabase
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The statements JdbcShopStore sends to a FakeDatabase for the lookups of
+ * the menu.
+ *
+ */
+
+public class JdbcShopStoreTest{
+	private FakeDatabase database;
+	private MechanicShop shop;
+	private JdbcShopStore store;
+
+	@Before
+	public void open() throws SQLException {
+		database = FakeDatabase.register();
+		shop = new MechanicShop(database.pool(1));
+		store = (JdbcShopStore) shop.getStore();
+	}
+
+	@After
+	public void close() throws SQLException {
+		shop.cleanup();
+		database.close();
+	}
+
+	@Test
+	public void carsOfCustomersTakeOneJoinAndFillTheCarCache() throws SQLException {
+		database.rows(new String[]{"customer_id", "vin", "make", "model", "year"},
+			new Object[]{1, "1HGCM82633A004352", "Honda", "Accord", 2003},
+			new Object[]{1, "JH4KA8260MC000000", "Acura", "Legend", 1991});
+		List<List<String>> cars = store.getCarsOfCustomers(1);
+		assertEquals(Arrays.asList("1", "1HGCM82633A004352", "Honda", "Accord", "2003"), cars.get(0));
+		assertEquals(2, cars.size());
+		assertEquals(Arrays.asList(JdbcShopStore.CARS_OF_CUSTOMERS), database.executed());
+
+		//the cars of the intake are read again without a round trip
+		List<List<String>> cached = store.getCars("JH4KA8260MC000000", "1HGCM82633A004352");
+		assertEquals(Arrays.asList("JH4KA8260MC000000", "Acura", "Legend", "1991"), cached.get(0));
+		assertEquals(Arrays.asList("1HGCM82633A004352", "Honda", "Accord", "2003"), cached.get(1));
+		assertEquals(1, database.executed().size());
+	}
+
+	@Test
+	public void addedCustomerMovesTheCustomerVersionOnAfterItsInsert() throws SQLException {
+		//the block of keys of the allocator
+		database.rows(new String[]{"nextval"}, new Object[]{100});
+		store.addCustomer("Ann", "Lee", "(555)010-0100", "1 Main St");
+		List<String> executed = database.executed();
+		int insert = executed.indexOf(JdbcShopStore.INSERT_CUSTOMER);
+		assertEquals(executed.size() - 2, insert);
+		assertTrue(executed.get(insert + 1), executed.get(insert + 1).startsWith("SELECT nextval"));
+	}
+
+	@Test
+	public void firstRequestOfAMonthMakesItsPartition() throws SQLException {
+		database.rows(new String[]{"nextval"}, new Object[]{100});
+		store.addServiceRequest(1, "1HGCM82633A004352", Date.valueOf("2031-03-05"), 1000, "noise");
+		store.addServiceRequest(1, "1HGCM82633A004352", Date.valueOf("2031-03-28"), 1000, "noise");
+		store.addServiceRequest(1, "1HGCM82633A004352", Date.valueOf("2031-04-01"), 1000, "noise");
+		store.addClosedRequest(100, 1, Date.valueOf("2031-04-02"), "fixed", 50);
+		assertEquals(3, Collections.frequency(database.executed(), Partitions.MONTH_PARTITION));
+		assertEquals(3, Collections.frequency(database.executed(), JdbcShopStore.INSERT_SERVICE_REQUEST));
+	}
+
+}//end JdbcShopStoreTest
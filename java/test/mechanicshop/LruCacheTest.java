@@ -0,0 +1,77 @@
+/*
+ * Tests of the cache of reference data
+ * ====================================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * LruCache eviction, time to live and statistics.
+ *
+ */
+
+public class LruCacheTest{
+
+	@Test
+	public void leastRecentlyReadEntryIsEvicted(){
+		LruCache<String, Integer> cache = new LruCache<String, Integer>("cars", 2, 0);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		//a is read, so b is the least recently used
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		cache.put("c", 3);
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(3), cache.get("c"));
+		assertTrue(cache.getStats(), cache.getStats().startsWith("cars: 2/2 entries, 3 hits, 1 misses"));
+		assertTrue(cache.getStats(), cache.getStats().endsWith("1 evictions, 0 expirations"));
+	}
+
+	@Test
+	public void entryOlderThanItsTimeToLiveIsReadAgain() throws InterruptedException {
+		LruCache<Integer, String> cache = new LruCache<Integer, String>("mechanics", 10, 20);
+		cache.put(1, "Bo");
+		assertEquals("Bo", cache.get(1));
+		Thread.sleep(40);
+		assertNull(cache.get(1));
+		assertEquals(0, cache.size());
+		assertTrue(cache.getStats(), cache.getStats().contains("1 hits, 1 misses"));
+		assertTrue(cache.getStats(), cache.getStats().endsWith("0 evictions, 1 expirations"));
+		//put again, it is served again
+		cache.put(1, "Bo");
+		assertEquals("Bo", cache.get(1));
+	}
+
+	@Test
+	public void sizeZeroCachesNothing(){
+		LruCache<Integer, String> cache = new LruCache<Integer, String>("off", 0, 0);
+		cache.put(1, "x");
+		assertEquals(0, cache.size());
+		assertNull(cache.get(1));
+		assertTrue(cache.getStats(), cache.getStats().startsWith("off: 0/0 entries, 0 hits, 1 misses"));
+	}
+
+	@Test
+	public void removedAndClearedEntriesAreMisses(){
+		LruCache<Integer, String> cache = new LruCache<Integer, String>("cars", 10, 0);
+		cache.put(1, "x");
+		cache.put(2, "y");
+		cache.remove(1);
+		assertNull(cache.get(1));
+		assertEquals("y", cache.get(2));
+		cache.clear();
+		assertNull(cache.get(2));
+		assertEquals(0, cache.size());
+	}
+
+}//end LruCacheTest
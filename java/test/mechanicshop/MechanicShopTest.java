@@ -0,0 +1,181 @@
+/*
+ * Tests of the JDBC paths of MechanicShop
+ * =======================================
+ *
+ * Target DBMS: none, see FakeDatabase
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The execute methods and runInTransaction against a FakeDatabase, on a
+ * pool of one connection: a connection that is not given back makes the
+ * next statement time out.
+ *
+ */
+
+public class MechanicShopTest{
+	private FakeDatabase database;
+	private MechanicShop shop;
+
+	@Before
+	public void open() throws SQLException {
+		database = FakeDatabase.register();
+		shop = new MechanicShop(database.pool(1));
+	}
+
+	@After
+	public void close() throws SQLException {
+		shop.cleanup();
+		database.close();
+	}
+
+	@Test
+	public void executeMethodsGiveTheConnectionBack() throws SQLException {
+		database.rows(new String[]{"id"}, new Object[]{7});
+		for(int i = 0; i < 3; ++i){
+			shop.executeUpdate("SET search_path TO public");
+			shop.executePreparedUpdate("DELETE FROM Owns WHERE ownership_id = ?", i);
+			assertEquals(Arrays.asList(Arrays.asList("7")), shop.executeQueryAndReturnResult("SELECT 7"));
+			assertEquals(Arrays.asList(Arrays.asList("7")), shop.executePreparedQueryAndReturnResult("SELECT ?", 7));
+			assertEquals(1, shop.executePreparedQuery("SELECT ?", 7));
+		}
+		assertEquals(1, database.opened.get());
+		assertTrue(shop.getPoolStats(), shop.getPoolStats().contains("borrows=15 waited=0 timeouts=0"));
+	}
+
+	@Test
+	public void startupRunsOnJdbc() throws SQLException {
+		//what main runs before the menu, with no migration applied yet
+		database.rows(new String[]{"version"}, new Object[]{0});
+		int applied = new Migrations(shop).migrate();
+		new Partitions(shop).prepare();
+		List<String> executed = database.executed();
+		assertTrue(applied > 0);
+		assertEquals(applied, Collections.frequency(executed, "INSERT INTO Schema_Version(version, description) VALUES (?, ?)"));
+		assertEquals(applied, Collections.frequency(executed, "COMMIT"));
+		assertTrue(executed.get(executed.size() - 1).startsWith("SELECT shop_month_partition"));
+		assertTrue(shop.getPoolStats(), shop.getPoolStats().contains("open=1 idle=1"));
+	}
+
+	@Test
+	public void transactionBatchesItsWritesAndCommitsThem() throws SQLException {
+		final AtomicInteger committed = new AtomicInteger();
+		shop.runInTransaction(new UnitOfWork.Work(){
+			public void run() throws SQLException {
+				shop.executePreparedUpdate("INSERT INTO Car VALUES (?)", "A");
+				shop.executePreparedUpdate("INSERT INTO Car VALUES (?)", "B");
+				shop.executePreparedUpdate("INSERT INTO Owns VALUES (?)", 1);
+				shop.afterCommit(new Runnable(){
+					public void run(){
+						committed.incrementAndGet();
+					}
+				});
+				//only the writes before it are sent before a read
+				shop.executePreparedQuery("SELECT 1");
+				shop.executePreparedUpdate("INSERT INTO Owns VALUES (?)", 2);
+				assertEquals(0, committed.get());
+			}
+		});
+		assertEquals(Arrays.asList("BATCH 2: INSERT INTO Car VALUES (?)", "BATCH 1: INSERT INTO Owns VALUES (?)", "SELECT 1",
+			"BATCH 1: INSERT INTO Owns VALUES (?)", "COMMIT"), database.executed());
+		assertEquals(1, committed.get());
+		//the connection of the transaction went back to the pool
+		shop.executeUpdate("SELECT 1");
+	}
+
+	@Test
+	public void versionsMoveOnOnceAfterTheCommit() throws SQLException {
+		shop.runInTransaction(new UnitOfWork.Work(){
+			public void run() throws SQLException {
+				shop.executePreparedUpdate("INSERT INTO Owns VALUES (?)", 1);
+				shop.bumpAfterCommit("owns_version_seq");
+				shop.executePreparedUpdate("INSERT INTO Owns VALUES (?)", 2);
+				shop.bumpAfterCommit("owns_version_seq", "service_request_version_seq");
+			}
+		});
+		List<String> executed = database.executed();
+		assertEquals(3, executed.size());
+		assertEquals("COMMIT", executed.get(1));
+		assertTrue(executed.get(2), executed.get(2).startsWith("SELECT nextval"));
+
+		//with no transaction, at once
+		shop.bumpAfterCommit("owns_version_seq");
+		assertEquals(4, database.executed().size());
+	}
+
+	@Test
+	public void rolledBackTransactionMovesNoVersion() throws SQLException {
+		database.commitFailures.add(new SQLException("duplicate key value", "23505"));
+		try{
+			shop.runInTransaction(new UnitOfWork.Work(){
+				public void run() throws SQLException {
+					shop.executePreparedUpdate("INSERT INTO Owns VALUES (?)", 1);
+					shop.bumpAfterCommit("owns_version_seq");
+				}
+			});
+			fail("The commit failure was not thrown");
+		}catch(SQLException e){
+			assertEquals(Arrays.asList("BATCH 1: INSERT INTO Owns VALUES (?)", "ROLLBACK"), database.executed());
+		}
+	}
+
+	@Test
+	public void transactionIsRetriedAfterASerializationFailure() throws SQLException {
+		database.commitFailures.add(new SQLException("could not serialize access", "40001"));
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger committed = new AtomicInteger();
+		shop.runInTransaction(new UnitOfWork.Work(){
+			public void run() throws SQLException {
+				runs.incrementAndGet();
+				shop.executePreparedUpdate("INSERT INTO Car VALUES (?)", "A");
+				shop.afterCommit(new Runnable(){
+					public void run(){
+						committed.incrementAndGet();
+					}
+				});
+			}
+		});
+		assertEquals(2, runs.get());
+		//the actions of the failed attempt are dropped with it
+		assertEquals(1, committed.get());
+		assertEquals(Arrays.asList("BATCH 1: INSERT INTO Car VALUES (?)", "ROLLBACK", "BATCH 1: INSERT INTO Car VALUES (?)", "COMMIT"), database.executed());
+	}
+
+	@Test
+	public void transactionIsNotRetriedAfterOtherFailures() throws SQLException {
+		database.commitFailures.add(new SQLException("duplicate key value", "23505"));
+		final AtomicInteger runs = new AtomicInteger();
+		try{
+			shop.runInTransaction(new UnitOfWork.Work(){
+				public void run() throws SQLException {
+					runs.incrementAndGet();
+					shop.executePreparedUpdate("INSERT INTO Car VALUES (?)", "A");
+				}
+			});
+			fail("The commit failure was not thrown");
+		}catch(SQLException e){
+			assertEquals("23505", e.getSQLState());
+		}
+		assertEquals(1, runs.get());
+		List<String> executed = database.executed();
+		assertEquals("ROLLBACK", executed.get(executed.size() - 1));
+		shop.executeUpdate("SELECT 1");
+	}
+
+}//end MechanicShopTest
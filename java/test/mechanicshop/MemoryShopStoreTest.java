@@ -0,0 +1,135 @@
+/*
+ * Tests of the aggregates of the in-memory store
+ * ==============================================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The request counts and bill totals MemoryShopStore keeps on every insert
+ * for reports 9 and 10, against the ones rebuildAggregates() computes, and
+ * against the grouping of the same requests over a window.
+ *
+ */
+
+public class MemoryShopStoreTest{
+	private static final int CARS = 12;
+	private static final int CUSTOMERS = 6;
+
+	private MemoryShopStore store;
+	private Random random = new Random(42);
+	private List<Integer> customers = new ArrayList<Integer>();
+	private int mechanic;
+
+	@Before
+	public void open() throws SQLException {
+		store = new MemoryShopStore();
+		mechanic = store.addMechanic("Bo", "Chu", 5);
+		for(int i = 0; i < CUSTOMERS; ++i){
+			customers.add(store.addCustomer("Ann" + i, "Lee", "555-010" + i, i + " Main St"));
+		}
+		for(int i = 0; i < CARS; ++i){
+			store.addCar(vin(i), "Make" + i % 3, "Model" + i, 1990 + i);
+			store.addOwnership(customers.get(i % CUSTOMERS), vin(i));
+		}
+	}
+
+	private static String vin(int car){
+		return String.format("VIN%013d", car);
+	}
+
+	//requests of random cars, each closed one at a time, in a batch, or left open
+	private void addRequests(int count) throws SQLException {
+		List<Integer> batch = new ArrayList<Integer>();
+		for(int i = 0; i < count; ++i){
+			int car = random.nextInt(CARS);
+			int rid = store.addServiceRequest(customers.get(car % CUSTOMERS), vin(car), Date.valueOf("2020-01-01"), 1000, "noise");
+			int close = random.nextInt(3);
+			if(close == 0){
+				store.addClosedRequest(rid, mechanic, Date.valueOf("2020-02-01"), "fixed", 1 + random.nextInt(500));
+			}
+			else if(close == 1){
+				batch.add(rid);
+			}
+		}
+		int[] rids = new int[batch.size()];
+		int[] mids = new int[batch.size()];
+		int[] bills = new int[batch.size()];
+		String[] comments = new String[batch.size()];
+		for(int i = 0; i < rids.length; ++i){
+			rids[i] = batch.get(i);
+			mids[i] = mechanic;
+			bills[i] = 1 + random.nextInt(500);
+			comments[i] = "batched";
+		}
+		store.addClosedRequests(rids, mids, Date.valueOf("2020-02-01"), comments, bills);
+	}
+
+	//report 9 or 10, every row, read a few rows per page
+	private List<String> report(int number, Date since) throws SQLException {
+		final ReportDefinition report = ReportDefinition.get(number);
+		final List<String> rows = new ArrayList<String>();
+		final Object[][] last = {null};
+		RowHandler handler = new RowHandler(){
+			public void handle(Row row) throws SQLException{
+				rows.add(row.getString(1) + " " + row.getString(2) + " " + row.getLong(3) + " " + row.getString(4));
+				last[0] = report.keyOf(row);
+			}
+		};
+		int read;
+		do{
+			read = number == 9 ? store.listCarsWithMostServices(since, last[0], 3, handler) : store.listCustomersByTotalBill(since, last[0], 3, handler);
+		}while(read == 3);
+		return rows;
+	}
+
+	@Test
+	public void keptAggregatesEqualRebuiltOnes() throws SQLException {
+		addRequests(60);
+		List<String> services = report(9, null);
+		List<String> bills = report(10, null);
+		assertEquals(CARS, services.size());
+		store.rebuildAggregates();
+		assertEquals(services, report(9, null));
+		assertEquals(bills, report(10, null));
+
+		//and they keep counting after a rebuild
+		addRequests(40);
+		services = report(9, null);
+		bills = report(10, null);
+		store.rebuildAggregates();
+		assertEquals(services, report(9, null));
+		assertEquals(bills, report(10, null));
+	}
+
+	@Test
+	public void keptAggregatesEqualTheGroupingOfTheWholeHistory() throws SQLException {
+		addRequests(60);
+		//a window before every request groups all of them
+		Date always = Date.valueOf("1999-01-01");
+		assertEquals(report(9, always), report(9, null));
+		assertEquals(report(10, always), report(10, null));
+	}
+
+	@Test
+	public void openRequestsAddNoBill() throws SQLException {
+		store.addServiceRequest(customers.get(0), vin(0), Date.valueOf("2020-01-01"), 1000, "noise");
+		assertEquals(1, report(9, null).size());
+		assertEquals(0, report(10, null).size());
+	}
+
+}//end MemoryShopStoreTest
@@ -0,0 +1,109 @@
+/*
+ * Tests of the latency histograms
+ * ===============================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Metrics.Histogram buckets and percentiles, and the slow query log,
+ * written to a temporary file.
+ *
+ */
+
+public class MetricsTest{
+
+	@Test
+	public void smallValuesHaveABucketEach(){
+		for(long value = 0; value < 16; ++value){
+			assertEquals(value, Metrics.Histogram.bucket(value));
+			assertEquals(value, Metrics.Histogram.upper((int) value));
+		}
+	}
+
+	@Test
+	public void bucketHoldsItsValueWithinAnEighth(){
+		int previous = -1;
+		for(long value = 0; value < 1L << 20; value += 1 + value / 100){
+			int bucket = Metrics.Histogram.bucket(value);
+			assertTrue("bucket of " + value, bucket >= previous);
+			long upper = Metrics.Histogram.upper(bucket);
+			assertTrue("upper of " + value, upper >= value && upper - value <= value / 8);
+			previous = bucket;
+		}
+		//the largest value still has a bucket
+		Metrics.Histogram.upper(Metrics.Histogram.bucket(Long.MAX_VALUE));
+		new Metrics.Histogram().record(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void percentileIsTheUpperEndOfItsBucket(){
+		Metrics.Histogram histogram = new Metrics.Histogram();
+		for(long value = 1; value <= 100; ++value){
+			histogram.record(value);
+		}
+		//a negative value counts as 0
+		histogram.record(-5);
+		assertEquals(101, histogram.count);
+		assertEquals(100, histogram.max);
+		assertEquals(0, histogram.percentile(0));
+		//the 51st value is 50, in the bucket 48..51
+		assertEquals(51, histogram.percentile(0.5));
+		//never above the largest value recorded
+		assertEquals(100, histogram.percentile(1));
+		assertEquals(0, new Metrics.Histogram().percentile(0.99));
+	}
+
+	private static final Object[] PARAMS = {"Lee", "555-0100"};
+
+	@Test
+	public void slowStatementIsKeptWithoutItsValues() throws IOException {
+		File log = File.createTempFile("slow-query", ".log");
+		try{
+			Metrics metrics = new Metrics(0, log, false);
+			metrics.statement("SELECT * FROM Customer WHERE lname = ? AND phone = ?", PARAMS, System.nanoTime(), 1, 0, false);
+			String logged = new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8);
+			assertTrue(logged, logged.contains("SELECT * FROM Customer WHERE lname = ? AND phone = ?"));
+			assertFalse(logged, logged.contains("555-0100"));
+			assertEquals(1, metrics.getSlowQueries().length);
+			assertFalse(metrics.getSlowQueries()[0].contains("Lee"));
+		}finally{
+			log.delete();
+		}
+	}
+
+	@Test
+	public void valuesAreLoggedWhenAskedFor() throws IOException {
+		File log = File.createTempFile("slow-query", ".log");
+		try{
+			Metrics metrics = new Metrics(0, log, true);
+			metrics.statement("SELECT * FROM Customer WHERE lname = ? AND phone = ?", PARAMS, System.nanoTime(), 1, 0, false);
+			String logged = new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8);
+			assertTrue(logged, logged.contains("params=[Lee, 555-0100]"));
+		}finally{
+			log.delete();
+		}
+	}
+
+	@Test
+	public void withoutALogSlowStatementsAreOnlyKept(){
+		Metrics metrics = new Metrics(0, null, false);
+		metrics.statement("SELECT 1", new Object[0], System.nanoTime(), 1, 0, false);
+		assertEquals(1, metrics.getSlowQueries().length);
+	}
+
+}//end MetricsTest
@@ -0,0 +1,74 @@
+/*
+ * Tests of the archive cutoff
+ * ===========================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Partitions.cutoff() over the months of the hot service requests, given as
+ * the rows of its REQUEST_MONTHS query.
+ *
+ */
+
+public class PartitionsTest{
+	private static final Date HORIZON = Date.valueOf("2020-06-01");
+
+	//first day, month of the last closing, requests still open
+	private static List<List<String>> months(String[]... months){
+		List<List<String>> rows = new ArrayList<List<String>>();
+		for(String[] month : months){
+			rows.add(Arrays.asList(month));
+		}
+		return rows;
+	}
+
+	@Test
+	public void closedMonthsBeforeTheHorizonMove(){
+		assertEquals(HORIZON, Partitions.cutoff(HORIZON, months()));
+		assertEquals(HORIZON, Partitions.cutoff(HORIZON, months(
+			new String[]{"2020-01-01", "2020-02-01", "0"},
+			new String[]{"2020-05-01", "2020-05-01", "0"},
+			//after the horizon, open or not
+			new String[]{"2020-07-01", null, "3"})));
+	}
+
+	@Test
+	public void openRequestKeepsItsMonth(){
+		assertEquals(Date.valueOf("2020-03-01"), Partitions.cutoff(HORIZON, months(
+			new String[]{"2020-01-01", "2020-01-01", "0"},
+			new String[]{"2020-03-01", "2020-04-01", "1"},
+			new String[]{"2020-04-01", "2020-04-01", "0"})));
+	}
+
+	@Test
+	public void requestClosedAfterTheCutoffKeepsItsMonth(){
+		//May is closed in the horizon month
+		assertEquals(Date.valueOf("2020-05-01"), Partitions.cutoff(HORIZON, months(
+			new String[]{"2020-04-01", "2020-04-01", "0"},
+			new String[]{"2020-05-01", "2020-06-01", "0"})));
+	}
+
+	@Test
+	public void keptMonthsHoldBackTheMonthsBeforeThem(){
+		//March is open, so February stays, so January, closed in February, stays
+		assertEquals(Date.valueOf("2020-01-01"), Partitions.cutoff(HORIZON, months(
+			new String[]{"2019-12-01", "2019-12-01", "0"},
+			new String[]{"2020-01-01", "2020-02-01", "0"},
+			new String[]{"2020-02-01", "2020-03-01", "0"},
+			new String[]{"2020-03-01", null, "2"})));
+	}
+
+}//end PartitionsTest
@@ -0,0 +1,165 @@
+/*
+ * Tests of the report page cache
+ * ==============================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ReportCache in front of the reports of a small MemoryShopStore, with the
+ * versions of the database faked by a map.
+ *
+ */
+
+public class ReportCacheTest{
+	private static final String[] READS_CLOSED_REQUEST = {"Closed_Request"};
+	private static final String[] READS_OWNS = {"Owns"};
+
+	private MemoryShopStore store;
+	//the versions "the database" holds, changed by "another process"
+	private final Map<String, Long> database = new HashMap<String, Long>();
+	private ReportCache cache;
+	//the reports run against the store
+	private int queries = 0;
+
+	@Before
+	public void open() throws SQLException {
+		store = new MemoryShopStore();
+		int customer = store.addCustomer("Ann", "Lee", "555-0100", "1 Main St");
+		int mechanic = store.addMechanic("Bo", "Chu", 5);
+		store.addCar("VIN0000000000001", "Honda", "Civic", 1990);
+		store.addOwnership(customer, "VIN0000000000001");
+		for(int bill = 10; bill <= 50; bill += 10){
+			int rid = store.addServiceRequest(customer, "VIN0000000000001", Date.valueOf("2020-01-0" + bill / 10), 1000 * bill, "noise");
+			store.addClosedRequest(rid, mechanic, Date.valueOf("2020-02-0" + bill / 10), "fixed", bill);
+		}
+		cache = new ReportCache(10, 0, 3, new ReportCache.Versions(){
+			public Map<String, Long> read(){
+				return new HashMap<String, Long>(database);
+			}
+		});
+	}
+
+	//the closed requests with a bill under the given one, two per page, through the cache
+	private List<String> billsUnder(final int bill) throws SQLException {
+		final List<String> rows = new ArrayList<String>();
+		cache.run("bills" + bill, READS_CLOSED_REQUEST, new ReportCache.Query(){
+			public int run(RowHandler handler) throws SQLException{
+				++queries;
+				return store.listClosedRequestsWithBillUnder(bill, null, null, 2, handler);
+			}
+		}, new RowHandler(){
+			public void handle(Row row) throws SQLException{
+				rows.add(row.getDate(1) + " " + row.getString(2) + " " + row.getLong(3) + " " + row.getInt(4));
+			}
+		});
+		return rows;
+	}
+
+	private int customersWithCars() throws SQLException {
+		return cache.run("owners", READS_OWNS, new ReportCache.Query(){
+			public int run(RowHandler handler) throws SQLException{
+				++queries;
+				return store.listCustomersWithMoreCarsThan(0, null, 10, handler);
+			}
+		}, new RowHandler(){
+			public void handle(Row row){}
+		});
+	}
+
+	@Test
+	public void pageIsServedAgainWithItsTypedValues() throws SQLException {
+		List<String> first = billsUnder(100);
+		assertEquals("[2020-02-01 fixed 10 0, 2020-02-02 fixed 20 1]", first.toString());
+		assertEquals(first, billsUnder(100));
+		assertEquals(1, queries);
+		//another key is another page
+		billsUnder(30);
+		assertEquals(2, queries);
+	}
+
+	@Test
+	public void changeOfATableDropsOnlyThePagesReadingIt() throws SQLException {
+		billsUnder(100);
+		customersWithCars();
+		cache.changed("Owns");
+		billsUnder(100);
+		assertEquals(2, queries);
+		customersWithCars();
+		assertEquals(3, queries);
+	}
+
+	@Test
+	public void changeInTheDatabaseDropsThePages() throws SQLException {
+		billsUnder(100);
+		database.put("Closed_Request", 1L);
+		billsUnder(100);
+		assertEquals(2, queries);
+		billsUnder(100);
+		assertEquals(2, queries);
+		//a table the report does not read
+		database.put("Owns", 7L);
+		billsUnder(100);
+		assertEquals(2, queries);
+	}
+
+	@Test
+	public void pageReadWhileItsTableChangedIsNotCached() throws SQLException {
+		ReportCache.Query racing = new ReportCache.Query(){
+			public int run(RowHandler handler) throws SQLException{
+				++queries;
+				int rows = store.listClosedRequestsWithBillUnder(100, null, null, 2, handler);
+				database.put("Closed_Request", 1L + queries);
+				return rows;
+			}
+		};
+		RowHandler ignore = new RowHandler(){
+			public void handle(Row row){}
+		};
+		cache.run("bills", READS_CLOSED_REQUEST, racing, ignore);
+		cache.run("bills", READS_CLOSED_REQUEST, racing, ignore);
+		assertEquals(2, queries);
+	}
+
+	@Test
+	public void largePagesAndClearedPagesAreReadAgain() throws SQLException {
+		final List<Integer> counted = new ArrayList<Integer>();
+		ReportCache.Query large = new ReportCache.Query(){
+			public int run(RowHandler handler) throws SQLException{
+				++queries;
+				return store.listClosedRequestsWithBillUnder(100, null, null, 4, handler);
+			}
+		};
+		RowHandler count = new RowHandler(){
+			public void handle(Row row){
+				counted.add(row.getRowNumber());
+			}
+		};
+		//4 rows, more than the 3 a cached page may have
+		assertEquals(4, cache.run("large", READS_CLOSED_REQUEST, large, count));
+		assertEquals(4, cache.run("large", READS_CLOSED_REQUEST, large, count));
+		assertEquals(2, queries);
+		assertEquals("[1, 2, 3, 4, 1, 2, 3, 4]", counted.toString());
+
+		billsUnder(100);
+		cache.clear();
+		billsUnder(100);
+		assertEquals(4, queries);
+	}
+
+}//end ReportCacheTest
@@ -0,0 +1,130 @@
+/*
+ * Tests of the paged report output
+ * ================================
+ *
+ * Target DBMS: none
+ *
+ */
+
+package mechanicshop;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ReportPager over report 6 of a MemoryShopStore with five closed
+ * requests, billed 10 to 50, answering the prompts from a string.
+ *
+ */
+
+public class ReportPagerTest{
+	private static final ReportDefinition BILLS_UNDER = ReportDefinition.get(6);
+
+	private MemoryShopStore store;
+	private PrintStream shopOut;
+	private ByteArrayOutputStream prompts = new ByteArrayOutputStream();
+	//what the pager printed and the keys it fetched after
+	private List<String> printed = new ArrayList<String>();
+	private List<Object[]> fetchedAfter = new ArrayList<Object[]>();
+
+	@Before
+	public void open() throws SQLException {
+		store = new MemoryShopStore();
+		int customer = store.addCustomer("Ann", "Lee", "555-0100", "1 Main St");
+		int mechanic = store.addMechanic("Bo", "Chu", 5);
+		store.addCar("VIN0000000000001", "Honda", "Civic", 1990);
+		store.addOwnership(customer, "VIN0000000000001");
+		for(int bill = 10; bill <= 50; bill += 10){
+			int rid = store.addServiceRequest(customer, "VIN0000000000001", Date.valueOf("2020-01-0" + bill / 10), 1000 * bill, "noise");
+			store.addClosedRequest(rid, mechanic, Date.valueOf("2020-02-0" + bill / 10), "fixed", bill);
+		}
+		shopOut = MechanicShop.out;
+		MechanicShop.out = new PrintStream(prompts, true);
+	}
+
+	@After
+	public void close(){
+		MechanicShop.out = shopOut;
+	}
+
+	//report 6 with a bill under the given one, shown pageSize rows at a time
+	private void run(final int bill, int pageSize, int total, String answers) throws SQLException, IOException {
+		new ReportPager(pageSize, total){
+			protected int fetch(Object[] after, int limit, RowHandler handler) throws SQLException{
+				fetchedAfter.add(after);
+				return BILLS_UNDER.fetch(store, new int[]{bill, 0}, after, limit, handler);
+			}
+			protected Object[] keyOf(Row row) throws SQLException{
+				return BILLS_UNDER.keyOf(row);
+			}
+			protected void print(int number, Row row) throws SQLException{
+				printed.add(number + ". $" + row.getInt(3));
+			}
+		}.run(new BufferedReader(new StringReader(answers)));
+	}
+
+	@Test
+	public void nextPagesSeekPastTheLastKey() throws SQLException, IOException {
+		run(100, 2, Integer.MAX_VALUE, "n\nn\n");
+		assertEquals("[1. $10, 2. $20, 3. $30, 4. $40, 5. $50]", printed.toString());
+		assertEquals(3, fetchedAfter.size());
+		assertNull(fetchedAfter.get(0));
+		//the bill and wid of the last row of the page before
+		assertArrayEquals(new Object[]{20, 1}, fetchedAfter.get(1));
+		assertArrayEquals(new Object[]{40, 3}, fetchedAfter.get(2));
+		//the last page offers no next one
+		assertEquals("[n]ext page, [q]uit: [n]ext page, [p]revious page, [q]uit: [p]revious page, [q]uit: ", prompts.toString());
+	}
+
+	@Test
+	public void previousPageIsReadAgainFromItsKey() throws SQLException, IOException {
+		run(100, 2, Integer.MAX_VALUE, "n\nn\np\np\nq\n");
+		assertEquals("[1. $10, 2. $20, 3. $30, 4. $40, 5. $50, 3. $30, 4. $40, 1. $10, 2. $20]", printed.toString());
+		assertArrayEquals(new Object[]{20, 1}, fetchedAfter.get(3));
+		assertNull(fetchedAfter.get(4));
+	}
+
+	@Test
+	public void totalEndsTheReport() throws SQLException, IOException {
+		run(100, 2, 3, "n\nn\n");
+		assertEquals("[1. $10, 2. $20, 3. $30]", printed.toString());
+		assertEquals(2, fetchedAfter.size());
+		assertTrue(prompts.toString(), prompts.toString().endsWith("[p]revious page, [q]uit: "));
+	}
+
+	@Test
+	public void reportOfOnePageAsksNothing() throws SQLException, IOException {
+		run(30, 2, Integer.MAX_VALUE, "");
+		assertEquals("[1. $10, 2. $20]", printed.toString());
+		assertEquals("", prompts.toString());
+
+		run(10, 2, Integer.MAX_VALUE, "");
+		assertEquals(2, printed.size());
+		assertEquals("No rows." + System.lineSeparator(), prompts.toString());
+	}
+
+	@Test
+	public void endOfInputOrAnyOtherAnswerQuits() throws SQLException, IOException {
+		run(100, 2, Integer.MAX_VALUE, "");
+		run(100, 2, Integer.MAX_VALUE, "x\n");
+		assertEquals("[1. $10, 2. $20, 1. $10, 2. $20]", printed.toString());
+		assertEquals(2, fetchedAfter.size());
+	}
+
+}//end ReportPagerTest
@@ -4,6 +4,26 @@ DROP TABLE IF EXISTS Car CASCADE;--OK
 DROP TABLE IF EXISTS Owns CASCADE;--OK
 DROP TABLE IF EXISTS Service_Request CASCADE;--OK
 DROP TABLE IF EXISTS Closed_Request CASCADE;--OK
+DROP TABLE IF EXISTS Service_Request_Archive CASCADE;--OK
+DROP TABLE IF EXISTS Closed_Request_Archive CASCADE;--OK
+DROP TABLE IF EXISTS Car_Service_Count;--OK
+DROP TABLE IF EXISTS Customer_Bill_Total;--OK
+DROP TABLE IF EXISTS Schema_Version;--OK
+DROP TABLE IF EXISTS Customer_Version;--OK
+DROP TABLE IF EXISTS Table_Version;--OK
+DROP FUNCTION IF EXISTS count_customer_change();--OK
+DROP FUNCTION IF EXISTS count_table_change() CASCADE;--OK
+DROP FUNCTION IF EXISTS check_closed_request() CASCADE;--OK
+DROP FUNCTION IF EXISTS shop_month_partition(TEXT, DATE);--OK
+DROP SEQUENCE IF EXISTS customer_id_seq;--OK
+DROP SEQUENCE IF EXISTS mechanic_id_seq;--OK
+DROP SEQUENCE IF EXISTS owns_ownership_id_seq;--OK
+DROP SEQUENCE IF EXISTS service_request_rid_seq;--OK
+DROP SEQUENCE IF EXISTS closed_request_wid_seq;--OK
+DROP SEQUENCE IF EXISTS customer_version_seq;--OK
+DROP SEQUENCE IF EXISTS owns_version_seq;--OK
+DROP SEQUENCE IF EXISTS service_request_version_seq;--OK
+DROP SEQUENCE IF EXISTS closed_request_version_seq;--OK
 
 
 -------------
@@ -154,3 +174,21 @@ COPY Closed_Request (
 )
 FROM 'closed_request.csv'
 WITH DELIMITER ',';
+
+---------------
+---SEQUENCES---
+---------------
+-- Keys are handed out by the application in blocks (IdAllocator.java):
+-- one nextval() reserves INCREMENT BY keys, so the increment must match
+-- IdAllocator.BLOCK_SIZE. Each sequence starts after the loaded data.
+CREATE SEQUENCE customer_id_seq MINVALUE 0 INCREMENT BY 50;
+CREATE SEQUENCE mechanic_id_seq MINVALUE 0 INCREMENT BY 50;
+CREATE SEQUENCE owns_ownership_id_seq MINVALUE 0 INCREMENT BY 50;
+CREATE SEQUENCE service_request_rid_seq MINVALUE 0 INCREMENT BY 50;
+CREATE SEQUENCE closed_request_wid_seq MINVALUE 0 INCREMENT BY 50;
+
+SELECT setval('customer_id_seq', (SELECT COALESCE(MAX(id) + 1, 0) FROM Customer), false);
+SELECT setval('mechanic_id_seq', (SELECT COALESCE(MAX(id) + 1, 0) FROM Mechanic), false);
+SELECT setval('owns_ownership_id_seq', (SELECT COALESCE(MAX(ownership_id) + 1, 0) FROM Owns), false);
+SELECT setval('service_request_rid_seq', (SELECT COALESCE(MAX(rid) + 1, 0) FROM Service_Request), false);
+SELECT setval('closed_request_wid_seq', (SELECT COALESCE(MAX(wid) + 1, 0) FROM Closed_Request), false);